@@ -0,0 +1,83 @@
+package at.technikum_wien.swen3.paperless.benchmark;
+
+import at.technikum_wien.swen3.paperless.entity.Document;
+import at.technikum_wien.swen3.paperless.entity.Tag;
+import at.technikum_wien.swen3.paperless.service.ContentStorageService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.OffsetDateTime;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Payloads shaped like production data: OCR text of a given length and a document with tags.
+ */
+final class BenchmarkFixtures {
+
+    private static final String[] WORDS = {
+            "invoice", "total", "amount", "Rechnung", "Betrag", "customer", "2024-03-15", "EUR", "1.234,56",
+            "payment", "due", "within", "days", "Vienna", "Austria", "order", "number", "VAT", "20%", "item"
+    };
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * OCR-like text: words, spaces and a line break every few words, always the same for a length.
+     */
+    static String text(int length) {
+        Random random = new Random(length);
+        StringBuilder text = new StringBuilder(length + 16);
+        int wordsInLine = 0;
+        while (text.length() < length) {
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+            text.append(++wordsInLine % 12 == 0 ? '\n' : ' ');
+        }
+        text.setLength(length);
+        return text.toString();
+    }
+
+    static Set<Tag> tags(int count) {
+        Set<Tag> tags = new HashSet<>();
+        for (long i = 1; i <= count; i++) {
+            Tag tag = new Tag();
+            tag.setId(i);
+            tag.setName("tag-" + i);
+            tags.add(tag);
+        }
+        return tags;
+    }
+
+    // pageCount is null, so the content is the full text, as for documents processed before the text moved to MinIO
+    static Document document(long id, String content, Set<Tag> tags) {
+        return Document.builder()
+                .id(id)
+                .title("Scanned invoice " + id)
+                .content(content)
+                .createdDate(OffsetDateTime.parse("2024-03-15T10:15:30+01:00"))
+                .storagePath("documents/" + id + ".pdf")
+                .status("COMPLETED")
+                .summary("Invoice of 1.234,56 EUR for an order of office supplies, due within 30 days.")
+                .fileSize(2_500_000L)
+                .contentHash("9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08")
+                .previewStatus("COMPLETED")
+                .version(3L)
+                .tags(tags)
+                .build();
+    }
+
+    // Only preview() and readText() of legacy documents are used, neither talks to MinIO
+    static ContentStorageService contentStorageService() {
+        ContentStorageService contentStorageService = new ContentStorageService(null);
+        ReflectionTestUtils.setField(contentStorageService, "previewLength", 2000);
+        return contentStorageService;
+    }
+
+    // Configured like the ObjectMapper Spring Boot creates (ISO dates, unknown properties ignored)
+    static ObjectMapper objectMapper() {
+        return Jackson2ObjectMapperBuilder.json().build();
+    }
+}
@@ -0,0 +1,113 @@
+package at.technikum_wien.swen3.paperless.benchmark;
+
+import at.technikum_wien.swen3.paperless.dto.DocumentDto;
+import at.technikum_wien.swen3.paperless.dto.GenAiResult;
+import at.technikum_wien.swen3.paperless.dto.OcrResult;
+import at.technikum_wien.swen3.paperless.dto.TagDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+/**
+ * Jackson (de)serialization of the worker results (RabbitMQ message converter) and of the document DTO
+ * (REST responses). Payloads are handled as byte[], like the message converter and the HTTP layer do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+    @Param({"1024", "65536", "1048576", "5242880"})
+    private int contentLength;
+
+    @Param({"0", "10", "50"})
+    private int tagCount;
+
+    private ObjectMapper objectMapper;
+    private OcrResult ocrResult;
+    private GenAiResult genAiResult;
+    private DocumentDto documentDto;
+    private byte[] ocrResultJson;
+    private byte[] genAiResultJson;
+    private byte[] documentDtoJson;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = BenchmarkFixtures.objectMapper();
+        String content = BenchmarkFixtures.text(contentLength);
+
+        // Results of older workers still carry the whole text
+        ocrResult = new OcrResult();
+        ocrResult.setDocumentId(1L);
+        ocrResult.setStatus("SUCCESS");
+        ocrResult.setContentText(content);
+        ocrResult.setContentHash("9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08");
+
+        genAiResult = new GenAiResult();
+        genAiResult.setDocumentId(1L);
+        genAiResult.setStatus("COMPLETED");
+        // Summaries are short whatever the size of the document
+        genAiResult.setSummary(BenchmarkFixtures.text(Math.min(contentLength, 2048)));
+
+        documentDto = DocumentDto.builder()
+                .id(1L)
+                .title("Scanned invoice")
+                .content(content)
+                .createdDate(OffsetDateTime.parse("2024-03-15T10:15:30+01:00"))
+                .storagePath("documents/1.pdf")
+                .status("COMPLETED")
+                .summary(genAiResult.getSummary())
+                .fileSize(2_500_000L)
+                .version(3L)
+                .tags(LongStream.rangeClosed(1, tagCount).mapToObj(JsonBenchmark::tag).toList())
+                .build();
+
+        ocrResultJson = objectMapper.writeValueAsBytes(ocrResult);
+        genAiResultJson = objectMapper.writeValueAsBytes(genAiResult);
+        documentDtoJson = objectMapper.writeValueAsBytes(documentDto);
+    }
+
+    private static TagDto tag(long id) {
+        TagDto tag = new TagDto();
+        tag.setId(id);
+        tag.setName("tag-" + id);
+        return tag;
+    }
+
+    @Benchmark
+    public byte[] serializeOcrResult() throws IOException {
+        return objectMapper.writeValueAsBytes(ocrResult);
+    }
+
+    @Benchmark
+    public OcrResult deserializeOcrResult() throws IOException {
+        return objectMapper.readValue(ocrResultJson, OcrResult.class);
+    }
+
+    @Benchmark
+    public byte[] serializeGenAiResult() throws IOException {
+        return objectMapper.writeValueAsBytes(genAiResult);
+    }
+
+    @Benchmark
+    public GenAiResult deserializeGenAiResult() throws IOException {
+        return objectMapper.readValue(genAiResultJson, GenAiResult.class);
+    }
+
+    @Benchmark
+    public byte[] serializeDocumentDto() throws IOException {
+        return objectMapper.writeValueAsBytes(documentDto);
+    }
+
+    @Benchmark
+    public DocumentDto deserializeDocumentDto() throws IOException {
+        return objectMapper.readValue(documentDtoJson, DocumentDto.class);
+    }
+}
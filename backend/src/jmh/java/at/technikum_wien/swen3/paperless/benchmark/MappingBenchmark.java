@@ -0,0 +1,75 @@
+package at.technikum_wien.swen3.paperless.benchmark;
+
+import at.technikum_wien.swen3.paperless.dto.DocumentDto;
+import at.technikum_wien.swen3.paperless.entity.Document;
+import at.technikum_wien.swen3.paperless.entity.Tag;
+import at.technikum_wien.swen3.paperless.mapper.DocumentMapper;
+import at.technikum_wien.swen3.paperless.mapper.DocumentMapperImpl;
+import at.technikum_wien.swen3.paperless.mapper.DocumentSearchMapper;
+import at.technikum_wien.swen3.paperless.mapper.DocumentSearchMapperImpl;
+import at.technikum_wien.swen3.paperless.search.DocumentSearchEntity;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+/**
+ * MapStruct mappings used by the REST API (entityToDto) and the search indexer (entityToSearchEntity).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MappingBenchmark {
+
+    // A page of the document list
+    private static final int LIST_SIZE = 50;
+
+    @Param({"1024", "65536", "1048576", "5242880"})
+    private int contentLength;
+
+    @Param({"0", "10", "50"})
+    private int tagCount;
+
+    private DocumentMapper documentMapper;
+    private DocumentSearchMapper documentSearchMapper;
+    private Document document;
+    private List<Document> documents;
+
+    @Setup
+    public void setUp() {
+        documentMapper = new DocumentMapperImpl();
+        documentSearchMapper = new DocumentSearchMapperImpl();
+        ReflectionTestUtils.setField(documentSearchMapper, "contentStorageService",
+                BenchmarkFixtures.contentStorageService());
+
+        // The documents share one text, a list of 50 distinct 5 MB strings would only measure the heap
+        String content = BenchmarkFixtures.text(contentLength);
+        Set<Tag> tags = BenchmarkFixtures.tags(tagCount);
+        document = BenchmarkFixtures.document(1L, content, tags);
+        documents = LongStream.rangeClosed(1, LIST_SIZE)
+                .mapToObj(id -> BenchmarkFixtures.document(id, content, BenchmarkFixtures.tags(tagCount)))
+                .toList();
+    }
+
+    @Benchmark
+    public DocumentDto entityToDto() {
+        return documentMapper.entityToDto(document);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LIST_SIZE)
+    public List<DocumentDto> entityToDtoList() {
+        return documentMapper.entityToDto(documents);
+    }
+
+    @Benchmark
+    public DocumentSearchEntity entityToSearchEntity() {
+        return documentSearchMapper.entityToSearchEntity(document);
+    }
+}
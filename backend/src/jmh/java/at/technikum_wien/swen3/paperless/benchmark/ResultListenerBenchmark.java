@@ -0,0 +1,140 @@
+package at.technikum_wien.swen3.paperless.benchmark;
+
+import at.technikum_wien.swen3.paperless.config.CacheConfig;
+import at.technikum_wien.swen3.paperless.dto.GenAiResult;
+import at.technikum_wien.swen3.paperless.dto.OcrResult;
+import at.technikum_wien.swen3.paperless.repository.DocumentJdbcRepository;
+import at.technikum_wien.swen3.paperless.repository.DocumentResultUpdate;
+import at.technikum_wien.swen3.paperless.repository.OutboxMessageRepository;
+import at.technikum_wien.swen3.paperless.service.GenAiResultListener;
+import at.technikum_wien.swen3.paperless.service.OcrResultListener;
+import at.technikum_wien.swen3.paperless.service.OutboxService;
+import at.technikum_wien.swen3.paperless.service.PipelineMetrics;
+import at.technikum_wien.swen3.paperless.service.ResultBatchProcessor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+/**
+ * Handling of one consumed batch of worker results, everything the listeners do in the backend: batch
+ * transaction, correlation IDs, cache eviction and the follow-up messages serialized into the outbox.
+ * The database is stubbed out, so this is the CPU cost on top of the JDBC batch update and outbox insert.
+ * Scores are per batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResultListenerBenchmark {
+
+    // The default batch size of the result listeners is 25
+    @Param({"1", "25"})
+    private int batchSize;
+
+    @Param({"1024", "65536", "1048576"})
+    private int contentLength;
+
+    private OcrResultListener ocrResultListener;
+    private GenAiResultListener genAiResultListener;
+    private List<Message<OcrResult>> ocrResults;
+    private List<Message<GenAiResult>> genAiResults;
+
+    @Setup
+    public void setUp() {
+        // Every document exists, the updates return all ids
+        DocumentJdbcRepository documentJdbcRepository = new DocumentJdbcRepository(null) {
+            @Override
+            public List<Long> updateContents(List<DocumentResultUpdate> updates) {
+                return updates.stream().map(DocumentResultUpdate::documentId).toList();
+            }
+
+            @Override
+            public List<Long> updateSummaries(List<DocumentResultUpdate> updates) {
+                return updates.stream().map(DocumentResultUpdate::documentId).toList();
+            }
+        };
+        // The messages are serialized, saving them is a no-op (a mock would add its own bookkeeping per call)
+        OutboxMessageRepository outboxMessageRepository = (OutboxMessageRepository) Proxy.newProxyInstance(
+                OutboxMessageRepository.class.getClassLoader(), new Class<?>[]{OutboxMessageRepository.class},
+                (proxy, method, args) -> null);
+        OutboxService outboxService = new OutboxService(outboxMessageRepository, BenchmarkFixtures.objectMapper());
+        // Same transaction synchronization as in production, the cache evictions run after "commit"
+        ResultBatchProcessor resultBatchProcessor = new ResultBatchProcessor(
+                new TransactionTemplate(new NoOpTransactionManager()),
+                null,
+                new TransactionAwareCacheManagerProxy(new ConcurrentMapCacheManager(CacheConfig.DOCUMENTS_CACHE)),
+                new PipelineMetrics(new SimpleMeterRegistry()));
+
+        ocrResultListener = new OcrResultListener(documentJdbcRepository, BenchmarkFixtures.contentStorageService(),
+                outboxService, resultBatchProcessor);
+        genAiResultListener = new GenAiResultListener(documentJdbcRepository, outboxService, resultBatchProcessor);
+
+        String content = BenchmarkFixtures.text(contentLength);
+        String summary = BenchmarkFixtures.text(Math.min(contentLength, 2048));
+        ocrResults = LongStream.rangeClosed(1, batchSize).mapToObj(id -> ocrResult(id, content)).toList();
+        genAiResults = LongStream.rangeClosed(1, batchSize).mapToObj(id -> genAiResult(id, summary)).toList();
+    }
+
+    // Results of workers that stored the text in MinIO carry a preview and the page count
+    private static Message<OcrResult> ocrResult(long documentId, String content) {
+        OcrResult result = new OcrResult();
+        result.setDocumentId(documentId);
+        result.setStatus("SUCCESS");
+        result.setContentText(content);
+        result.setPageCount(12);
+        result.setContentHash("9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08");
+        return MessageBuilder.withPayload(result).setHeader(AmqpHeaders.CORRELATION_ID, "upload-" + documentId).build();
+    }
+
+    private static Message<GenAiResult> genAiResult(long documentId, String summary) {
+        GenAiResult result = new GenAiResult();
+        result.setDocumentId(documentId);
+        result.setStatus("COMPLETED");
+        result.setSummary(summary);
+        return MessageBuilder.withPayload(result).setHeader(AmqpHeaders.CORRELATION_ID, "upload-" + documentId).build();
+    }
+
+    @Benchmark
+    public void receiveOcrResults() {
+        ocrResultListener.receiveOcrResults(ocrResults);
+    }
+
+    @Benchmark
+    public void receiveGenAiResults() {
+        genAiResultListener.receiveGenAiResults(genAiResults);
+    }
+
+    private static class NoOpTransactionManager extends AbstractPlatformTransactionManager {
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
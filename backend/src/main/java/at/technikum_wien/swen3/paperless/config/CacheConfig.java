@@ -0,0 +1,81 @@
+package at.technikum_wien.swen3.paperless.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    public static final String DOCUMENTS_CACHE = "documents";
+    public static final String TAGS_CACHE = "tags";
+    public static final String TAGS_BY_NAME_CACHE = "tagsByName";
+    public static final String PRESIGNED_URLS_CACHE = "presignedUrls";
+    public static final String DOCUMENT_FILES_CACHE = "documentFiles";
+
+    @Value("${paperless.cache.documents.max-size:10000}")
+    private long documentsMaxSize;
+
+    @Value("${paperless.cache.documents.ttl:10m}")
+    private Duration documentsTtl;
+
+    @Value("${paperless.cache.tags.ttl:1h}")
+    private Duration tagsTtl;
+
+    // Has to stay below the lifetime of the presigned URL itself
+    @Value("${paperless.cache.presigned-urls.ttl:5m}")
+    private Duration presignedUrlsTtl;
+
+    @Value("${minio.presign.ttl:15m}")
+    private Duration presignTtl;
+
+    // Object metadata of downloads, the stored objects never change
+    @Value("${paperless.cache.document-files.ttl:1h}")
+    private Duration documentFilesTtl;
+
+    // Puts and evictions inside a transaction are applied after commit, so readers never cache uncommitted state.
+    // Hit/miss counts are recorded and exported by actuator as cache.gets{cache=...,result=hit|miss}
+    @Bean
+    public CacheManager cacheManager() {
+        if (presignedUrlsTtl.compareTo(presignTtl) >= 0) {
+            // A cached URL would be handed out after it expired
+            throw new IllegalStateException("paperless.cache.presigned-urls.ttl (" + presignedUrlsTtl
+                    + ") must be shorter than minio.presign.ttl (" + presignTtl + ")");
+        }
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        cacheManager.registerCustomCache(DOCUMENTS_CACHE, Caffeine.newBuilder()
+                .maximumSize(documentsMaxSize)
+                .expireAfterWrite(documentsTtl)
+                .recordStats()
+                .build());
+        cacheManager.registerCustomCache(TAGS_CACHE, Caffeine.newBuilder()
+                .maximumSize(1)
+                .expireAfterWrite(tagsTtl)
+                .recordStats()
+                .build());
+        cacheManager.registerCustomCache(TAGS_BY_NAME_CACHE, Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(tagsTtl)
+                .recordStats()
+                .build());
+        cacheManager.registerCustomCache(PRESIGNED_URLS_CACHE, Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(presignedUrlsTtl)
+                .recordStats()
+                .build());
+        cacheManager.registerCustomCache(DOCUMENT_FILES_CACHE, Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(documentFilesTtl)
+                .recordStats()
+                .build());
+        return new TransactionAwareCacheManagerProxy(cacheManager);
+    }
+}
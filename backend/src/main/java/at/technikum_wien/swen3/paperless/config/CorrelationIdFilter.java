@@ -0,0 +1,36 @@
+package at.technikum_wien.swen3.paperless.config;
+
+import at.technikum_wien.swen3.paperless.service.CorrelationId;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.MDC;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Starts the correlation of a request: a valid X-Correlation-ID of the caller is kept, otherwise the trace
+ * ID of the request (set in the MDC by the observation filter, which runs earlier) or a new ID is used.
+ * The ID is echoed in the response, so a client can look up what happened to its upload.
+ */
+@Component
+public class CorrelationIdFilter extends OncePerRequestFilter {
+
+    private static final String TRACE_ID_MDC_KEY = "traceId";
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String correlationId = request.getHeader(CorrelationId.HEADER);
+        if (!CorrelationId.isValid(correlationId)) {
+            correlationId = MDC.get(TRACE_ID_MDC_KEY);
+        }
+        try (MDC.MDCCloseable ignored = CorrelationId.open(correlationId)) {
+            response.setHeader(CorrelationId.HEADER, CorrelationId.current());
+            filterChain.doFilter(request, response);
+        }
+    }
+}
@@ -5,6 +5,9 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
 
 @Configuration
 public class MinIOConfig {
@@ -21,6 +24,9 @@ public class MinIOConfig {
     @Value("${minio.secret.key}")
     private String secretKey;
 
+    @Value("${paperless.content.read-concurrency:16}")
+    private int contentReadConcurrency;
+
     @Bean(name = "minioInternal")
     @Primary
     public MinioClient minioInternal() {
@@ -37,4 +43,17 @@ public class MinIOConfig {
                 .credentials(accessKey, secretKey)
                 .build();
     }
-}
\ No newline at end of file
+
+    // Bounded pool for reading the OCR text pages of a document concurrently, callers read a page themselves
+    // when it is saturated
+    @Bean(name = "contentReadExecutor")
+    public ThreadPoolTaskExecutor contentReadExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(contentReadConcurrency);
+        executor.setMaxPoolSize(contentReadConcurrency);
+        executor.setQueueCapacity(contentReadConcurrency * 4);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setThreadNamePrefix("content-read-");
+        return executor;
+    }
+}
@@ -1,57 +1,161 @@
 package at.technikum_wien.swen3.paperless.config;
 
+import at.technikum_wien.swen3.paperless.service.PipelineMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.AmqpAdmin;
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.MessageProperties;
 import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
 import org.springframework.amqp.core.TopicExchange;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
 
 @Configuration
+@Slf4j
 public class RabbitMQConfig {
 
     public static final String EXCHANGE_NAME = "document-exchange";
 
-    public static final String QUEUE_NAME = "ocr-queue";
-    public static final String OCR_RESULT_QUEUE_NAME = "ocr-result-queue";
+    // The queues used to be classic non-durable queues, and RabbitMQ refuses to redeclare a queue with another
+    // type (PRECONDITION_FAILED). The quorum queues therefore have versioned names, the old ones are deleted on start
+    private static final String QUEUE_VERSION = ".v2";
+    static final List<String> LEGACY_QUEUE_NAMES = List.of(
+            "ocr-queue", "ocr-result-queue", "genai-queue", "genai-result-queue", "search-queue");
+
+    public static final String QUEUE_NAME = "ocr-queue" + QUEUE_VERSION;
+    public static final String OCR_RESULT_QUEUE_NAME = "ocr-result-queue" + QUEUE_VERSION;
 
     public static final String ROUTING_KEY = "document.ocr";
     public static final String OCR_RESULT_ROUTING_KEY = "document.ocr.result";
 
-    public static final String GENAI_QUEUE_NAME = "genai-queue";
-    public static final String GENAI_RESULT_QUEUE_NAME = "genai-result-queue";
+    // Bulk lanes: workers consume them next to the interactive queues with a prefetch of 1, so an interactive
+    // job waits for at most one bulk job instead of the whole bulk backlog
+    public static final String OCR_BULK_QUEUE_NAME = "ocr-bulk-queue" + QUEUE_VERSION;
+    public static final String OCR_BULK_ROUTING_KEY = "document.ocr.bulk";
+
+    public static final String GENAI_QUEUE_NAME = "genai-queue" + QUEUE_VERSION;
+    public static final String GENAI_RESULT_QUEUE_NAME = "genai-result-queue" + QUEUE_VERSION;
 
     public static final String GENAI_ROUTING_KEY = "document.genai";
     public static final String GENAI_RESULT_ROUTING_KEY = "document.genai.result";
 
-    public static final String SEARCH_QUEUE_NAME = "search-queue";
+    public static final String GENAI_BULK_QUEUE_NAME = "genai-bulk-queue" + QUEUE_VERSION;
+    public static final String GENAI_BULK_ROUTING_KEY = "document.genai.bulk";
+
+    public static final String PREVIEW_QUEUE_NAME = "preview-queue" + QUEUE_VERSION;
+    public static final String PREVIEW_RESULT_QUEUE_NAME = "preview-result-queue" + QUEUE_VERSION;
+
+    public static final String PREVIEW_ROUTING_KEY = "document.preview";
+    public static final String PREVIEW_RESULT_ROUTING_KEY = "document.preview.result";
+
+    public static final String SEARCH_QUEUE_NAME = "search-queue" + QUEUE_VERSION;
     public static final String SEARCH_ROUTING_KEY = "document.search";
 
+    public static final String DEAD_LETTER_EXCHANGE_NAME = "document-dlx";
+    public static final String DEAD_LETTER_QUEUE_SUFFIX = ".dlq";
+
+    public static final String OCR_RESULT_CONTAINER_FACTORY = "ocrResultContainerFactory";
+    public static final String GENAI_RESULT_CONTAINER_FACTORY = "genaiResultContainerFactory";
+    public static final String PREVIEW_RESULT_CONTAINER_FACTORY = "previewResultContainerFactory";
+    public static final String SEARCH_BATCH_CONTAINER_FACTORY = "searchBatchContainerFactory";
+
+    // Must match the queue_declare arguments of the Python workers
+    @Value("${paperless.rabbitmq.delivery-limit:5}")
+    private int deliveryLimit;
+
     @Bean
     Queue queue() {
-        return new Queue(QUEUE_NAME, false);
+        return durableQueue(QUEUE_NAME);
+    }
+
+    @Bean
+    Queue ocrBulkQueue() {
+        return durableQueue(OCR_BULK_QUEUE_NAME);
     }
 
     @Bean
     Queue ocrResultQueue() {
-        return new Queue(OCR_RESULT_QUEUE_NAME, false);
+        return durableQueue(OCR_RESULT_QUEUE_NAME);
     }
 
     @Bean
     Queue genaiQueue() {
-        return new Queue(GENAI_QUEUE_NAME, false);
+        return durableQueue(GENAI_QUEUE_NAME);
+    }
+
+    @Bean
+    Queue genaiBulkQueue() {
+        return durableQueue(GENAI_BULK_QUEUE_NAME);
     }
 
     @Bean
     Queue genaiResultQueue() {
-        return new Queue(GENAI_RESULT_QUEUE_NAME, false);
+        return durableQueue(GENAI_RESULT_QUEUE_NAME);
+    }
+
+    @Bean
+    Queue previewQueue() {
+        return durableQueue(PREVIEW_QUEUE_NAME);
+    }
+
+    @Bean
+    Queue previewResultQueue() {
+        return durableQueue(PREVIEW_RESULT_QUEUE_NAME);
     }
 
     @Bean
     Queue searchQueue() {
-        return new Queue(SEARCH_QUEUE_NAME, false);
+        return durableQueue(SEARCH_QUEUE_NAME);
+    }
+
+    // Quorum queues survive broker restarts and dead-letter a message once it was rejected
+    // or redelivered delivery-limit times, so a poison message can't block a queue
+    private Queue durableQueue(String name) {
+        return QueueBuilder.durable(name)
+                .quorum()
+                .deliveryLimit(deliveryLimit)
+                .deadLetterExchange(DEAD_LETTER_EXCHANGE_NAME)
+                .deadLetterRoutingKey(name)
+                .build();
+    }
+
+    // The old queues are still bound to the exchange and would collect a copy of every message. Old workers
+    // consuming them during a rolling update lose their queue and reconnect to the new one once updated
+    @Bean
+    ApplicationRunner legacyQueueCleanup(AmqpAdmin amqpAdmin,
+                                         @Value("${paperless.rabbitmq.delete-legacy-queues:true}") boolean enabled) {
+        return args -> {
+            if (!enabled) {
+                return;
+            }
+            for (String name : LEGACY_QUEUE_NAMES) {
+                try {
+                    if (amqpAdmin.getQueueProperties(name) != null) {
+                        amqpAdmin.deleteQueue(name);
+                        log.info("Deleted legacy queue {}, it was replaced by {}", name, name + QUEUE_VERSION);
+                    }
+                } catch (RuntimeException e) {
+                    log.warn("Could not delete legacy queue {}: {}", name, e.getMessage());
+                }
+            }
+        };
     }
 
     @Bean
@@ -59,11 +163,33 @@ public class RabbitMQConfig {
         return new TopicExchange(EXCHANGE_NAME);
     }
 
+    @Bean
+    DirectExchange deadLetterExchange() {
+        return new DirectExchange(DEAD_LETTER_EXCHANGE_NAME);
+    }
+
+    @Bean
+    Declarables deadLetterQueues(DirectExchange deadLetterExchange) {
+        List<Declarable> declarables = new ArrayList<>();
+        for (String name : List.of(QUEUE_NAME, OCR_BULK_QUEUE_NAME, OCR_RESULT_QUEUE_NAME, GENAI_QUEUE_NAME,
+                GENAI_BULK_QUEUE_NAME, GENAI_RESULT_QUEUE_NAME, PREVIEW_QUEUE_NAME, PREVIEW_RESULT_QUEUE_NAME, SEARCH_QUEUE_NAME)) {
+            Queue deadLetterQueue = QueueBuilder.durable(name + DEAD_LETTER_QUEUE_SUFFIX).quorum().build();
+            declarables.add(deadLetterQueue);
+            declarables.add(BindingBuilder.bind(deadLetterQueue).to(deadLetterExchange).with(name));
+        }
+        return new Declarables(declarables);
+    }
+
     @Bean
     Binding binding(Queue queue, TopicExchange exchange) {
         return BindingBuilder.bind(queue).to(exchange).with(ROUTING_KEY);
     }
 
+    @Bean
+    Binding ocrBulkBinding(Queue ocrBulkQueue, TopicExchange exchange) {
+        return BindingBuilder.bind(ocrBulkQueue).to(exchange).with(OCR_BULK_ROUTING_KEY);
+    }
+
     @Bean
     Binding ocrResultBinding(Queue ocrResultQueue, TopicExchange exchange) {
         return BindingBuilder.bind(ocrResultQueue).to(exchange).with(OCR_RESULT_ROUTING_KEY);
@@ -74,16 +200,123 @@ public class RabbitMQConfig {
         return BindingBuilder.bind(genaiQueue).to(exchange).with(GENAI_ROUTING_KEY);
     }
 
+    @Bean
+    Binding genaiBulkBinding(Queue genaiBulkQueue, TopicExchange exchange) {
+        return BindingBuilder.bind(genaiBulkQueue).to(exchange).with(GENAI_BULK_ROUTING_KEY);
+    }
+
     @Bean
     Binding genaiResultBinding(Queue genaiResultQueue, TopicExchange exchange) {
         return BindingBuilder.bind(genaiResultQueue).to(exchange).with(GENAI_RESULT_ROUTING_KEY);
     }
 
+    @Bean
+    Binding previewBinding(Queue previewQueue, TopicExchange exchange) {
+        return BindingBuilder.bind(previewQueue).to(exchange).with(PREVIEW_ROUTING_KEY);
+    }
+
+    @Bean
+    Binding previewResultBinding(Queue previewResultQueue, TopicExchange exchange) {
+        return BindingBuilder.bind(previewResultQueue).to(exchange).with(PREVIEW_RESULT_ROUTING_KEY);
+    }
+
     @Bean
     Binding searchBinding(Queue searchQueue, TopicExchange exchange) {
         return BindingBuilder.bind(searchQueue).to(exchange).with(SEARCH_ROUTING_KEY);
     }
 
+    // OCR results arrive in bursts when many workers finish at once, several consumers drain them in batches
+    @Bean(OCR_RESULT_CONTAINER_FACTORY)
+    SimpleRabbitListenerContainerFactory ocrResultContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            PipelineMetrics pipelineMetrics,
+            @Value("${paperless.rabbitmq.listeners.ocr-result.concurrency:2}") int concurrency,
+            @Value("${paperless.rabbitmq.listeners.ocr-result.max-concurrency:8}") int maxConcurrency,
+            @Value("${paperless.rabbitmq.listeners.ocr-result.prefetch:50}") int prefetch,
+            @Value("${paperless.rabbitmq.listeners.ocr-result.batch-size:25}") int batchSize,
+            @Value("${paperless.rabbitmq.listeners.ocr-result.batch-window:100}") long batchWindowMillis,
+            @Value("${paperless.rabbitmq.listeners.ocr-result.virtual-threads:false}") boolean virtualThreads) {
+        return batchContainerFactory(configurer, connectionFactory, pipelineMetrics, "ocr-result-", concurrency, maxConcurrency,
+                prefetch, batchSize, batchWindowMillis, virtualThreads);
+    }
+
+    @Bean(GENAI_RESULT_CONTAINER_FACTORY)
+    SimpleRabbitListenerContainerFactory genaiResultContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            PipelineMetrics pipelineMetrics,
+            @Value("${paperless.rabbitmq.listeners.genai-result.concurrency:1}") int concurrency,
+            @Value("${paperless.rabbitmq.listeners.genai-result.max-concurrency:4}") int maxConcurrency,
+            @Value("${paperless.rabbitmq.listeners.genai-result.prefetch:50}") int prefetch,
+            @Value("${paperless.rabbitmq.listeners.genai-result.batch-size:25}") int batchSize,
+            @Value("${paperless.rabbitmq.listeners.genai-result.batch-window:100}") long batchWindowMillis,
+            @Value("${paperless.rabbitmq.listeners.genai-result.virtual-threads:false}") boolean virtualThreads) {
+        return batchContainerFactory(configurer, connectionFactory, pipelineMetrics, "genai-result-", concurrency, maxConcurrency,
+                prefetch, batchSize, batchWindowMillis, virtualThreads);
+    }
+
+    @Bean(PREVIEW_RESULT_CONTAINER_FACTORY)
+    SimpleRabbitListenerContainerFactory previewResultContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            PipelineMetrics pipelineMetrics,
+            @Value("${paperless.rabbitmq.listeners.preview-result.concurrency:1}") int concurrency,
+            @Value("${paperless.rabbitmq.listeners.preview-result.max-concurrency:2}") int maxConcurrency,
+            @Value("${paperless.rabbitmq.listeners.preview-result.prefetch:50}") int prefetch,
+            @Value("${paperless.rabbitmq.listeners.preview-result.batch-size:50}") int batchSize,
+            @Value("${paperless.rabbitmq.listeners.preview-result.batch-window:200}") long batchWindowMillis,
+            @Value("${paperless.rabbitmq.listeners.preview-result.virtual-threads:false}") boolean virtualThreads) {
+        return batchContainerFactory(configurer, connectionFactory, pipelineMetrics, "preview-result-", concurrency, maxConcurrency,
+                prefetch, batchSize, batchWindowMillis, virtualThreads);
+    }
+
+    // Hands the search indexer up to batch-size messages at once, or whatever arrived within batch-window
+    @Bean(SEARCH_BATCH_CONTAINER_FACTORY)
+    SimpleRabbitListenerContainerFactory searchBatchContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            PipelineMetrics pipelineMetrics,
+            @Value("${paperless.rabbitmq.listeners.search.concurrency:1}") int concurrency,
+            @Value("${paperless.rabbitmq.listeners.search.max-concurrency:2}") int maxConcurrency,
+            @Value("${paperless.indexer.batch-size:200}") int batchSize,
+            @Value("${paperless.indexer.batch-window:500}") long batchWindowMillis,
+            @Value("${paperless.rabbitmq.listeners.search.virtual-threads:false}") boolean virtualThreads) {
+        return batchContainerFactory(configurer, connectionFactory, pipelineMetrics, "search-", concurrency, maxConcurrency,
+                Math.max(batchSize, 250), batchSize, batchWindowMillis, virtualThreads);
+    }
+
+    private static SimpleRabbitListenerContainerFactory batchContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory,
+            PipelineMetrics pipelineMetrics, String threadPrefix, int concurrency, int maxConcurrency, int prefetch, int batchSize,
+            long batchWindowMillis, boolean virtualThreads) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setConcurrentConsumers(concurrency);
+        factory.setMaxConcurrentConsumers(Math.max(concurrency, maxConcurrency));
+        // The prefetch has to cover a full batch, otherwise a consumer waits for acks that only come after the batch
+        factory.setPrefetchCount(Math.max(prefetch, batchSize));
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setReceiveTimeout(batchWindowMillis);
+        factory.setAcknowledgeMode(AcknowledgeMode.AUTO);
+        // A failed batch goes to the dead-letter queue instead of being redelivered in a tight loop
+        factory.setDefaultRequeueRejected(false);
+        // Publishers set the timestamp (outbox relay, workers), the difference to now is the time spent queued
+        factory.setAfterReceivePostProcessors(message -> {
+            MessageProperties properties = message.getMessageProperties();
+            if (properties.getTimestamp() != null) {
+                pipelineMetrics.recordQueueLag(properties.getConsumerQueue(), properties.getTimestamp().toInstant());
+            }
+            return message;
+        });
+        if (virtualThreads) {
+            factory.setTaskExecutor(new VirtualThreadTaskExecutor(threadPrefix));
+        }
+        return factory;
+    }
+
     @Bean
     public MessageConverter jsonMessageConverter() {
         return new Jackson2JsonMessageConverter();
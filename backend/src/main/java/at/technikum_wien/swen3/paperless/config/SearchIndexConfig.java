@@ -0,0 +1,24 @@
+package at.technikum_wien.swen3.paperless.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class SearchIndexConfig {
+
+    @Value("${paperless.reindex.slices:4}")
+    private int slices;
+
+    // One thread coordinates a reindex job, the others load its slices in parallel
+    @Bean(name = "reindexExecutor")
+    public ThreadPoolTaskExecutor reindexExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(slices + 1);
+        executor.setMaxPoolSize(slices + 1);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("reindex-");
+        return executor;
+    }
+}
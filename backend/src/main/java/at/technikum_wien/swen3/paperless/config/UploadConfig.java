@@ -0,0 +1,27 @@
+package at.technikum_wien.swen3.paperless.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+public class UploadConfig {
+
+    @Value("${paperless.batch.upload-concurrency:8}")
+    private int uploadConcurrency;
+
+    // Bounded pool for concurrent MinIO uploads of batch imports, callers run the task when it is saturated
+    @Bean(name = "uploadExecutor")
+    public ThreadPoolTaskExecutor uploadExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(uploadConcurrency);
+        executor.setMaxPoolSize(uploadConcurrency);
+        executor.setQueueCapacity(uploadConcurrency * 4);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setThreadNamePrefix("upload-");
+        return executor;
+    }
+}
@@ -0,0 +1,26 @@
+package at.technikum_wien.swen3.paperless.controller;
+
+import at.technikum_wien.swen3.paperless.dto.ReindexStatusDto;
+import at.technikum_wien.swen3.paperless.service.ReindexService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/admin/search")
+@RequiredArgsConstructor
+public class AdminController {
+    private final ReindexService reindexService;
+
+    // Starts a rebuild of the search index in the background, poll GET for progress
+    @PostMapping("/reindex")
+    public ResponseEntity<ReindexStatusDto> startReindex() {
+        return new ResponseEntity<>(reindexService.start(), HttpStatus.ACCEPTED);
+    }
+
+    @GetMapping("/reindex")
+    public ReindexStatusDto getReindexStatus() {
+        return reindexService.getStatus();
+    }
+}
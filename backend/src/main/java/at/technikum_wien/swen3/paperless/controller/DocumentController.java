@@ -1,25 +1,42 @@
 package at.technikum_wien.swen3.paperless.controller;
 
-import at.technikum_wien.swen3.paperless.config.RabbitMQConfig;
+import at.technikum_wien.swen3.paperless.dto.BatchUploadResultDto;
+import at.technikum_wien.swen3.paperless.dto.CursorPageDto;
 import at.technikum_wien.swen3.paperless.dto.DocumentDto;
-import at.technikum_wien.swen3.paperless.entity.Document;
+import at.technikum_wien.swen3.paperless.dto.DocumentPageDto;
+import at.technikum_wien.swen3.paperless.dto.DocumentUpdateDto;
+import at.technikum_wien.swen3.paperless.dto.SearchRequestDto;
+import at.technikum_wien.swen3.paperless.dto.SearchResultDto;
 import at.technikum_wien.swen3.paperless.entity.Tag;
-import at.technikum_wien.swen3.paperless.mapper.DocumentMapper;
-import at.technikum_wien.swen3.paperless.repository.DocumentRepository;
-import at.technikum_wien.swen3.paperless.repository.ElasticSearchRepository;
-import at.technikum_wien.swen3.paperless.repository.TagRepository;
-import at.technikum_wien.swen3.paperless.search.DocumentSearchEntity;
+import at.technikum_wien.swen3.paperless.service.BatchUploadService;
+import at.technikum_wien.swen3.paperless.service.DocumentFile;
+import at.technikum_wien.swen3.paperless.service.DocumentSearchService;
 import at.technikum_wien.swen3.paperless.service.DocumentService;
+import at.technikum_wien.swen3.paperless.service.PreviewStorageService.PreviewKind;
+import at.technikum_wien.swen3.paperless.service.UploadAdmissionService;
+import at.technikum_wien.swen3.paperless.service.UploadOrigin;
+import at.technikum_wien.swen3.paperless.service.UploadPriority;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
-import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/documents")
@@ -27,41 +44,82 @@ import java.util.stream.Collectors;
 public class DocumentController {
 
     private final DocumentService documentService;
+    private final BatchUploadService batchUploadService;
+    private final DocumentSearchService documentSearchService;
+    private final UploadAdmissionService uploadAdmissionService;
 
-    @Autowired
-    private TagRepository tagRepository;
-    @Autowired
-    private RabbitTemplate rabbitTemplate;
-    @Autowired
-    private DocumentRepository documentRepository;
-    @Autowired
-    private DocumentMapper documentMapper;
-    @Autowired
-    private ElasticSearchRepository elasticSearchRepository;
+    @Value("${paperless.preview.max-age:365d}")
+    private Duration previewMaxAge;
 
-    @GetMapping("/search")
-    public List<DocumentDto> searchDocuments(@RequestParam String query) {
-        // call search method
-        List<DocumentSearchEntity> searchResults = elasticSearchRepository.searchByQuery(query);
+    @Value("${paperless.download.max-age:1h}")
+    private Duration downloadMaxAge;
+
+    private static final String FIELDS_SUMMARY = "summary";
+    private static final String FIELDS_FULL = "full";
 
-        // extract IDs
-        List<Long> ids = searchResults.stream()
-                .map(DocumentSearchEntity::getId)
-                .collect(Collectors.toList());
+    @GetMapping("/search")
+    public SearchResultDto searchDocuments(SearchRequestDto request) {
+        // scored hits straight from Elasticsearch, hydrate=true adds the full documents from the database
+        // and facets=true the tag, status, date and size aggregations
+        return documentSearchService.search(request);
+    }
 
-        // fetch full details from DB
-        List<Document> docs = documentRepository.findAllById(ids);
+    // Behind the reverse proxy the remote address is taken from X-Forwarded-For (server.forward-headers-strategy)
+    private static String sourceOf(String source, HttpServletRequest request) {
+        return source == null || source.isBlank() ? request.getRemoteAddr() : source;
+    }
 
-        // map to DTOs, so frontend gets exactly what it expects
-        return docs.stream()
-                .map(documentMapper::entityToDto)
-                .collect(Collectors.toList());
+    private static boolean isFullFields(String fields) {
+        return switch (fields) {
+            case FIELDS_SUMMARY -> false;
+            case FIELDS_FULL -> true;
+            default -> throw new IllegalArgumentException("Invalid fields: " + fields + " (expected summary or full)");
+        };
     }
 
+    // Uploads are admitted by priority (interactive or bulk), 429 with Retry-After while the pipeline is behind.
+    // Bulk OCR is shared fairly between sources, the client address unless the client names one
     @PostMapping(consumes = {"multipart/form-data"})
-    public ResponseEntity<DocumentDto> createDocument(@RequestParam("title") String title, @RequestParam("file") MultipartFile file) {
-        DocumentDto createdDocument = documentService.createDocument(title, file);
-        return new ResponseEntity<>(createdDocument, HttpStatus.CREATED);
+    public ResponseEntity<DocumentDto> createDocument(
+            @RequestParam("title") String title,
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(defaultValue = "interactive") String priority,
+            @RequestParam(required = false) String source,
+            HttpServletRequest request) {
+        UploadOrigin origin = new UploadOrigin(UploadPriority.fromParameter(priority), sourceOf(source, request));
+        try (UploadAdmissionService.Permit ignored = uploadAdmissionService.admit(origin.priority())) {
+            DocumentDto createdDocument = documentService.createDocument(title, file, origin);
+            return new ResponseEntity<>(createdDocument, HttpStatus.CREATED);
+        }
+    }
+
+    // Batch imports are always bulk work. Every document, a file or a ZIP entry, counts against the backlog limit
+    // when it is stored; documents beyond the limit are reported as failed
+    @PostMapping(value = "/batch", consumes = {"multipart/form-data"})
+    public ResponseEntity<BatchUploadResultDto> createDocuments(
+            @RequestParam("files") List<MultipartFile> files,
+            @RequestParam(required = false) String source,
+            HttpServletRequest request) {
+        UploadOrigin origin = new UploadOrigin(UploadPriority.BULK, sourceOf(source, request));
+        try (UploadAdmissionService.Permit ignored = uploadAdmissionService.admitBatch(origin.priority())) {
+            BatchUploadResultDto result = batchUploadService.uploadAll(files, origin.source());
+            return ResponseEntity.ok(result);
+        }
+    }
+
+    // Raw PDF request body, streamed to storage without multipart buffering. Admission is checked before
+    // the body is read, so a rejected upload isn't transferred
+    @PostMapping(value = "/stream", consumes = MediaType.APPLICATION_PDF_VALUE)
+    public ResponseEntity<DocumentDto> createDocumentFromStream(
+            @RequestParam("title") String title,
+            @RequestParam(defaultValue = "interactive") String priority,
+            @RequestParam(required = false) String source,
+            HttpServletRequest request) throws IOException {
+        UploadOrigin origin = new UploadOrigin(UploadPriority.fromParameter(priority), sourceOf(source, request));
+        try (UploadAdmissionService.Permit ignored = uploadAdmissionService.admit(origin.priority())) {
+            DocumentDto createdDocument = documentService.createDocument(title, request.getInputStream(), origin);
+            return new ResponseEntity<>(createdDocument, HttpStatus.CREATED);
+        }
     }
 
     @GetMapping("/{id}")
@@ -70,15 +128,67 @@ public class DocumentController {
         return ResponseEntity.ok(document);
     }
 
+    // Full OCR text or a page range of it, the document itself only carries a preview
+    @GetMapping(value = "/{id}/text", produces = MediaType.TEXT_PLAIN_VALUE)
+    public ResponseEntity<String> getDocumentText(
+            @PathVariable Long id,
+            @RequestParam(required = false) Integer fromPage,
+            @RequestParam(required = false) Integer toPage) {
+        return ResponseEntity.ok(documentService.getDocumentText(id, fromPage, toPage));
+    }
+
+    @GetMapping("/{id}/pages/{pageNumber}")
+    public ResponseEntity<DocumentPageDto> getDocumentPage(@PathVariable Long id, @PathVariable int pageNumber) {
+        return documentService.getDocumentPage(id, pageNumber)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @GetMapping(value = "/{id}/thumbnail", produces = MediaType.IMAGE_JPEG_VALUE)
+    public ResponseEntity<byte[]> getDocumentThumbnail(@PathVariable Long id, WebRequest request) {
+        return previewResponse(id, PreviewKind.THUMBNAIL, request);
+    }
+
+    // First page as an image, so looking at a document doesn't need the whole PDF
+    @GetMapping(value = "/{id}/preview", produces = MediaType.IMAGE_JPEG_VALUE)
+    public ResponseEntity<byte[]> getDocumentPreview(@PathVariable Long id, WebRequest request) {
+        return previewResponse(id, PreviewKind.PAGE, request);
+    }
+
+    // Previews never change once rendered, a revalidation with If-None-Match is answered without reading MinIO
+    private ResponseEntity<byte[]> previewResponse(Long id, PreviewKind kind, WebRequest request) {
+        Optional<String> eTag = documentService.getDocumentPreviewETag(id, kind);
+        if (eTag.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        CacheControl cacheControl = CacheControl.maxAge(previewMaxAge).cachePublic().immutable();
+        if (request.checkNotModified(eTag.get())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag.get()).cacheControl(cacheControl).build();
+        }
+        return documentService.getDocumentPreview(id, kind)
+                .map(image -> ResponseEntity.ok()
+                        .eTag(eTag.get())
+                        .cacheControl(cacheControl)
+                        .contentType(MediaType.IMAGE_JPEG)
+                        .body(image))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
     @GetMapping
-    public ResponseEntity<List<DocumentDto>> getAllDocuments() {
-        List<DocumentDto> documents = documentService.getAllDocuments();
+    public ResponseEntity<CursorPageDto<?>> getDocuments(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(defaultValue = "desc") String direction,
+            @RequestParam(defaultValue = FIELDS_SUMMARY) String fields) {
+        CursorPageDto<?> documents = isFullFields(fields)
+                ? documentService.getDocuments(cursor, size, direction)
+                : documentService.getDocumentSummaries(cursor, size, direction);
         return ResponseEntity.ok(documents);
     }
 
     @PutMapping("/{id}")
-    public ResponseEntity<DocumentDto> updateDocument(@PathVariable Long id, @RequestBody DocumentDto documentDto) {
-        DocumentDto updatedDocument = documentService.updateDocument(id, documentDto);
+    public ResponseEntity<DocumentDto> updateDocument(@PathVariable Long id, @RequestBody DocumentUpdateDto update) {
+        DocumentDto updatedDocument = documentService.updateDocument(id, update);
         return ResponseEntity.ok(updatedDocument);
     }
 
@@ -88,6 +198,69 @@ public class DocumentController {
         return ResponseEntity.noContent().build();
     }
 
+    // Streams the PDF through the backend. PDF viewers fetch it in byte ranges, only the requested range is
+    // read from MinIO, and a revalidation with If-None-Match is answered from the cached object metadata
+    @GetMapping("/{id}/file")
+    public ResponseEntity<StreamingResponseBody> downloadDocument(
+            @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+            WebRequest request) {
+        DocumentFile file = documentService.getDocumentFile(id);
+        CacheControl cacheControl = CacheControl.maxAge(downloadMaxAge).cachePrivate();
+        if (request.checkNotModified(file.eTag(), file.lastModified().toEpochMilli())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(file.eTag()).cacheControl(cacheControl).build();
+        }
+
+        long size = file.size();
+        long start = 0;
+        long end = size - 1;
+        boolean partial = false;
+
+        // Multiple ranges and a Range for an older version (If-Range) are answered with the whole file
+        if (range != null && (ifRange == null || ifRange.equals(file.eTag()))) {
+            try {
+                List<HttpRange> ranges = HttpRange.parseRanges(range);
+                if (ranges.size() == 1) {
+                    start = ranges.getFirst().getRangeStart(size);
+                    end = ranges.getFirst().getRangeEnd(size);
+                    if (start >= size || end < start) {
+                        throw new IllegalArgumentException("Range " + range + " outside of " + size + " bytes");
+                    }
+                    partial = true;
+                }
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header(HttpHeaders.CONTENT_RANGE, "bytes */" + size)
+                        .build();
+            }
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(partial ? HttpStatus.PARTIAL_CONTENT : HttpStatus.OK)
+                .eTag(file.eTag())
+                .lastModified(file.lastModified())
+                .cacheControl(cacheControl)
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .contentType(MediaType.parseMediaType(file.contentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.inline().filename(file.fileName(), StandardCharsets.UTF_8).build().toString());
+        if (partial) {
+            response.header(HttpHeaders.CONTENT_RANGE, "bytes %d-%d/%d".formatted(start, end, size));
+        }
+
+        long offset = start;
+        long length = end - start + 1;
+        return response.contentLength(length).body(out -> {
+            if (length == 0) {
+                return;
+            }
+            // Copied with a fixed buffer straight from the MinIO connection, the file is never held in memory
+            try (InputStream in = documentService.openDocumentFile(file, offset, length)) {
+                in.transferTo(out);
+            }
+        });
+    }
+
     @GetMapping("/{id}/download-url")
     public ResponseEntity<String> getDocumentDownloadUrl(@PathVariable Long id) {
         String url = documentService.getDocumentDownloadUrl(id);
@@ -97,42 +270,15 @@ public class DocumentController {
 
     @PostMapping("/{id}/tags")
     public ResponseEntity<DocumentDto> addTagToDocument(@PathVariable Long id, @RequestBody Tag tagRequest) {
-        return documentRepository.findById(id).map(document -> {
-            Tag tag = tagRepository.findByName(tagRequest.getName())
-                    .orElseGet(() -> {
-                        Tag newTag = new Tag();
-                        newTag.setName(tagRequest.getName());
-                        return tagRepository.save(newTag);
-                    });
-
-            document.getTags().add(tag);
-            Document savedDoc = documentRepository.save(document);
-
-            rabbitTemplate.convertAndSend(
-                    RabbitMQConfig.EXCHANGE_NAME,
-                    RabbitMQConfig.SEARCH_ROUTING_KEY,
-                    String.valueOf(savedDoc.getId())
-            );
-
-            return ResponseEntity.ok(documentMapper.entityToDto(savedDoc));
-        }).orElse(ResponseEntity.notFound().build());
+        return documentService.addTag(id, tagRequest.getName())
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
     }
 
     @DeleteMapping("/{id}/tags/{tagId}")
     public ResponseEntity<DocumentDto> removeTagFromDocument(@PathVariable Long id, @PathVariable Long tagId) {
-        return documentRepository.findById(id).map(document -> {
-
-            document.getTags().removeIf(tag -> tag.getId().equals(tagId));
-
-            Document savedDoc = documentRepository.save(document);
-
-            rabbitTemplate.convertAndSend(
-                    RabbitMQConfig.EXCHANGE_NAME,
-                    RabbitMQConfig.SEARCH_ROUTING_KEY,
-                    String.valueOf(savedDoc.getId())
-            );
-
-            return ResponseEntity.ok(documentMapper.entityToDto(savedDoc));
-        }).orElse(ResponseEntity.notFound().build());
+        return documentService.removeTag(id, tagId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
     }
-}
\ No newline at end of file
+}
@@ -1,6 +1,10 @@
 package at.technikum_wien.swen3.paperless.controller;
 
+import at.technikum_wien.swen3.paperless.exception.ReindexInProgressException;
 import at.technikum_wien.swen3.paperless.exception.StorageException;
+import at.technikum_wien.swen3.paperless.exception.UploadRejectedException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -14,9 +18,29 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>("File storage service is currently unavailable.", HttpStatus.SERVICE_UNAVAILABLE);
     }
 
+    @ExceptionHandler(UploadRejectedException.class)
+    public ResponseEntity<String> handleUploadRejectedException(UploadRejectedException ex) {
+        // If the pipeline is too far behind -> return 429 Too Many Requests, the client retries later
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfter().toSeconds()))
+                .body(ex.getMessage());
+    }
+
     @ExceptionHandler(IllegalArgumentException.class)
     public ResponseEntity<String> handleIllegalArgumentException(IllegalArgumentException ex) {
         // If validation error -> return a 400 Bad Request
         return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
     }
+
+    @ExceptionHandler(ReindexInProgressException.class)
+    public ResponseEntity<String> handleReindexInProgressException(ReindexInProgressException ex) {
+        // If another reindex is still running -> return 409 Conflict
+        return new ResponseEntity<>(ex.getMessage(), HttpStatus.CONFLICT);
+    }
+
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<String> handleOptimisticLockingFailureException(OptimisticLockingFailureException ex) {
+        // If the document changed since the client read it -> return 409 Conflict
+        return new ResponseEntity<>("The document was changed in the meantime, please reload it.", HttpStatus.CONFLICT);
+    }
 }
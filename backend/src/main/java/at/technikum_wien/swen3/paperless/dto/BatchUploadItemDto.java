@@ -0,0 +1,15 @@
+package at.technikum_wien.swen3.paperless.dto;
+
+import lombok.*;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchUploadItemDto {
+    private String fileName;
+    private Long documentId;
+    private String status;
+    private String errorDetails;
+}
@@ -0,0 +1,17 @@
+package at.technikum_wien.swen3.paperless.dto;
+
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchUploadResultDto {
+    private int total;
+    private int succeeded;
+    private int failed;
+    private List<BatchUploadItemDto> items;
+}
@@ -0,0 +1,18 @@
+package at.technikum_wien.swen3.paperless.dto;
+
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPageDto<T> {
+    private List<T> items;
+    private int size;
+    private boolean hasNext;
+    // Opaque continuation token, pass back as "cursor" to fetch the next page
+    private String nextCursor;
+}
@@ -19,5 +19,8 @@ public class DocumentDto {
     private String status;
     private String summary;
     private long fileSize;
+    private String contentHash;
+    private String previewStatus;
+    private Long version;
     private List<TagDto> tags;
 }
\ No newline at end of file
@@ -0,0 +1,16 @@
+package at.technikum_wien.swen3.paperless.dto;
+
+import lombok.*;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentPageDto {
+    private Long documentId;
+    private int pageNumber;
+    // Null while OCR is still running, pages that are done can already be fetched
+    private Integer pageCount;
+    private String content;
+}
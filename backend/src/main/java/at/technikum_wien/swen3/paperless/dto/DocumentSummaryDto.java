@@ -0,0 +1,21 @@
+package at.technikum_wien.swen3.paperless.dto;
+
+import lombok.*;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentSummaryDto {
+    private Long id;
+    private String title;
+    private String status;
+    private OffsetDateTime createdDate;
+    private long fileSize;
+    private String previewStatus;
+    private List<String> tags;
+}
@@ -0,0 +1,15 @@
+package at.technikum_wien.swen3.paperless.dto;
+
+import lombok.*;
+
+// Body of PUT /api/documents/{id}. Only the title is editable, the content is OCR output
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentUpdateDto {
+    private String title;
+    // the version the client read, the update is rejected with 409 if the document changed since
+    private Long version;
+}
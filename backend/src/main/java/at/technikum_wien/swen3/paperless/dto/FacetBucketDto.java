@@ -0,0 +1,13 @@
+package at.technikum_wien.swen3.paperless.dto;
+
+import lombok.*;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FacetBucketDto {
+    private String key;
+    private long count;
+}
@@ -0,0 +1,24 @@
+package at.technikum_wien.swen3.paperless.dto;
+
+import lombok.*;
+
+/**
+ * Message on genai-queue. References the OCR text pages in object storage (contentHash and pageCount),
+ * so the GenAI worker neither calls the REST API nor receives megabytes of text through the broker.
+ * Documents whose text is still in the database carry it inline in text.
+ * Workers reject messages with a schemaVersion they don't know.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class GenAiRequest {
+    public static final int SCHEMA_VERSION = 2;
+
+    @Builder.Default
+    private int schemaVersion = SCHEMA_VERSION;
+    private Long documentId;
+    private String contentHash;
+    private Integer pageCount;
+    private String text;
+}
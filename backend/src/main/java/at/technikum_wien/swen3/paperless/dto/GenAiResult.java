@@ -3,9 +3,10 @@ package at.technikum_wien.swen3.paperless.dto;
 import lombok.Data;
 
 @Data
-public class GenAiResult {
+public class GenAiResult implements PipelineResult {
     private Long documentId;
     private String summary;
     private String status;
     private String errorDetails;
+    private String correlationId;
 }
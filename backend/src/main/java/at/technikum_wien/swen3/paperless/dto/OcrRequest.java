@@ -0,0 +1,26 @@
+package at.technikum_wien.swen3.paperless.dto;
+
+import lombok.*;
+
+/**
+ * Message on ocr-queue. Carries everything the OCR worker needs, so it doesn't have to call back into
+ * the REST API. Workers reject messages with a schemaVersion they don't know (they end up on the DLQ).
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OcrRequest {
+    public static final int SCHEMA_VERSION = 1;
+
+    @Builder.Default
+    private int schemaVersion = SCHEMA_VERSION;
+    private Long documentId;
+    // MinIO object of the PDF in the documents bucket
+    private String storagePath;
+    // SHA-256 (hex) of the PDF
+    private String contentHash;
+    private long fileSize;
+    // UploadPriority name, echoed in the OcrResult so the GenAI follow-up takes the same lane
+    private String priority;
+}
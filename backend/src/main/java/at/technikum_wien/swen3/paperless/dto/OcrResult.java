@@ -3,9 +3,18 @@ package at.technikum_wien.swen3.paperless.dto;
 import lombok.Data;
 
 @Data
-public class OcrResult {
+public class OcrResult implements PipelineResult {
     private Long documentId;
     private String contentText;
     private String status;
     private String errorDetails;
+    // contentText is only a preview when the worker stored the full text in object storage,
+    // pageCount pages under the document's content hash (see ContentStorageService)
+    private Integer pageCount;
+    // Echoed from the OcrRequest, the text pages are stored under it
+    private String contentHash;
+    // Echoed from the OcrRequest, null from older workers (interactive)
+    private String priority;
+    // From the AMQP correlation_id, not part of the JSON body (see ResultBatchProcessor)
+    private String correlationId;
 }
@@ -0,0 +1,13 @@
+package at.technikum_wien.swen3.paperless.dto;
+
+/**
+ * Result message of a worker. The correlation ID arrives as the AMQP correlation_id and is set on the
+ * result when it is consumed, so follow-up messages keep it.
+ */
+public interface PipelineResult {
+    Long getDocumentId();
+
+    String getCorrelationId();
+
+    void setCorrelationId(String correlationId);
+}
@@ -0,0 +1,23 @@
+package at.technikum_wien.swen3.paperless.dto;
+
+import lombok.*;
+
+/**
+ * Message on preview-queue, the preview worker renders a thumbnail and a first-page preview of the PDF.
+ * Workers reject messages with a schemaVersion they don't know (they end up on the DLQ).
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PreviewRequest {
+    public static final int SCHEMA_VERSION = 1;
+
+    @Builder.Default
+    private int schemaVersion = SCHEMA_VERSION;
+    private Long documentId;
+    // MinIO object of the PDF in the documents bucket
+    private String storagePath;
+    // SHA-256 (hex) of the PDF, the images are stored under it
+    private String contentHash;
+}
@@ -0,0 +1,13 @@
+package at.technikum_wien.swen3.paperless.dto;
+
+import lombok.Data;
+
+@Data
+public class PreviewResult implements PipelineResult {
+    private Long documentId;
+    // The images were stored under this hash and are shared by all documents with the same content
+    private String contentHash;
+    private String status;
+    private String errorDetails;
+    private String correlationId;
+}
@@ -0,0 +1,22 @@
+package at.technikum_wien.swen3.paperless.dto;
+
+import lombok.*;
+
+import java.time.OffsetDateTime;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReindexStatusDto {
+    // IDLE, RUNNING, COMPLETED or FAILED
+    private String state;
+    private String targetIndex;
+    private long total;
+    private long indexed;
+    private double documentsPerSecond;
+    private OffsetDateTime startedAt;
+    private OffsetDateTime finishedAt;
+    private String error;
+}
@@ -0,0 +1,26 @@
+package at.technikum_wien.swen3.paperless.dto;
+
+import lombok.*;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+
+// One search hit built from the Elasticsearch _source, document is only set when hydration was requested
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchHitDto {
+    private Long id;
+    private String title;
+    private OffsetDateTime createdDate;
+    private String status;
+    private long fileSize;
+    private List<String> tags;
+    private float score;
+    // field name -> highlighted fragments (HTML escaped, matches wrapped in <mark>)
+    private Map<String, List<String>> highlights;
+    private DocumentDto document;
+}
@@ -0,0 +1,33 @@
+package at.technikum_wien.swen3.paperless.dto;
+
+import lombok.*;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// Query parameters of GET /api/documents/search, all filters are optional
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchRequestDto {
+    private String query;
+    private Integer page;
+    private Integer size;
+    private boolean hydrate;
+    // every tag has to be present
+    private List<String> tags;
+    // any of the statuses
+    private List<String> status;
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate createdFrom;
+    // inclusive
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate createdTo;
+    private Long minSize;
+    private Long maxSize;
+    // adds tag, status, created month and file size aggregations to the result
+    private boolean facets;
+}
@@ -0,0 +1,21 @@
+package at.technikum_wien.swen3.paperless.dto;
+
+import lombok.*;
+
+import java.util.List;
+import java.util.Map;
+
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchResultDto {
+    private List<SearchHitDto> items;
+    private long total;
+    private int page;
+    private int size;
+    private boolean hasNext;
+    // facet name (tags, status, createdDate, fileSize) -> buckets, only set when facets were requested
+    private Map<String, List<FacetBucketDto>> facets;
+}
@@ -2,7 +2,9 @@ package at.technikum_wien.swen3.paperless.entity;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.BatchSize;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.OptimisticLock;
 
 import java.time.OffsetDateTime;
 import java.util.HashSet;
@@ -14,7 +16,12 @@ import java.util.Set;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "documents")
+@Table(name = "documents", indexes = {
+        // Keyset pagination of the document list
+        @Index(name = "idx_documents_created_date_id", columnList = "createdDate, id"),
+        // Upload deduplication, not unique since duplicates get their own document pointing at the same object
+        @Index(name = "idx_documents_content_hash", columnList = "contentHash")
+})
 public class Document {
 
     @Id
@@ -24,9 +31,14 @@ public class Document {
     @Column(nullable = false)
     private String title;
 
+    // Preview of the OCR text, the full text is stored page by page in object storage (see ContentStorageService)
     @Column(columnDefinition = "TEXT")
     private String content;
 
+    // Set once the OCR text is in object storage, null for documents whose full text is still in content
+    @Column
+    private Integer pageCount;
+
     @CreationTimestamp
     @Column(updatable = false, nullable = false)
     private OffsetDateTime createdDate;
@@ -43,8 +55,28 @@ public class Document {
     @Column
     private long fileSize;
 
+    // SHA-256 (hex) of the stored file, computed during upload
+    @Column(length = 64)
+    private String contentHash;
+
+    // PENDING, COMPLETED or FAILED, null for documents uploaded before previews were rendered.
+    // The images are shared by all documents with the same content hash (see PreviewStorageService).
+    // Only set on insert by JPA, later changes come from the preview worker (see DocumentJdbcRepository)
+    @Column(length = 16, updatable = false)
+    private String previewStatus;
+
+    // Bumped by user edits and by OCR and GenAI results (see DocumentJdbcRepository), so an edit based on
+    // a read from before a result fails instead of overwriting OCR content or a summary
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private Long version;
+
+    // Lazy, use cases that need tags fetch them via an entity graph or in batches (see DocumentRepository)
+    // Tag changes only touch the join table, they can't lose an update and don't need to bump the version
     @Builder.Default
-    @ManyToMany(fetch = FetchType.EAGER)
+    @OptimisticLock(excluded = true)
+    @BatchSize(size = 100)
+    @ManyToMany(fetch = FetchType.LAZY)
     @JoinTable(
             name = "document_tags",
             joinColumns = @JoinColumn(name = "document_id"),
@@ -0,0 +1,62 @@
+package at.technikum_wien.swen3.paperless.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.OffsetDateTime;
+
+/**
+ * A RabbitMQ message written in the same transaction as the change that caused it, published later by
+ * the outbox relay.
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "outbox_messages", indexes = {
+        @Index(name = "idx_outbox_messages_next_attempt_at", columnList = "nextAttemptAt, id"),
+        @Index(name = "idx_outbox_messages_source", columnList = "routingKey, source, nextAttemptAt, id")
+})
+public class OutboxMessage {
+
+    // Sequence with a pooled allocation so many messages can be inserted in one JDBC batch
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_messages_seq")
+    @SequenceGenerator(name = "outbox_messages_seq", sequenceName = "outbox_messages_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(nullable = false)
+    private String exchange;
+
+    @Column(nullable = false)
+    private String routingKey;
+
+    // JSON body
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String payload;
+
+    // Set on bulk work that is held back and released fairly between sources (see FairDispatcher),
+    // messages without a source are published right away
+    @Column(length = 64)
+    private String source;
+
+    // Sent as the AMQP correlation_id, see CorrelationId
+    @Column(length = 64)
+    private String correlationId;
+
+    @CreationTimestamp
+    @Column(updatable = false, nullable = false)
+    private OffsetDateTime createdAt;
+
+    @Column(nullable = false)
+    private OffsetDateTime nextAttemptAt;
+
+    @Column
+    private int attempts;
+
+    @Column(length = 1000)
+    private String lastError;
+}
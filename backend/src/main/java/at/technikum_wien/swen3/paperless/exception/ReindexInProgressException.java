@@ -0,0 +1,10 @@
+package at.technikum_wien.swen3.paperless.exception;
+
+/**
+ * A reindex was requested while another one is still running.
+ */
+public class ReindexInProgressException extends RuntimeException {
+    public ReindexInProgressException(String message) {
+        super(message);
+    }
+}
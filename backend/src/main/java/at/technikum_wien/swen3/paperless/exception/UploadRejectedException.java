@@ -0,0 +1,18 @@
+package at.technikum_wien.swen3.paperless.exception;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * The pipeline is too far behind to take the upload now, the client should try again after retryAfter.
+ */
+@Getter
+public class UploadRejectedException extends RuntimeException {
+    private final Duration retryAfter;
+
+    public UploadRejectedException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+}
@@ -1,7 +1,12 @@
 package at.technikum_wien.swen3.paperless.mapper;
 
 import at.technikum_wien.swen3.paperless.dto.DocumentDto;
+import at.technikum_wien.swen3.paperless.dto.DocumentSummaryDto;
+import at.technikum_wien.swen3.paperless.dto.GenAiRequest;
+import at.technikum_wien.swen3.paperless.dto.OcrRequest;
+import at.technikum_wien.swen3.paperless.dto.PreviewRequest;
 import at.technikum_wien.swen3.paperless.entity.Document;
+import at.technikum_wien.swen3.paperless.repository.DocumentSummaryView;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
 
@@ -11,8 +16,27 @@ import java.util.List;
 public interface DocumentMapper {
     DocumentDto entityToDto(Document document);
 
+    // The page count is only set from OCR results
+    @Mapping(target = "pageCount", ignore = true)
     Document dtoToEntity(DocumentDto documentDto);
 
     @Mapping(source = "tags", target = "tags")
     List<DocumentDto> entityToDto(List<Document> documents);
-}
\ No newline at end of file
+
+    @Mapping(source = "tagNames", target = "tags")
+    DocumentSummaryDto viewToSummaryDto(DocumentSummaryView view, List<String> tagNames);
+
+    @Mapping(source = "id", target = "documentId")
+    @Mapping(target = "schemaVersion", ignore = true)
+    @Mapping(target = "priority", ignore = true)
+    OcrRequest entityToOcrRequest(Document document);
+
+    @Mapping(source = "id", target = "documentId")
+    @Mapping(target = "text", expression = "java(document.getPageCount() == null ? document.getContent() : null)")
+    @Mapping(target = "schemaVersion", ignore = true)
+    GenAiRequest entityToGenAiRequest(Document document);
+
+    @Mapping(source = "id", target = "documentId")
+    @Mapping(target = "schemaVersion", ignore = true)
+    PreviewRequest entityToPreviewRequest(Document document);
+}
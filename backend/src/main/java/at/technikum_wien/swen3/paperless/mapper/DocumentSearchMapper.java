@@ -3,24 +3,29 @@ package at.technikum_wien.swen3.paperless.mapper;
 import at.technikum_wien.swen3.paperless.entity.Document;
 import at.technikum_wien.swen3.paperless.entity.Tag;
 import at.technikum_wien.swen3.paperless.search.DocumentSearchEntity;
+import at.technikum_wien.swen3.paperless.service.ContentStorageService;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
-import org.mapstruct.factory.Mappers;
+import org.springframework.beans.factory.annotation.Autowired;
 
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+// The database only holds a preview of the OCR text, the full text for the index comes from object storage
 @Mapper(componentModel = "spring")
-public interface DocumentSearchMapper {
-    DocumentSearchMapper INSTANCE = Mappers.getMapper(DocumentSearchMapper.class);
+public abstract class DocumentSearchMapper {
+
+    @Autowired
+    protected ContentStorageService contentStorageService;
 
     @Mapping(target = "id", source = "id")
     @Mapping(target = "tags", source = "tags")
-    DocumentSearchEntity entityToSearchEntity(Document document);
+    @Mapping(target = "content", expression = "java(contentStorageService.readText(document))")
+    public abstract DocumentSearchEntity entityToSearchEntity(Document document);
 
-    default List<String> mapTags(Set<Tag> tags) {
+    protected List<String> mapTags(Set<Tag> tags) {
         if (tags == null) {
             return Collections.emptyList();
         }
@@ -0,0 +1,17 @@
+package at.technikum_wien.swen3.paperless.repository;
+
+/**
+ * Closed projection of the documents sharing a content hash, enough to pick the original a duplicate
+ * reuses without loading the OCR content or summary of every copy.
+ */
+public interface DocumentCopyView {
+    Long getId();
+
+    String getStatus();
+
+    String getContentHash();
+
+    String getStoragePath();
+
+    String getPreviewStatus();
+}
@@ -0,0 +1,179 @@
+package at.technikum_wien.swen3.paperless.repository;
+
+import at.technikum_wien.swen3.paperless.entity.Document;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Plain JDBC access for bulk writes. Document ids are IDENTITY generated, which keeps Hibernate from
+ * batching inserts, so batch imports go through here. Worker results are written the same way, as
+ * batched partial updates that only set the columns a result changes.
+ * <p>
+ * Worker writes are last-write-wins: they don't check the version, a later result for the same document
+ * simply replaces an earlier one. OCR and GenAI results bump the version so that a user edit based on a
+ * read from before the result is rejected (see DocumentServiceImpl#updateDocument) instead of being
+ * taken for an edit of the new content. The preview status is not user editable and doesn't bump it.
+ */
+@Repository
+@RequiredArgsConstructor
+public class DocumentJdbcRepository {
+
+    private static final String INSERT_SQL = """
+            insert into documents (title, storage_path, status, file_size, content_hash, content, page_count, summary,
+                                   preview_status, created_date, version)
+            values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0)
+            """;
+
+    // A null text (failed result) keeps the current column value
+    private static final String UPDATE_CONTENT_SQL = """
+            update documents set status = ?, content = coalesce(?, content), page_count = coalesce(?, page_count),
+                   version = version + 1
+            where id = ?
+            """;
+
+    private static final String UPDATE_SUMMARY_SQL = """
+            update documents set status = ?, summary = coalesce(?, summary), version = version + 1 where id = ?
+            """;
+
+    // Previews are rendered once per content, duplicates sharing the hash get the status as well.
+    // A thumbnail finishing in the background must not make the user's next edit fail, so no version bump
+    private static final String UPDATE_PREVIEW_STATUS_SQL = """
+            update documents set preview_status = ? where content_hash = ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Inserts all documents in one JDBC batch and sets the generated ids on them.
+     */
+    public void insertAll(List<Document> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        OffsetDateTime now = OffsetDateTime.now();
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(
+                connection -> connection.prepareStatement(INSERT_SQL, new String[]{"id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Document document = documents.get(i);
+                        if (document.getCreatedDate() == null) {
+                            document.setCreatedDate(now);
+                        }
+                        ps.setString(1, document.getTitle());
+                        ps.setString(2, document.getStoragePath());
+                        ps.setString(3, document.getStatus());
+                        ps.setLong(4, document.getFileSize());
+                        ps.setString(5, document.getContentHash());
+                        ps.setString(6, document.getContent());
+                        ps.setObject(7, document.getPageCount(), Types.INTEGER);
+                        ps.setString(8, document.getSummary());
+                        ps.setString(9, document.getPreviewStatus());
+                        ps.setObject(10, document.getCreatedDate());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return documents.size();
+                    }
+                },
+                keyHolder);
+
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        for (int i = 0; i < documents.size(); i++) {
+            documents.get(i).setId(((Number) keys.get(i).get("id")).longValue());
+            documents.get(i).setVersion(0L);
+        }
+    }
+
+    /**
+     * Sets status and OCR content of the given documents in one JDBC batch.
+     *
+     * @return the ids of the documents that exist and were updated
+     */
+    public List<Long> updateContents(List<DocumentResultUpdate> updates) {
+        return update(UPDATE_CONTENT_SQL, updates, update ->
+                new Object[]{update.status(), update.text(), update.pageCount(), update.documentId()});
+    }
+
+    /**
+     * Sets status and summary of the given documents in one JDBC batch.
+     *
+     * @return the ids of the documents that exist and were updated
+     */
+    public List<Long> updateSummaries(List<DocumentResultUpdate> updates) {
+        return update(UPDATE_SUMMARY_SQL, updates, update ->
+                new Object[]{update.status(), update.text(), update.documentId()});
+    }
+
+    /**
+     * Sets the preview status of all documents with the given content hashes in one JDBC batch.
+     *
+     * @return the ids of the updated documents
+     */
+    public List<Long> updatePreviewStatuses(Map<String, String> statusByContentHash) {
+        if (statusByContentHash.isEmpty()) {
+            return List.of();
+        }
+        List<String> hashes = List.copyOf(statusByContentHash.keySet());
+        jdbcTemplate.batchUpdate(UPDATE_PREVIEW_STATUS_SQL, hashes.stream()
+                .map(hash -> new Object[]{statusByContentHash.get(hash), hash})
+                .toList());
+        String placeholders = String.join(", ", Collections.nCopies(hashes.size(), "?"));
+        return jdbcTemplate.queryForList("select id from documents where content_hash in (" + placeholders + ")",
+                Long.class, hashes.toArray());
+    }
+
+    /**
+     * Ids of the documents with the given content hashes that are still PROCESSING, by content hash. These are
+     * the copies waiting for the OCR result of their content (DeduplicationService.PipelineStage#PENDING).
+     */
+    public Map<String, List<Long>> findProcessingIdsByContentHash(Collection<String> contentHashes) {
+        if (contentHashes.isEmpty()) {
+            return Map.of();
+        }
+        String placeholders = String.join(", ", Collections.nCopies(contentHashes.size(), "?"));
+        Map<String, List<Long>> ids = new LinkedHashMap<>();
+        jdbcTemplate.query("select id, content_hash from documents where status = 'PROCESSING' and content_hash in ("
+                        + placeholders + ") order by id",
+                (RowCallbackHandler) rs -> ids.computeIfAbsent(rs.getString("content_hash"), hash -> new ArrayList<>())
+                        .add(rs.getLong("id")),
+                contentHashes.toArray());
+        return ids;
+    }
+
+    private List<Long> update(String sql, List<DocumentResultUpdate> updates,
+                              Function<DocumentResultUpdate, Object[]> parameters) {
+        if (updates.isEmpty()) {
+            return List.of();
+        }
+        int[] counts = jdbcTemplate.batchUpdate(sql, updates.stream().map(parameters).toList());
+
+        // Drivers may report SUCCESS_NO_INFO (-2) instead of a row count, only 0 means the row is gone
+        List<Long> updated = new ArrayList<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                updated.add(updates.get(i).documentId());
+            }
+        }
+        return updated;
+    }
+}
@@ -1,9 +1,52 @@
 package at.technikum_wien.swen3.paperless.repository;
 
 import at.technikum_wien.swen3.paperless.entity.Document;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface DocumentRepository extends JpaRepository<Document, Long> {
+
+    // Tags are lazy: findById is for status updates, these variants join the tags in the same statement
+    @EntityGraph(attributePaths = "tags")
+    Optional<Document> findWithTagsById(Long id);
+
+    @EntityGraph(attributePaths = "tags")
+    List<Document> findWithTagsByIdIn(Collection<Long> ids);
+
+    // Keyset scrolling, the sort has to end with a unique property (id) for stable pages
+    <T> Window<T> findBy(ScrollPosition position, Sort sort, Limit limit, Class<T> type);
+
+    List<DocumentCopyView> findByContentHashIn(Collection<String> contentHashes);
+
+    // Locks the documents whose OCR is running (FOR UPDATE, in id order like the result updates), see
+    // DeduplicationService#confirmPending
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select d.contentHash from Document d where d.contentHash in :contentHashes and d.status = 'PROCESSING' order by d.id")
+    List<String> lockProcessingContentHashes(Collection<String> contentHashes);
+
+    // Keyset pages of ids in (afterId, upToId], used to stream one reindex slice
+    @Query("select d.id from Document d where d.id > :afterId and d.id <= :upToId order by d.id")
+    List<Long> findIdsInRange(Long afterId, Long upToId, Limit limit);
+
+    @Query("select max(d.id) from Document d")
+    Optional<Long> findMaxId();
+
+    @Query("select d.status as status, count(d) as count from Document d group by d.status")
+    List<DocumentStatusCount> countByStatus();
+
+    @Query("select d.id as documentId, t.name as name from Document d join d.tags t where d.id in :ids")
+    List<DocumentTagName> findTagNamesByDocumentIds(Collection<Long> ids);
 }
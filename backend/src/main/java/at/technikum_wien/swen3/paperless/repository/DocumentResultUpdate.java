@@ -0,0 +1,12 @@
+package at.technikum_wien.swen3.paperless.repository;
+
+/**
+ * A worker result for one document, text is the OCR content preview or summary and null for failed results.
+ * pageCount is only set by OCR results whose text is in object storage.
+ */
+public record DocumentResultUpdate(Long documentId, String status, String text, Integer pageCount) {
+
+    public DocumentResultUpdate(Long documentId, String status, String text) {
+        this(documentId, status, text, null);
+    }
+}
@@ -0,0 +1,7 @@
+package at.technikum_wien.swen3.paperless.repository;
+
+public interface DocumentStatusCount {
+    String getStatus();
+
+    long getCount();
+}
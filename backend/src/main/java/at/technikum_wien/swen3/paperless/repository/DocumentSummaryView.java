@@ -0,0 +1,20 @@
+package at.technikum_wien.swen3.paperless.repository;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Closed projection for list views, selects only the listed columns and never the OCR content or summary.
+ */
+public interface DocumentSummaryView {
+    Long getId();
+
+    String getTitle();
+
+    String getStatus();
+
+    OffsetDateTime getCreatedDate();
+
+    long getFileSize();
+
+    String getPreviewStatus();
+}
@@ -0,0 +1,7 @@
+package at.technikum_wien.swen3.paperless.repository;
+
+public interface DocumentTagName {
+    Long getDocumentId();
+
+    String getName();
+}
@@ -0,0 +1,38 @@
+package at.technikum_wien.swen3.paperless.repository;
+
+import at.technikum_wien.swen3.paperless.entity.OutboxMessage;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+@Repository
+public interface OutboxMessageRepository extends JpaRepository<OutboxMessage, Long> {
+
+    // FOR UPDATE SKIP LOCKED (lock timeout -2), so several relays never pick up the same rows
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    List<OutboxMessage> findBySourceIsNullAndNextAttemptAtLessThanEqualOrderByIdAsc(OffsetDateTime now, Limit limit);
+
+    // Held messages of one source, oldest first
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    List<OutboxMessage> findByRoutingKeyAndSourceAndNextAttemptAtLessThanEqualOrderByIdAsc(
+            String routingKey, String source, OffsetDateTime now, Limit limit);
+
+    @Query("""
+            select m.source as source, count(m) as count from OutboxMessage m
+            where m.routingKey = :routingKey and m.source is not null and m.nextAttemptAt <= :now
+            group by m.source""")
+    List<OutboxSourceCount> countHeldBySource(String routingKey, OffsetDateTime now);
+
+    // Unpublished messages of one lane, e.g. the OCR backlog that hasn't reached the broker yet
+    long countByRoutingKey(String routingKey);
+}
@@ -1,10 +1,24 @@
 package at.technikum_wien.swen3.paperless.repository;
 
+import at.technikum_wien.swen3.paperless.config.CacheConfig;
 import at.technikum_wien.swen3.paperless.entity.Tag;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface TagRepository extends JpaRepository<Tag, Long> {
+    // Unknown names are not cached, they are created right after the lookup
+    @Cacheable(cacheNames = CacheConfig.TAGS_BY_NAME_CACHE, unless = "#result == null")
     Optional<Tag> findByName(String name);
+
+    @Override
+    @Cacheable(cacheNames = CacheConfig.TAGS_CACHE, key = "'all'")
+    List<Tag> findAll();
+
+    @Override
+    @CacheEvict(cacheNames = CacheConfig.TAGS_CACHE, allEntries = true)
+    <S extends Tag> S save(S tag);
 }
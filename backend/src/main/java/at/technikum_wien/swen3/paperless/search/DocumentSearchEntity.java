@@ -2,28 +2,46 @@ package at.technikum_wien.swen3.paperless.search;
 
 import lombok.Data;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.elasticsearch.annotations.DateFormat;
 import org.springframework.data.elasticsearch.annotations.Document;
 import org.springframework.data.elasticsearch.annotations.Field;
 import org.springframework.data.elasticsearch.annotations.FieldType;
+import org.springframework.data.elasticsearch.annotations.InnerField;
+import org.springframework.data.elasticsearch.annotations.MultiField;
 
+import java.time.OffsetDateTime;
 import java.util.List;
 
+// "documents" is an alias for a versioned index (documents-<timestamp>), created and swapped by ReindexService
 @Data
-@Document(indexName = "documents")
+@Document(indexName = DocumentSearchEntity.INDEX_ALIAS, createIndex = false)
 public class DocumentSearchEntity {
 
+    public static final String INDEX_ALIAS = "documents";
+
     @Id
     private Long id;
 
     @Field(type = FieldType.Text, analyzer = "standard")
     private String title;
 
+    @Field(type = FieldType.Date, format = DateFormat.date_time)
+    private OffsetDateTime createdDate;
+
     @Field(type = FieldType.Text, analyzer = "english")
     private String content; // OCR
 
     @Field(type = FieldType.Text, analyzer = "english")
     private String summary; // GenAI
 
-    @Field(type = FieldType.Text)
+    @Field(type = FieldType.Keyword)
+    private String status;
+
+    @Field(type = FieldType.Long)
+    private long fileSize;
+
+    // Text for full text search, tags.keyword (doc values) for filters and aggregations
+    @MultiField(mainField = @Field(type = FieldType.Text),
+            otherFields = @InnerField(suffix = "keyword", type = FieldType.Keyword))
     private List<String> tags;
 }
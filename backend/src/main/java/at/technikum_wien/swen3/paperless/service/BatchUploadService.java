@@ -0,0 +1,361 @@
+package at.technikum_wien.swen3.paperless.service;
+
+import at.technikum_wien.swen3.paperless.config.RabbitMQConfig;
+import at.technikum_wien.swen3.paperless.dto.BatchUploadItemDto;
+import at.technikum_wien.swen3.paperless.dto.BatchUploadResultDto;
+import at.technikum_wien.swen3.paperless.dto.OcrRequest;
+import at.technikum_wien.swen3.paperless.entity.Document;
+import at.technikum_wien.swen3.paperless.mapper.DocumentMapper;
+import at.technikum_wien.swen3.paperless.repository.DocumentJdbcRepository;
+import at.technikum_wien.swen3.paperless.service.DeduplicationService.PipelineStage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Imports many PDFs at once: uploads run concurrently, duplicates are resolved with one lookup, and metadata
+ * plus pipeline messages are written with batched inserts in a single transaction.
+ * <p>
+ * A ZIP archive can only be read front to back, so its entries are read one after another on the request
+ * thread and spooled to temporary files; their uploads run concurrently on the upload pool like separate
+ * files. At most maxEntriesInFlight entries of an archive are spooled at a time.
+ */
+@Service
+@Slf4j
+public class BatchUploadService {
+
+    static final String STATUS_CREATED = "CREATED";
+    static final String STATUS_FAILED = "FAILED";
+
+    private static final int MAX_ZIP_ENTRIES = 10_000;
+    private static final String PIPELINE_FULL = "The document pipeline is busy, please retry later.";
+
+    private final MinioStorageService minioStorageService;
+    private final DocumentJdbcRepository documentJdbcRepository;
+    private final DeduplicationService deduplicationService;
+    private final OutboxService outboxService;
+    private final UploadAdmissionService uploadAdmissionService;
+    private final DocumentMapper documentMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final Executor uploadExecutor;
+    private final long maxEntrySize;
+    private final long maxArchiveSize;
+    private final int maxEntriesInFlight;
+
+    public BatchUploadService(
+            MinioStorageService minioStorageService,
+            DocumentJdbcRepository documentJdbcRepository,
+            DeduplicationService deduplicationService,
+            OutboxService outboxService,
+            UploadAdmissionService uploadAdmissionService,
+            DocumentMapper documentMapper,
+            TransactionTemplate transactionTemplate,
+            @Qualifier("uploadExecutor") Executor uploadExecutor,
+            @Value("${paperless.batch.max-entry-size:512MB}") DataSize maxEntrySize,
+            @Value("${paperless.batch.max-archive-size:10GB}") DataSize maxArchiveSize,
+            @Value("${paperless.batch.max-entries-in-flight:8}") int maxEntriesInFlight) {
+        this.minioStorageService = minioStorageService;
+        this.documentJdbcRepository = documentJdbcRepository;
+        this.deduplicationService = deduplicationService;
+        this.outboxService = outboxService;
+        this.uploadAdmissionService = uploadAdmissionService;
+        this.documentMapper = documentMapper;
+        this.transactionTemplate = transactionTemplate;
+        this.uploadExecutor = uploadExecutor;
+        this.maxEntrySize = maxEntrySize.toBytes();
+        this.maxArchiveSize = maxArchiveSize.toBytes();
+        this.maxEntriesInFlight = maxEntriesInFlight;
+    }
+
+    /**
+     * Batch imports are bulk work, their OCR is shared fairly with the imports of other sources. Every
+     * document is reserved below the bulk backlog limit before it is stored, the ones beyond the limit are
+     * reported as failed.
+     */
+    public BatchUploadResultDto uploadAll(List<MultipartFile> files, String source) {
+        log.info("Beginning batch upload of {} file(s) from source {}", files.size(), source);
+
+        // Step 1: store all files and ZIP entries in MinIO concurrently, the results keep the order of the request
+        List<CompletableFuture<Upload>> futures = new ArrayList<>();
+        for (MultipartFile file : files) {
+            if (isZip(file)) {
+                futures.addAll(storeZip(file));
+            } else {
+                futures.add(CompletableFuture.supplyAsync(() -> store(file), uploadExecutor));
+            }
+        }
+        List<Upload> uploads = futures.stream()
+                .map(CompletableFuture::join)
+                .toList();
+
+        // Step 2: reuse stored objects and pipeline results of identical content, one lookup for the batch
+        List<Document> documents = uploads.stream()
+                .map(Upload::document)
+                .filter(Objects::nonNull)
+                .toList();
+        // Duplicates are pointed at existing objects below, only the objects stored here are this batch's own
+        Set<String> storedObjects = documents.stream().map(Document::getStoragePath).collect(Collectors.toSet());
+        List<PipelineStage> stages = documents.isEmpty() ? List.of() : deduplicationService.deduplicate(documents);
+        List<Document> previews = new ArrayList<>();
+        for (int i = 0; i < documents.size(); i++) {
+            if (DeduplicationService.requestPreview(documents.get(i), stages.get(i))) {
+                previews.add(documents.get(i));
+            }
+        }
+
+        // Step 3: insert the metadata with one JDBC batch, and the pipeline messages into the outbox in the same
+        // transaction, the relay publishes them in batches with publisher confirms
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                List<PipelineStage> confirmed = stages.contains(PipelineStage.PENDING)
+                        ? deduplicationService.confirmPending(documents, stages)
+                        : stages;
+                documentJdbcRepository.insertAll(documents);
+                enqueuePipelineMessages(documents, confirmed, source);
+                outboxService.publishAll(RabbitMQConfig.PREVIEW_ROUTING_KEY,
+                        previews.stream().map(documentMapper::entityToPreviewRequest).toList());
+            });
+        } catch (RuntimeException e) {
+            log.error("Could not save batch upload of {} document(s), removing the stored objects", documents.size(), e);
+            removeStoredObjects(documents, storedObjects);
+            return report(uploads.stream()
+                    .map(upload -> upload.document() == null ? upload
+                            : Upload.failed(upload.fileName(), "Could not save the document, please retry later."))
+                    .toList());
+        }
+        log.info("Batch upload saved {} document(s) to the database", documents.size());
+        return report(uploads);
+    }
+
+    // Objects of existing documents that duplicates were pointed at stay, they are still referenced
+    private void removeStoredObjects(List<Document> documents, Set<String> storedObjects) {
+        documents.stream()
+                .map(Document::getStoragePath)
+                .filter(storedObjects::contains)
+                .distinct()
+                .forEach(objectName -> {
+                    try {
+                        minioStorageService.delete(objectName);
+                    } catch (RuntimeException e) {
+                        // Only wastes space, nothing references the object
+                        log.warn("Could not remove object {} of a failed batch upload from MinIO", objectName, e);
+                    }
+                });
+    }
+
+    private static BatchUploadResultDto report(List<Upload> uploads) {
+        List<BatchUploadItemDto> items = uploads.stream().map(Upload::toItem).toList();
+        int succeeded = (int) uploads.stream().filter(upload -> upload.document() != null).count();
+        return BatchUploadResultDto.builder()
+                .total(items.size())
+                .succeeded(succeeded)
+                .failed(items.size() - succeeded)
+                .items(items)
+                .build();
+    }
+
+    private Upload store(MultipartFile file) {
+        String fileName = file.getOriginalFilename();
+        if (file.isEmpty() || !Objects.equals(file.getContentType(), "application/pdf")) {
+            return Upload.failed(fileName, "Invalid file: Please upload a PDF document.");
+        }
+        if (!reserve()) {
+            return Upload.failed(fileName, PIPELINE_FULL);
+        }
+        try {
+            return Upload.stored(fileName, minioStorageService.save(file));
+        } catch (RuntimeException e) {
+            log.error("Batch upload of file {} failed", fileName, e);
+            return Upload.failed(fileName, e.getMessage());
+        }
+    }
+
+    private List<CompletableFuture<Upload>> storeZip(MultipartFile file) {
+        List<CompletableFuture<Upload>> uploads = new ArrayList<>();
+        Semaphore inFlight = new Semaphore(maxEntriesInFlight);
+        long archiveRoom = maxArchiveSize;
+        try (ZipInputStream zip = new ZipInputStream(file.getInputStream())) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                if (uploads.size() >= MAX_ZIP_ENTRIES) {
+                    uploads.add(CompletableFuture.completedFuture(
+                            Upload.failed(entry.getName(), "ZIP contains more than " + MAX_ZIP_ENTRIES + " files")));
+                    break;
+                }
+                // Entries are read one after another from the archive stream, their size is only known once they
+                // are read. Every entry is read through a limit, skipped ones as well, so a ZIP bomb can neither
+                // fill the storage nor keep a thread decompressing
+                LimitedInputStream entryStream = new LimitedInputStream(StreamUtils.nonClosing(zip),
+                        Math.min(maxEntrySize, archiveRoom));
+                uploads.add(storeEntry(entry.getName(), entryStream, inFlight));
+                archiveRoom -= entryStream.getCount();
+                if (entryStream.isExceeded()) {
+                    // The rest of the entry would have to be decompressed to get to the next one
+                    log.warn("ZIP archive {} exceeds the size limits, skipping the rest of it", file.getOriginalFilename());
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            log.error("Could not read ZIP archive {}", file.getOriginalFilename(), e);
+            uploads.add(CompletableFuture.completedFuture(
+                    Upload.failed(file.getOriginalFilename(), "Could not read ZIP archive: " + e.getMessage())));
+        }
+        return uploads;
+    }
+
+    // Checks and spools the entry on the reading thread, the upload from the spool file runs on the upload pool
+    private CompletableFuture<Upload> storeEntry(String name, LimitedInputStream entryStream, Semaphore inFlight) {
+        InputStream in = new BufferedInputStream(entryStream);
+        Path spool = null;
+        try {
+            // Same check as for streamed uploads, the file name alone says nothing about the content
+            if (!name.toLowerCase(Locale.ROOT).endsWith(".pdf") || !DocumentServiceImpl.startsWithPdfSignature(in)) {
+                drain(entryStream);
+                return CompletableFuture.completedFuture(Upload.failed(name, "Invalid file: Please upload a PDF document."));
+            }
+            if (!reserve()) {
+                drain(entryStream);
+                return CompletableFuture.completedFuture(Upload.failed(name, PIPELINE_FULL));
+            }
+            inFlight.acquireUninterruptibly();
+            spool = Files.createTempFile("batch-entry-", ".pdf");
+            Files.copy(in, spool, StandardCopyOption.REPLACE_EXISTING);
+            Path spooled = spool;
+            return CompletableFuture.supplyAsync(() -> upload(name, spooled), uploadExecutor)
+                    .whenComplete((upload, e) -> {
+                        deleteSpool(spooled);
+                        inFlight.release();
+                    });
+        } catch (IOException | RuntimeException e) {
+            if (spool != null) {
+                deleteSpool(spool);
+                inFlight.release();
+            }
+            if (entryStream.isExceeded()) {
+                return CompletableFuture.completedFuture(Upload.failed(name, "ZIP entry exceeds the size limit of "
+                        + maxEntrySize + " bytes or the archive the limit of " + maxArchiveSize + " bytes"));
+            }
+            log.error("Batch upload of ZIP entry {} failed", name, e);
+            return CompletableFuture.completedFuture(Upload.failed(name, e.getMessage()));
+        }
+    }
+
+    // Taken when a document is stored, not when the request arrives: a ZIP archive counts as one file
+    private boolean reserve() {
+        return uploadAdmissionService.reserve(UploadPriority.BULK);
+    }
+
+    private Upload upload(String name, Path spool) {
+        try (InputStream in = Files.newInputStream(spool)) {
+            return Upload.stored(name, minioStorageService.save(in, "application/pdf"));
+        } catch (IOException | RuntimeException e) {
+            log.error("Batch upload of ZIP entry {} failed", name, e);
+            return Upload.failed(name, e.getMessage());
+        }
+    }
+
+    private static void deleteSpool(Path spool) {
+        try {
+            Files.deleteIfExists(spool);
+        } catch (IOException e) {
+            log.warn("Could not delete spool file {}", spool, e);
+        }
+    }
+
+    // Reads a skipped entry through its limit, the size limits count it like a stored one
+    private static void drain(LimitedInputStream entryStream) {
+        try {
+            entryStream.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException e) {
+            // exceeded, or the archive is broken and the next entry fails to read
+        }
+    }
+
+    private void enqueuePipelineMessages(List<Document> documents, List<PipelineStage> stages, String source) {
+        Map<PipelineStage, List<Document>> documentsByStage = new EnumMap<>(PipelineStage.class);
+        for (int i = 0; i < documents.size(); i++) {
+            documentsByStage.computeIfAbsent(stages.get(i), stage -> new ArrayList<>()).add(documents.get(i));
+        }
+        outboxService.publishFair(RabbitMQConfig.OCR_BULK_ROUTING_KEY, source,
+                documentsByStage.getOrDefault(PipelineStage.OCR, List.of()).stream().map(this::toBulkOcrRequest).toList());
+        outboxService.publishAll(RabbitMQConfig.GENAI_BULK_ROUTING_KEY, documentsByStage.getOrDefault(PipelineStage.GENAI, List.of())
+                .stream().map(documentMapper::entityToGenAiRequest).toList());
+        // PENDING duplicates wait for the OCR result of their original, DONE duplicates copied content and
+        // summary, they only need indexing
+        outboxService.publishAll(RabbitMQConfig.SEARCH_ROUTING_KEY,
+                documents.stream().map(document -> String.valueOf(document.getId())).toList());
+    }
+
+    private OcrRequest toBulkOcrRequest(Document document) {
+        OcrRequest request = documentMapper.entityToOcrRequest(document);
+        request.setPriority(UploadPriority.BULK.name());
+        return request;
+    }
+
+    private static boolean isZip(MultipartFile file) {
+        String name = file.getOriginalFilename();
+        return Objects.equals(file.getContentType(), "application/zip")
+                || (name != null && name.toLowerCase(Locale.ROOT).endsWith(".zip"));
+    }
+
+    private static String titleOf(String fileName) {
+        String name = fileName == null ? "Untitled" : fileName.substring(fileName.lastIndexOf('/') + 1);
+        return name.toLowerCase(Locale.ROOT).endsWith(".pdf") ? name.substring(0, name.length() - 4) : name;
+    }
+
+    private record Upload(String fileName, Document document, String errorDetails) {
+
+        static Upload stored(String fileName, StoredObject stored) {
+            Document document = Document.builder()
+                    .title(titleOf(fileName))
+                    .storagePath(stored.objectName())
+                    .status("PROCESSING")
+                    .fileSize(stored.size())
+                    .contentHash(stored.sha256())
+                    .build();
+            return new Upload(fileName, document, null);
+        }
+
+        static Upload failed(String fileName, String errorDetails) {
+            return new Upload(fileName, null, errorDetails);
+        }
+
+        BatchUploadItemDto toItem() {
+            return BatchUploadItemDto.builder()
+                    .fileName(fileName)
+                    .documentId(document != null ? document.getId() : null)
+                    .status(document != null ? STATUS_CREATED : STATUS_FAILED)
+                    .errorDetails(errorDetails)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package at.technikum_wien.swen3.paperless.service;
+
+import at.technikum_wien.swen3.paperless.entity.Document;
+import at.technikum_wien.swen3.paperless.exception.StorageException;
+import io.minio.GetObjectArgs;
+import io.minio.MinioClient;
+import io.minio.errors.ErrorResponseException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * OCR text lives in object storage next to the PDFs, one gzip compressed object per page. The OCR worker
+ * writes the pages while it works through a document; the database only keeps a short preview in
+ * {@link Document#getContent()} and the page count.
+ * <p>
+ * Objects are keyed by the content hash of the PDF, so duplicates share the text of their original.
+ */
+@Service
+@Slf4j
+public class ContentStorageService {
+
+    // Layout shared with the OCR and GenAI workers
+    private static final String PAGE_OBJECT_FORMAT = "text/%s/%05d.txt.gz";
+    private static final String NO_SUCH_KEY = "NoSuchKey";
+
+    private final MinioClient minio;
+    private final Executor contentReadExecutor;
+
+    @Value("${minio.bucket.name}")
+    private String bucketName;
+
+    @Value("${paperless.content.preview-length:2000}")
+    private int previewLength;
+
+    public ContentStorageService(@Qualifier("minioInternal") MinioClient minio,
+                                 @Qualifier("contentReadExecutor") Executor contentReadExecutor) {
+        this.minio = minio;
+        this.contentReadExecutor = contentReadExecutor;
+    }
+
+    public static String pageObjectName(String contentHash, int pageNumber) {
+        return PAGE_OBJECT_FORMAT.formatted(contentHash, pageNumber);
+    }
+
+    /**
+     * Reads one page, empty if the OCR worker hasn't stored it (yet).
+     */
+    public Optional<String> readPage(String contentHash, int pageNumber) {
+        String objectName = pageObjectName(contentHash, pageNumber);
+        try (InputStream in = new GZIPInputStream(minio.getObject(
+                GetObjectArgs.builder().bucket(bucketName).object(objectName).build()))) {
+            return Optional.of(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        } catch (ErrorResponseException e) {
+            if (NO_SUCH_KEY.equals(e.errorResponse().code())) {
+                return Optional.empty();
+            }
+            throw storageException(objectName, e);
+        } catch (Exception e) {
+            throw storageException(objectName, e);
+        }
+    }
+
+    /**
+     * Reads the pages from..to (inclusive, 1-based) joined by newlines, missing pages are skipped.
+     * The pages are fetched concurrently on the content read pool, one GET after the other would make
+     * indexing a long document cost a round trip per page.
+     */
+    public String readPages(String contentHash, int fromPage, int toPage) {
+        if (fromPage == toPage) {
+            return readPage(contentHash, fromPage).orElse("");
+        }
+        List<CompletableFuture<Optional<String>>> pages = new ArrayList<>();
+        for (int page = fromPage; page <= toPage; page++) {
+            int pageNumber = page;
+            pages.add(CompletableFuture.supplyAsync(() -> readPage(contentHash, pageNumber), contentReadExecutor));
+        }
+        StringJoiner text = new StringJoiner("\n");
+        try {
+            pages.forEach(page -> page.join().ifPresent(text::add));
+        } catch (CompletionException e) {
+            pages.forEach(page -> page.cancel(false));
+            if (e.getCause() instanceof StorageException storageException) {
+                throw storageException;
+            }
+            throw new StorageException("Error while reading document text from MinIO", e.getCause());
+        }
+        return text.toString();
+    }
+
+    /**
+     * Full OCR text of a document. Documents processed before the text moved to object storage still
+     * have it in the database.
+     */
+    public String readText(Document document) {
+        if (document.getPageCount() == null || document.getContentHash() == null) {
+            return document.getContent();
+        }
+        return readPages(document.getContentHash(), 1, document.getPageCount());
+    }
+
+    public String preview(String text) {
+        if (text == null || text.length() <= previewLength) {
+            return text;
+        }
+        return text.substring(0, previewLength);
+    }
+
+    private static StorageException storageException(String objectName, Exception e) {
+        log.error("Error while reading text object {} from MinIO", objectName, e);
+        return new StorageException("Error while reading document text from MinIO", e);
+    }
+}
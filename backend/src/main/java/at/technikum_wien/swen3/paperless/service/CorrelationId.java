@@ -0,0 +1,43 @@
+package at.technikum_wien.swen3.paperless.service;
+
+import org.slf4j.MDC;
+
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Correlation ID of the upload a piece of work belongs to. It is kept in the logging MDC while a request or
+ * a worker result is handled, stored with outbox messages and sent as the AMQP correlation_id, which the
+ * workers echo on their results. Grepping the logs of all services for it shows a document's whole way
+ * through the pipeline.
+ */
+public final class CorrelationId {
+
+    public static final String HEADER = "X-Correlation-ID";
+    public static final String MDC_KEY = "correlationId";
+
+    private static final Pattern VALID = Pattern.compile("[A-Za-z0-9._-]{1,64}");
+
+    private CorrelationId() {
+    }
+
+    public static String current() {
+        return MDC.get(MDC_KEY);
+    }
+
+    /**
+     * Puts the ID into the MDC until the returned handle is closed, a missing or malformed ID is replaced
+     * by a new one.
+     */
+    public static MDC.MDCCloseable open(String correlationId) {
+        return MDC.putCloseable(MDC_KEY, isValid(correlationId) ? correlationId : newId());
+    }
+
+    public static boolean isValid(String correlationId) {
+        return correlationId != null && VALID.matcher(correlationId).matches();
+    }
+
+    static String newId() {
+        return UUID.randomUUID().toString();
+    }
+}
@@ -0,0 +1,224 @@
+package at.technikum_wien.swen3.paperless.service;
+
+import at.technikum_wien.swen3.paperless.entity.Document;
+import at.technikum_wien.swen3.paperless.repository.DocumentCopyView;
+import at.technikum_wien.swen3.paperless.repository.DocumentRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Detects uploads whose content hash matches an existing document and lets them reuse its stored object
+ * and pipeline results, so identical PDFs are stored, OCR'd and summarized only once.
+ */
+@Service
+@Slf4j
+public class DeduplicationService {
+
+    /**
+     * First pipeline stage a new document still has to go through.
+     */
+    public enum PipelineStage {
+        // nothing reusable, run OCR
+        OCR,
+        // OCR of the same content is running for another document, its result is applied to this one as well
+        // (see OcrResultListener)
+        PENDING,
+        // OCR content copied, only the summary is missing
+        GENAI,
+        // content and summary copied, only indexing is left
+        DONE
+    }
+
+    // Preferred original: furthest through the pipeline, then oldest
+    private static final Comparator<Original> ORIGINAL_ORDER = Comparator
+            .comparing((Original original) -> original.stage().ordinal()).reversed()
+            .thenComparing(Original::id);
+
+    private final DocumentRepository documentRepository;
+    private final MinioStorageService minioStorageService;
+    private final Counter hits;
+    private final Counter misses;
+
+    public DeduplicationService(DocumentRepository documentRepository,
+                                MinioStorageService minioStorageService,
+                                MeterRegistry meterRegistry) {
+        this.documentRepository = documentRepository;
+        this.minioStorageService = minioStorageService;
+        this.hits = Counter.builder("paperless.upload.dedup")
+                .description("Uploads whose content matched an existing document")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("paperless.upload.dedup")
+                .description("Uploads whose content matched an existing document")
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
+
+    public PipelineStage deduplicate(Document newDocument) {
+        return deduplicate(List.of(newDocument)).getFirst();
+    }
+
+    /**
+     * Points not yet saved documents at existing duplicates with one lookup for all hashes. Returns the stage
+     * each document has to start at, in the order of the given list.
+     */
+    public List<PipelineStage> deduplicate(List<Document> newDocuments) {
+        List<String> hashes = newDocuments.stream()
+                .map(Document::getContentHash)
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
+        // Only the columns needed to pick an original, a hash can have many copies
+        Map<String, Original> originals = hashes.isEmpty() ? new HashMap<>() : documentRepository.findByContentHashIn(hashes)
+                .stream()
+                .map(Original::of)
+                .collect(Collectors.toMap(Original::contentHash, Function.identity(),
+                        (a, b) -> ORIGINAL_ORDER.compare(a, b) <= 0 ? a : b, HashMap::new));
+        // Content and summary only of the originals they are copied from
+        Map<Long, Document> results = documentRepository.findAllById(originals.values().stream()
+                        .filter(original -> copiesResults(original.stage()))
+                        .map(Original::id)
+                        .toList())
+                .stream()
+                .collect(Collectors.toMap(Document::getId, Function.identity()));
+
+        List<PipelineStage> stages = new ArrayList<>(newDocuments.size());
+        for (Document newDocument : newDocuments) {
+            Original original = originals.get(newDocument.getContentHash());
+            if (original == null) {
+                misses.increment();
+                stages.add(PipelineStage.OCR);
+                // Later duplicates within the same batch share this object and wait for its OCR
+                if (newDocument.getContentHash() != null) {
+                    originals.put(newDocument.getContentHash(), Original.of(newDocument));
+                }
+                continue;
+            }
+
+            hits.increment();
+            reuseStoredObject(newDocument, original);
+            // Previews are stored under the content hash as well
+            newDocument.setPreviewStatus(original.previewStatus());
+            PipelineStage stage = original.stage();
+            Document result = results.get(original.id());
+            if (copiesResults(stage) && result == null) {
+                // Deleted since the lookup
+                stage = PipelineStage.OCR;
+            }
+            if (copiesResults(stage)) {
+                // Same content hash, so the text pages in object storage are shared as well
+                newDocument.setContent(result.getContent());
+                newDocument.setPageCount(result.getPageCount());
+                newDocument.setStatus(result.getStatus());
+            }
+            if (stage == PipelineStage.DONE) {
+                newDocument.setSummary(result.getSummary());
+            }
+            log.info("Upload '{}' duplicates stored object {}, continuing at stage {}",
+                    newDocument.getTitle(), original.storagePath(), stage);
+            stages.add(stage);
+        }
+        return stages;
+    }
+
+    /**
+     * Marks the preview of a not yet saved document as pending unless it shares a rendered (or currently
+     * rendering) preview with a duplicate. Returns whether the preview worker has to be asked to render it.
+     */
+    public static boolean requestPreview(Document document, PipelineStage stage) {
+        String previewStatus = document.getPreviewStatus();
+        if (stage != PipelineStage.OCR && ("COMPLETED".equals(previewStatus) || "PENDING".equals(previewStatus))) {
+            return false;
+        }
+        document.setPreviewStatus("PENDING");
+        return true;
+    }
+
+    private void reuseStoredObject(Document newDocument, Original original) {
+        String uploadedObject = newDocument.getStoragePath();
+        if (Objects.equals(uploadedObject, original.storagePath())) {
+            return;
+        }
+        newDocument.setStoragePath(original.storagePath());
+        try {
+            minioStorageService.delete(uploadedObject);
+        } catch (RuntimeException e) {
+            // Only wastes space, the document already points at the original object
+            log.warn("Could not remove duplicate object {} from MinIO", uploadedObject, e);
+        }
+    }
+
+    /**
+     * Called in the transaction that inserts the documents: locks the in-flight documents that PENDING copies
+     * wait for, so their OCR result can't be applied before the copies are committed and seen by it. Copies
+     * whose original finished or failed since {@link #deduplicate(List)} start at OCR after all.
+     */
+    public List<PipelineStage> confirmPending(List<Document> newDocuments, List<PipelineStage> stages) {
+        Set<String> waiting = new HashSet<>();
+        // Originals of the same batch are inserted in this transaction, their result can't come first
+        Set<String> inserted = new HashSet<>();
+        for (int i = 0; i < newDocuments.size(); i++) {
+            (stages.get(i) == PipelineStage.PENDING ? waiting : inserted).add(newDocuments.get(i).getContentHash());
+        }
+        waiting.removeAll(inserted);
+        Set<String> inFlight = waiting.isEmpty() ? Set.of() : new HashSet<>(documentRepository.lockProcessingContentHashes(waiting));
+
+        List<PipelineStage> confirmed = new ArrayList<>(stages.size());
+        for (int i = 0; i < newDocuments.size(); i++) {
+            String contentHash = newDocuments.get(i).getContentHash();
+            if (stages.get(i) == PipelineStage.PENDING && waiting.contains(contentHash) && !inFlight.contains(contentHash)) {
+                log.info("OCR of the original of '{}' finished in the meantime, running it again", newDocuments.get(i).getTitle());
+                confirmed.add(PipelineStage.OCR);
+            } else {
+                confirmed.add(stages.get(i));
+            }
+        }
+        return confirmed;
+    }
+
+    private static boolean copiesResults(PipelineStage stage) {
+        return stage == PipelineStage.GENAI || stage == PipelineStage.DONE;
+    }
+
+    private static PipelineStage stageOf(String status) {
+        return switch (status) {
+            case "COMPLETED" -> PipelineStage.DONE;
+            case "SUCCESS" -> PipelineStage.GENAI;
+            case "PROCESSING" -> PipelineStage.PENDING;
+            default -> PipelineStage.OCR;
+        };
+    }
+
+    /**
+     * An existing document, or an earlier one of the same batch, that duplicates reuse.
+     */
+    private record Original(Long id, String status, String contentHash, String storagePath, String previewStatus) {
+
+        static Original of(DocumentCopyView document) {
+            return new Original(document.getId(), document.getStatus(), document.getContentHash(),
+                    document.getStoragePath(), document.getPreviewStatus());
+        }
+
+        static Original of(Document document) {
+            return new Original(document.getId(), document.getStatus(), document.getContentHash(),
+                    document.getStoragePath(), document.getPreviewStatus());
+        }
+
+        PipelineStage stage() {
+            return stageOf(status);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package at.technikum_wien.swen3.paperless.service;
+
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.Map;
+
+/**
+ * Keyset position on (createdDate, id) together with the sort direction it was issued for,
+ * serialized into an opaque URL-safe token.
+ */
+record DocumentCursor(Sort.Direction direction, OffsetDateTime createdDate, Long id) {
+
+    static Sort sort(Sort.Direction direction) {
+        return Sort.by(direction, "createdDate").and(Sort.by(direction, "id"));
+    }
+
+    ScrollPosition toScrollPosition() {
+        return ScrollPosition.forward(Map.of("createdDate", createdDate, "id", id));
+    }
+
+    String encode() {
+        String raw = direction.name() + "|" + createdDate + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static DocumentCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Invalid cursor: " + token);
+            }
+            return new DocumentCursor(
+                    Sort.Direction.valueOf(parts[0]),
+                    OffsetDateTime.parse(parts[1]),
+                    Long.parseLong(parts[2]));
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            // NumberFormatException is an IllegalArgumentException as well
+            throw new IllegalArgumentException("Invalid cursor: " + token, e);
+        }
+    }
+}
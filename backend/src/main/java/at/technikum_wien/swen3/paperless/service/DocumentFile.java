@@ -0,0 +1,12 @@
+package at.technikum_wien.swen3.paperless.service;
+
+import java.time.Instant;
+
+/**
+ * Stored PDF of a document as served by the download endpoint. The ETag, size and modification time come
+ * from the object metadata in MinIO; objects are never overwritten, so the values stay valid for the
+ * lifetime of the document.
+ */
+public record DocumentFile(String objectName, String fileName, String contentType, long size, String eTag,
+                           Instant lastModified) {
+}
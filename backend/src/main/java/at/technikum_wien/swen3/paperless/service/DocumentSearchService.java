@@ -0,0 +1,234 @@
+package at.technikum_wien.swen3.paperless.service;
+
+import at.technikum_wien.swen3.paperless.dto.DocumentDto;
+import at.technikum_wien.swen3.paperless.dto.FacetBucketDto;
+import at.technikum_wien.swen3.paperless.dto.SearchHitDto;
+import at.technikum_wien.swen3.paperless.dto.SearchRequestDto;
+import at.technikum_wien.swen3.paperless.dto.SearchResultDto;
+import at.technikum_wien.swen3.paperless.entity.Document;
+import at.technikum_wien.swen3.paperless.mapper.DocumentMapper;
+import at.technikum_wien.swen3.paperless.repository.DocumentRepository;
+import at.technikum_wien.swen3.paperless.search.DocumentSearchEntity;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregate;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregation;
+import co.elastic.clients.elasticsearch._types.aggregations.CalendarInterval;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.client.elc.ElasticsearchAggregations;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
+import org.springframework.data.elasticsearch.client.elc.NativeQueryBuilder;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
+import org.springframework.data.elasticsearch.core.query.HighlightQuery;
+import org.springframework.data.elasticsearch.core.query.highlight.Highlight;
+import org.springframework.data.elasticsearch.core.query.highlight.HighlightField;
+import org.springframework.data.elasticsearch.core.query.highlight.HighlightParameters;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Full text search answered from Elasticsearch alone: hits come back in relevance order with their
+ * _source (without the large content and summary fields), highlighted snippets and optional facets.
+ * Postgres is only queried when the caller asks for hydrated documents.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DocumentSearchService {
+
+    static final int DEFAULT_PAGE_SIZE = 20;
+    static final int MAX_PAGE_SIZE = 100;
+    // Elasticsearch index.max_result_window default
+    static final int MAX_RESULT_WINDOW = 10_000;
+
+    static final String FACET_TAGS = "tags";
+    static final String FACET_STATUS = "status";
+    static final String FACET_CREATED_DATE = "createdDate";
+    static final String FACET_FILE_SIZE = "fileSize";
+
+    private static final int TAG_FACET_SIZE = 25;
+    private static final double MB = 1024 * 1024;
+
+    private static final String[] SOURCE_FIELDS = {"id", "title", "createdDate", "status", "fileSize", "tags"};
+    private static final List<String> SEARCH_FIELDS = List.of("title", "content", "summary", "tags");
+
+    private static final HighlightQuery HIGHLIGHT = new HighlightQuery(new Highlight(
+            HighlightParameters.builder()
+                    .withEncoder("html")
+                    .withPreTags("<mark>")
+                    .withPostTags("</mark>")
+                    .withFragmentSize(150)
+                    .withNumberOfFragments(3)
+                    .build(),
+            List.of(new HighlightField("content"), new HighlightField("summary"))),
+            DocumentSearchEntity.class);
+
+    private final ElasticsearchOperations elasticsearchOperations;
+    private final DocumentRepository documentRepository;
+    private final DocumentMapper documentMapper;
+
+    public SearchResultDto search(SearchRequestDto request) {
+        int pageNumber = request.getPage() == null ? 0 : request.getPage();
+        int pageSize = request.getSize() == null ? DEFAULT_PAGE_SIZE : Math.clamp(request.getSize(), 1, MAX_PAGE_SIZE);
+        if (pageNumber < 0) {
+            throw new IllegalArgumentException("Invalid page: " + request.getPage());
+        }
+        if ((long) (pageNumber + 1) * pageSize > MAX_RESULT_WINDOW) {
+            throw new IllegalArgumentException("Search results are limited to the first " + MAX_RESULT_WINDOW + " hits");
+        }
+
+        boolean hasQuery = request.getQuery() != null && !request.getQuery().isBlank();
+        NativeQueryBuilder builder = NativeQuery.builder()
+                .withQuery(toQuery(request, hasQuery))
+                .withSourceFilter(new FetchSourceFilter(true, SOURCE_FIELDS, null))
+                .withPageable(PageRequest.of(pageNumber, pageSize))
+                .withTrackTotalHits(true);
+        if (hasQuery) {
+            builder.withHighlightQuery(HIGHLIGHT);
+        } else {
+            // Browsing by facets only, newest first
+            builder.withSort(Sort.by(Sort.Direction.DESC, "createdDate"));
+        }
+        if (request.isFacets()) {
+            // Computed in the same request as the hits, over the filtered result set
+            builder.withAggregation(FACET_TAGS, Aggregation.of(a -> a
+                            .terms(t -> t.field("tags.keyword").size(TAG_FACET_SIZE))))
+                    .withAggregation(FACET_STATUS, Aggregation.of(a -> a
+                            .terms(t -> t.field("status"))))
+                    .withAggregation(FACET_CREATED_DATE, Aggregation.of(a -> a
+                            .dateHistogram(h -> h.field("createdDate").calendarInterval(CalendarInterval.Month)
+                                    .format("yyyy-MM").minDocCount(1))))
+                    .withAggregation(FACET_FILE_SIZE, Aggregation.of(a -> a
+                            .range(r -> r.field("fileSize")
+                                    .ranges(b -> b.key("<1MB").to(MB))
+                                    .ranges(b -> b.key("1-10MB").from(MB).to(10 * MB))
+                                    .ranges(b -> b.key(">10MB").from(10 * MB)))));
+        }
+
+        SearchHits<DocumentSearchEntity> hits = elasticsearchOperations.search(builder.build(), DocumentSearchEntity.class);
+        List<SearchHitDto> items = hits.getSearchHits().stream().map(DocumentSearchService::toHitDto).toList();
+        if (request.isHydrate()) {
+            hydrate(items);
+        }
+
+        return SearchResultDto.builder()
+                .items(items)
+                .total(hits.getTotalHits())
+                .page(pageNumber)
+                .size(pageSize)
+                .hasNext((long) (pageNumber + 1) * pageSize < hits.getTotalHits())
+                .facets(request.isFacets() ? toFacets(hits) : null)
+                .build();
+    }
+
+    // Filters don't score and are cached by Elasticsearch, only the text query contributes to relevance
+    private static Query toQuery(SearchRequestDto request, boolean hasQuery) {
+        List<Query> filters = new ArrayList<>();
+        if (request.getTags() != null) {
+            for (String tag : request.getTags()) {
+                filters.add(Query.of(q -> q.term(t -> t.field("tags.keyword").value(tag))));
+            }
+        }
+        if (request.getStatus() != null && !request.getStatus().isEmpty()) {
+            List<FieldValue> statuses = request.getStatus().stream().map(FieldValue::of).toList();
+            filters.add(Query.of(q -> q.terms(t -> t.field("status").terms(v -> v.value(statuses)))));
+        }
+        if (request.getCreatedFrom() != null || request.getCreatedTo() != null) {
+            filters.add(Query.of(q -> q.range(r -> r.date(d -> {
+                d.field("createdDate").format("strict_date");
+                if (request.getCreatedFrom() != null) {
+                    d.gte(request.getCreatedFrom().toString());
+                }
+                if (request.getCreatedTo() != null) {
+                    d.lt(request.getCreatedTo().plusDays(1).toString());
+                }
+                return d;
+            }))));
+        }
+        if (request.getMinSize() != null || request.getMaxSize() != null) {
+            filters.add(Query.of(q -> q.range(r -> r.number(n -> {
+                n.field("fileSize");
+                if (request.getMinSize() != null) {
+                    n.gte(request.getMinSize().doubleValue());
+                }
+                if (request.getMaxSize() != null) {
+                    n.lte(request.getMaxSize().doubleValue());
+                }
+                return n;
+            }))));
+        }
+
+        Query text = hasQuery
+                ? Query.of(q -> q.multiMatch(m -> m.query(request.getQuery()).fields(SEARCH_FIELDS).fuzziness("AUTO")))
+                : Query.of(q -> q.matchAll(m -> m));
+        return Query.of(q -> q.bool(b -> b.must(text).filter(filters)));
+    }
+
+    private static Map<String, List<FacetBucketDto>> toFacets(SearchHits<DocumentSearchEntity> hits) {
+        Map<String, List<FacetBucketDto>> facets = new LinkedHashMap<>();
+        if (!(hits.getAggregations() instanceof ElasticsearchAggregations aggregations)) {
+            return facets;
+        }
+        aggregations.aggregationsAsMap().forEach((name, aggregation) -> {
+            Aggregate aggregate = aggregation.aggregation().getAggregate();
+            List<FacetBucketDto> buckets = switch (aggregate._kind()) {
+                case Sterms -> aggregate.sterms().buckets().array().stream()
+                        .map(b -> new FacetBucketDto(b.key().stringValue(), b.docCount())).toList();
+                case DateHistogram -> aggregate.dateHistogram().buckets().array().stream()
+                        .map(b -> new FacetBucketDto(b.keyAsString(), b.docCount())).toList();
+                case Range -> aggregate.range().buckets().array().stream()
+                        .map(b -> new FacetBucketDto(b.key(), b.docCount())).toList();
+                // terms on a field without values comes back unmapped
+                default -> List.of();
+            };
+            facets.put(name, buckets);
+        });
+        return facets;
+    }
+
+    private static SearchHitDto toHitDto(SearchHit<DocumentSearchEntity> hit) {
+        DocumentSearchEntity source = hit.getContent();
+        return SearchHitDto.builder()
+                .id(source.getId())
+                .title(source.getTitle())
+                .createdDate(source.getCreatedDate())
+                .status(source.getStatus())
+                .fileSize(source.getFileSize())
+                .tags(source.getTags())
+                .score(hit.getScore())
+                .highlights(hit.getHighlightFields())
+                .build();
+    }
+
+    // One query for the whole page, hits keep their relevance order
+    private void hydrate(List<SearchHitDto> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+        Map<Long, Document> byId = documentRepository
+                .findWithTagsByIdIn(items.stream().map(SearchHitDto::getId).toList())
+                .stream()
+                .collect(Collectors.toMap(Document::getId, Function.identity()));
+        for (SearchHitDto item : items) {
+            Document document = byId.get(item.getId());
+            if (document == null) {
+                log.warn("Search hit for document ID {} has no database row, index is stale", item.getId());
+                continue;
+            }
+            DocumentDto dto = documentMapper.entityToDto(document);
+            item.setDocument(dto);
+        }
+    }
+}
@@ -1,20 +1,46 @@
 package at.technikum_wien.swen3.paperless.service;
 
+import at.technikum_wien.swen3.paperless.dto.CursorPageDto;
 import at.technikum_wien.swen3.paperless.dto.DocumentDto;
+import at.technikum_wien.swen3.paperless.dto.DocumentPageDto;
+import at.technikum_wien.swen3.paperless.dto.DocumentSummaryDto;
+import at.technikum_wien.swen3.paperless.dto.DocumentUpdateDto;
+import at.technikum_wien.swen3.paperless.service.PreviewStorageService.PreviewKind;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.util.List;
+import java.io.InputStream;
+import java.util.Optional;
 
 public interface DocumentService {
     DocumentDto getDocument(Long id);
 
-    List<DocumentDto> getAllDocuments();
+    Optional<DocumentPageDto> getDocumentPage(Long id, int pageNumber);
 
-    DocumentDto createDocument(String title, MultipartFile file);
+    String getDocumentText(Long id, Integer fromPage, Integer toPage);
 
-    DocumentDto updateDocument(Long id, DocumentDto documentDto);
+    Optional<String> getDocumentPreviewETag(Long id, PreviewKind kind);
+
+    Optional<byte[]> getDocumentPreview(Long id, PreviewKind kind);
+
+    CursorPageDto<DocumentSummaryDto> getDocumentSummaries(String cursor, Integer size, String direction);
+
+    CursorPageDto<DocumentDto> getDocuments(String cursor, Integer size, String direction);
+
+    DocumentDto createDocument(String title, MultipartFile file, UploadOrigin origin);
+
+    DocumentDto createDocument(String title, InputStream content, UploadOrigin origin);
+
+    DocumentDto updateDocument(Long id, DocumentUpdateDto update);
+
+    Optional<DocumentDto> addTag(Long id, String tagName);
+
+    Optional<DocumentDto> removeTag(Long id, Long tagId);
 
     void deleteDocument(Long id);
 
     String getDocumentDownloadUrl(Long id);
+
+    DocumentFile getDocumentFile(Long id);
+
+    InputStream openDocumentFile(DocumentFile file, long offset, long length);
 }
\ No newline at end of file
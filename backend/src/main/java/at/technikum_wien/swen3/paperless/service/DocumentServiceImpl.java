@@ -1,47 +1,205 @@
 package at.technikum_wien.swen3.paperless.service;
 
+import at.technikum_wien.swen3.paperless.config.CacheConfig;
 import at.technikum_wien.swen3.paperless.config.RabbitMQConfig;
+import at.technikum_wien.swen3.paperless.dto.CursorPageDto;
 import at.technikum_wien.swen3.paperless.dto.DocumentDto;
+import at.technikum_wien.swen3.paperless.dto.DocumentPageDto;
+import at.technikum_wien.swen3.paperless.dto.DocumentSummaryDto;
+import at.technikum_wien.swen3.paperless.dto.DocumentUpdateDto;
+import at.technikum_wien.swen3.paperless.dto.OcrRequest;
 import at.technikum_wien.swen3.paperless.entity.Document;
+import at.technikum_wien.swen3.paperless.entity.Tag;
 import at.technikum_wien.swen3.paperless.mapper.DocumentMapper;
 import at.technikum_wien.swen3.paperless.repository.DocumentRepository;
+import at.technikum_wien.swen3.paperless.repository.DocumentSummaryView;
+import at.technikum_wien.swen3.paperless.repository.DocumentTagName;
+import at.technikum_wien.swen3.paperless.repository.TagRepository;
+import at.technikum_wien.swen3.paperless.service.DeduplicationService.PipelineStage;
+import at.technikum_wien.swen3.paperless.service.PreviewStorageService.PreviewKind;
+import io.minio.StatObjectResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import java.util.Objects;
 
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class DocumentServiceImpl implements DocumentService {
 
+    static final int DEFAULT_PAGE_SIZE = 50;
+    static final int MAX_PAGE_SIZE = 200;
+
+    private static final byte[] PDF_SIGNATURE = "%PDF-".getBytes(StandardCharsets.US_ASCII);
+
     private final DocumentRepository documentRepository;
+    private final TagRepository tagRepository;
     private final DocumentMapper documentMapper;
     private final MinioStorageService minioStorageService;
-    private final RabbitTemplate rabbitTemplate;
+    private final ContentStorageService contentStorageService;
+    private final PreviewStorageService previewStorageService;
+    private final OutboxService outboxService;
+    private final DeduplicationService deduplicationService;
+    private final TransactionTemplate transactionTemplate;
+    private final PipelineMetrics pipelineMetrics;
 
+    // Workers and the frontend fetch the same document repeatedly while it moves through the pipeline
     @Override
+    @Transactional(readOnly = true)
+    @Cacheable(cacheNames = CacheConfig.DOCUMENTS_CACHE, key = "#id")
     public DocumentDto getDocument(Long id) {
-        Document document = documentRepository.findById(id)
+        Document document = documentRepository.findWithTagsById(id)
                 .orElseThrow(() -> new NoSuchElementException("Document not found with id: " + id));
         return documentMapper.entityToDto(document);
     }
 
+    // Pages are available as soon as the OCR worker stored them, before the whole document is done.
+    // Not transactional, no database connection is held while reading from object storage
     @Override
-    public List<DocumentDto> getAllDocuments() {
-        List<Document> documents = documentRepository.findAll();
-        return documentMapper.entityToDto(documents);
+    public Optional<DocumentPageDto> getDocumentPage(Long id, int pageNumber) {
+        Document document = documentRepository.findById(id)
+                .orElseThrow(() -> new NoSuchElementException("Document not found with id: " + id));
+        if (document.getContentHash() == null || pageNumber < 1) {
+            return Optional.empty();
+        }
+        return contentStorageService.readPage(document.getContentHash(), pageNumber)
+                .map(content -> DocumentPageDto.builder()
+                        .documentId(id)
+                        .pageNumber(pageNumber)
+                        .pageCount(document.getPageCount())
+                        .content(content)
+                        .build());
     }
 
     @Override
-    @Transactional
-    public DocumentDto createDocument(String title, MultipartFile file) {
+    public String getDocumentText(Long id, Integer fromPage, Integer toPage) {
+        Document document = documentRepository.findById(id)
+                .orElseThrow(() -> new NoSuchElementException("Document not found with id: " + id));
+        if (document.getPageCount() == null) {
+            // Not OCRed yet, or processed before the text moved to object storage
+            return Objects.requireNonNullElse(document.getContent(), "");
+        }
+        int from = fromPage == null ? 1 : Math.max(fromPage, 1);
+        int to = toPage == null ? document.getPageCount() : Math.min(toPage, document.getPageCount());
+        if (from > to) {
+            throw new IllegalArgumentException("Invalid page range: " + fromPage + "-" + toPage);
+        }
+        return contentStorageService.readPages(document.getContentHash(), from, to);
+    }
+
+    // Empty until the preview worker rendered the images, clients can then cache them for good
+    @Override
+    public Optional<String> getDocumentPreviewETag(Long id, PreviewKind kind) {
+        Document document = documentRepository.findById(id)
+                .orElseThrow(() -> new NoSuchElementException("Document not found with id: " + id));
+        if (document.getContentHash() == null || !"COMPLETED".equals(document.getPreviewStatus())) {
+            return Optional.empty();
+        }
+        return Optional.of(PreviewStorageService.eTag(document.getContentHash(), kind));
+    }
+
+    @Override
+    public Optional<byte[]> getDocumentPreview(Long id, PreviewKind kind) {
+        Document document = documentRepository.findById(id)
+                .orElseThrow(() -> new NoSuchElementException("Document not found with id: " + id));
+        if (document.getContentHash() == null) {
+            return Optional.empty();
+        }
+        return previewStorageService.read(document.getContentHash(), kind);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPageDto<DocumentSummaryDto> getDocumentSummaries(String cursor, Integer size, String direction) {
+        return scroll(cursor, size, direction, DocumentSummaryView.class,
+                DocumentSummaryView::getCreatedDate, DocumentSummaryView::getId, this::toSummaries);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public CursorPageDto<DocumentDto> getDocuments(String cursor, Integer size, String direction) {
+        // Tags of the page are loaded lazily in batches (@BatchSize), one extra statement per page
+        return scroll(cursor, size, direction, Document.class,
+                Document::getCreatedDate, Document::getId, documentMapper::entityToDto);
+    }
+
+    private List<DocumentSummaryDto> toSummaries(List<DocumentSummaryView> views) {
+        if (views.isEmpty()) {
+            return List.of();
+        }
+        // One query for the tag names of the whole page instead of one per document
+        Map<Long, List<String>> tagNames = documentRepository
+                .findTagNamesByDocumentIds(views.stream().map(DocumentSummaryView::getId).toList())
+                .stream()
+                .collect(Collectors.groupingBy(DocumentTagName::getDocumentId,
+                        Collectors.mapping(DocumentTagName::getName, Collectors.toList())));
+        return views.stream()
+                .map(view -> documentMapper.viewToSummaryDto(view, tagNames.getOrDefault(view.getId(), List.of())))
+                .toList();
+    }
+
+    private <T, R> CursorPageDto<R> scroll(String cursor, Integer size, String direction, Class<T> type,
+                                           Function<T, OffsetDateTime> createdDate, Function<T, Long> id,
+                                           Function<List<T>, List<R>> mapper) {
+        int pageSize = size == null ? DEFAULT_PAGE_SIZE : Math.clamp(size, 1, MAX_PAGE_SIZE);
+
+        // A cursor carries its own direction, so following pages keep the order of the first one
+        DocumentCursor position = cursor == null || cursor.isBlank() ? null : DocumentCursor.decode(cursor);
+        Sort.Direction sortDirection = position != null ? position.direction() : parseDirection(direction);
+        ScrollPosition scrollPosition = position != null ? position.toScrollPosition() : ScrollPosition.keyset();
+
+        Window<T> window = documentRepository.findBy(
+                scrollPosition, DocumentCursor.sort(sortDirection), Limit.of(pageSize), type);
+
+        String nextCursor = null;
+        if (window.hasNext() && !window.isEmpty()) {
+            T last = window.getContent().getLast();
+            nextCursor = new DocumentCursor(sortDirection, createdDate.apply(last), id.apply(last)).encode();
+        }
+
+        return CursorPageDto.<R>builder()
+                .items(mapper.apply(window.getContent()))
+                .size(pageSize)
+                .hasNext(nextCursor != null)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    private Sort.Direction parseDirection(String direction) {
+        if (direction == null || direction.isBlank()) {
+            return Sort.Direction.DESC;
+        }
+        return Sort.Direction.fromOptionalString(direction)
+                .orElseThrow(() -> new IllegalArgumentException("Invalid sort direction: " + direction));
+    }
+
+    // Uploads run outside of a transaction, so a slow upload doesn't hold on to a database connection
+    @Override
+    public DocumentDto createDocument(String title, MultipartFile file, UploadOrigin origin) {
         if (file.isEmpty() || !Objects.equals(file.getContentType(), "application/pdf")) {
             log.warn("Attempted to upload invalid file: {}", file.getOriginalFilename());
             throw new IllegalArgumentException("Invalid file: Please upload a PDF document.");
@@ -50,65 +208,194 @@ public class DocumentServiceImpl implements DocumentService {
         log.info("Beginning file upload process for document title: {}", title);
 
         // Store the file in MinIO
-        String storagePath = minioStorageService.save(file);
-        log.info("File successfully stored in MinIO with path: {}", storagePath);
+        StoredObject stored = pipelineMetrics.timeUploadStage("storage", () -> minioStorageService.save(file));
+        return registerDocument(title, stored, origin);
+    }
+
+    @Override
+    public DocumentDto createDocument(String title, InputStream content, UploadOrigin origin) {
+        InputStream in = content.markSupported() ? content : new BufferedInputStream(content);
+        if (!startsWithPdfSignature(in)) {
+            log.warn("Attempted to stream invalid file for document title: {}", title);
+            throw new IllegalArgumentException("Invalid file: Please upload a PDF document.");
+        }
+
+        log.info("Beginning streaming upload for document title: {}", title);
+
+        // Piped straight into a MinIO multipart upload, size and hash are computed on the fly
+        StoredObject stored = pipelineMetrics.timeUploadStage("storage",
+                () -> minioStorageService.save(in, "application/pdf"));
+        return registerDocument(title, stored, origin);
+    }
+
+    // Also used for the entries of batch ZIP archives
+    static boolean startsWithPdfSignature(InputStream in) {
+        try {
+            in.mark(PDF_SIGNATURE.length);
+            byte[] head = in.readNBytes(PDF_SIGNATURE.length);
+            in.reset();
+            return Arrays.equals(head, PDF_SIGNATURE);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read uploaded file", e);
+        }
+    }
+
+    private DocumentDto registerDocument(String title, StoredObject stored, UploadOrigin origin) {
+        log.info("File successfully stored in MinIO with path: {}", stored.objectName());
 
         // Create the document metadata
         Document newDoc = new Document();
         newDoc.setTitle(title);
-        newDoc.setStoragePath(storagePath);
+        newDoc.setStoragePath(stored.objectName());
         newDoc.setStatus("PROCESSING");
-        newDoc.setFileSize(file.getSize());
-
-        // Save metadata to postgres
-        Document savedDocument = documentRepository.save(newDoc);
-        log.info("Document metadata saved to database with ID: {}", savedDocument.getId());
-
-        log.info("Sending message for document ID {} to RabbitMQ.", savedDocument.getId());
-        rabbitTemplate.convertAndSend(
-                RabbitMQConfig.EXCHANGE_NAME,
-                RabbitMQConfig.ROUTING_KEY,
-                String.valueOf(savedDocument.getId())
-        );
-
-        log.info("Sending message for document ID {} to Search Indexing queue (Initial Metadata).",
-                savedDocument.getId());
-        rabbitTemplate.convertAndSend(
-                RabbitMQConfig.EXCHANGE_NAME,
-                RabbitMQConfig.SEARCH_ROUTING_KEY,
-                String.valueOf(savedDocument.getId())
-        );
+        newDoc.setFileSize(stored.size());
+        newDoc.setContentHash(stored.sha256());
+
+        // Identical content reuses the stored object and any OCR/GenAI results that already exist
+        PipelineStage stage = pipelineMetrics.timeUploadStage("deduplication",
+                () -> deduplicationService.deduplicate(newDoc));
+        boolean renderPreview = DeduplicationService.requestPreview(newDoc, stage);
+
+        // Save metadata and the pipeline messages in one transaction, the outbox relay publishes them after commit
+        Document savedDocument = pipelineMetrics.timeUploadStage("database", () -> transactionTemplate.execute(status -> {
+            PipelineStage confirmed = stage == PipelineStage.PENDING
+                    ? deduplicationService.confirmPending(List.of(newDoc), List.of(stage)).getFirst()
+                    : stage;
+            Document saved = documentRepository.save(newDoc);
+            log.info("Document metadata saved to database with ID: {}", saved.getId());
+            enqueuePipelineMessages(saved, confirmed, renderPreview, origin);
+            return saved;
+        }));
 
         return documentMapper.entityToDto(savedDocument);
     }
 
+    private void enqueuePipelineMessages(Document document, PipelineStage stage, boolean renderPreview,
+                                         UploadOrigin origin) {
+        Long documentId = document.getId();
+        if (renderPreview) {
+            log.info("Sending message for document ID {} to Preview queue.", documentId);
+            outboxService.publish(RabbitMQConfig.PREVIEW_ROUTING_KEY, documentMapper.entityToPreviewRequest(document));
+        }
+        switch (stage) {
+            case OCR -> {
+                log.info("Sending message for document ID {} to RabbitMQ ({}).", documentId, origin.priority());
+                OcrRequest request = documentMapper.entityToOcrRequest(document);
+                request.setPriority(origin.priority().name());
+                // Bulk work waits in the outbox for its fair share of the bulk lane
+                if (origin.isBulk()) {
+                    outboxService.publishFair(origin.priority().ocrRoutingKey(), origin.source(), List.of(request));
+                } else {
+                    outboxService.publish(origin.priority().ocrRoutingKey(), request);
+                }
+            }
+            case GENAI -> {
+                log.info("Sending duplicate document ID {} to GenAI queue, OCR content reused.", documentId);
+                outboxService.publish(origin.priority().genAiRoutingKey(), documentMapper.entityToGenAiRequest(document));
+            }
+            case PENDING -> log.info("Duplicate document ID {} waits for the running OCR of its content.", documentId);
+            case DONE -> log.info("Duplicate document ID {} reuses content and summary.", documentId);
+        }
+
+        log.info("Sending message for document ID {} to Search Indexing queue (Initial Metadata).", documentId);
+        outboxService.publish(RabbitMQConfig.SEARCH_ROUTING_KEY, String.valueOf(documentId));
+    }
+
     @Override
-    public DocumentDto updateDocument(Long id, DocumentDto documentDto) {
+    @Transactional
+    @CacheEvict(cacheNames = CacheConfig.DOCUMENTS_CACHE, key = "#id")
+    public DocumentDto updateDocument(Long id, DocumentUpdateDto update) {
         // Check if the document exists.
-        Document existingDocument = documentRepository.findById(id)
+        Document existingDocument = documentRepository.findWithTagsById(id)
                 .orElseThrow(() -> new NoSuchElementException("Document not found with id: " + id));
 
-        // Update the fields
-        existingDocument.setTitle(documentDto.getTitle());
-        existingDocument.setContent(documentDto.getContent());
+        // The client edited the version it read, if a worker result was written since then the edit is rejected
+        if (update.getVersion() != null && !update.getVersion().equals(existingDocument.getVersion())) {
+            throw new ObjectOptimisticLockingFailureException(Document.class, id);
+        }
+
+        // Only the title is editable: the content is OCR output whose full text lives in object storage,
+        // shared by every copy of the file and read from there for search and summaries
+        existingDocument.setTitle(update.getTitle());
 
-        // Save the updated document and return its DTO
+        // Save the updated document and return its DTO, search hits show the title from the index
         Document updatedDocument = documentRepository.save(existingDocument);
+        outboxService.publish(RabbitMQConfig.SEARCH_ROUTING_KEY, String.valueOf(updatedDocument.getId()));
         return documentMapper.entityToDto(updatedDocument);
     }
 
     @Override
+    @Transactional
+    @CacheEvict(cacheNames = CacheConfig.DOCUMENTS_CACHE, key = "#id")
+    public Optional<DocumentDto> addTag(Long id, String tagName) {
+        return documentRepository.findWithTagsById(id).map(document -> {
+            Tag tag = tagRepository.findByName(tagName)
+                    .orElseGet(() -> {
+                        Tag newTag = new Tag();
+                        newTag.setName(tagName);
+                        return tagRepository.save(newTag);
+                    });
+
+            document.getTags().add(tag);
+            Document savedDoc = documentRepository.save(document);
+            outboxService.publish(RabbitMQConfig.SEARCH_ROUTING_KEY, String.valueOf(savedDoc.getId()));
+
+            return documentMapper.entityToDto(savedDoc);
+        });
+    }
+
+    @Override
+    @Transactional
+    @CacheEvict(cacheNames = CacheConfig.DOCUMENTS_CACHE, key = "#id")
+    public Optional<DocumentDto> removeTag(Long id, Long tagId) {
+        return documentRepository.findWithTagsById(id).map(document -> {
+            document.getTags().removeIf(tag -> tag.getId().equals(tagId));
+
+            Document savedDoc = documentRepository.save(document);
+            outboxService.publish(RabbitMQConfig.SEARCH_ROUTING_KEY, String.valueOf(savedDoc.getId()));
+
+            return documentMapper.entityToDto(savedDoc);
+        });
+    }
+
+    @Override
+    @Transactional
+    @CacheEvict(cacheNames = {CacheConfig.DOCUMENTS_CACHE, CacheConfig.DOCUMENT_FILES_CACHE}, key = "#id")
     public void deleteDocument(Long id) {
         if (!documentRepository.existsById(id)) {
             throw new NoSuchElementException("Document not found with id: " + id);
         }
         documentRepository.deleteById(id);
+        // Search hits are built from the index, the indexer removes IDs that are no longer in the database
+        outboxService.publish(RabbitMQConfig.SEARCH_ROUTING_KEY, String.valueOf(id));
     }
 
     @Override
+    @Transactional(readOnly = true)
     public String getDocumentDownloadUrl(Long id) {
         Document document = documentRepository.findById(id)
                 .orElseThrow(() -> new NoSuchElementException("Document not found with id: " + id));
         return minioStorageService.getPresignedUrl(document.getStoragePath());
     }
+
+    // PDF viewers fetch a document in many range requests, each would otherwise cost a query and a HEAD request
+    @Override
+    @Cacheable(cacheNames = CacheConfig.DOCUMENT_FILES_CACHE, key = "#id")
+    public DocumentFile getDocumentFile(Long id) {
+        Document document = documentRepository.findById(id)
+                .orElseThrow(() -> new NoSuchElementException("Document not found with id: " + id));
+        StatObjectResponse stat = minioStorageService.stat(document.getStoragePath());
+        return new DocumentFile(
+                document.getStoragePath(),
+                document.getTitle() + ".pdf",
+                Objects.requireNonNullElse(stat.contentType(), "application/pdf"),
+                stat.size(),
+                "\"" + stat.etag() + "\"",
+                stat.lastModified().toInstant());
+    }
+
+    @Override
+    public InputStream openDocumentFile(DocumentFile file, long offset, long length) {
+        return minioStorageService.read(file.objectName(), offset, length);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,42 @@
+package at.technikum_wien.swen3.paperless.service;
+
+import at.technikum_wien.swen3.paperless.repository.DocumentRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Gauge paperless.documents{status} with the number of documents per pipeline status. A growing PROCESSING
+ * count with steady uploads means a stage behind the queues doesn't keep up. The counts come from one
+ * group-by query on a fixed interval instead of on every scrape.
+ */
+@Component
+@Slf4j
+public class DocumentStatusMetrics {
+
+    private final DocumentRepository documentRepository;
+    private final MultiGauge documentsByStatus;
+
+    public DocumentStatusMetrics(DocumentRepository documentRepository, MeterRegistry meterRegistry) {
+        this.documentRepository = documentRepository;
+        this.documentsByStatus = MultiGauge.builder("paperless.documents")
+                .description("Number of documents per pipeline status")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${paperless.metrics.status-refresh-interval:30000}", initialDelay = 5000)
+    public void refresh() {
+        try {
+            // overwrite: statuses without documents disappear from the gauge
+            documentsByStatus.register(documentRepository.countByStatus().stream()
+                    .filter(count -> count.getStatus() != null)
+                    .map(count -> MultiGauge.Row.of(Tags.of("status", count.getStatus()), count.getCount()))
+                    .toList(), true);
+        } catch (RuntimeException e) {
+            log.warn("Could not refresh document status gauges", e);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package at.technikum_wien.swen3.paperless.service;
+
+import at.technikum_wien.swen3.paperless.config.RabbitMQConfig;
+import at.technikum_wien.swen3.paperless.entity.OutboxMessage;
+import at.technikum_wien.swen3.paperless.repository.OutboxMessageRepository;
+import at.technikum_wien.swen3.paperless.repository.OutboxSourceCount;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Weighted fair dispatch of bulk work between sources. A queue is FIFO, so a 5,000 page import that
+ * is published at once delays every import that comes after it until it is done. Instead, bulk OCR
+ * messages stay in the outbox and only a few are kept on the bulk queue; whenever there is room, the
+ * relay asks this dispatcher which ones to publish next.
+ * <p>
+ * Room is handed out by weighted fair queueing: every source has a virtual time that advances by
+ * 1/weight for each message released, and the source with the earliest next virtual time goes next.
+ * A source that starts holding messages joins at the current minimum, so it neither starves nor gets
+ * a burst for the time it was idle. Weights default to 1 and are configured per source, e.g.
+ * {@code paperless.scheduling.source-weights=scanner:3,archive-import:1}.
+ * <p>
+ * GenAI follow-ups of bulk documents are not held, they are produced at the pace OCR is released.
+ */
+@Service
+@Slf4j
+public class FairDispatcher {
+
+    // Lanes with held messages: routing key -> queue the messages end up on
+    private static final Map<String, String> FAIR_LANES = Map.of(
+            RabbitMQConfig.OCR_BULK_ROUTING_KEY, RabbitMQConfig.OCR_BULK_QUEUE_NAME);
+
+    private final OutboxMessageRepository outboxMessageRepository;
+    private final AmqpAdmin amqpAdmin;
+    private final int maxQueued;
+    private final Map<String, Integer> weights;
+    // routing key -> source -> virtual time, only for sources that currently hold messages
+    private final Map<String, Map<String, Double>> virtualTimes = new HashMap<>();
+
+    public FairDispatcher(OutboxMessageRepository outboxMessageRepository,
+                          AmqpAdmin amqpAdmin,
+                          @Value("${paperless.scheduling.bulk.max-queued:20}") int maxQueued,
+                          @Value("${paperless.scheduling.source-weights:}") String sourceWeights) {
+        this.outboxMessageRepository = outboxMessageRepository;
+        this.amqpAdmin = amqpAdmin;
+        this.maxQueued = maxQueued;
+        this.weights = parseWeights(sourceWeights);
+    }
+
+    public static boolean isFairLane(String routingKey) {
+        return FAIR_LANES.containsKey(routingKey);
+    }
+
+    /**
+     * Locks and returns the held messages to publish now, at most as many as fit on each bulk queue.
+     * Must be called in the relay transaction, the rows are locked with SKIP LOCKED like the other
+     * outbox messages.
+     */
+    public synchronized List<OutboxMessage> release(OffsetDateTime now) {
+        List<OutboxMessage> released = new ArrayList<>();
+        FAIR_LANES.forEach((routingKey, queue) -> {
+            Map<String, Long> held = outboxMessageRepository.countHeldBySource(routingKey, now).stream()
+                    .collect(Collectors.toMap(OutboxSourceCount::getSource, OutboxSourceCount::getCount));
+            if (held.isEmpty()) {
+                virtualTimes.remove(routingKey);
+                return;
+            }
+            int room = maxQueued - queued(queue);
+            if (room <= 0) {
+                return;
+            }
+            allocate(routingKey, room, held).forEach((source, count) -> released.addAll(
+                    outboxMessageRepository.findByRoutingKeyAndSourceAndNextAttemptAtLessThanEqualOrderByIdAsc(
+                            routingKey, source, now, Limit.of(count))));
+        });
+        return released;
+    }
+
+    /**
+     * Splits room for {@code room} messages between the sources holding messages on a lane.
+     */
+    synchronized Map<String, Integer> allocate(String routingKey, int room, Map<String, Long> held) {
+        Map<String, Double> times = virtualTimes.computeIfAbsent(routingKey, key -> new HashMap<>());
+        times.keySet().retainAll(held.keySet());
+        double start = times.values().stream().min(Double::compare).orElse(0.0);
+        held.keySet().forEach(source -> times.putIfAbsent(source, start));
+
+        Map<String, Long> remaining = new HashMap<>(held);
+        Map<String, Integer> shares = new LinkedHashMap<>();
+        Comparator<String> nextFinish = Comparator.<String>comparingDouble(source -> times.get(source) + 1.0 / weight(source))
+                .thenComparing(Comparator.naturalOrder());
+        for (int i = 0; i < room; i++) {
+            String next = remaining.entrySet().stream()
+                    .filter(entry -> entry.getValue() > 0)
+                    .map(Map.Entry::getKey)
+                    .min(nextFinish)
+                    .orElse(null);
+            if (next == null) {
+                break;
+            }
+            times.merge(next, 1.0 / weight(next), Double::sum);
+            remaining.merge(next, -1L, Long::sum);
+            shares.merge(next, 1, Integer::sum);
+        }
+        return shares;
+    }
+
+    private int queued(String queue) {
+        try {
+            QueueInformation information = amqpAdmin.getQueueInfo(queue);
+            return information == null ? 0 : information.getMessageCount();
+        } catch (RuntimeException e) {
+            // Nothing can be published while the broker is unreachable
+            log.debug("Could not read the depth of {}: {}", queue, e.getMessage());
+            return maxQueued;
+        }
+    }
+
+    private int weight(String source) {
+        return weights.getOrDefault(source, 1);
+    }
+
+    static Map<String, Integer> parseWeights(String sourceWeights) {
+        Map<String, Integer> parsed = new HashMap<>();
+        if (sourceWeights == null || sourceWeights.isBlank()) {
+            return parsed;
+        }
+        for (String entry : sourceWeights.split(",")) {
+            int separator = entry.lastIndexOf(':');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Invalid source weight: " + entry + " (expected source:weight)");
+            }
+            int weight = Integer.parseInt(entry.substring(separator + 1).strip());
+            if (weight < 1) {
+                throw new IllegalArgumentException("Invalid source weight: " + entry + " (must be at least 1)");
+            }
+            parsed.put(entry.substring(0, separator).strip(), weight);
+        }
+        return parsed;
+    }
+}
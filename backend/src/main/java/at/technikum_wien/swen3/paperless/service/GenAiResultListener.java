@@ -2,43 +2,62 @@ package at.technikum_wien.swen3.paperless.service;
 
 import at.technikum_wien.swen3.paperless.config.RabbitMQConfig;
 import at.technikum_wien.swen3.paperless.dto.GenAiResult;
-import at.technikum_wien.swen3.paperless.repository.DocumentRepository;
+import at.technikum_wien.swen3.paperless.repository.DocumentJdbcRepository;
+import at.technikum_wien.swen3.paperless.repository.DocumentResultUpdate;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.messaging.Message;
 import org.springframework.stereotype.Service;
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class GenAiResultListener {
-    private final DocumentRepository documentRepository;
-    private final RabbitTemplate rabbitTemplate;
-
-    @RabbitListener(queues = RabbitMQConfig.GENAI_RESULT_QUEUE_NAME)
-    public void receiveGenAiResult(GenAiResult result) {
-        log.info("Received GenAI result for document ID: {}", result.getDocumentId());
-
-        documentRepository.findById(result.getDocumentId()).ifPresent(document -> {
-            document.setStatus(result.getStatus());
-
-            if ("COMPLETED".equals(result.getStatus())) {
-                document.setSummary(result.getSummary());
-
-                documentRepository.save(document);
-                log.info("Successfully updated summary for document ID: {}", document.getId());
-
-                log.info("Sending message for document ID {} to Search Indexing queue (GenAI Summary).", document.getId());
-                rabbitTemplate.convertAndSend(
-                        RabbitMQConfig.EXCHANGE_NAME,
-                        RabbitMQConfig.SEARCH_ROUTING_KEY,
-                        String.valueOf(document.getId())
-                );
-            } else {
-                log.error("GenAI summary failed for document ID: {}. Reason: {}", document.getId(), result.getErrorDetails());
-                documentRepository.save(document);
+    private final DocumentJdbcRepository documentJdbcRepository;
+    private final OutboxService outboxService;
+    private final ResultBatchProcessor resultBatchProcessor;
+
+    // Status updates and follow-up messages of a batch commit together
+    @RabbitListener(queues = RabbitMQConfig.GENAI_RESULT_QUEUE_NAME,
+            containerFactory = RabbitMQConfig.GENAI_RESULT_CONTAINER_FACTORY)
+    public void receiveGenAiResults(List<Message<GenAiResult>> results) {
+        log.info("Received {} GenAI results", results.size());
+        resultBatchProcessor.process(RabbitMQConfig.GENAI_RESULT_QUEUE_NAME, results, this::applyGenAiResults);
+    }
+
+    // Only status and summary are written, so OCR content or a title saved in the meantime is kept
+    void applyGenAiResults(List<GenAiResult> results) {
+        List<DocumentResultUpdate> updates = results.stream()
+                .map(result -> new DocumentResultUpdate(result.getDocumentId(), result.getStatus(),
+                        isCompleted(result) ? result.getSummary() : null))
+                .toList();
+        Set<Long> updated = new HashSet<>(documentJdbcRepository.updateSummaries(updates));
+
+        for (GenAiResult result : results) {
+            Long documentId = result.getDocumentId();
+            resultBatchProcessor.evictDocument(documentId);
+            try (MDC.MDCCloseable ignored = CorrelationId.open(result.getCorrelationId())) {
+                if (!updated.contains(documentId)) {
+                    log.warn("Received GenAI result for unknown document ID: {}", documentId);
+                } else if (isCompleted(result)) {
+                    log.info("Successfully updated summary for document ID: {}", documentId);
+
+                    log.info("Sending message for document ID {} to Search Indexing queue (GenAI Summary).", documentId);
+                    outboxService.publish(RabbitMQConfig.SEARCH_ROUTING_KEY, String.valueOf(documentId));
+                } else {
+                    log.error("GenAI summary failed for document ID: {}. Reason: {}", documentId, result.getErrorDetails());
+                }
             }
-        });
+        }
+    }
+
+    private static boolean isCompleted(GenAiResult result) {
+        return "COMPLETED".equals(result.getStatus());
     }
 }
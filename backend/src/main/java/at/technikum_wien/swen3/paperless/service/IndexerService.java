@@ -4,44 +4,130 @@ import at.technikum_wien.swen3.paperless.config.RabbitMQConfig;
 import at.technikum_wien.swen3.paperless.entity.Document;
 import at.technikum_wien.swen3.paperless.mapper.DocumentSearchMapper;
 import at.technikum_wien.swen3.paperless.repository.DocumentRepository;
-import at.technikum_wien.swen3.paperless.repository.ElasticSearchRepository;
-import lombok.RequiredArgsConstructor;
+import at.technikum_wien.swen3.paperless.search.DocumentSearchEntity;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.RefreshPolicy;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.BulkOptions;
+import org.springframework.data.elasticsearch.core.query.DeleteQuery;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.data.elasticsearch.core.query.IndexQueryBuilder;
 import org.springframework.stereotype.Service;
 
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Consumes search-queue in batches: repeated IDs within a batch are indexed once, all documents are
+ * loaded with one query and written with a single _bulk request. IDs that are no longer in the
+ * database are removed from the index.
+ */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class IndexerService {
     private final DocumentRepository documentRepository;
-    private final ElasticSearchRepository elasticSearchRepository;
+    private final ElasticsearchOperations elasticsearchOperations;
     private final DocumentSearchMapper documentSearchMapper;
+    private final ReindexService reindexService;
+    private final BulkOptions bulkOptions;
+    private final DistributionSummary batchSize;
+    private final DistributionSummary indexedDocuments;
+    private final Timer batchLatency;
+
+    public IndexerService(DocumentRepository documentRepository,
+                          ElasticsearchOperations elasticsearchOperations,
+                          DocumentSearchMapper documentSearchMapper,
+                          ReindexService reindexService,
+                          MeterRegistry meterRegistry,
+                          @Value("${paperless.indexer.refresh-policy:NONE}") RefreshPolicy refreshPolicy) {
+        this.documentRepository = documentRepository;
+        this.elasticsearchOperations = elasticsearchOperations;
+        this.documentSearchMapper = documentSearchMapper;
+        this.reindexService = reindexService;
+        this.bulkOptions = BulkOptions.builder().withRefreshPolicy(refreshPolicy).build();
+        this.batchSize = DistributionSummary.builder("paperless.indexer.batch.size")
+                .description("Messages received per indexing batch")
+                .register(meterRegistry);
+        this.indexedDocuments = DistributionSummary.builder("paperless.indexer.batch.documents")
+                .description("Distinct documents written per indexing batch")
+                .register(meterRegistry);
+        this.batchLatency = Timer.builder("paperless.indexer.batch.latency")
+                .description("Time to load and bulk index one batch")
+                .register(meterRegistry);
+    }
 
-    @RabbitListener(queues = RabbitMQConfig.SEARCH_QUEUE_NAME)
-    public void indexDocument(String documentId) {
-        log.info("Received indexing request for document ID: {}", documentId);
+    @RabbitListener(queues = RabbitMQConfig.SEARCH_QUEUE_NAME,
+            containerFactory = RabbitMQConfig.SEARCH_BATCH_CONTAINER_FACTORY)
+    public void indexDocuments(List<String> documentIds) {
+        batchSize.record(documentIds.size());
 
-        try {
-            Long id = Long.parseLong(documentId);
-            Document document = documentRepository.findById(id).orElse(null);
+        // Upload, OCR, GenAI and tag changes all request a reindex, within one batch the latest state is enough
+        Set<Long> ids = new LinkedHashSet<>();
+        for (String documentId : documentIds) {
+            try {
+                ids.add(Long.parseLong(documentId));
+            } catch (NumberFormatException e) {
+                log.error("Invalid document ID received for indexing: {}", documentId);
+            }
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
 
-            if (document == null) {
-                log.warn("Document with ID {} not found in database. Skipping indexing.", id);
+        batchLatency.record(() -> index(ids));
+    }
+
+    private void index(Set<Long> ids) {
+        try {
+            List<Document> documents = documentRepository.findWithTagsByIdIn(ids);
+            if (documents.size() < ids.size()) {
+                delete(ids, documents);
+            }
+            if (documents.isEmpty()) {
                 return;
             }
 
-            // Map DB entity to Search entity
-            var searchEntity = documentSearchMapper.entityToSearchEntity(document);
+            List<IndexQuery> queries = documents.stream()
+                    .map(documentSearchMapper::entityToSearchEntity)
+                    .map(searchEntity -> new IndexQueryBuilder()
+                            .withId(String.valueOf(searchEntity.getId()))
+                            .withObject(searchEntity)
+                            .build())
+                    .toList();
 
-            // Save to Elasticsearch
-            elasticSearchRepository.save(searchEntity);
-            log.info("Successfully indexed document ID: {} into Elasticsearch.", id);
+            elasticsearchOperations.bulkIndex(queries, bulkOptions, DocumentSearchEntity.class);
+            // While a reindex is loading a new index, changes go there too so the swap doesn't lose them
+            reindexService.getLoadingIndex().ifPresent(index ->
+                    elasticsearchOperations.bulkIndex(queries, bulkOptions, IndexCoordinates.of(index)));
+            indexedDocuments.record(queries.size());
+            log.info("Successfully indexed {} document(s) into Elasticsearch.", queries.size());
 
-        } catch (NumberFormatException e) {
-            log.error("Invalid document ID received for indexing: {}", documentId);
         } catch (Exception e) {
-            log.error("Error occurred while indexing document ID: {}", documentId, e);
+            log.error("Error occurred while indexing document IDs: {}", ids, e);
         }
     }
+
+    // A requested ID that is not in the database was deleted, its search document goes too
+    private void delete(Set<Long> ids, List<Document> documents) {
+        Set<Long> missing = new LinkedHashSet<>(ids);
+        documents.forEach(document -> missing.remove(document.getId()));
+        DeleteQuery query = DeleteQuery.builder(NativeQuery.builder()
+                        .withIds(missing.stream().map(String::valueOf).toList())
+                        .build())
+                .withRefresh(bulkOptions.getRefreshPolicy() != RefreshPolicy.NONE)
+                .build();
+
+        elasticsearchOperations.delete(query, DocumentSearchEntity.class);
+        reindexService.getLoadingIndex().ifPresent(index ->
+                elasticsearchOperations.delete(query, DocumentSearchEntity.class, IndexCoordinates.of(index)));
+        log.info("Removed {} deleted document(s) from Elasticsearch.", missing.size());
+    }
 }
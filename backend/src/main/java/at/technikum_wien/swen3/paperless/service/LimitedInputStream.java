@@ -0,0 +1,67 @@
+package at.technikum_wien.swen3.paperless.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Fails with an IOException once more than limit bytes are read through it, for content whose size is only
+ * known while it is read (ZIP entries) and must not fill the storage.
+ */
+class LimitedInputStream extends FilterInputStream {
+
+    private final long limit;
+    private long count;
+    private boolean exceeded;
+
+    LimitedInputStream(InputStream in, long limit) {
+        super(in);
+        this.limit = limit;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            count(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            count(n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        count(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void count(long n) throws IOException {
+        count += n;
+        if (count > limit) {
+            exceeded = true;
+            throw new IOException("Content exceeds the limit of " + limit + " bytes");
+        }
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    boolean isExceeded() {
+        return exceeded;
+    }
+}
@@ -1,5 +1,6 @@
 package at.technikum_wien.swen3.paperless.service;
 
+import at.technikum_wien.swen3.paperless.config.CacheConfig;
 import at.technikum_wien.swen3.paperless.exception.StorageException;
 import io.minio.*;
 import io.minio.http.Method;
@@ -7,9 +8,14 @@ import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
@@ -30,23 +36,89 @@ public class MinioStorageService {
     @Value("${minio.bucket.name}")
     private String bucketName;
 
-    public String save(MultipartFile file) {
+    // Hardcoding the region saves the client a bucket location lookup before signing
+    @Value("${minio.region:us-east-1}")
+    private String region;
+
+    @Value("${minio.presign.ttl:15m}")
+    private Duration presignTtl;
+
+    // Memory per upload is bounded by one part, the MinIO client buffers a part before sending it
+    @Value("${minio.upload.part-size:16MB}")
+    private DataSize partSize;
+
+    public StoredObject save(MultipartFile file) {
+        try (InputStream in = file.getInputStream()) {
+            return save(in, file.getSize(), file.getContentType());
+        } catch (IOException e) {
+            log.error("Error while reading uploaded file", e);
+            throw new StorageException("Error while uploading file to MinIO", e);
+        }
+    }
+
+    /**
+     * Streams content of unknown length into a MinIO multipart upload without staging it on heap or disk.
+     */
+    public StoredObject save(InputStream in, String contentType) {
+        return save(in, -1, contentType);
+    }
+
+    private StoredObject save(InputStream in, long size, String contentType) {
         try {
             String objectName = UUID.randomUUID().toString();
+            HashingInputStream hashing = new HashingInputStream(in);
             minio.putObject(
                     PutObjectArgs.builder()
                             .bucket(bucketName)
                             .object(objectName)
-                            .stream(file.getInputStream(), file.getSize(), -1)
-                            .contentType(file.getContentType())
+                            .stream(hashing, size, partSize.toBytes())
+                            .contentType(contentType)
                             .build());
-            return objectName;
+            return new StoredObject(objectName, hashing.getCount(), hashing.getSha256());
         } catch (Exception e) {
             log.error("Error while uploading file to MinIO", e);
             throw new StorageException("Error while uploading file to MinIO", e);
         }
     }
 
+    public void delete(String objectName) {
+        try {
+            minio.removeObject(RemoveObjectArgs.builder().bucket(bucketName).object(objectName).build());
+        } catch (Exception e) {
+            log.error("Error while removing object {} from MinIO", objectName, e);
+            throw new StorageException("Error while removing file from MinIO", e);
+        }
+    }
+
+    /**
+     * Reads the metadata of a stored object (HEAD request), the content is not transferred.
+     */
+    public StatObjectResponse stat(String objectName) {
+        try {
+            return minio.statObject(StatObjectArgs.builder().bucket(bucketName).object(objectName).build());
+        } catch (Exception e) {
+            log.error("Error while reading metadata of object {} from MinIO", objectName, e);
+            throw new StorageException("Error while reading file from MinIO", e);
+        }
+    }
+
+    /**
+     * Opens a stream over length bytes of the object starting at offset, MinIO only sends that range.
+     */
+    public InputStream read(String objectName, long offset, long length) {
+        try {
+            return minio.getObject(GetObjectArgs.builder()
+                    .bucket(bucketName)
+                    .object(objectName)
+                    .offset(offset)
+                    .length(length)
+                    .build());
+        } catch (Exception e) {
+            log.error("Error while reading object {} from MinIO", objectName, e);
+            throw new StorageException("Error while reading file from MinIO", e);
+        }
+    }
+
     @PostConstruct
     private void createBucketIfNotExists() {
         try {
@@ -63,6 +135,8 @@ public class MinioStorageService {
         }
     }
 
+    // Signing is CPU work per call, the URL stays valid longer than it is cached
+    @Cacheable(CacheConfig.PRESIGNED_URLS_CACHE)
     public String getPresignedUrl(String objectName) {
         try {
             return minioPublic.getPresignedObjectUrl(
@@ -70,8 +144,8 @@ public class MinioStorageService {
                             .method(Method.GET)
                             .bucket(bucketName)
                             .object(objectName)
-                            .expiry(1, TimeUnit.MINUTES)
-                            .region("us-east-1")
+                            .expiry((int) presignTtl.toSeconds(), TimeUnit.SECONDS)
+                            .region(region)
                             .build()
             );
         } catch (Exception e) {
@@ -1,50 +1,129 @@
 package at.technikum_wien.swen3.paperless.service;
 
 import at.technikum_wien.swen3.paperless.config.RabbitMQConfig;
+import at.technikum_wien.swen3.paperless.dto.GenAiRequest;
 import at.technikum_wien.swen3.paperless.dto.OcrResult;
-import at.technikum_wien.swen3.paperless.repository.DocumentRepository;
+import at.technikum_wien.swen3.paperless.repository.DocumentJdbcRepository;
+import at.technikum_wien.swen3.paperless.repository.DocumentResultUpdate;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.messaging.Message;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class OcrResultListener {
-    private final DocumentRepository documentRepository;
-    private final RabbitTemplate rabbitTemplate;
-
-    @RabbitListener(queues = RabbitMQConfig.OCR_RESULT_QUEUE_NAME)
-    public void receiveOcrResult(OcrResult result) {
-        log.info("Received OCR result for document ID: {}", result.getDocumentId());
-
-        documentRepository.findById(result.getDocumentId()).ifPresent(document -> {
-            document.setStatus(result.getStatus());
-            if ("SUCCESS".equals(result.getStatus())) {
-                document.setContent(result.getContentText());
-                log.info("Successfully updated content for document ID: {}", document.getId());
-
-                documentRepository.save(document);
-
-                log.info("Sending message to GenAI queue for document ID: {}", document.getId());
-                rabbitTemplate.convertAndSend(
-                        RabbitMQConfig.EXCHANGE_NAME,
-                        RabbitMQConfig.GENAI_ROUTING_KEY,
-                        String.valueOf(document.getId())
-                );
-
-                log.info("Sending message for document ID {} to Search Indexing queue (OCR Content).", document.getId());
-                rabbitTemplate.convertAndSend(
-                        RabbitMQConfig.EXCHANGE_NAME,
-                        RabbitMQConfig.SEARCH_ROUTING_KEY,
-                        String.valueOf(document.getId())
-                );
-            } else {
-                log.error("OCR failed for document ID: {}. Reason: {}", document.getId(), result.getErrorDetails());
-                documentRepository.save(document);
+    private final DocumentJdbcRepository documentJdbcRepository;
+    private final ContentStorageService contentStorageService;
+    private final OutboxService outboxService;
+    private final ResultBatchProcessor resultBatchProcessor;
+
+    // Status updates and follow-up messages of a batch commit together
+    @RabbitListener(queues = RabbitMQConfig.OCR_RESULT_QUEUE_NAME,
+            containerFactory = RabbitMQConfig.OCR_RESULT_CONTAINER_FACTORY)
+    public void receiveOcrResults(List<Message<OcrResult>> results) {
+        log.info("Received {} OCR results", results.size());
+        resultBatchProcessor.process(RabbitMQConfig.OCR_RESULT_QUEUE_NAME, results, this::applyOcrResults);
+    }
+
+    // Only status and content are written, so a summary or title saved in the meantime is kept
+    void applyOcrResults(List<OcrResult> results) {
+        Set<Long> updated = new HashSet<>(documentJdbcRepository.updateContents(toUpdates(results)));
+        // Duplicates uploaded while OCR of their content was running wait for this result instead of running
+        // OCR again. Queried after the update, which waits for the lock of an upload that is adding one
+        List<OcrResult> copies = waitingCopies(results);
+        updated.addAll(documentJdbcRepository.updateContents(toUpdates(copies)));
+
+        for (OcrResult result : Stream.concat(results.stream(), copies.stream()).toList()) {
+            Long documentId = result.getDocumentId();
+            resultBatchProcessor.evictDocument(documentId);
+            // Follow-up messages are stored with the correlation ID of the upload
+            try (MDC.MDCCloseable ignored = CorrelationId.open(result.getCorrelationId())) {
+                if (!updated.contains(documentId)) {
+                    log.warn("Received OCR result for unknown document ID: {}", documentId);
+                } else if (isSuccess(result)) {
+                    log.info("Successfully updated content for document ID: {}", documentId);
+
+                    // Summaries of bulk imports stay on the bulk lane
+                    UploadPriority priority = UploadPriority.fromMessage(result.getPriority());
+                    log.info("Sending message to GenAI queue for document ID: {} ({})", documentId, priority);
+                    outboxService.publish(priority.genAiRoutingKey(), toGenAiRequest(result));
+
+                    log.info("Sending message for document ID {} to Search Indexing queue (OCR Content).", documentId);
+                    outboxService.publish(RabbitMQConfig.SEARCH_ROUTING_KEY, String.valueOf(documentId));
+                } else {
+                    log.error("OCR failed for document ID: {}. Reason: {}", documentId, result.getErrorDetails());
+                }
             }
-        });
+        }
+    }
+
+    // The worker stored the full text in object storage, the database keeps a preview. In id order, like the
+    // locks an upload takes on the documents its duplicates wait for
+    private List<DocumentResultUpdate> toUpdates(List<OcrResult> results) {
+        return results.stream()
+                .map(result -> new DocumentResultUpdate(result.getDocumentId(), result.getStatus(),
+                        isSuccess(result) ? contentStorageService.preview(result.getContentText()) : null,
+                        isSuccess(result) ? result.getPageCount() : null))
+                .sorted(Comparator.comparing(DocumentResultUpdate::documentId))
+                .toList();
+    }
+
+    // Failures are passed on too, a copy would otherwise stay PROCESSING. If the batch holds several results
+    // for the same content, a successful one wins
+    private List<OcrResult> waitingCopies(List<OcrResult> results) {
+        Map<String, OcrResult> resultsByHash = new HashMap<>();
+        results.stream()
+                .filter(result -> result.getContentHash() != null)
+                .forEach(result -> resultsByHash.merge(result.getContentHash(), result,
+                        (first, next) -> isSuccess(first) ? first : next));
+        Set<Long> resultIds = results.stream().map(OcrResult::getDocumentId).collect(Collectors.toSet());
+
+        List<OcrResult> copies = new ArrayList<>();
+        documentJdbcRepository.findProcessingIdsByContentHash(resultsByHash.keySet()).forEach((contentHash, ids) -> ids.stream()
+                .filter(id -> !resultIds.contains(id))
+                .forEach(id -> copies.add(copyFor(resultsByHash.get(contentHash), id))));
+        return copies;
+    }
+
+    private static OcrResult copyFor(OcrResult result, Long documentId) {
+        OcrResult copy = new OcrResult();
+        copy.setDocumentId(documentId);
+        copy.setContentText(result.getContentText());
+        copy.setStatus(result.getStatus());
+        copy.setErrorDetails(result.getErrorDetails());
+        copy.setPageCount(result.getPageCount());
+        copy.setContentHash(result.getContentHash());
+        copy.setPriority(result.getPriority());
+        copy.setCorrelationId(result.getCorrelationId());
+        return copy;
+    }
+
+    // A reference to the text pages, results of older workers still carry the whole text
+    private static GenAiRequest toGenAiRequest(OcrResult result) {
+        boolean stored = result.getPageCount() != null && result.getContentHash() != null;
+        return GenAiRequest.builder()
+                .documentId(result.getDocumentId())
+                .contentHash(result.getContentHash())
+                .pageCount(stored ? result.getPageCount() : null)
+                .text(stored ? null : result.getContentText())
+                .build();
+    }
+
+    private static boolean isSuccess(OcrResult result) {
+        return "SUCCESS".equals(result.getStatus());
     }
 }
@@ -0,0 +1,127 @@
+package at.technikum_wien.swen3.paperless.service;
+
+import at.technikum_wien.swen3.paperless.entity.OutboxMessage;
+import at.technikum_wien.swen3.paperless.repository.OutboxMessageRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Drains the outbox table in batches: publishes every batch inside one channel, waits for publisher
+ * confirms and only then deletes the rows. Failed batches are retried with exponential backoff.
+ * Held bulk work is added to a batch as {@link FairDispatcher} releases it.
+ */
+@Service
+@Slf4j
+public class OutboxRelay {
+
+    private static final Duration MAX_BACKOFF = Duration.ofMinutes(5);
+
+    private final OutboxMessageRepository outboxMessageRepository;
+    private final RabbitTemplate rabbitTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PipelineMetrics pipelineMetrics;
+    private final FairDispatcher fairDispatcher;
+
+    @Value("${paperless.outbox.batch-size:500}")
+    private int batchSize;
+
+    @Value("${paperless.outbox.confirm-timeout:10000}")
+    private long confirmTimeoutMillis;
+
+    public OutboxRelay(OutboxMessageRepository outboxMessageRepository,
+                       RabbitTemplate rabbitTemplate,
+                       TransactionTemplate transactionTemplate,
+                       PipelineMetrics pipelineMetrics,
+                       FairDispatcher fairDispatcher) {
+        this.outboxMessageRepository = outboxMessageRepository;
+        this.rabbitTemplate = rabbitTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.pipelineMetrics = pipelineMetrics;
+        this.fairDispatcher = fairDispatcher;
+    }
+
+    @Scheduled(fixedDelayString = "${paperless.outbox.poll-interval:200}")
+    public void drain() {
+        // Keep going while full batches come back, so a backlog is not limited by the poll interval
+        Integer relayed;
+        do {
+            relayed = transactionTemplate.execute(status -> relayBatch());
+        } while (relayed != null && relayed >= batchSize);
+    }
+
+    int relayBatch() {
+        OffsetDateTime now = OffsetDateTime.now();
+        List<OutboxMessage> messages = new ArrayList<>(
+                outboxMessageRepository.findBySourceIsNullAndNextAttemptAtLessThanEqualOrderByIdAsc(now, Limit.of(batchSize)));
+        messages.addAll(fairDispatcher.release(now));
+        if (messages.isEmpty()) {
+            return 0;
+        }
+
+        try {
+            pipelineMetrics.outboxPublish().record(() -> rabbitTemplate.invoke(operations -> {
+                for (OutboxMessage message : messages) {
+                    operations.send(message.getExchange(), message.getRoutingKey(), toAmqpMessage(message));
+                }
+                operations.waitForConfirmsOrDie(confirmTimeoutMillis);
+                return null;
+            }));
+        } catch (RuntimeException e) {
+            log.warn("Publishing {} outbox message(s) failed, will retry", messages.size(), e);
+            for (OutboxMessage message : messages) {
+                message.setAttempts(message.getAttempts() + 1);
+                message.setNextAttemptAt(now.plus(backoff(message.getAttempts())));
+                message.setLastError(abbreviate(e.getMessage()));
+            }
+            return 0;
+        }
+
+        messages.forEach(message -> pipelineMetrics.recordOutboxLag(toInstant(message.getCreatedAt())));
+        outboxMessageRepository.deleteAllInBatch(messages);
+        log.debug("Relayed {} outbox message(s)", messages.size());
+        return messages.size();
+    }
+
+    private static Message toAmqpMessage(OutboxMessage message) {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        properties.setContentEncoding(StandardCharsets.UTF_8.name());
+        properties.setMessageId(String.valueOf(message.getId()));
+        properties.setCorrelationId(message.getCorrelationId());
+        // Consumers measure the queue lag from it (paperless.queue.lag)
+        properties.setTimestamp(new Date());
+        return new Message(message.getPayload().getBytes(StandardCharsets.UTF_8), properties);
+    }
+
+    private static Instant toInstant(OffsetDateTime dateTime) {
+        return dateTime == null ? null : dateTime.toInstant();
+    }
+
+    static Duration backoff(int attempts) {
+        // 1s, 2s, 4s, ... capped at MAX_BACKOFF
+        Duration delay = Duration.ofSeconds(1L << Math.min(attempts - 1, 20));
+        return delay.compareTo(MAX_BACKOFF) > 0 ? MAX_BACKOFF : delay;
+    }
+
+    private static String abbreviate(String error) {
+        if (error == null) {
+            return null;
+        }
+        return error.length() > 1000 ? error.substring(0, 1000) : error;
+    }
+}
@@ -0,0 +1,66 @@
+package at.technikum_wien.swen3.paperless.service;
+
+import at.technikum_wien.swen3.paperless.config.RabbitMQConfig;
+import at.technikum_wien.swen3.paperless.entity.OutboxMessage;
+import at.technikum_wien.swen3.paperless.repository.OutboxMessageRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+/**
+ * Transactional outbox: instead of talking to the broker, callers store messages in the current
+ * transaction. They are only published (by {@link OutboxRelay}) if that transaction commits.
+ */
+@Service
+@RequiredArgsConstructor
+public class OutboxService {
+
+    private final OutboxMessageRepository outboxMessageRepository;
+    private final ObjectMapper objectMapper;
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void publish(String routingKey, Object payload) {
+        outboxMessageRepository.save(toMessage(routingKey, payload));
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void publishAll(String routingKey, List<?> payloads) {
+        outboxMessageRepository.saveAll(payloads.stream().map(payload -> toMessage(routingKey, payload)).toList());
+    }
+
+    /**
+     * Bulk work of a source: held in the outbox and released by {@link FairDispatcher}, which shares the
+     * lane between all sources with held messages instead of publishing them in insert order.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void publishFair(String routingKey, String source, List<?> payloads) {
+        if (!FairDispatcher.isFairLane(routingKey)) {
+            throw new IllegalArgumentException("No fair dispatch for " + routingKey);
+        }
+        outboxMessageRepository.saveAll(payloads.stream().map(payload -> {
+            OutboxMessage message = toMessage(routingKey, payload);
+            message.setSource(source);
+            return message;
+        }).toList());
+    }
+
+    private OutboxMessage toMessage(String routingKey, Object payload) {
+        try {
+            return OutboxMessage.builder()
+                    .exchange(RabbitMQConfig.EXCHANGE_NAME)
+                    .routingKey(routingKey)
+                    .payload(objectMapper.writeValueAsString(payload))
+                    .correlationId(CorrelationId.current())
+                    .nextAttemptAt(OffsetDateTime.now())
+                    .build();
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Could not serialize message for " + routingKey, e);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package at.technikum_wien.swen3.paperless.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.Supplier;
+
+/**
+ * Timers of the document pipeline, exported by actuator (/actuator/prometheus). Together they show which
+ * stage limits throughput:
+ * <ul>
+ *     <li>paperless.upload.stage{stage=storage|deduplication|database}: the steps of an upload request, the
+ *     database step includes writing the outbox messages</li>
+ *     <li>paperless.outbox.lag / paperless.outbox.publish: time in the outbox table, publishing a batch</li>
+ *     <li>paperless.queue.lag{queue}: time a message waited in RabbitMQ before it was consumed</li>
+ *     <li>paperless.listener.latency{queue}: time to apply one batch of consumed messages</li>
+ * </ul>
+ */
+@Component
+public class PipelineMetrics {
+
+    private final MeterRegistry meterRegistry;
+
+    public PipelineMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public <T> T timeUploadStage(String stage, Supplier<T> action) {
+        return Timer.builder("paperless.upload.stage")
+                .description("Time spent in one step of an upload request")
+                .tag("stage", stage)
+                .register(meterRegistry)
+                .record(action);
+    }
+
+    public Timer outboxPublish() {
+        return Timer.builder("paperless.outbox.publish")
+                .description("Time to publish one outbox batch and wait for the publisher confirms")
+                .register(meterRegistry);
+    }
+
+    public void recordOutboxLag(Instant createdAt) {
+        record(Timer.builder("paperless.outbox.lag")
+                .description("Time from writing an outbox message to publishing it")
+                .register(meterRegistry), createdAt);
+    }
+
+    public void recordQueueLag(String queue, Instant publishedAt) {
+        record(Timer.builder("paperless.queue.lag")
+                .description("Time a message waited in the queue before it was consumed")
+                .tag("queue", queue)
+                .register(meterRegistry), publishedAt);
+    }
+
+    public Timer listenerLatency(String queue) {
+        return Timer.builder("paperless.listener.latency")
+                .description("Time to process one batch of consumed messages")
+                .tag("queue", queue)
+                .register(meterRegistry);
+    }
+
+    private static void record(Timer timer, Instant since) {
+        if (since != null) {
+            // Clocks of the workers may be slightly ahead, a negative lag is recorded as zero
+            Duration lag = Duration.between(since, Instant.now());
+            timer.record(lag.isNegative() ? Duration.ZERO : lag);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package at.technikum_wien.swen3.paperless.service;
+
+import at.technikum_wien.swen3.paperless.config.RabbitMQConfig;
+import at.technikum_wien.swen3.paperless.dto.PreviewResult;
+import at.technikum_wien.swen3.paperless.repository.DocumentJdbcRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.messaging.Message;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PreviewResultListener {
+    private final DocumentJdbcRepository documentJdbcRepository;
+    private final ResultBatchProcessor resultBatchProcessor;
+
+    @RabbitListener(queues = RabbitMQConfig.PREVIEW_RESULT_QUEUE_NAME,
+            containerFactory = RabbitMQConfig.PREVIEW_RESULT_CONTAINER_FACTORY)
+    public void receivePreviewResults(List<Message<PreviewResult>> results) {
+        log.info("Received {} preview results", results.size());
+        resultBatchProcessor.process(RabbitMQConfig.PREVIEW_RESULT_QUEUE_NAME, results, this::applyPreviewResults);
+    }
+
+    // The images are keyed by content hash, so the status is set on every document sharing it
+    void applyPreviewResults(List<PreviewResult> results) {
+        Map<String, String> statusByContentHash = new LinkedHashMap<>();
+        for (PreviewResult result : results) {
+            if (result.getContentHash() == null) {
+                log.warn("Ignoring preview result without content hash for document ID: {}", result.getDocumentId());
+                continue;
+            }
+            if (!isCompleted(result)) {
+                try (MDC.MDCCloseable ignored = CorrelationId.open(result.getCorrelationId())) {
+                    log.error("Preview failed for document ID: {}. Reason: {}", result.getDocumentId(), result.getErrorDetails());
+                }
+            }
+            // A completed render wins over a failed one of the same content within the batch
+            statusByContentHash.merge(result.getContentHash(), result.getStatus(),
+                    (current, next) -> "COMPLETED".equals(current) ? current : next);
+        }
+
+        List<Long> updated = documentJdbcRepository.updatePreviewStatuses(statusByContentHash);
+        updated.forEach(resultBatchProcessor::evictDocument);
+        log.info("Updated preview status of {} document(s)", updated.size());
+    }
+
+    private static boolean isCompleted(PreviewResult result) {
+        return "COMPLETED".equals(result.getStatus());
+    }
+}
@@ -0,0 +1,82 @@
+package at.technikum_wien.swen3.paperless.service;
+
+import at.technikum_wien.swen3.paperless.exception.StorageException;
+import io.minio.GetObjectArgs;
+import io.minio.MinioClient;
+import io.minio.errors.ErrorResponseException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.util.Optional;
+
+/**
+ * Thumbnails and first-page previews rendered by the preview worker. Like the OCR text they are keyed by
+ * the content hash of the PDF, so they are rendered once per content and never change afterwards, which
+ * lets them be cached by clients for as long as they like.
+ */
+@Service
+@Slf4j
+public class PreviewStorageService {
+
+    public enum PreviewKind {
+        // small image for list views
+        THUMBNAIL("thumbnail"),
+        // first page at reading size, replaces loading the whole PDF to look at a document
+        PAGE("page");
+
+        private final String objectName;
+
+        PreviewKind(String objectName) {
+            this.objectName = objectName;
+        }
+    }
+
+    // Layout shared with the preview worker
+    private static final String PREVIEW_OBJECT_FORMAT = "preview/%s/%s.jpg";
+    private static final String NO_SUCH_KEY = "NoSuchKey";
+
+    private final MinioClient minio;
+
+    @Value("${minio.bucket.name}")
+    private String bucketName;
+
+    public PreviewStorageService(@Qualifier("minioInternal") MinioClient minio) {
+        this.minio = minio;
+    }
+
+    public static String previewObjectName(String contentHash, PreviewKind kind) {
+        return PREVIEW_OBJECT_FORMAT.formatted(contentHash, kind.objectName);
+    }
+
+    /**
+     * Strong ETag of a preview, derived from the key alone so it can be compared without reading the object.
+     */
+    public static String eTag(String contentHash, PreviewKind kind) {
+        return "\"" + contentHash + "-" + kind.objectName + "\"";
+    }
+
+    /**
+     * Reads a preview image (JPEG), empty if it hasn't been rendered.
+     */
+    public Optional<byte[]> read(String contentHash, PreviewKind kind) {
+        String objectName = previewObjectName(contentHash, kind);
+        try (InputStream in = minio.getObject(GetObjectArgs.builder().bucket(bucketName).object(objectName).build())) {
+            return Optional.of(in.readAllBytes());
+        } catch (ErrorResponseException e) {
+            if (NO_SUCH_KEY.equals(e.errorResponse().code())) {
+                return Optional.empty();
+            }
+            throw storageException(objectName, e);
+        } catch (Exception e) {
+            throw storageException(objectName, e);
+        }
+    }
+
+    private static StorageException storageException(String objectName, Exception e) {
+        log.error("Error while reading preview object {} from MinIO", objectName, e);
+        return new StorageException("Error while reading document preview from MinIO", e);
+    }
+}
@@ -0,0 +1,297 @@
+package at.technikum_wien.swen3.paperless.service;
+
+import at.technikum_wien.swen3.paperless.dto.ReindexStatusDto;
+import at.technikum_wien.swen3.paperless.entity.Document;
+import at.technikum_wien.swen3.paperless.exception.ReindexInProgressException;
+import at.technikum_wien.swen3.paperless.mapper.DocumentSearchMapper;
+import at.technikum_wien.swen3.paperless.repository.DocumentRepository;
+import at.technikum_wien.swen3.paperless.search.DocumentSearchEntity;
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.elasticsearch.BulkFailureException;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.IndexOperations;
+import org.springframework.data.elasticsearch.core.index.AliasAction;
+import org.springframework.data.elasticsearch.core.index.AliasActionParameters;
+import org.springframework.data.elasticsearch.core.index.AliasActions;
+import org.springframework.data.elasticsearch.core.index.AliasData;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.data.elasticsearch.core.query.IndexQueryBuilder;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Rebuilds the search index without downtime: a new versioned index is created behind the
+ * {@value DocumentSearchEntity#INDEX_ALIAS} alias, loaded from Postgres in parallel id-range slices with
+ * replicas and refresh disabled, and the alias is swapped atomically once it is complete. Searches keep
+ * using the old index until then, and the indexer writes to both so no change made during the load is lost.
+ */
+@Service
+@Slf4j
+public class ReindexService {
+
+    static final String STATE_IDLE = "IDLE";
+    static final String STATE_RUNNING = "RUNNING";
+    static final String STATE_COMPLETED = "COMPLETED";
+    static final String STATE_FAILED = "FAILED";
+
+    private static final DateTimeFormatter VERSION_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
+    private final DocumentRepository documentRepository;
+    private final ElasticsearchOperations elasticsearchOperations;
+    private final ElasticsearchClient elasticsearchClient;
+    private final DocumentSearchMapper documentSearchMapper;
+    private final Executor reindexExecutor;
+
+    @Value("${paperless.reindex.slices:4}")
+    private int slices;
+
+    @Value("${paperless.reindex.page-size:1000}")
+    private int pageSize;
+
+    @Value("${paperless.search.replicas:1}")
+    private int replicas;
+
+    private final AtomicReference<ReindexJob> currentJob = new AtomicReference<>();
+
+    // Index being loaded by the running job, the indexer writes to it as well
+    private volatile String loadingIndex;
+
+    public ReindexService(DocumentRepository documentRepository,
+                          ElasticsearchOperations elasticsearchOperations,
+                          ElasticsearchClient elasticsearchClient,
+                          DocumentSearchMapper documentSearchMapper,
+                          @Qualifier("reindexExecutor") Executor reindexExecutor) {
+        this.documentRepository = documentRepository;
+        this.elasticsearchOperations = elasticsearchOperations;
+        this.elasticsearchClient = elasticsearchClient;
+        this.documentSearchMapper = documentSearchMapper;
+        this.reindexExecutor = reindexExecutor;
+    }
+
+    // First start: create the initial versioned index and point the alias at it. Installations from before the
+    // alias have a concrete "documents" index with the old mapping (no tags.keyword, so tag facets and filters
+    // find nothing), a reindex replaces it with an aliased one while searches keep using it
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndex() {
+        try {
+            if (aliasOps().exists()) {
+                if (currentAliasTargets().isEmpty()) {
+                    log.info("Search index {} predates the alias, migrating it with a reindex", DocumentSearchEntity.INDEX_ALIAS);
+                    start();
+                }
+                return;
+            }
+            String index = newIndexName();
+            createIndex(index, Map.of());
+            aliasOps().alias(new AliasActions(new AliasAction.Add(AliasActionParameters.builder()
+                    .withIndices(index).withAliases(DocumentSearchEntity.INDEX_ALIAS).build())));
+            log.info("Created search index {} with alias {}", index, DocumentSearchEntity.INDEX_ALIAS);
+        } catch (Exception e) {
+            log.warn("Could not initialize the search index, start a reindex once Elasticsearch is available", e);
+        }
+    }
+
+    public ReindexStatusDto start() {
+        ReindexJob previous = currentJob.get();
+        if (previous != null && previous.state.equals(STATE_RUNNING)) {
+            throw new ReindexInProgressException("A reindex into " + previous.index + " is already running");
+        }
+        ReindexJob job = new ReindexJob(newIndexName());
+        if (!currentJob.compareAndSet(previous, job)) {
+            throw new ReindexInProgressException("A reindex is already running");
+        }
+        try {
+            reindexExecutor.execute(() -> run(job));
+        } catch (TaskRejectedException e) {
+            // The threads of the previous job are still being released, the pool has no queue
+            currentJob.compareAndSet(job, previous);
+            throw new ReindexInProgressException("The previous reindex is still finishing, try again shortly");
+        }
+        return job.toDto();
+    }
+
+    public ReindexStatusDto getStatus() {
+        ReindexJob job = currentJob.get();
+        return job == null ? ReindexStatusDto.builder().state(STATE_IDLE).build() : job.toDto();
+    }
+
+    public Optional<String> getLoadingIndex() {
+        return Optional.ofNullable(loadingIndex);
+    }
+
+    void run(ReindexJob job) {
+        try {
+            // No replicas and no refreshes while bulk loading, both are restored before the swap
+            createIndex(job.index, Map.of("index.number_of_replicas", 0, "index.refresh_interval", "-1"));
+            loadingIndex = job.index;
+
+            long maxId = documentRepository.findMaxId().orElse(0L);
+            job.total = documentRepository.count();
+            log.info("Reindexing {} document(s) into {} with {} slice(s)", job.total, job.index, slices);
+
+            List<CompletableFuture<Void>> loads = new ArrayList<>();
+            long sliceSize = Math.max(1, (maxId + slices - 1) / slices);
+            for (long from = 0; from < maxId; from += sliceSize) {
+                long afterId = from;
+                long upToId = Math.min(from + sliceSize, maxId);
+                loads.add(CompletableFuture.runAsync(() -> loadSlice(job, afterId, upToId), reindexExecutor));
+            }
+            CompletableFuture.allOf(loads.toArray(CompletableFuture[]::new)).join();
+
+            elasticsearchClient.indices().putSettings(p -> p
+                    .index(job.index)
+                    .settings(s -> s.numberOfReplicas(String.valueOf(replicas)).refreshInterval(t -> t.time("1s"))));
+            elasticsearchOperations.indexOps(IndexCoordinates.of(job.index)).refresh();
+
+            swapAlias(job.index);
+            job.finish(STATE_COMPLETED, null);
+            log.info("Reindex into {} completed: {} document(s), {} docs/s",
+                    job.index, job.indexed.get(), Math.round(job.documentsPerSecond()));
+        } catch (Exception e) {
+            log.error("Reindex into {} failed", job.index, e);
+            job.finish(STATE_FAILED, e.getMessage());
+            deleteQuietly(job.index);
+        } finally {
+            loadingIndex = null;
+        }
+    }
+
+    private void loadSlice(ReindexJob job, long afterId, long upToId) {
+        long lastId = afterId;
+        while (true) {
+            List<Long> ids = documentRepository.findIdsInRange(lastId, upToId, Limit.of(pageSize));
+            if (ids.isEmpty()) {
+                return;
+            }
+            List<Document> documents = documentRepository.findWithTagsByIdIn(ids);
+            // op_type=create: a document the indexer already wrote during the load is newer, keep it
+            List<IndexQuery> queries = documents.stream()
+                    .map(documentSearchMapper::entityToSearchEntity)
+                    .map(searchEntity -> new IndexQueryBuilder()
+                            .withId(String.valueOf(searchEntity.getId()))
+                            .withObject(searchEntity)
+                            .withOpType(IndexQuery.OpType.CREATE)
+                            .build())
+                    .toList();
+            try {
+                elasticsearchOperations.bulkIndex(queries, IndexCoordinates.of(job.index));
+            } catch (BulkFailureException e) {
+                boolean onlyConflicts = e.getFailedDocuments().values().stream()
+                        .allMatch(failure -> Integer.valueOf(409).equals(failure.status()));
+                if (!onlyConflicts) {
+                    throw e;
+                }
+            }
+            job.indexed.addAndGet(queries.size());
+            lastId = ids.getLast();
+        }
+    }
+
+    private void swapAlias(String index) {
+        Map<String, Set<AliasData>> current = currentAliasTargets();
+        AliasActions actions = new AliasActions(new AliasAction.Add(AliasActionParameters.builder()
+                .withIndices(index).withAliases(DocumentSearchEntity.INDEX_ALIAS).build()));
+        if (current.isEmpty() && elasticsearchOperations.indexOps(IndexCoordinates.of(DocumentSearchEntity.INDEX_ALIAS)).exists()) {
+            // Installations from before the alias had a concrete "documents" index, it's replaced in the same step
+            actions.add(new AliasAction.RemoveIndex(AliasActionParameters.builder()
+                    .withIndices(DocumentSearchEntity.INDEX_ALIAS).build()));
+        } else if (!current.isEmpty()) {
+            actions.add(new AliasAction.Remove(AliasActionParameters.builder()
+                    .withIndices(current.keySet().toArray(String[]::new))
+                    .withAliases(DocumentSearchEntity.INDEX_ALIAS).build()));
+        }
+        aliasOps().alias(actions);
+        log.info("Alias {} now points to {}", DocumentSearchEntity.INDEX_ALIAS, index);
+
+        current.keySet().forEach(this::deleteQuietly);
+    }
+
+    private Map<String, Set<AliasData>> currentAliasTargets() {
+        try {
+            return aliasOps().getAliases(DocumentSearchEntity.INDEX_ALIAS);
+        } catch (Exception e) {
+            // 404 when "documents" is not an alias
+            return Map.of();
+        }
+    }
+
+    private void createIndex(String index, Map<String, Object> settings) {
+        IndexOperations entityOps = elasticsearchOperations.indexOps(DocumentSearchEntity.class);
+        elasticsearchOperations.indexOps(IndexCoordinates.of(index)).create(settings, entityOps.createMapping());
+    }
+
+    private void deleteQuietly(String index) {
+        try {
+            elasticsearchOperations.indexOps(IndexCoordinates.of(index)).delete();
+        } catch (Exception e) {
+            log.warn("Could not delete search index {}", index, e);
+        }
+    }
+
+    private IndexOperations aliasOps() {
+        return elasticsearchOperations.indexOps(IndexCoordinates.of(DocumentSearchEntity.INDEX_ALIAS));
+    }
+
+    private static String newIndexName() {
+        return DocumentSearchEntity.INDEX_ALIAS + "-" + OffsetDateTime.now().format(VERSION_FORMAT);
+    }
+
+    static final class ReindexJob {
+        final String index;
+        final OffsetDateTime startedAt = OffsetDateTime.now();
+        final AtomicLong indexed = new AtomicLong();
+        volatile long total;
+        volatile String state = STATE_RUNNING;
+        volatile OffsetDateTime finishedAt;
+        volatile String error;
+
+        ReindexJob(String index) {
+            this.index = index;
+        }
+
+        void finish(String state, String error) {
+            this.finishedAt = OffsetDateTime.now();
+            this.error = error;
+            this.state = state;
+        }
+
+        double documentsPerSecond() {
+            OffsetDateTime end = finishedAt != null ? finishedAt : OffsetDateTime.now();
+            long millis = Math.max(1, Duration.between(startedAt, end).toMillis());
+            return indexed.get() * 1000.0 / millis;
+        }
+
+        ReindexStatusDto toDto() {
+            return ReindexStatusDto.builder()
+                    .state(state)
+                    .targetIndex(index)
+                    .total(total)
+                    .indexed(indexed.get())
+                    .documentsPerSecond(documentsPerSecond())
+                    .startedAt(startedAt)
+                    .finishedAt(finishedAt)
+                    .error(error)
+                    .build();
+        }
+    }
+}
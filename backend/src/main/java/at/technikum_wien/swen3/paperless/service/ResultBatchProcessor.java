@@ -0,0 +1,69 @@
+package at.technikum_wien.swen3.paperless.service;
+
+import at.technikum_wien.swen3.paperless.config.CacheConfig;
+import at.technikum_wien.swen3.paperless.config.RabbitMQConfig;
+import at.technikum_wien.swen3.paperless.dto.PipelineResult;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.messaging.Message;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Applies a batch of worker results in one transaction. If the batch fails, every result is retried
+ * in its own transaction and the ones that still fail are parked on the queue's dead-letter queue,
+ * so one bad result doesn't take the rest of its batch with it.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ResultBatchProcessor {
+
+    private final TransactionTemplate transactionTemplate;
+    private final RabbitTemplate rabbitTemplate;
+    private final CacheManager cacheManager;
+    private final PipelineMetrics pipelineMetrics;
+
+    public <T extends PipelineResult> void process(String queueName, List<Message<T>> messages, Consumer<List<T>> handler) {
+        List<T> results = messages.stream().map(ResultBatchProcessor::withCorrelationId).toList();
+        pipelineMetrics.listenerLatency(queueName).record(() -> {
+            try {
+                transactionTemplate.executeWithoutResult(status -> handler.accept(results));
+            } catch (RuntimeException e) {
+                log.warn("Batch of {} results from {} failed, retrying one by one: {}", results.size(), queueName, e.getMessage());
+                results.forEach(result -> processSingle(queueName, result, handler));
+            }
+        });
+    }
+
+    private static <T extends PipelineResult> T withCorrelationId(Message<T> message) {
+        T result = message.getPayload();
+        if (result.getCorrelationId() == null) {
+            result.setCorrelationId(message.getHeaders().get(AmqpHeaders.CORRELATION_ID, String.class));
+        }
+        return result;
+    }
+
+    private <T extends PipelineResult> void processSingle(String queueName, T result, Consumer<List<T>> handler) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> handler.accept(List.of(result)));
+        } catch (RuntimeException e) {
+            log.error("Result from {} failed, moving it to the dead-letter queue: {}", queueName, e.getMessage());
+            rabbitTemplate.convertAndSend(RabbitMQConfig.DEAD_LETTER_EXCHANGE_NAME, queueName, result);
+        }
+    }
+
+    // Called inside the batch transaction, the transaction-aware cache only evicts after commit
+    public void evictDocument(Long documentId) {
+        Cache cache = Objects.requireNonNull(cacheManager.getCache(CacheConfig.DOCUMENTS_CACHE));
+        cache.evict(documentId);
+    }
+}
@@ -0,0 +1,7 @@
+package at.technikum_wien.swen3.paperless.service;
+
+/**
+ * Result of an upload to MinIO, size and SHA-256 (hex) are computed while the content is streamed.
+ */
+public record StoredObject(String objectName, long size, String sha256) {
+}
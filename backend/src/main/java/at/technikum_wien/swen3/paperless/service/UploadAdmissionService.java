@@ -0,0 +1,214 @@
+package at.technikum_wien.swen3.paperless.service;
+
+import at.technikum_wien.swen3.paperless.config.RabbitMQConfig;
+import at.technikum_wien.swen3.paperless.exception.UploadRejectedException;
+import at.technikum_wien.swen3.paperless.repository.OutboxMessageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Admission control for uploads. Every upload ends up as OCR work, so new uploads are turned away with
+ * 429 and a Retry-After while the pipeline is too far behind, instead of piling up hours of OCR backlog,
+ * PROCESSING rows and broker memory.
+ * <p>
+ * Two signals are checked per priority class:
+ * <ul>
+ *     <li>the backlog of the priority's OCR lane: messages waiting on ocr-queue plus OCR messages in the outbox
+ *     not published yet for interactive uploads, ocr-bulk-queue plus held bulk OCR messages for bulk uploads. It is
+ *     sampled on an interval so an upload doesn't cost a call to the broker</li>
+ *     <li>uploads in flight on this instance (streaming to MinIO, writing the database)</li>
+ * </ul>
+ * Bulk imports hit their limits long before interactive uploads do, and a bulk backlog doesn't count
+ * against interactive uploads.
+ */
+@Service
+@Slf4j
+public class UploadAdmissionService {
+
+    // Uploads in flight finish within seconds, the client can come back soon
+    private static final Duration IN_FLIGHT_RETRY_AFTER = Duration.ofSeconds(5);
+
+    private final AmqpAdmin amqpAdmin;
+    private final OutboxMessageRepository outboxMessageRepository;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final Duration retryAfter;
+    private final Duration maxRetryAfter;
+    private final Map<UploadPriority, Long> maxBacklog = new EnumMap<>(UploadPriority.class);
+    private final Map<UploadPriority, Semaphore> inFlight = new EnumMap<>(UploadPriority.class);
+
+    // -1 until the first sample, uploads are admitted while the backlog is unknown
+    private final Map<UploadPriority, AtomicLong> backlog = new EnumMap<>(UploadPriority.class);
+
+    public UploadAdmissionService(AmqpAdmin amqpAdmin,
+                                  OutboxMessageRepository outboxMessageRepository,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${paperless.admission.enabled:true}") boolean enabled,
+                                  @Value("${paperless.admission.interactive.max-backlog:5000}") long interactiveMaxBacklog,
+                                  @Value("${paperless.admission.interactive.max-in-flight:32}") int interactiveMaxInFlight,
+                                  @Value("${paperless.admission.bulk.max-backlog:1000}") long bulkMaxBacklog,
+                                  @Value("${paperless.admission.bulk.max-in-flight:8}") int bulkMaxInFlight,
+                                  @Value("${paperless.admission.retry-after:30s}") Duration retryAfter,
+                                  @Value("${paperless.admission.max-retry-after:10m}") Duration maxRetryAfter) {
+        this.amqpAdmin = amqpAdmin;
+        this.outboxMessageRepository = outboxMessageRepository;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.retryAfter = retryAfter;
+        this.maxRetryAfter = maxRetryAfter;
+        maxBacklog.put(UploadPriority.INTERACTIVE, interactiveMaxBacklog);
+        maxBacklog.put(UploadPriority.BULK, bulkMaxBacklog);
+        inFlight.put(UploadPriority.INTERACTIVE, new Semaphore(interactiveMaxInFlight));
+        inFlight.put(UploadPriority.BULK, new Semaphore(bulkMaxInFlight));
+        for (UploadPriority priority : UploadPriority.values()) {
+            AtomicLong sample = new AtomicLong(-1);
+            backlog.put(priority, sample);
+            Gauge.builder("paperless.upload.backlog", sample, AtomicLong::get)
+                    .description("Queued plus unpublished OCR work of a lane, as seen by admission control")
+                    .tag("priority", tagOf(priority))
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Admits an upload or throws {@link UploadRejectedException}. The returned permit has to be closed
+     * when the upload is done.
+     */
+    public Permit admit(UploadPriority priority) {
+        return admit(priority, 1);
+    }
+
+    /**
+     * Admits a batch import as long as there is room for one more document. Its documents are only known
+     * while the files and ZIP archives are read, each one is counted with {@link #reserve} before it is stored.
+     */
+    public Permit admitBatch(UploadPriority priority) {
+        return admit(priority, 0);
+    }
+
+    /**
+     * Counts one more document against the backlog if it fits below the limit. Until the next sample it
+     * counts as backlog, so concurrent uploads don't all fill the same room.
+     */
+    public boolean reserve(UploadPriority priority) {
+        if (!enabled) {
+            return true;
+        }
+        if (!tryReserve(priority, 1)) {
+            count(priority, "rejected_backlog");
+            return false;
+        }
+        return true;
+    }
+
+    private Permit admit(UploadPriority priority, int documents) {
+        if (!enabled) {
+            return () -> { };
+        }
+        Semaphore semaphore = inFlight.get(priority);
+        if (!semaphore.tryAcquire()) {
+            count(priority, "rejected_in_flight");
+            log.warn("Rejecting {} upload, too many uploads in progress", priority);
+            throw new UploadRejectedException("Too many uploads in progress, please retry later.", IN_FLIGHT_RETRY_AFTER);
+        }
+        if (!tryReserve(priority, documents)) {
+            semaphore.release();
+            long currentBacklog = backlog.get(priority).get();
+            long limit = maxBacklog.get(priority);
+            count(priority, "rejected_backlog");
+            log.warn("Rejecting {} upload, pipeline backlog {} is at the limit of {}", priority, currentBacklog, limit);
+            throw new UploadRejectedException("The document pipeline is busy, please retry later.",
+                    backlogRetryAfter(currentBacklog + 1, limit));
+        }
+        count(priority, "admitted");
+        return semaphore::release;
+    }
+
+    // Adds the documents to the sample if there is room for them, and at least for one. Compare-and-set, so
+    // concurrent uploads can't take the same room. Uploads are admitted while the backlog is unknown
+    private boolean tryReserve(UploadPriority priority, int documents) {
+        AtomicLong sample = backlog.get(priority);
+        long limit = maxBacklog.get(priority);
+        while (true) {
+            long currentBacklog = sample.get();
+            if (currentBacklog < 0) {
+                return true;
+            }
+            if (currentBacklog + Math.max(documents, 1) > limit) {
+                return false;
+            }
+            if (sample.compareAndSet(currentBacklog, currentBacklog + documents)) {
+                return true;
+            }
+        }
+    }
+
+    // The further over the limit, the longer the client should wait
+    private Duration backlogRetryAfter(long currentBacklog, long limit) {
+        long factor = Math.max(1, currentBacklog / Math.max(1, limit));
+        Duration wait = retryAfter.multipliedBy(factor);
+        return wait.compareTo(maxRetryAfter) > 0 ? maxRetryAfter : wait;
+    }
+
+    @Scheduled(fixedDelayString = "${paperless.admission.sample-interval:2000}")
+    public void sampleBacklog() {
+        if (!enabled) {
+            return;
+        }
+        // Only OCR messages count, search, preview and GenAI messages in the outbox aren't upload backlog
+        sample(UploadPriority.INTERACTIVE, RabbitMQConfig.QUEUE_NAME,
+                () -> outboxMessageRepository.countByRoutingKey(RabbitMQConfig.ROUTING_KEY));
+        sample(UploadPriority.BULK, RabbitMQConfig.OCR_BULK_QUEUE_NAME,
+                () -> outboxMessageRepository.countByRoutingKey(RabbitMQConfig.OCR_BULK_ROUTING_KEY));
+    }
+
+    private void sample(UploadPriority priority, String queue, LongSupplier unpublished) {
+        AtomicLong sample = backlog.get(priority);
+        try {
+            QueueInformation ocrQueue = amqpAdmin.getQueueInfo(queue);
+            long queued = ocrQueue == null ? 0 : ocrQueue.getMessageCount();
+            // While the broker is down the backlog grows in the outbox, so it is counted as well
+            sample.set(queued + unpublished.getAsLong());
+        } catch (RuntimeException e) {
+            try {
+                sample.set(unpublished.getAsLong());
+            } catch (RuntimeException ignored) {
+                // keep the last sample
+            }
+            log.warn("Could not sample the depth of {}: {}", queue, e.getMessage());
+        }
+    }
+
+    private void count(UploadPriority priority, String result) {
+        Counter.builder("paperless.upload.admission")
+                .description("Upload admission decisions")
+                .tag("priority", tagOf(priority))
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private static String tagOf(UploadPriority priority) {
+        return priority.name().toLowerCase();
+    }
+
+    @FunctionalInterface
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,29 @@
+package at.technikum_wien.swen3.paperless.service;
+
+/**
+ * Who an upload is for and how urgent it is: the priority picks the OCR and GenAI lanes, the source
+ * (an uploader, a scanner, an import job) is the unit that bulk work is shared fairly between, see
+ * {@link FairDispatcher}.
+ */
+public record UploadOrigin(UploadPriority priority, String source) {
+
+    public static final String DEFAULT_SOURCE = "default";
+
+    // Stored in a column of that length
+    private static final int MAX_SOURCE_LENGTH = 64;
+
+    public UploadOrigin {
+        source = source == null || source.isBlank() ? DEFAULT_SOURCE : source.strip();
+        if (source.length() > MAX_SOURCE_LENGTH) {
+            source = source.substring(0, MAX_SOURCE_LENGTH);
+        }
+    }
+
+    public static UploadOrigin interactive() {
+        return new UploadOrigin(UploadPriority.INTERACTIVE, DEFAULT_SOURCE);
+    }
+
+    public boolean isBulk() {
+        return priority == UploadPriority.BULK;
+    }
+}
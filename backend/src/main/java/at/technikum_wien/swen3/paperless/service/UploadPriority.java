@@ -0,0 +1,44 @@
+package at.technikum_wien.swen3.paperless.service;
+
+import at.technikum_wien.swen3.paperless.config.RabbitMQConfig;
+
+import java.util.Locale;
+
+/**
+ * Priority class of an upload. Interactive uploads (a user waiting in the UI) are admitted up to a much
+ * larger pipeline backlog than bulk imports, so a bulk scan can't lock users out (see UploadAdmissionService).
+ * Their OCR and GenAI work also goes through separate lanes, so it never queues behind a bulk import.
+ */
+public enum UploadPriority {
+    INTERACTIVE(RabbitMQConfig.ROUTING_KEY, RabbitMQConfig.GENAI_ROUTING_KEY),
+    BULK(RabbitMQConfig.OCR_BULK_ROUTING_KEY, RabbitMQConfig.GENAI_BULK_ROUTING_KEY);
+
+    private final String ocrRoutingKey;
+    private final String genAiRoutingKey;
+
+    UploadPriority(String ocrRoutingKey, String genAiRoutingKey) {
+        this.ocrRoutingKey = ocrRoutingKey;
+        this.genAiRoutingKey = genAiRoutingKey;
+    }
+
+    public String ocrRoutingKey() {
+        return ocrRoutingKey;
+    }
+
+    public String genAiRoutingKey() {
+        return genAiRoutingKey;
+    }
+
+    public static UploadPriority fromParameter(String value) {
+        try {
+            return valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid priority: " + value + " (expected interactive or bulk)");
+        }
+    }
+
+    // Echoed by the OCR worker, results of older workers don't carry it
+    public static UploadPriority fromMessage(String value) {
+        return BULK.name().equals(value) ? BULK : INTERACTIVE;
+    }
+}
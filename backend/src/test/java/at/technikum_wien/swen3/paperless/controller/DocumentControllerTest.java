@@ -0,0 +1,106 @@
+package at.technikum_wien.swen3.paperless.controller;
+
+import at.technikum_wien.swen3.paperless.exception.UploadRejectedException;
+import at.technikum_wien.swen3.paperless.service.BatchUploadService;
+import at.technikum_wien.swen3.paperless.service.DocumentFile;
+import at.technikum_wien.swen3.paperless.service.DocumentSearchService;
+import at.technikum_wien.swen3.paperless.service.DocumentService;
+import at.technikum_wien.swen3.paperless.service.UploadAdmissionService;
+import at.technikum_wien.swen3.paperless.service.UploadPriority;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.ByteArrayInputStream;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(DocumentController.class)
+class DocumentControllerTest {
+
+    private static final DocumentFile FILE = new DocumentFile("object-1", "Invoice.pdf", "application/pdf", 10,
+            "\"etag-1\"", Instant.parse("2025-01-01T00:00:00Z"));
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private DocumentService documentService;
+
+    @MockitoBean
+    private BatchUploadService batchUploadService;
+
+    @MockitoBean
+    private DocumentSearchService documentSearchService;
+
+    @MockitoBean
+    private UploadAdmissionService uploadAdmissionService;
+
+    @BeforeEach
+    void setUp() {
+        when(documentService.getDocumentFile(1L)).thenReturn(FILE);
+    }
+
+    @Test
+    void downloadDocument_whenRangeIsRequested_thenStreamsOnlyThatRange() throws Exception {
+        // Arrange
+        when(documentService.openDocumentFile(FILE, 2, 4)).thenReturn(new ByteArrayInputStream("2345".getBytes()));
+
+        // Act
+        MvcResult result = mockMvc.perform(get("/api/documents/1/file").header(HttpHeaders.RANGE, "bytes=2-5"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Assert
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10"))
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"etag-1\""))
+                .andExpect(content().string("2345"));
+    }
+
+    @Test
+    void downloadDocument_whenETagMatches_thenAnswersNotModifiedWithoutReading() throws Exception {
+        // Act & Assert
+        mockMvc.perform(get("/api/documents/1/file").header(HttpHeaders.IF_NONE_MATCH, "\"etag-1\""))
+                .andExpect(status().isNotModified());
+        verify(documentService, never()).openDocumentFile(any(), anyLong(), anyLong());
+    }
+
+    @Test
+    void downloadDocument_whenRangeStartsBeyondEnd_thenAnswersRangeNotSatisfiable() throws Exception {
+        // Act & Assert
+        mockMvc.perform(get("/api/documents/1/file").header(HttpHeaders.RANGE, "bytes=20-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */10"));
+        verify(documentService, never()).openDocumentFile(any(), anyLong(), anyLong());
+    }
+
+    @Test
+    void createDocumentFromStream_whenAdmissionRejects_thenAnswersTooManyRequestsWithRetryAfter() throws Exception {
+        // Arrange
+        when(uploadAdmissionService.admit(UploadPriority.BULK))
+                .thenThrow(new UploadRejectedException("busy", Duration.ofSeconds(90)));
+
+        // Act & Assert
+        mockMvc.perform(post("/api/documents/stream").param("title", "Scan").param("priority", "bulk")
+                        .contentType("application/pdf").content("%PDF-1.4"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "90"));
+        verifyNoInteractions(documentService);
+    }
+}
@@ -0,0 +1,132 @@
+package at.technikum_wien.swen3.paperless.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.CountAtBucket;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the measurements of a load test run and writes them as one JSON report, so runs of different
+ * versions can be compared. Latencies are histograms with fixed buckets, the same for every run.
+ */
+@Slf4j
+class LoadRecorder {
+
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.95, 0.99};
+    private static final Duration[] LATENCY_BUCKETS = {
+            Duration.ofMillis(5), Duration.ofMillis(10), Duration.ofMillis(25), Duration.ofMillis(50),
+            Duration.ofMillis(100), Duration.ofMillis(250), Duration.ofMillis(500), Duration.ofSeconds(1),
+            Duration.ofSeconds(2), Duration.ofSeconds(5), Duration.ofSeconds(10), Duration.ofSeconds(30),
+            Duration.ofSeconds(60)
+    };
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final Map<String, Timer> requests = new LinkedHashMap<>();
+    private final Map<String, Counter> errors = new LinkedHashMap<>();
+    private final Map<String, DistributionSummary> queueDepths = new LinkedHashMap<>();
+    private final Timer uploadToIndexed = latencyTimer("load.upload.indexed", "pipeline");
+
+    synchronized void recordRequest(String endpoint, long nanos) {
+        requests.computeIfAbsent(endpoint, name -> latencyTimer("load.request", name)).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    synchronized void recordError(String endpoint) {
+        errors.computeIfAbsent(endpoint, name -> Counter.builder("load.errors").tag("endpoint", name).register(registry))
+                .increment();
+    }
+
+    void recordUploadToIndexed(Duration duration) {
+        uploadToIndexed.record(duration);
+    }
+
+    synchronized void recordQueueDepth(String queue, long messages) {
+        queueDepths.computeIfAbsent(queue, name -> DistributionSummary.builder("load.queue.depth")
+                        .tag("queue", name)
+                        .publishPercentiles(PERCENTILES)
+                        .register(registry))
+                .record(messages);
+    }
+
+    synchronized long errorCount() {
+        return errors.values().stream().mapToLong(counter -> (long) counter.count()).sum();
+    }
+
+    long indexedCount() {
+        return uploadToIndexed.count();
+    }
+
+    synchronized void writeReport(Path file, Map<String, Object> settings) throws IOException {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("settings", settings);
+        Map<String, Object> endpoints = new LinkedHashMap<>();
+        requests.forEach((endpoint, timer) -> {
+            Map<String, Object> entry = latencies(timer.takeSnapshot());
+            entry.put("errors", errors.containsKey(endpoint) ? (long) errors.get(endpoint).count() : 0L);
+            endpoints.put(endpoint, entry);
+        });
+        report.put("endpoints", endpoints);
+        report.put("uploadToIndexed", latencies(uploadToIndexed.takeSnapshot()));
+        Map<String, Object> queues = new LinkedHashMap<>();
+        queueDepths.forEach((queue, summary) -> {
+            HistogramSnapshot snapshot = summary.takeSnapshot();
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("samples", snapshot.count());
+            entry.put("mean", snapshot.mean());
+            entry.put("max", snapshot.max());
+            entry.put("percentiles", percentiles(snapshot, 1));
+            queues.put(queue, entry);
+        });
+        report.put("queueDepths", queues);
+
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file.toFile(), report);
+        log.info("Load test report written to {}", file.toAbsolutePath());
+        endpoints.forEach((endpoint, entry) -> log.info("{}: {}", endpoint, entry));
+        log.info("upload to indexed: {}", report.get("uploadToIndexed"));
+        log.info("queue depths: {}", queues);
+    }
+
+    private Timer latencyTimer(String name, String endpoint) {
+        return Timer.builder(name)
+                .tag("endpoint", endpoint)
+                .publishPercentiles(PERCENTILES)
+                .serviceLevelObjectives(LATENCY_BUCKETS)
+                .register(registry);
+    }
+
+    // Milliseconds, the bucket counts are cumulative (requests at or below the bound)
+    private static Map<String, Object> latencies(HistogramSnapshot snapshot) {
+        double toMillis = 1.0 / TimeUnit.MILLISECONDS.toNanos(1);
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("count", snapshot.count());
+        entry.put("meanMs", snapshot.mean(TimeUnit.MILLISECONDS));
+        entry.put("maxMs", snapshot.max(TimeUnit.MILLISECONDS));
+        entry.put("percentilesMs", percentiles(snapshot, toMillis));
+        Map<String, Double> buckets = new LinkedHashMap<>();
+        for (CountAtBucket bucket : snapshot.histogramCounts()) {
+            buckets.put("le_" + (long) bucket.bucket(TimeUnit.MILLISECONDS) + "ms", bucket.count());
+        }
+        entry.put("histogram", buckets);
+        return entry;
+    }
+
+    private static Map<String, Double> percentiles(HistogramSnapshot snapshot, double scale) {
+        Map<String, Double> percentiles = new LinkedHashMap<>();
+        for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+            percentiles.put("p" + Math.round(percentile.percentile() * 100), percentile.value() * scale);
+        }
+        return percentiles;
+    }
+}
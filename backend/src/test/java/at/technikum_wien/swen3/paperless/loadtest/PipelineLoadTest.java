@@ -0,0 +1,286 @@
+package at.technikum_wien.swen3.paperless.loadtest;
+
+import at.technikum_wien.swen3.paperless.config.RabbitMQConfig;
+import at.technikum_wien.swen3.paperless.dto.DocumentDto;
+import at.technikum_wien.swen3.paperless.repository.OutboxMessageRepository;
+import at.technikum_wien.swen3.paperless.search.DocumentSearchEntity;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestClient;
+import org.testcontainers.containers.MinIOContainer;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.containers.RabbitMQContainer;
+import org.testcontainers.elasticsearch.ElasticsearchContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Drives upload, list, search and tag requests at fixed rates against the backend running on real
+ * Postgres, RabbitMQ, MinIO and Elasticsearch containers, with {@link StubWorkers} in place of the Python
+ * workers. Requests are started on schedule whether or not earlier ones have finished (open model), so
+ * a slow backend shows up as latency instead of a lower request rate.
+ * <p>
+ * Rates (requests per second), duration and stub delays are set with -Dload.* (see the load-test profile
+ * in the pom), the report goes to target/load-test-report.json.
+ */
+@Tag("load")
+@Testcontainers(disabledWithoutDocker = true)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@Import(StubWorkers.class)
+@Slf4j
+class PipelineLoadTest {
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:17");
+
+    @Container
+    @ServiceConnection
+    static RabbitMQContainer rabbitMQ = new RabbitMQContainer("rabbitmq:4-management");
+
+    @Container
+    @ServiceConnection
+    static ElasticsearchContainer elasticsearch =
+            new ElasticsearchContainer("docker.elastic.co/elasticsearch/elasticsearch:9.2.1")
+                    .withEnv("xpack.security.enabled", "false")
+                    .withEnv("ES_JAVA_OPTS", "-Xms1g -Xmx1g");
+
+    @Container
+    static MinIOContainer minio = new MinIOContainer("minio/minio:latest");
+
+    @DynamicPropertySource
+    static void minioProperties(DynamicPropertyRegistry registry) {
+        registry.add("minio.url", minio::getS3URL);
+        registry.add("minio.public.url", minio::getS3URL);
+        registry.add("minio.access.key", minio::getUserName);
+        registry.add("minio.secret.key", minio::getPassword);
+    }
+
+    private static final List<String> QUEUES = List.of(
+            RabbitMQConfig.QUEUE_NAME, RabbitMQConfig.OCR_BULK_QUEUE_NAME, RabbitMQConfig.OCR_RESULT_QUEUE_NAME,
+            RabbitMQConfig.GENAI_QUEUE_NAME, RabbitMQConfig.GENAI_BULK_QUEUE_NAME, RabbitMQConfig.GENAI_RESULT_QUEUE_NAME,
+            RabbitMQConfig.PREVIEW_QUEUE_NAME, RabbitMQConfig.PREVIEW_RESULT_QUEUE_NAME,
+            RabbitMQConfig.SEARCH_QUEUE_NAME);
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ElasticsearchOperations elasticsearchOperations;
+
+    @Autowired
+    private AmqpAdmin amqpAdmin;
+
+    @Autowired
+    private OutboxMessageRepository outboxMessageRepository;
+
+    @Value("${load.duration:30s}")
+    private Duration duration;
+
+    @Value("${load.drain-timeout:2m}")
+    private Duration drainTimeout;
+
+    @Value("${load.upload-rate:5}")
+    private double uploadRate;
+
+    @Value("${load.list-rate:20}")
+    private double listRate;
+
+    @Value("${load.search-rate:10}")
+    private double searchRate;
+
+    @Value("${load.tag-rate:2}")
+    private double tagRate;
+
+    @Value("${load.report:target/load-test-report.json}")
+    private Path reportFile;
+
+    private final LoadRecorder recorder = new LoadRecorder();
+    private final AtomicLong uploadCounter = new AtomicLong();
+    // Uploaded documents that aren't searchable with their summary yet, by upload start time
+    private final Map<Long, Long> pendingSince = new ConcurrentHashMap<>();
+    private final List<Long> uploadedIds = new CopyOnWriteArrayList<>();
+
+    @Test
+    void pipelineUnderLoad() throws Exception {
+        RestClient client = RestClient.create("http://localhost:" + port);
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+        try (ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor()) {
+            schedule(scheduler, requests, uploadRate, () -> upload(client));
+            schedule(scheduler, requests, listRate, () -> timed("list", () -> client.get()
+                    .uri("/api/documents?size=50").retrieve().toBodilessEntity()));
+            schedule(scheduler, requests, searchRate, () -> timed("search", () -> client.get()
+                    .uri("/api/documents/search?query=invoice&size=20").retrieve().toBodilessEntity()));
+            schedule(scheduler, requests, tagRate, () -> addTag(client));
+            scheduler.scheduleAtFixedRate(this::sampleQueues, 0, 500, TimeUnit.MILLISECONDS);
+            scheduler.scheduleWithFixedDelay(this::pollIndexed, 250, 250, TimeUnit.MILLISECONDS);
+
+            Thread.sleep(duration);
+            log.info("Load phase done after {}, {} uploads, waiting for the pipeline to drain", duration, uploadedIds.size());
+            // Keep sampling and polling until every upload is indexed, but stop sending requests
+            scheduler.shutdown();
+        }
+
+        ScheduledExecutorService drain = Executors.newSingleThreadScheduledExecutor();
+        drain.scheduleWithFixedDelay(() -> {
+            sampleQueues();
+            pollIndexed();
+        }, 0, 250, TimeUnit.MILLISECONDS);
+        long deadline = System.nanoTime() + drainTimeout.toNanos();
+        while (!pendingSince.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(250);
+        }
+        drain.shutdownNow();
+
+        recorder.writeReport(reportFile, settings());
+
+        // Throughput regressions are found by comparing reports, the test itself only checks correctness
+        assertThat(recorder.errorCount()).as("failed requests").isZero();
+        assertThat(pendingSince).as("uploads not indexed within %s", drainTimeout).isEmpty();
+        assertThat(recorder.indexedCount()).isEqualTo(uploadedIds.size());
+    }
+
+    private void schedule(ScheduledExecutorService scheduler, ExecutorService requests, double perSecond, Runnable request) {
+        if (perSecond <= 0) {
+            return;
+        }
+        long periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / perSecond);
+        scheduler.scheduleAtFixedRate(() -> requests.submit(request), 0, periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void upload(RestClient client) {
+        long n = uploadCounter.incrementAndGet();
+        long startedAt = System.nanoTime();
+        DocumentDto document = timed("upload", () -> client.post()
+                .uri("/api/documents")
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .body(multipartPdf("Load test invoice " + n, pdf(n)))
+                .retrieve()
+                .body(DocumentDto.class));
+        if (document != null) {
+            uploadedIds.add(document.getId());
+            pendingSince.put(document.getId(), startedAt);
+        }
+    }
+
+    private void addTag(RestClient client) {
+        if (uploadedIds.isEmpty()) {
+            return;
+        }
+        Long id = uploadedIds.get(ThreadLocalRandom.current().nextInt(uploadedIds.size()));
+        timed("tag", () -> client.post()
+                .uri("/api/documents/{id}/tags", id)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(Map.of("name", "load-" + ThreadLocalRandom.current().nextInt(20)))
+                .retrieve()
+                .toBodilessEntity());
+    }
+
+    private <T> T timed(String endpoint, Supplier<T> request) {
+        long start = System.nanoTime();
+        try {
+            T result = request.get();
+            recorder.recordRequest(endpoint, System.nanoTime() - start);
+            return result;
+        } catch (RuntimeException e) {
+            recorder.recordError(endpoint);
+            log.warn("{} request failed: {}", endpoint, e.getMessage());
+            return null;
+        }
+    }
+
+    // Indexed means the search index has the document with its summary, the last step of the pipeline
+    private void pollIndexed() {
+        for (Map.Entry<Long, Long> pending : pendingSince.entrySet()) {
+            try {
+                DocumentSearchEntity entity = elasticsearchOperations.get(String.valueOf(pending.getKey()),
+                        DocumentSearchEntity.class);
+                if (entity != null && entity.getSummary() != null && pendingSince.remove(pending.getKey()) != null) {
+                    recorder.recordUploadToIndexed(Duration.ofNanos(System.nanoTime() - pending.getValue()));
+                }
+            } catch (RuntimeException e) {
+                log.debug("Polling the index failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void sampleQueues() {
+        for (String queue : QUEUES) {
+            QueueInformation info = amqpAdmin.getQueueInfo(queue);
+            if (info != null) {
+                recorder.recordQueueDepth(queue, info.getMessageCount());
+            }
+        }
+        recorder.recordQueueDepth("outbox", outboxMessageRepository.count());
+    }
+
+    private Map<String, Object> settings() {
+        Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put("duration", duration.toString());
+        settings.put("uploadRate", uploadRate);
+        settings.put("listRate", listRate);
+        settings.put("searchRate", searchRate);
+        settings.put("tagRate", tagRate);
+        return settings;
+    }
+
+    private static MultiValueMap<String, HttpEntity<?>> multipartPdf(String title, byte[] pdf) {
+        MultipartBodyBuilder body = new MultipartBodyBuilder();
+        body.part("title", title);
+        body.part("file", new ByteArrayResource(pdf) {
+            @Override
+            public String getFilename() {
+                return "invoice.pdf";
+            }
+        }).contentType(MediaType.APPLICATION_PDF);
+        return body.build();
+    }
+
+    // Every upload is different content, identical files would be deduplicated and skip OCR and GenAI
+    private static byte[] pdf(long n) {
+        return """
+                %%PDF-1.4
+                %% load test upload %d
+                1 0 obj << /Type /Catalog /Pages 2 0 R >> endobj
+                2 0 obj << /Type /Pages /Kids [3 0 R] /Count 1 >> endobj
+                3 0 obj << /Type /Page /Parent 2 0 R /MediaBox [0 0 595 842] >> endobj
+                trailer << /Root 1 0 R >>
+                %%%%EOF
+                """.formatted(n).getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,148 @@
+package at.technikum_wien.swen3.paperless.loadtest;
+
+import at.technikum_wien.swen3.paperless.config.RabbitMQConfig;
+import at.technikum_wien.swen3.paperless.dto.GenAiRequest;
+import at.technikum_wien.swen3.paperless.dto.GenAiResult;
+import at.technikum_wien.swen3.paperless.dto.OcrRequest;
+import at.technikum_wien.swen3.paperless.dto.OcrResult;
+import at.technikum_wien.swen3.paperless.dto.PreviewRequest;
+import at.technikum_wien.swen3.paperless.dto.PreviewResult;
+import at.technikum_wien.swen3.paperless.service.ContentStorageService;
+import at.technikum_wien.swen3.paperless.service.PreviewStorageService;
+import io.minio.MinioClient;
+import io.minio.PutObjectArgs;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.TestComponent;
+import org.springframework.messaging.handler.annotation.Header;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Date;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Stand-ins for the Python workers: they consume the same requests, use the same object layout in MinIO
+ * and publish the same results, but instead of Tesseract, the renderer and Gemini they take a fixed,
+ * configurable time (load.stub.*-delay). That keeps the load test about the backend and the broker.
+ */
+@TestComponent
+class StubWorkers {
+
+    private static final String OCR_TEXT = """
+            Rechnung Nr. %d
+            Invoice total 1.234,56 EUR, payment due within 30 days.
+            Office supplies, paper, toner and a stapler for the Vienna office.
+            """;
+
+    private final RabbitTemplate rabbitTemplate;
+    private final MinioClient minio;
+    private final ContentStorageService contentStorageService;
+
+    @Value("${minio.bucket.name}")
+    private String bucketName;
+
+    @Value("${load.stub.ocr-delay:200ms}")
+    private Duration ocrDelay;
+
+    @Value("${load.stub.genai-delay:500ms}")
+    private Duration genAiDelay;
+
+    @Value("${load.stub.preview-delay:50ms}")
+    private Duration previewDelay;
+
+    StubWorkers(RabbitTemplate rabbitTemplate, MinioClient minio, ContentStorageService contentStorageService) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.minio = minio;
+        this.contentStorageService = contentStorageService;
+    }
+
+    // Like the OCR worker: one gzip object per page, the result carries a preview and the page count
+    @RabbitListener(queues = {RabbitMQConfig.QUEUE_NAME, RabbitMQConfig.OCR_BULK_QUEUE_NAME}, concurrency = "4")
+    void ocr(OcrRequest request, @Header(name = AmqpHeaders.CORRELATION_ID, required = false) String correlationId)
+            throws Exception {
+        sleep(ocrDelay);
+        String text = OCR_TEXT.formatted(request.getDocumentId());
+        put(ContentStorageService.pageObjectName(request.getContentHash(), 1), gzip(text), "application/gzip");
+
+        OcrResult result = new OcrResult();
+        result.setDocumentId(request.getDocumentId());
+        result.setStatus("SUCCESS");
+        result.setContentText(text);
+        result.setPageCount(1);
+        result.setContentHash(request.getContentHash());
+        result.setPriority(request.getPriority());
+        publish(RabbitMQConfig.OCR_RESULT_ROUTING_KEY, result, correlationId);
+    }
+
+    // Stub summarizer instead of the Gemini call, the text is still read from MinIO like the GenAI worker does
+    @RabbitListener(queues = {RabbitMQConfig.GENAI_QUEUE_NAME, RabbitMQConfig.GENAI_BULK_QUEUE_NAME}, concurrency = "4")
+    void genAi(GenAiRequest request, @Header(name = AmqpHeaders.CORRELATION_ID, required = false) String correlationId)
+            throws Exception {
+        sleep(genAiDelay);
+        String text = request.getText() != null
+                ? request.getText()
+                : contentStorageService.readPages(request.getContentHash(), 1, request.getPageCount());
+
+        GenAiResult result = new GenAiResult();
+        result.setDocumentId(request.getDocumentId());
+        result.setStatus("COMPLETED");
+        result.setSummary("Summary: " + text.lines().findFirst().orElse(""));
+        publish(RabbitMQConfig.GENAI_RESULT_ROUTING_KEY, result, correlationId);
+    }
+
+    @RabbitListener(queues = RabbitMQConfig.PREVIEW_QUEUE_NAME, concurrency = "2")
+    void preview(PreviewRequest request, @Header(name = AmqpHeaders.CORRELATION_ID, required = false) String correlationId)
+            throws Exception {
+        sleep(previewDelay);
+        for (PreviewStorageService.PreviewKind kind : PreviewStorageService.PreviewKind.values()) {
+            put(PreviewStorageService.previewObjectName(request.getContentHash(), kind), new byte[]{(byte) 0xFF, (byte) 0xD8},
+                    "image/jpeg");
+        }
+
+        PreviewResult result = new PreviewResult();
+        result.setDocumentId(request.getDocumentId());
+        result.setContentHash(request.getContentHash());
+        result.setStatus("COMPLETED");
+        publish(RabbitMQConfig.PREVIEW_RESULT_ROUTING_KEY, result, correlationId);
+    }
+
+    // Same properties as the Python workers set, the backend measures the queue lag from the timestamp
+    private void publish(String routingKey, Object result, String correlationId) {
+        MessagePostProcessor properties = message -> {
+            message.getMessageProperties().setCorrelationId(correlationId);
+            message.getMessageProperties().setTimestamp(new Date());
+            return message;
+        };
+        rabbitTemplate.convertAndSend(RabbitMQConfig.EXCHANGE_NAME, routingKey, result, properties);
+    }
+
+    private void put(String objectName, byte[] data, String contentType) throws Exception {
+        minio.putObject(PutObjectArgs.builder()
+                .bucket(bucketName)
+                .object(objectName)
+                .stream(new ByteArrayInputStream(data), data.length, -1)
+                .contentType(contentType)
+                .build());
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+
+    private static void sleep(Duration delay) throws InterruptedException {
+        if (!delay.isZero()) {
+            Thread.sleep(delay);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package at.technikum_wien.swen3.paperless.repository;
+
+import at.technikum_wien.swen3.paperless.entity.Document;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@Import(DocumentJdbcRepository.class)
+class DocumentJdbcRepositoryTest {
+
+    @Autowired
+    private DocumentJdbcRepository documentJdbcRepository;
+
+    @Autowired
+    private DocumentRepository documentRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    void insertAll_whenCalled_thenInsertsRowsAndAssignsGeneratedIds() {
+        // Arrange
+        List<Document> documents = List.of(document("first"), document("second"), document("third"));
+
+        // Act
+        documentJdbcRepository.insertAll(documents);
+
+        // Assert
+        assertThat(documents).extracting(Document::getId).doesNotContainNull().doesNotHaveDuplicates();
+        Document stored = documentRepository.findById(documents.get(1).getId()).orElseThrow();
+        assertThat(stored.getTitle()).isEqualTo("second");
+        assertThat(stored.getContentHash()).isEqualTo("hash-second");
+        assertThat(stored.getCreatedDate()).isNotNull();
+    }
+
+    @Test
+    void updateContents_whenCalled_thenSetsOnlyStatusAndContentAndBumpsVersion() {
+        // Arrange
+        Document document = documentRepository.saveAndFlush(document("scan"));
+        document.setSummary("summary");
+        document = documentRepository.saveAndFlush(document);
+        long version = document.getVersion();
+
+        // Act
+        List<Long> updated = documentJdbcRepository.updateContents(List.of(
+                new DocumentResultUpdate(document.getId(), "SUCCESS", "ocr text", 12),
+                new DocumentResultUpdate(-1L, "SUCCESS", "unknown")));
+
+        // Assert
+        assertThat(updated).containsExactly(document.getId());
+        entityManager.clear();
+        Document stored = documentRepository.findById(document.getId()).orElseThrow();
+        assertThat(stored.getStatus()).isEqualTo("SUCCESS");
+        assertThat(stored.getContent()).isEqualTo("ocr text");
+        assertThat(stored.getPageCount()).isEqualTo(12);
+        assertThat(stored.getSummary()).isEqualTo("summary");
+        assertThat(stored.getVersion()).isEqualTo(version + 1);
+    }
+
+    @Test
+    void updateSummaries_whenResultFailed_thenKeepsExistingSummary() {
+        // Arrange
+        Document document = document("scan");
+        document.setSummary("old summary");
+        document = documentRepository.saveAndFlush(document);
+
+        // Act
+        documentJdbcRepository.updateSummaries(List.of(new DocumentResultUpdate(document.getId(), "FAILED", null)));
+
+        // Assert
+        entityManager.clear();
+        Document stored = documentRepository.findById(document.getId()).orElseThrow();
+        assertThat(stored.getStatus()).isEqualTo("FAILED");
+        assertThat(stored.getSummary()).isEqualTo("old summary");
+    }
+
+    @Test
+    void updatePreviewStatuses_whenDuplicatesShareHash_thenUpdatesAllOfThemWithoutBumpingVersion() {
+        // Arrange
+        Document original = documentRepository.saveAndFlush(document("scan"));
+        long version = original.getVersion();
+        Document duplicate = document("copy");
+        duplicate.setContentHash(original.getContentHash());
+        duplicate = documentRepository.saveAndFlush(duplicate);
+        Document other = documentRepository.saveAndFlush(document("other"));
+
+        // Act
+        List<Long> updated = documentJdbcRepository.updatePreviewStatuses(Map.of(original.getContentHash(), "COMPLETED"));
+
+        // Assert
+        assertThat(updated).containsExactlyInAnyOrder(original.getId(), duplicate.getId());
+        entityManager.clear();
+        assertThat(documentRepository.findById(duplicate.getId()).orElseThrow().getPreviewStatus()).isEqualTo("COMPLETED");
+        assertThat(documentRepository.findById(original.getId()).orElseThrow().getVersion()).isEqualTo(version);
+        assertThat(documentRepository.findById(other.getId()).orElseThrow().getPreviewStatus()).isNull();
+    }
+
+    @Test
+    void findProcessingIdsByContentHash_whenCopiesShareAHash_thenReturnsTheProcessingOnes() {
+        // Arrange
+        Document original = documentRepository.saveAndFlush(document("scan"));
+        Document waiting = document("copy");
+        waiting.setContentHash(original.getContentHash());
+        waiting = documentRepository.saveAndFlush(waiting);
+        Document done = document("done");
+        done.setContentHash(original.getContentHash());
+        done.setStatus("COMPLETED");
+        documentRepository.saveAndFlush(done);
+
+        // Act
+        Map<String, List<Long>> ids = documentJdbcRepository.findProcessingIdsByContentHash(List.of(original.getContentHash()));
+
+        // Assert
+        assertThat(ids).containsExactly(Map.entry(original.getContentHash(), List.of(original.getId(), waiting.getId())));
+    }
+
+    private static Document document(String title) {
+        return Document.builder()
+                .title(title)
+                .storagePath("path-" + title)
+                .status("PROCESSING")
+                .fileSize(42)
+                .contentHash("hash-" + title)
+                .build();
+    }
+}
@@ -0,0 +1,247 @@
+package at.technikum_wien.swen3.paperless.repository;
+
+import at.technikum_wien.swen3.paperless.entity.Document;
+import at.technikum_wien.swen3.paperless.entity.Tag;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The in-flight lock uses FOR NO KEY UPDATE with the PostgreSQL dialect, H2 only understands its own
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"})
+class DocumentRepositoryTest {
+
+    @Autowired
+    private DocumentRepository documentRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private TagRepository tagRepository;
+
+    @Test
+    void findBy_whenScrollingWithKeyset_thenVisitsEveryDocumentOnce() {
+        // Arrange
+        for (int i = 0; i < 5; i++) {
+            documentRepository.save(document(i));
+        }
+        Sort sort = Sort.by(Sort.Direction.DESC, "createdDate").and(Sort.by(Sort.Direction.DESC, "id"));
+
+        // Act
+        List<Long> visited = new ArrayList<>();
+        Window<Document> window = documentRepository.findBy(ScrollPosition.keyset(), sort, Limit.of(2), Document.class);
+        window.forEach(document -> visited.add(document.getId()));
+        while (window.hasNext()) {
+            Document last = window.getContent().getLast();
+            ScrollPosition next = ScrollPosition.forward(Map.of("createdDate", last.getCreatedDate(), "id", last.getId()));
+            window = documentRepository.findBy(next, sort, Limit.of(2), Document.class);
+            window.forEach(document -> visited.add(document.getId()));
+        }
+
+        // Assert
+        assertThat(visited).hasSize(5).doesNotHaveDuplicates();
+    }
+
+    @Test
+    void findIdsInRange_whenPaging_thenReturnsOrderedIdsOfTheRangeOnly() {
+        // Arrange
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            ids.add(documentRepository.save(document(i)).getId());
+        }
+
+        // Act
+        List<Long> firstPage = documentRepository.findIdsInRange(ids.get(0), ids.get(3), Limit.of(2));
+        List<Long> secondPage = documentRepository.findIdsInRange(firstPage.getLast(), ids.get(3), Limit.of(2));
+
+        // Assert
+        assertThat(firstPage).containsExactly(ids.get(1), ids.get(2));
+        assertThat(secondPage).containsExactly(ids.get(3));
+        assertThat(documentRepository.findMaxId()).contains(ids.get(4));
+    }
+
+    @Test
+    void findBy_whenProjectingSummaries_thenReturnsListColumnsOnly() {
+        // Arrange
+        documentRepository.save(document(1));
+        Sort sort = Sort.by(Sort.Direction.ASC, "createdDate").and(Sort.by(Sort.Direction.ASC, "id"));
+
+        // Act
+        Window<DocumentSummaryView> window = documentRepository.findBy(
+                ScrollPosition.keyset(), sort, Limit.of(10), DocumentSummaryView.class);
+
+        // Assert
+        assertThat(window.getContent()).singleElement().satisfies(view -> {
+            assertThat(view.getTitle()).isEqualTo("Document 1");
+            assertThat(view.getStatus()).isEqualTo("PROCESSING");
+            assertThat(view.getCreatedDate()).isNotNull();
+        });
+    }
+
+    @Test
+    void findByContentHashIn_whenCopiesShareAHash_thenReturnsTheirProjections() {
+        // Arrange
+        Document original = document(1);
+        original.setContentHash("hash-1");
+        Document copy = document(2);
+        copy.setContentHash("hash-1");
+        Document other = document(3);
+        other.setContentHash("hash-3");
+        documentRepository.saveAll(List.of(original, copy, other));
+
+        // Act
+        List<DocumentCopyView> copies = documentRepository.findByContentHashIn(List.of("hash-1"));
+
+        // Assert
+        assertThat(copies).extracting(DocumentCopyView::getStoragePath).containsExactlyInAnyOrder("path-1", "path-2");
+        assertThat(copies).extracting(DocumentCopyView::getContentHash).containsOnly("hash-1");
+    }
+
+    @Test
+    void lockProcessingContentHashes_whenCalled_thenReturnsHashesWithDocumentsInFlight() {
+        // Arrange
+        Document processing = document(1);
+        processing.setContentHash("hash-1");
+        Document completed = document(2);
+        completed.setContentHash("hash-2");
+        completed.setStatus("COMPLETED");
+        documentRepository.saveAll(List.of(processing, completed));
+
+        // Act
+        List<String> inFlight = documentRepository.lockProcessingContentHashes(List.of("hash-1", "hash-2"));
+
+        // Assert
+        assertThat(inFlight).containsExactly("hash-1");
+    }
+
+    @Test
+    void findTagNamesByDocumentIds_whenDocumentsAreTagged_thenReturnsNamesPerDocument() {
+        // Arrange
+        Tag invoice = new Tag();
+        invoice.setName("invoice");
+        tagRepository.save(invoice);
+        Document tagged = document(1);
+        tagged.getTags().add(invoice);
+        Document untagged = document(2);
+        documentRepository.saveAll(List.of(tagged, untagged));
+
+        // Act
+        List<DocumentTagName> names = documentRepository.findTagNamesByDocumentIds(List.of(tagged.getId(), untagged.getId()));
+
+        // Assert
+        assertThat(names).singleElement().satisfies(name -> {
+            assertThat(name.getDocumentId()).isEqualTo(tagged.getId());
+            assertThat(name.getName()).isEqualTo("invoice");
+        });
+    }
+
+    @Test
+    void findById_whenTagsAreNotAccessed_thenIssuesSingleStatement() {
+        // Arrange
+        Long id = saveTaggedDocuments(1).getFirst();
+        Statistics statistics = resetStatistics();
+
+        // Act
+        Document document = documentRepository.findById(id).orElseThrow();
+        document.setStatus("SUCCESS");
+        entityManager.flush();
+
+        // Assert: one select and one update, document_tags is never touched
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+        assertThat(statistics.getCollectionFetchCount()).isZero();
+    }
+
+    @Test
+    void findWithTagsById_whenCalled_thenLoadsTagsInSameStatement() {
+        // Arrange
+        Long id = saveTaggedDocuments(1).getFirst();
+        Statistics statistics = resetStatistics();
+
+        // Act
+        Document document = documentRepository.findWithTagsById(id).orElseThrow();
+
+        // Assert
+        assertThat(document.getTags()).hasSize(2);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void findWithTagsByIdIn_whenCalled_thenLoadsAllDocumentsAndTagsInOneStatement() {
+        // Arrange
+        List<Long> ids = saveTaggedDocuments(5);
+        Statistics statistics = resetStatistics();
+
+        // Act
+        List<Document> documents = documentRepository.findWithTagsByIdIn(ids);
+
+        // Assert: the join must not multiply the documents
+        assertThat(documents).hasSize(5).allSatisfy(document -> assertThat(document.getTags()).hasSize(2));
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void findBy_whenTagsOfPageAreAccessed_thenBatchFetchesThem() {
+        // Arrange
+        saveTaggedDocuments(10);
+        Statistics statistics = resetStatistics();
+        Sort sort = Sort.by(Sort.Direction.DESC, "createdDate").and(Sort.by(Sort.Direction.DESC, "id"));
+
+        // Act
+        Window<Document> window = documentRepository.findBy(ScrollPosition.keyset(), sort, Limit.of(10), Document.class);
+        window.forEach(document -> document.getTags().size());
+
+        // Assert: one statement for the page, one batch for all tag collections
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+    }
+
+    private List<Long> saveTaggedDocuments(int count) {
+        Tag invoice = new Tag();
+        invoice.setName("invoice");
+        Tag tax = new Tag();
+        tax.setName("tax");
+        tagRepository.saveAll(List.of(invoice, tax));
+
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Document document = document(i);
+            document.getTags().addAll(List.of(invoice, tax));
+            ids.add(documentRepository.save(document).getId());
+        }
+        entityManager.flush();
+        entityManager.clear();
+        return ids;
+    }
+
+    private Statistics resetStatistics() {
+        Statistics statistics = entityManager.getEntityManager()
+                .getEntityManagerFactory()
+                .unwrap(SessionFactory.class)
+                .getStatistics();
+        statistics.clear();
+        return statistics;
+    }
+
+    private static Document document(int i) {
+        return Document.builder()
+                .title("Document " + i)
+                .content("OCR text " + i)
+                .storagePath("path-" + i)
+                .status("PROCESSING")
+                .build();
+    }
+}
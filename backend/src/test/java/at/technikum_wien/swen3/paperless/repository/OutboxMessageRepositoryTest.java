@@ -0,0 +1,78 @@
+package at.technikum_wien.swen3.paperless.repository;
+
+import at.technikum_wien.swen3.paperless.entity.OutboxMessage;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+// The relay query uses FOR UPDATE SKIP LOCKED, which H2 only understands with its own dialect
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+class OutboxMessageRepositoryTest {
+
+    @Autowired
+    private OutboxMessageRepository outboxMessageRepository;
+
+    @Test
+    void findDue_whenCalled_thenReturnsDueMessagesInInsertOrder() {
+        // Arrange
+        OffsetDateTime now = OffsetDateTime.now();
+        OutboxMessage first = outboxMessageRepository.save(message("1", now.minusSeconds(5)));
+        OutboxMessage second = outboxMessageRepository.save(message("2", now.minusSeconds(10)));
+        outboxMessageRepository.save(message("3", now.plusMinutes(1)));
+        outboxMessageRepository.save(message("4", now.minusSeconds(1)));
+
+        // Act
+        List<OutboxMessage> due = outboxMessageRepository.findBySourceIsNullAndNextAttemptAtLessThanEqualOrderByIdAsc(now, Limit.of(2));
+
+        // Assert
+        assertThat(due).extracting(OutboxMessage::getId).containsExactly(first.getId(), second.getId());
+    }
+
+    @Test
+    void findDue_whenMessagesAreHeld_thenLeavesThemToTheFairDispatcher() {
+        // Arrange
+        OffsetDateTime now = OffsetDateTime.now();
+        OutboxMessage search = outboxMessageRepository.save(message("1", now.minusSeconds(5)));
+        OutboxMessage oldest = outboxMessageRepository.save(held("scanner", now.minusSeconds(5)));
+        outboxMessageRepository.save(held("scanner", now.minusSeconds(5)));
+        outboxMessageRepository.save(held("import", now.minusSeconds(5)));
+        outboxMessageRepository.save(held("import", now.plusMinutes(1)));
+
+        // Act
+        List<OutboxMessage> due = outboxMessageRepository.findBySourceIsNullAndNextAttemptAtLessThanEqualOrderByIdAsc(now, Limit.of(10));
+        List<OutboxSourceCount> held = outboxMessageRepository.countHeldBySource("document.ocr.bulk", now);
+        List<OutboxMessage> scanner = outboxMessageRepository.findByRoutingKeyAndSourceAndNextAttemptAtLessThanEqualOrderByIdAsc(
+                "document.ocr.bulk", "scanner", now, Limit.of(1));
+
+        // Assert
+        assertThat(due).extracting(OutboxMessage::getId).containsExactly(search.getId());
+        assertThat(held).extracting(OutboxSourceCount::getSource, OutboxSourceCount::getCount)
+                .containsExactlyInAnyOrder(tuple("scanner", 2L), tuple("import", 1L));
+        assertThat(scanner).extracting(OutboxMessage::getId).containsExactly(oldest.getId());
+        assertThat(outboxMessageRepository.countByRoutingKey("document.ocr.bulk")).isEqualTo(4);
+        assertThat(outboxMessageRepository.countByRoutingKey("document.ocr")).isZero();
+    }
+
+    private static OutboxMessage held(String source, OffsetDateTime nextAttemptAt) {
+        OutboxMessage message = message("{}", nextAttemptAt);
+        message.setRoutingKey("document.ocr.bulk");
+        message.setSource(source);
+        return message;
+    }
+
+    private static OutboxMessage message(String payload, OffsetDateTime nextAttemptAt) {
+        return OutboxMessage.builder()
+                .exchange("document-exchange")
+                .routingKey("document.search")
+                .payload(payload)
+                .nextAttemptAt(nextAttemptAt)
+                .build();
+    }
+}
@@ -0,0 +1,360 @@
+package at.technikum_wien.swen3.paperless.service;
+
+import at.technikum_wien.swen3.paperless.config.RabbitMQConfig;
+import at.technikum_wien.swen3.paperless.dto.BatchUploadItemDto;
+import at.technikum_wien.swen3.paperless.dto.BatchUploadResultDto;
+import at.technikum_wien.swen3.paperless.dto.GenAiRequest;
+import at.technikum_wien.swen3.paperless.dto.OcrRequest;
+import at.technikum_wien.swen3.paperless.dto.PreviewRequest;
+import at.technikum_wien.swen3.paperless.entity.Document;
+import at.technikum_wien.swen3.paperless.exception.UploadRejectedException;
+import at.technikum_wien.swen3.paperless.mapper.DocumentMapperImpl;
+import at.technikum_wien.swen3.paperless.repository.DocumentJdbcRepository;
+import at.technikum_wien.swen3.paperless.repository.OutboxMessageRepository;
+import at.technikum_wien.swen3.paperless.service.DeduplicationService.PipelineStage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BatchUploadServiceTest {
+
+    @Mock
+    private MinioStorageService minioStorageService;
+
+    @Mock
+    private DocumentJdbcRepository documentJdbcRepository;
+
+    @Mock
+    private DeduplicationService deduplicationService;
+
+    @Mock
+    private OutboxMessageRepository outboxMessageRepository;
+
+    @Mock
+    private OutboxService outboxService;
+
+    @Mock
+    private UploadAdmissionService uploadAdmissionService;
+
+    private BatchUploadService batchUploadService;
+
+    @BeforeEach
+    void setUp() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+        batchUploadService = new BatchUploadService(
+                minioStorageService, documentJdbcRepository, deduplicationService, outboxService, uploadAdmissionService,
+                new DocumentMapperImpl(), transactionTemplate, Runnable::run, DataSize.ofBytes(64), DataSize.ofBytes(100), 2);
+        lenient().when(uploadAdmissionService.reserve(UploadPriority.BULK)).thenReturn(true);
+    }
+
+    @Test
+    void uploadAll_whenFilesAreMixed_thenReportsResultPerFile() {
+        // Arrange
+        MultipartFile pdf = new MockMultipartFile("files", "invoice.pdf", "application/pdf", "%PDF-1.7".getBytes());
+        MultipartFile text = new MockMultipartFile("files", "notes.txt", "text/plain", "hello".getBytes());
+
+        when(minioStorageService.save(pdf)).thenReturn(new StoredObject("path-1", 8, "hash-1"));
+        assignIdsOnInsert();
+
+        // Act
+        BatchUploadResultDto result = batchUploadService.uploadAll(List.of(pdf, text), "scanner");
+
+        // Assert
+        assertThat(result.getTotal()).isEqualTo(2);
+        assertThat(result.getSucceeded()).isEqualTo(1);
+        assertThat(result.getFailed()).isEqualTo(1);
+        assertThat(result.getItems().get(0).getDocumentId()).isEqualTo(100L);
+        assertThat(result.getItems().get(0).getStatus()).isEqualTo(BatchUploadService.STATUS_CREATED);
+        assertThat(result.getItems().get(1).getStatus()).isEqualTo(BatchUploadService.STATUS_FAILED);
+
+        verify(outboxService).publishFair(RabbitMQConfig.OCR_BULK_ROUTING_KEY, "scanner", List.of(OcrRequest.builder()
+                .documentId(100L).storagePath("path-1").contentHash("hash-1").fileSize(8).priority("BULK").build()));
+        verify(outboxService).publishAll(RabbitMQConfig.PREVIEW_ROUTING_KEY, List.of(PreviewRequest.builder()
+                .documentId(100L).storagePath("path-1").contentHash("hash-1").build()));
+        verify(outboxService).publishAll(RabbitMQConfig.SEARCH_ROUTING_KEY, List.of("100"));
+    }
+
+    @Test
+    void uploadAll_whenZipIsUploaded_thenStoresEveryPdfEntry() throws IOException {
+        // Arrange
+        MultipartFile zip = new MockMultipartFile("files", "scans.zip", "application/zip",
+                zipOf("a.pdf", "b.pdf", "readme.md"));
+
+        when(minioStorageService.save(any(InputStream.class), eq("application/pdf")))
+                .thenReturn(new StoredObject("path-a", 8, "hash-a"), new StoredObject("path-b", 8, "hash-b"));
+        assignIdsOnInsert();
+
+        // Act
+        BatchUploadResultDto result = batchUploadService.uploadAll(List.of(zip), "scanner");
+
+        // Assert
+        assertThat(result.getTotal()).isEqualTo(3);
+        assertThat(result.getSucceeded()).isEqualTo(2);
+        verify(documentJdbcRepository).insertAll(argThat(documents -> documents.size() == 2
+                && documents.get(0).getTitle().equals("a")
+                && documents.get(1).getContentHash().equals("hash-b")));
+    }
+
+    @Test
+    void uploadAll_whenZipIsUploaded_thenUploadsItsEntriesConcurrently() throws Exception {
+        // Arrange: each upload waits until the other one has started
+        ExecutorService uploadExecutor = Executors.newFixedThreadPool(2);
+        BatchUploadService concurrentService = new BatchUploadService(
+                minioStorageService, documentJdbcRepository, deduplicationService, outboxService, uploadAdmissionService,
+                new DocumentMapperImpl(), new TransactionTemplate(mock(PlatformTransactionManager.class)), uploadExecutor,
+                DataSize.ofBytes(64), DataSize.ofBytes(100), 2);
+        MultipartFile zip = new MockMultipartFile("files", "scans.zip", "application/zip", zipOf("a.pdf", "b.pdf"));
+
+        CyclicBarrier bothUploading = new CyclicBarrier(2);
+        AtomicInteger stored = new AtomicInteger();
+        when(minioStorageService.save(any(InputStream.class), eq("application/pdf"))).thenAnswer(invocation -> {
+            bothUploading.await(5, TimeUnit.SECONDS);
+            int n = stored.incrementAndGet();
+            return new StoredObject("path-" + n, 8, "hash-" + n);
+        });
+        assignIdsOnInsert();
+
+        try {
+            // Act
+            BatchUploadResultDto result = concurrentService.uploadAll(List.of(zip), "scanner");
+
+            // Assert: sequential uploads would time out at the barrier and fail
+            assertThat(result.getSucceeded()).isEqualTo(2);
+            assertThat(result.getItems()).extracting(BatchUploadItemDto::getFileName).containsExactly("a.pdf", "b.pdf");
+        } finally {
+            uploadExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    void uploadAll_whenZipHasMoreEntriesThanRoom_thenReportsTheRestAsFailed() throws IOException {
+        // Arrange
+        MultipartFile zip = new MockMultipartFile("files", "scans.zip", "application/zip",
+                zipOf("a.pdf", "b.pdf", "c.pdf"));
+        when(uploadAdmissionService.reserve(UploadPriority.BULK)).thenReturn(true, true, false);
+
+        when(minioStorageService.save(any(InputStream.class), eq("application/pdf")))
+                .thenReturn(new StoredObject("path-a", 8, "hash-a"), new StoredObject("path-b", 8, "hash-b"));
+        assignIdsOnInsert();
+
+        // Act
+        BatchUploadResultDto result = batchUploadService.uploadAll(List.of(zip), "scanner");
+
+        // Assert
+        assertThat(result.getSucceeded()).isEqualTo(2);
+        assertThat(result.getItems().get(2).getStatus()).isEqualTo(BatchUploadService.STATUS_FAILED);
+        verify(minioStorageService, times(2)).save(any(InputStream.class), eq("application/pdf"));
+    }
+
+    @Test
+    void uploadAll_whenZipsAreUploadedConcurrently_thenStoresNoMoreThanTheBacklogLimit() throws Exception {
+        // Arrange: room for 3 documents, two archives of 2 entries each arrive at the same time
+        when(outboxMessageRepository.countByRoutingKey(anyString())).thenReturn(0L);
+        UploadAdmissionService admission = new UploadAdmissionService(mock(AmqpAdmin.class), outboxMessageRepository,
+                new SimpleMeterRegistry(), true, 100, 2, 3, 2, Duration.ofSeconds(30), Duration.ofMinutes(2));
+        admission.sampleBacklog();
+        BatchUploadService admittedService = new BatchUploadService(
+                minioStorageService, documentJdbcRepository, deduplicationService, outboxService, admission,
+                new DocumentMapperImpl(), new TransactionTemplate(mock(PlatformTransactionManager.class)), Runnable::run,
+                DataSize.ofBytes(64), DataSize.ofBytes(100), 2);
+        AtomicInteger stored = new AtomicInteger();
+        when(minioStorageService.save(any(InputStream.class), eq("application/pdf"))).thenAnswer(invocation -> {
+            int n = stored.incrementAndGet();
+            return new StoredObject("path-" + n, 8, "hash-" + n);
+        });
+        assignIdsOnInsert();
+
+        ExecutorService requests = Executors.newFixedThreadPool(2);
+        CyclicBarrier bothAdmitted = new CyclicBarrier(2);
+        Callable<BatchUploadResultDto> upload = () -> {
+            try (UploadAdmissionService.Permit ignored = admission.admitBatch(UploadPriority.BULK)) {
+                bothAdmitted.await(5, TimeUnit.SECONDS);
+                return admittedService.uploadAll(List.of(new MockMultipartFile(
+                        "files", "scans.zip", "application/zip", zipOf("a.pdf", "b.pdf"))), "scanner");
+            }
+        };
+
+        try {
+            // Act
+            List<Future<BatchUploadResultDto>> results = requests.invokeAll(List.of(upload, upload));
+
+            // Assert: both were admitted, but only 3 of the 4 entries fit
+            int succeeded = 0;
+            for (Future<BatchUploadResultDto> result : results) {
+                succeeded += result.get().getSucceeded();
+            }
+            assertThat(succeeded).isEqualTo(3);
+            assertThat(stored).hasValue(3);
+            assertThatThrownBy(() -> admission.admitBatch(UploadPriority.BULK)).isInstanceOf(UploadRejectedException.class);
+        } finally {
+            requests.shutdownNow();
+        }
+    }
+
+    @Test
+    void uploadAll_whenZipEntryIsNoPdf_thenRejectsItDespiteTheName() throws IOException {
+        // Arrange
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.putNextEntry(new ZipEntry("invoice.pdf"));
+            zip.write("MZ not a pdf".getBytes());
+            zip.closeEntry();
+        }
+        MultipartFile zip = new MockMultipartFile("files", "scans.zip", "application/zip", out.toByteArray());
+
+        // Act
+        BatchUploadResultDto result = batchUploadService.uploadAll(List.of(zip), "scanner");
+
+        // Assert
+        assertThat(result.getFailed()).isEqualTo(1);
+        verify(minioStorageService, never()).save(any(InputStream.class), anyString());
+    }
+
+    @Test
+    void uploadAll_whenZipExceedsTheSizeLimits_thenStopsReadingIt() throws IOException {
+        // Arrange: 64 bytes per entry and 100 per archive
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (String name : List.of("a.pdf", "b.pdf", "c.pdf")) {
+                zip.putNextEntry(new ZipEntry(name));
+                zip.write(("%PDF-" + "x".repeat(55)).getBytes());
+                zip.closeEntry();
+            }
+        }
+        MultipartFile zip = new MockMultipartFile("files", "bomb.zip", "application/zip", out.toByteArray());
+
+        when(minioStorageService.save(any(InputStream.class), eq("application/pdf"))).thenAnswer(invocation -> {
+            long size = invocation.<InputStream>getArgument(0).transferTo(OutputStream.nullOutputStream());
+            return new StoredObject("path-" + size, size, "hash-" + size);
+        });
+        assignIdsOnInsert();
+
+        // Act
+        BatchUploadResultDto result = batchUploadService.uploadAll(List.of(zip), "scanner");
+
+        // Assert: the second entry crosses the archive limit, the third is never read
+        assertThat(result.getTotal()).isEqualTo(2);
+        assertThat(result.getSucceeded()).isEqualTo(1);
+        assertThat(result.getItems().get(1).getErrorDetails()).contains("size limit");
+    }
+
+    @Test
+    void uploadAll_whenTransactionFails_thenRemovesStoredObjectsAndReportsEveryFileFailed() {
+        // Arrange: the second file duplicates an existing document, its object must stay
+        MultipartFile first = new MockMultipartFile("files", "a.pdf", "application/pdf", "%PDF-1.7 a".getBytes());
+        MultipartFile second = new MockMultipartFile("files", "b.pdf", "application/pdf", "%PDF-1.7 b".getBytes());
+
+        when(minioStorageService.save(first)).thenReturn(new StoredObject("path-a", 10, "hash-a"));
+        when(minioStorageService.save(second)).thenReturn(new StoredObject("path-b", 10, "hash-b"));
+        when(deduplicationService.deduplicate(anyList())).thenAnswer(invocation -> {
+            invocation.<List<Document>>getArgument(0).get(1).setStoragePath("path-existing");
+            return List.of(PipelineStage.OCR, PipelineStage.DONE);
+        });
+        doThrow(new IllegalStateException("connection lost")).when(documentJdbcRepository).insertAll(anyList());
+
+        // Act
+        BatchUploadResultDto result = batchUploadService.uploadAll(List.of(first, second), "scanner");
+
+        // Assert
+        assertThat(result.getTotal()).isEqualTo(2);
+        assertThat(result.getFailed()).isEqualTo(2);
+        assertThat(result.getItems()).extracting(BatchUploadItemDto::getStatus).containsOnly(BatchUploadService.STATUS_FAILED);
+        verify(minioStorageService).delete("path-a");
+        verify(minioStorageService, never()).delete("path-existing");
+    }
+
+    @Test
+    void uploadAll_whenNothingCanBeStored_thenQueuesNothing() {
+        // Arrange
+        MultipartFile text = new MockMultipartFile("files", "notes.txt", "text/plain", "hello".getBytes());
+
+        // Act
+        BatchUploadResultDto result = batchUploadService.uploadAll(List.of(text), "scanner");
+
+        // Assert
+        assertThat(result.getFailed()).isEqualTo(1);
+        verify(documentJdbcRepository).insertAll(List.of());
+        verify(outboxService).publishAll(RabbitMQConfig.SEARCH_ROUTING_KEY, List.of());
+    }
+
+    @Test
+    void uploadAll_whenDuplicateHasContent_thenSkipsOcrQueue() {
+        // Arrange
+        MultipartFile pdf = new MockMultipartFile("files", "invoice.pdf", "application/pdf", "%PDF-1.7".getBytes());
+
+        when(minioStorageService.save(pdf)).thenReturn(new StoredObject("path-1", 8, "hash-1"));
+        when(deduplicationService.deduplicate(anyList())).thenReturn(List.of(PipelineStage.GENAI));
+        doAnswer(invocation -> {
+            invocation.<List<Document>>getArgument(0).getFirst().setId(100L);
+            return null;
+        }).when(documentJdbcRepository).insertAll(anyList());
+
+        // Act
+        batchUploadService.uploadAll(List.of(pdf), "scanner");
+
+        // Assert
+        verify(outboxService).publishAll(RabbitMQConfig.GENAI_BULK_ROUTING_KEY,
+                List.of(GenAiRequest.builder().documentId(100L).contentHash("hash-1").build()));
+        verify(outboxService).publishAll(RabbitMQConfig.SEARCH_ROUTING_KEY, List.of("100"));
+        verify(outboxService).publishFair(RabbitMQConfig.OCR_BULK_ROUTING_KEY, "scanner", List.of());
+    }
+
+    private void assignIdsOnInsert() {
+        when(deduplicationService.deduplicate(anyList())).thenAnswer(invocation ->
+                invocation.<List<Document>>getArgument(0).stream().map(document -> PipelineStage.OCR).toList());
+        doAnswer(invocation -> {
+            List<Document> documents = invocation.getArgument(0);
+            long id = 100;
+            for (Document document : documents) {
+                document.setId(id++);
+            }
+            return null;
+        }).when(documentJdbcRepository).insertAll(anyList());
+    }
+
+    private static byte[] zipOf(String... names) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (String name : names) {
+                zip.putNextEntry(new ZipEntry(name));
+                zip.write("%PDF-1.7".getBytes());
+                zip.closeEntry();
+            }
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,113 @@
+package at.technikum_wien.swen3.paperless.service;
+
+import at.technikum_wien.swen3.paperless.entity.Document;
+import at.technikum_wien.swen3.paperless.exception.StorageException;
+import io.minio.GetObjectArgs;
+import io.minio.GetObjectResponse;
+import io.minio.MinioClient;
+import io.minio.errors.ErrorResponseException;
+import io.minio.messages.ErrorResponse;
+import okhttp3.Headers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ContentStorageServiceTest {
+
+    @Mock
+    private MinioClient minioClient;
+
+    private ContentStorageService contentStorageService;
+
+    @BeforeEach
+    void setUp() {
+        contentStorageService = new ContentStorageService(minioClient, Executors.newFixedThreadPool(2));
+        ReflectionTestUtils.setField(contentStorageService, "bucketName", "documents");
+        ReflectionTestUtils.setField(contentStorageService, "previewLength", 5);
+    }
+
+    @Test
+    void readText_whenTextIsInObjectStorage_thenJoinsDecompressedPagesAndSkipsMissingOnes() throws Exception {
+        // Arrange
+        stubPage("abc", 1, "first page");
+        stubMissingPage("abc", 2);
+        stubPage("abc", 3, "third page");
+        Document document = Document.builder().contentHash("abc").pageCount(3).content("first").build();
+
+        // Act
+        String text = contentStorageService.readText(document);
+
+        // Assert
+        assertThat(text).isEqualTo("first page\nthird page");
+    }
+
+    @Test
+    void readPages_whenAPageCannotBeRead_thenThrowsStorageException() throws Exception {
+        // Arrange
+        stubPage("abc", 1, "first page");
+        String objectName = ContentStorageService.pageObjectName("abc", 2);
+        when(minioClient.getObject(argThat((GetObjectArgs args) -> args != null && args.object().equals(objectName))))
+                .thenThrow(new IOException("connection reset"));
+
+        // Act & Assert
+        assertThrows(StorageException.class, () -> contentStorageService.readPages("abc", 1, 2));
+    }
+
+    @Test
+    void readText_whenTextIsStillInDatabase_thenReturnsContent() {
+        // Arrange
+        Document document = Document.builder().contentHash("abc").content("legacy text").build();
+
+        // Act
+        String text = contentStorageService.readText(document);
+
+        // Assert
+        assertThat(text).isEqualTo("legacy text");
+        verifyNoInteractions(minioClient);
+    }
+
+    @Test
+    void preview_whenTextIsLong_thenTruncatesToPreviewLength() {
+        assertThat(contentStorageService.preview("abcdefgh")).isEqualTo("abcde");
+        assertThat(contentStorageService.preview("abc")).isEqualTo("abc");
+        assertThat(contentStorageService.preview(null)).isNull();
+    }
+
+    private void stubPage(String contentHash, int pageNumber, String text) throws Exception {
+        String objectName = ContentStorageService.pageObjectName(contentHash, pageNumber);
+        when(minioClient.getObject(argThat((GetObjectArgs args) -> args != null && args.object().equals(objectName))))
+                .thenReturn(new GetObjectResponse(Headers.of(), "documents", null, objectName,
+                        new ByteArrayInputStream(gzip(text))));
+    }
+
+    private void stubMissingPage(String contentHash, int pageNumber) throws Exception {
+        String objectName = ContentStorageService.pageObjectName(contentHash, pageNumber);
+        ErrorResponse error = new ErrorResponse("NoSuchKey", "missing", "documents", objectName, null, null, null);
+        when(minioClient.getObject(argThat((GetObjectArgs args) -> args != null && args.object().equals(objectName))))
+                .thenThrow(new ErrorResponseException(error, null, null));
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,199 @@
+package at.technikum_wien.swen3.paperless.service;
+
+import at.technikum_wien.swen3.paperless.entity.Document;
+import at.technikum_wien.swen3.paperless.repository.DocumentCopyView;
+import at.technikum_wien.swen3.paperless.repository.DocumentRepository;
+import at.technikum_wien.swen3.paperless.service.DeduplicationService.PipelineStage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.projection.ProjectionFactory;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DeduplicationServiceTest {
+
+    @Mock
+    private DocumentRepository documentRepository;
+
+    @Mock
+    private MinioStorageService minioStorageService;
+
+    private static final ProjectionFactory PROJECTION_FACTORY = new SpelAwareProxyProjectionFactory();
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private DeduplicationService deduplicationService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        deduplicationService = new DeduplicationService(documentRepository, minioStorageService, meterRegistry);
+    }
+
+    @Test
+    void deduplicate_whenNoDocumentHasSameHash_thenStartsAtOcr() {
+        // Arrange
+        Document upload = upload("new-object", "hash-1");
+        when(documentRepository.findByContentHashIn(List.of("hash-1"))).thenReturn(List.of());
+
+        // Act
+        PipelineStage stage = deduplicationService.deduplicate(upload);
+
+        // Assert
+        assertThat(stage).isEqualTo(PipelineStage.OCR);
+        assertThat(upload.getStoragePath()).isEqualTo("new-object");
+        verifyNoInteractions(minioStorageService);
+        assertThat(count("miss")).isEqualTo(1);
+    }
+
+    @Test
+    void deduplicate_whenCompletedOriginalExists_thenCopiesResultsAndRemovesUploadedObject() {
+        // Arrange
+        Document upload = upload("new-object", "hash-1");
+        Document processing = original(2L, "PROCESSING", null, null);
+        Document completed = original(5L, "COMPLETED", "OCR text", "A summary");
+        when(documentRepository.findByContentHashIn(List.of("hash-1"))).thenReturn(copies(processing, completed));
+        when(documentRepository.findAllById(List.of(5L))).thenReturn(List.of(completed));
+
+        // Act
+        PipelineStage stage = deduplicationService.deduplicate(upload);
+
+        // Assert
+        assertThat(stage).isEqualTo(PipelineStage.DONE);
+        assertThat(upload.getStoragePath()).isEqualTo("object-5");
+        assertThat(upload.getContent()).isEqualTo("OCR text");
+        assertThat(upload.getSummary()).isEqualTo("A summary");
+        assertThat(upload.getStatus()).isEqualTo("COMPLETED");
+        verify(minioStorageService).delete("new-object");
+        assertThat(count("hit")).isEqualTo(1);
+    }
+
+    @Test
+    void deduplicate_whenOriginalIsStillProcessing_thenWaitsForItsOcr() {
+        // Arrange
+        Document upload = upload("new-object", "hash-1");
+        Document failed = original(2L, "FAILED", null, null);
+        Document processing = original(4L, "PROCESSING", null, null);
+        when(documentRepository.findByContentHashIn(List.of("hash-1"))).thenReturn(copies(failed, processing));
+
+        // Act
+        PipelineStage stage = deduplicationService.deduplicate(upload);
+
+        // Assert
+        assertThat(stage).isEqualTo(PipelineStage.PENDING);
+        assertThat(upload.getStoragePath()).isEqualTo("object-4");
+        assertThat(upload.getStatus()).isEqualTo("PROCESSING");
+        assertThat(upload.getContent()).isNull();
+    }
+
+    @Test
+    void confirmPending_whenOriginalFinishedInTheMeantime_thenStartsAtOcr() {
+        // Arrange
+        Document waiting = upload("object-4", "hash-1");
+        Document finished = upload("object-5", "hash-2");
+        Document inBatch = upload("object-6", "hash-3");
+        Document inBatchCopy = upload("object-6", "hash-3");
+        when(documentRepository.lockProcessingContentHashes(Set.of("hash-1", "hash-2"))).thenReturn(List.of("hash-1"));
+
+        // Act
+        List<PipelineStage> stages = deduplicationService.confirmPending(
+                List.of(waiting, finished, inBatch, inBatchCopy),
+                List.of(PipelineStage.PENDING, PipelineStage.PENDING, PipelineStage.OCR, PipelineStage.PENDING));
+
+        // Assert: the original of the batch copy is inserted in the same transaction
+        assertThat(stages).containsExactly(PipelineStage.PENDING, PipelineStage.OCR, PipelineStage.OCR, PipelineStage.PENDING);
+    }
+
+    @Test
+    void deduplicate_whenOriginalOnlyHasOcrContent_thenStartsAtGenAi() {
+        // Arrange
+        Document upload = upload("new-object", "hash-1");
+        Document ocrDone = original(3L, "SUCCESS", "OCR text", null);
+        when(documentRepository.findByContentHashIn(List.of("hash-1"))).thenReturn(copies(ocrDone));
+        when(documentRepository.findAllById(List.of(3L))).thenReturn(List.of(ocrDone));
+
+        // Act
+        PipelineStage stage = deduplicationService.deduplicate(upload);
+
+        // Assert
+        assertThat(stage).isEqualTo(PipelineStage.GENAI);
+        assertThat(upload.getContent()).isEqualTo("OCR text");
+        assertThat(upload.getSummary()).isNull();
+    }
+
+    @Test
+    void requestPreview_whenDuplicateSharesRenderedPreview_thenKeepsIt() {
+        // Arrange
+        Document duplicate = upload("object", "hash-1");
+        duplicate.setPreviewStatus("COMPLETED");
+        Document failed = upload("object", "hash-2");
+        failed.setPreviewStatus("FAILED");
+
+        // Act & Assert
+        assertThat(DeduplicationService.requestPreview(duplicate, PipelineStage.DONE)).isFalse();
+        assertThat(duplicate.getPreviewStatus()).isEqualTo("COMPLETED");
+        assertThat(DeduplicationService.requestPreview(failed, PipelineStage.GENAI)).isTrue();
+        assertThat(failed.getPreviewStatus()).isEqualTo("PENDING");
+    }
+
+    @Test
+    void deduplicate_whenBatchContainsSameContentTwice_thenSecondReusesFirstObjectAndWaitsForItsOcr() {
+        // Arrange
+        Document first = upload("object-a", "hash-1");
+        Document second = upload("object-b", "hash-1");
+        when(documentRepository.findByContentHashIn(List.of("hash-1"))).thenReturn(List.of());
+
+        // Act
+        List<PipelineStage> stages = deduplicationService.deduplicate(List.of(first, second));
+
+        // Assert
+        assertThat(stages).containsExactly(PipelineStage.OCR, PipelineStage.PENDING);
+        assertThat(second.getStoragePath()).isEqualTo("object-a");
+        verify(minioStorageService).delete("object-b");
+        verify(documentRepository, times(1)).findByContentHashIn(any());
+    }
+
+    // Closed projections of the given documents, as the repository returns them
+    private static List<DocumentCopyView> copies(Document... documents) {
+        return Arrays.stream(documents)
+                .map(document -> PROJECTION_FACTORY.createProjection(DocumentCopyView.class, document))
+                .toList();
+    }
+
+    private double count(String result) {
+        return meterRegistry.get("paperless.upload.dedup").tag("result", result).counter().count();
+    }
+
+    private static Document upload(String storagePath, String hash) {
+        return Document.builder()
+                .title("Upload")
+                .storagePath(storagePath)
+                .status("PROCESSING")
+                .contentHash(hash)
+                .build();
+    }
+
+    private static Document original(Long id, String status, String content, String summary) {
+        return Document.builder()
+                .id(id)
+                .title("Original " + id)
+                .storagePath("object-" + id)
+                .status(status)
+                .content(content)
+                .summary(summary)
+                .contentHash("hash-1")
+                .build();
+    }
+}
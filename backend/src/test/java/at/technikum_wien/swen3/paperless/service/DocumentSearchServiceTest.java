@@ -0,0 +1,156 @@
+package at.technikum_wien.swen3.paperless.service;
+
+import at.technikum_wien.swen3.paperless.dto.DocumentDto;
+import at.technikum_wien.swen3.paperless.dto.SearchRequestDto;
+import at.technikum_wien.swen3.paperless.dto.SearchResultDto;
+import at.technikum_wien.swen3.paperless.entity.Document;
+import at.technikum_wien.swen3.paperless.mapper.DocumentMapper;
+import at.technikum_wien.swen3.paperless.repository.DocumentRepository;
+import at.technikum_wien.swen3.paperless.search.DocumentSearchEntity;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregate;
+import co.elastic.clients.elasticsearch._types.aggregations.RangeBucket;
+import co.elastic.clients.elasticsearch._types.aggregations.StringTermsBucket;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.elasticsearch.client.elc.ElasticsearchAggregations;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.query.Query;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DocumentSearchServiceTest {
+
+    @Mock
+    private ElasticsearchOperations elasticsearchOperations;
+
+    @Mock
+    private DocumentRepository documentRepository;
+
+    @Mock
+    private DocumentMapper documentMapper;
+
+    @InjectMocks
+    private DocumentSearchService documentSearchService;
+
+    @Test
+    void search_whenHitsExist_thenBuildsResultFromSourceWithoutDatabase() {
+        // Arrange
+        SearchHits<DocumentSearchEntity> hits = searchHits(42,
+                hit(7L, 3.5f, Map.of("content", List.of("the <mark>invoice</mark> total"))),
+                hit(3L, 1.2f, Map.of()));
+        when(elasticsearchOperations.search(any(Query.class), eq(DocumentSearchEntity.class))).thenReturn(hits);
+
+        // Act
+        SearchResultDto result = documentSearchService.search(SearchRequestDto.builder().query("invoice").page(1).size(2).build());
+
+        // Assert
+        assertThat(result.getItems()).extracting("id").containsExactly(7L, 3L);
+        assertThat(result.getItems().getFirst().getScore()).isEqualTo(3.5f);
+        assertThat(result.getItems().getFirst().getHighlights().get("content")).containsExactly("the <mark>invoice</mark> total");
+        assertThat(result.getTotal()).isEqualTo(42);
+        assertThat(result.isHasNext()).isTrue();
+        verifyNoInteractions(documentRepository);
+
+        ArgumentCaptor<NativeQuery> query = ArgumentCaptor.forClass(NativeQuery.class);
+        verify(elasticsearchOperations).search(query.capture(), eq(DocumentSearchEntity.class));
+        assertThat(query.getValue().getPageable().getOffset()).isEqualTo(2);
+        assertThat(query.getValue().getSourceFilter().getIncludes()).doesNotContain("content", "summary");
+        assertThat(query.getValue().getAggregations()).isEmpty();
+        assertThat(result.getFacets()).isNull();
+    }
+
+    @Test
+    void search_whenFacetsRequested_thenFiltersAndAggregatesInOneRequest() {
+        // Arrange
+        SearchHits<DocumentSearchEntity> hits = searchHits(1, hit(7L, 1f, Map.of()));
+        Aggregate tags = Aggregate.of(a -> a.sterms(t -> t
+                .buckets(b -> b.array(List.of(StringTermsBucket.of(bucket -> bucket.key("tax").docCount(4)))))
+                .sumOtherDocCount(0L)));
+        Aggregate sizes = Aggregate.of(a -> a.range(r -> r
+                .buckets(b -> b.array(List.of(RangeBucket.of(bucket -> bucket.key("<1MB").docCount(1)))))));
+        doReturn(new ElasticsearchAggregations(Map.of("tags", tags, "fileSize", sizes))).when(hits).getAggregations();
+        when(elasticsearchOperations.search(any(Query.class), eq(DocumentSearchEntity.class))).thenReturn(hits);
+        SearchRequestDto request = SearchRequestDto.builder()
+                .tags(List.of("tax"))
+                .status(List.of("COMPLETED"))
+                .createdFrom(LocalDate.of(2024, 1, 1))
+                .facets(true)
+                .build();
+
+        // Act
+        SearchResultDto result = documentSearchService.search(request);
+
+        // Assert
+        ArgumentCaptor<NativeQuery> query = ArgumentCaptor.forClass(NativeQuery.class);
+        verify(elasticsearchOperations).search(query.capture(), eq(DocumentSearchEntity.class));
+        assertThat(query.getValue().getAggregations()).containsOnlyKeys("tags", "status", "createdDate", "fileSize");
+        assertThat(query.getValue().getQuery().bool().filter()).hasSize(3);
+        assertThat(query.getValue().getQuery().bool().must().getFirst().isMatchAll()).isTrue();
+
+        assertThat(result.getFacets().get("tags")).extracting("key", "count").containsExactly(tuple("tax", 4L));
+        assertThat(result.getFacets().get("fileSize")).extracting("key").containsExactly("<1MB");
+    }
+
+    @Test
+    void search_whenHydrating_thenAttachesDocumentsInRelevanceOrder() {
+        // Arrange
+        SearchHits<DocumentSearchEntity> hits = searchHits(2, hit(7L, 3.5f, Map.of()), hit(3L, 1.2f, Map.of()));
+        Document seven = Document.builder().id(7L).build();
+        Document three = Document.builder().id(3L).build();
+        DocumentDto sevenDto = DocumentDto.builder().id(7L).build();
+        DocumentDto threeDto = DocumentDto.builder().id(3L).build();
+
+        when(elasticsearchOperations.search(any(Query.class), eq(DocumentSearchEntity.class))).thenReturn(hits);
+        when(documentRepository.findWithTagsByIdIn(List.of(7L, 3L))).thenReturn(List.of(three, seven));
+        when(documentMapper.entityToDto(seven)).thenReturn(sevenDto);
+        when(documentMapper.entityToDto(three)).thenReturn(threeDto);
+
+        // Act
+        SearchResultDto result = documentSearchService.search(SearchRequestDto.builder().query("invoice").hydrate(true).build());
+
+        // Assert
+        assertThat(result.getItems()).extracting("document").containsExactly(sevenDto, threeDto);
+        assertThat(result.isHasNext()).isFalse();
+    }
+
+    @Test
+    void search_whenPageIsBeyondResultWindow_thenThrowException() {
+        SearchRequestDto request = SearchRequestDto.builder().query("invoice").page(500).size(100).build();
+        assertThrows(IllegalArgumentException.class, () -> documentSearchService.search(request));
+        verifyNoInteractions(elasticsearchOperations);
+    }
+
+    @SuppressWarnings("unchecked")
+    @SafeVarargs
+    private static SearchHits<DocumentSearchEntity> searchHits(long total, SearchHit<DocumentSearchEntity>... hits) {
+        SearchHits<DocumentSearchEntity> searchHits = mock(SearchHits.class);
+        when(searchHits.getSearchHits()).thenReturn(List.of(hits));
+        when(searchHits.getTotalHits()).thenReturn(total);
+        return searchHits;
+    }
+
+    private static SearchHit<DocumentSearchEntity> hit(Long id, float score, Map<String, List<String>> highlights) {
+        DocumentSearchEntity source = new DocumentSearchEntity();
+        source.setId(id);
+        source.setTitle("Doc " + id);
+        return new SearchHit<>("documents", String.valueOf(id), null, score, null, highlights,
+                null, null, null, null, source);
+    }
+}
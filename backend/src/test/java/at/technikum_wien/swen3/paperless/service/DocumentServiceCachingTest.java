@@ -0,0 +1,119 @@
+package at.technikum_wien.swen3.paperless.service;
+
+import at.technikum_wien.swen3.paperless.config.CacheConfig;
+import at.technikum_wien.swen3.paperless.dto.DocumentDto;
+import at.technikum_wien.swen3.paperless.entity.Document;
+import at.technikum_wien.swen3.paperless.mapper.DocumentMapper;
+import at.technikum_wien.swen3.paperless.repository.DocumentRepository;
+import at.technikum_wien.swen3.paperless.repository.TagRepository;
+import io.minio.StatObjectResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.ZonedDateTime;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(classes = {CacheConfig.class, DocumentServiceImpl.class})
+class DocumentServiceCachingTest {
+
+    @Autowired
+    private DocumentService documentService;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @MockitoBean
+    private DocumentRepository documentRepository;
+
+    @MockitoBean
+    private ContentStorageService contentStorageService;
+
+    @MockitoBean
+    private PreviewStorageService previewStorageService;
+
+    @MockitoBean
+    private TagRepository tagRepository;
+
+    @MockitoBean
+    private DocumentMapper documentMapper;
+
+    @MockitoBean
+    private MinioStorageService minioStorageService;
+
+    @MockitoBean
+    private OutboxService outboxService;
+
+    @MockitoBean
+    private DeduplicationService deduplicationService;
+
+    @MockitoBean
+    private TransactionTemplate transactionTemplate;
+
+    @MockitoBean
+    private PipelineMetrics pipelineMetrics;
+
+    @BeforeEach
+    void setUp() {
+        cacheManager.getCache(CacheConfig.DOCUMENTS_CACHE).clear();
+        cacheManager.getCache(CacheConfig.DOCUMENT_FILES_CACHE).clear();
+        Document document = Document.builder().id(1L).title("Invoice").build();
+        when(documentRepository.findWithTagsById(1L)).thenReturn(Optional.of(document));
+        when(documentMapper.entityToDto(any(Document.class))).thenReturn(DocumentDto.builder().id(1L).title("Invoice").build());
+    }
+
+    @Test
+    void getDocument_whenCalledRepeatedly_thenLoadsOnce() {
+        // Act
+        documentService.getDocument(1L);
+        DocumentDto cached = documentService.getDocument(1L);
+
+        // Assert
+        assertThat(cached.getTitle()).isEqualTo("Invoice");
+        verify(documentRepository, times(1)).findWithTagsById(1L);
+    }
+
+    @Test
+    void getDocumentFile_whenCalledRepeatedly_thenReadsObjectMetadataOnce() {
+        // Arrange
+        Document document = Document.builder().id(1L).title("Invoice").storagePath("object-1").build();
+        when(documentRepository.findById(1L)).thenReturn(Optional.of(document));
+        StatObjectResponse stat = mock(StatObjectResponse.class);
+        when(stat.etag()).thenReturn("etag-1");
+        when(stat.size()).thenReturn(10L);
+        when(stat.lastModified()).thenReturn(ZonedDateTime.parse("2025-01-01T00:00:00Z"));
+        when(minioStorageService.stat("object-1")).thenReturn(stat);
+
+        // Act
+        documentService.getDocumentFile(1L);
+        DocumentFile file = documentService.getDocumentFile(1L);
+
+        // Assert
+        assertThat(file.eTag()).isEqualTo("\"etag-1\"");
+        assertThat(file.fileName()).isEqualTo("Invoice.pdf");
+        assertThat(file.contentType()).isEqualTo("application/pdf");
+        verify(minioStorageService, times(1)).stat("object-1");
+    }
+
+    @Test
+    void deleteDocument_whenCached_thenEvictsEntry() {
+        // Arrange
+        when(documentRepository.existsById(1L)).thenReturn(true);
+        documentService.getDocument(1L);
+
+        // Act
+        documentService.deleteDocument(1L);
+        documentService.getDocument(1L);
+
+        // Assert
+        verify(documentRepository, times(2)).findWithTagsById(1L);
+    }
+}
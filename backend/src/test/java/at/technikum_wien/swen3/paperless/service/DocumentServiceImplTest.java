@@ -1,25 +1,50 @@
 package at.technikum_wien.swen3.paperless.service;
 
+import at.technikum_wien.swen3.paperless.config.RabbitMQConfig;
+import at.technikum_wien.swen3.paperless.dto.CursorPageDto;
 import at.technikum_wien.swen3.paperless.dto.DocumentDto;
+import at.technikum_wien.swen3.paperless.dto.DocumentPageDto;
+import at.technikum_wien.swen3.paperless.dto.DocumentSummaryDto;
+import at.technikum_wien.swen3.paperless.dto.DocumentUpdateDto;
+import at.technikum_wien.swen3.paperless.dto.OcrRequest;
+import at.technikum_wien.swen3.paperless.dto.PreviewRequest;
 import at.technikum_wien.swen3.paperless.entity.Document;
+import at.technikum_wien.swen3.paperless.entity.Tag;
 import at.technikum_wien.swen3.paperless.mapper.DocumentMapper;
 import at.technikum_wien.swen3.paperless.repository.DocumentRepository;
+import at.technikum_wien.swen3.paperless.repository.DocumentSummaryView;
+import at.technikum_wien.swen3.paperless.repository.TagRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import at.technikum_wien.swen3.paperless.service.DeduplicationService.PipelineStage;
+import at.technikum_wien.swen3.paperless.service.PreviewStorageService.PreviewKind;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.time.OffsetDateTime;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -28,6 +53,12 @@ class DocumentServiceImplTest {
     @Mock
     private DocumentRepository documentRepository;
 
+    @Mock
+    private ContentStorageService contentStorageService;
+
+    @Mock
+    private PreviewStorageService previewStorageService;
+
     @Mock
     private DocumentMapper documentMapper;
 
@@ -35,7 +66,19 @@ class DocumentServiceImplTest {
     private MinioStorageService minioStorageService;
 
     @Mock
-    private RabbitTemplate rabbitTemplate;
+    private TagRepository tagRepository;
+
+    @Mock
+    private OutboxService outboxService;
+
+    @Mock
+    private DeduplicationService deduplicationService;
+
+    @Spy
+    private TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+
+    @Spy
+    private PipelineMetrics pipelineMetrics = new PipelineMetrics(new SimpleMeterRegistry());
 
     @InjectMocks
     private DocumentServiceImpl documentService;
@@ -49,17 +92,109 @@ class DocumentServiceImplTest {
         Document savedDocument = Document.builder().id(1L).title(title).storagePath(storagePath).build();
         DocumentDto expectedDto = DocumentDto.builder().id(1L).title(title).storagePath(storagePath).build();
 
-        when(minioStorageService.save(file)).thenReturn(storagePath);
+        when(minioStorageService.save(file)).thenReturn(new StoredObject(storagePath, 9, "abc123"));
+        when(deduplicationService.deduplicate(any(Document.class))).thenReturn(PipelineStage.OCR);
         when(documentRepository.save(any(Document.class))).thenReturn(savedDocument);
         when(documentMapper.entityToDto(savedDocument)).thenReturn(expectedDto);
+        OcrRequest ocrRequest = OcrRequest.builder().documentId(1L).storagePath(storagePath).build();
+        when(documentMapper.entityToOcrRequest(savedDocument)).thenReturn(ocrRequest);
+        PreviewRequest previewRequest = PreviewRequest.builder().documentId(1L).storagePath(storagePath).build();
+        when(documentMapper.entityToPreviewRequest(savedDocument)).thenReturn(previewRequest);
 
         // Act
-        DocumentDto result = documentService.createDocument(title, file);
+        DocumentDto result = documentService.createDocument(title, file, UploadOrigin.interactive());
 
         // Assert
         assertThat(result).isNotNull();
         assertThat(result.getTitle()).isEqualTo(title);
         assertThat(result.getStoragePath()).isEqualTo(storagePath);
+        verify(outboxService).publish(RabbitMQConfig.ROUTING_KEY, ocrRequest);
+        verify(outboxService).publish(RabbitMQConfig.PREVIEW_ROUTING_KEY, previewRequest);
+        verify(outboxService).publish(RabbitMQConfig.SEARCH_ROUTING_KEY, "1");
+        assertThat(ocrRequest.getPriority()).isEqualTo("INTERACTIVE");
+    }
+
+    @Test
+    void createDocument_whenBulk_thenHoldsOcrRequestForFairDispatch() {
+        // Arrange
+        MultipartFile file = new MockMultipartFile("file", "scan.pdf", "application/pdf", "test data".getBytes());
+        Document savedDocument = Document.builder().id(2L).title("Scan").storagePath("path-2").build();
+
+        when(minioStorageService.save(file)).thenReturn(new StoredObject("path-2", 9, "abc123"));
+        when(deduplicationService.deduplicate(any(Document.class))).thenReturn(PipelineStage.OCR);
+        when(documentRepository.save(any(Document.class))).thenReturn(savedDocument);
+        OcrRequest ocrRequest = OcrRequest.builder().documentId(2L).storagePath("path-2").build();
+        when(documentMapper.entityToOcrRequest(savedDocument)).thenReturn(ocrRequest);
+
+        // Act
+        documentService.createDocument("Scan", file, new UploadOrigin(UploadPriority.BULK, "scanner"));
+
+        // Assert
+        verify(outboxService).publishFair(RabbitMQConfig.OCR_BULK_ROUTING_KEY, "scanner", List.of(ocrRequest));
+        verify(outboxService, never()).publish(eq(RabbitMQConfig.ROUTING_KEY), any());
+        assertThat(ocrRequest.getPriority()).isEqualTo("BULK");
+    }
+
+    @Test
+    void createDocument_whenStreamIsPdf_thenStoresStreamAndSavesHash() {
+        // Arrange
+        InputStream content = new ByteArrayInputStream("%PDF-1.7 test data".getBytes());
+        StoredObject stored = new StoredObject("unique-path-456", 18, "deadbeef");
+
+        when(minioStorageService.save(any(InputStream.class), eq("application/pdf"))).thenReturn(stored);
+        when(deduplicationService.deduplicate(any(Document.class))).thenReturn(PipelineStage.OCR);
+        when(documentRepository.save(any(Document.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(documentMapper.entityToDto(any(Document.class))).thenReturn(new DocumentDto());
+        when(documentMapper.entityToOcrRequest(any(Document.class))).thenReturn(new OcrRequest());
+
+        // Act
+        documentService.createDocument("Streamed", content, UploadOrigin.interactive());
+
+        // Assert
+        ArgumentCaptor<Document> saved = ArgumentCaptor.forClass(Document.class);
+        verify(documentRepository).save(saved.capture());
+        assertThat(saved.getValue().getStoragePath()).isEqualTo("unique-path-456");
+        assertThat(saved.getValue().getFileSize()).isEqualTo(18);
+        assertThat(saved.getValue().getContentHash()).isEqualTo("deadbeef");
+    }
+
+    @Test
+    void createDocument_whenDuplicateIsCompleted_thenOnlySendsToSearchQueue() {
+        // Arrange
+        MultipartFile file = new MockMultipartFile("file", "test.pdf", "application/pdf", "test data".getBytes());
+
+        when(minioStorageService.save(file)).thenReturn(new StoredObject("unique-path-789", 9, "abc123"));
+        when(deduplicationService.deduplicate(any(Document.class))).thenAnswer(invocation -> {
+            invocation.<Document>getArgument(0).setPreviewStatus("COMPLETED");
+            return PipelineStage.DONE;
+        });
+        when(documentRepository.save(any(Document.class))).thenAnswer(invocation -> {
+            Document document = invocation.getArgument(0);
+            document.setId(7L);
+            return document;
+        });
+        when(documentMapper.entityToDto(any(Document.class))).thenReturn(new DocumentDto());
+
+        // Act
+        documentService.createDocument("Duplicate", file, UploadOrigin.interactive());
+
+        // Assert
+        verify(outboxService).publish(RabbitMQConfig.SEARCH_ROUTING_KEY, "7");
+        verify(outboxService, never()).publish(eq(RabbitMQConfig.ROUTING_KEY), any());
+        verify(outboxService, never()).publish(eq(RabbitMQConfig.GENAI_ROUTING_KEY), any());
+        verify(outboxService, never()).publish(eq(RabbitMQConfig.PREVIEW_ROUTING_KEY), any());
+    }
+
+    @Test
+    void createDocument_whenStreamIsNotPdf_thenThrowException() {
+        // Arrange
+        InputStream content = new ByteArrayInputStream("PK zip archive".getBytes());
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> {
+            documentService.createDocument("Not a PDF", content, UploadOrigin.interactive());
+        });
+        verifyNoInteractions(minioStorageService);
     }
 
     @Test
@@ -77,7 +212,7 @@ class DocumentServiceImplTest {
                 .title("Test Document")
                 .build();
 
-        when(documentRepository.findById(1L)).thenReturn(Optional.of(document));
+        when(documentRepository.findWithTagsById(1L)).thenReturn(Optional.of(document));
         when(documentMapper.entityToDto(document)).thenReturn(documentDto);
 
         // Act: Call the method we are testing
@@ -92,7 +227,7 @@ class DocumentServiceImplTest {
     void getDocument_whenNotFound_thenThrowException() {
         // Arrange
         long documentId = 99L;
-        when(documentRepository.findById(documentId)).thenReturn(Optional.empty());
+        when(documentRepository.findWithTagsById(documentId)).thenReturn(Optional.empty());
 
         // Act & Assert
         assertThrows(NoSuchElementException.class, () -> {
@@ -100,14 +235,85 @@ class DocumentServiceImplTest {
         });
     }
 
+    @Test
+    void getDocumentPage_whenPageIsStored_thenReadsItFromObjectStorage() {
+        // Arrange
+        Document document = Document.builder().id(7L).contentHash("abc").build();
+        when(documentRepository.findById(7L)).thenReturn(Optional.of(document));
+        when(contentStorageService.readPage("abc", 2)).thenReturn(Optional.of("page two"));
+
+        // Act
+        Optional<DocumentPageDto> result = documentService.getDocumentPage(7L, 2);
+
+        // Assert
+        assertThat(result).isPresent();
+        assertThat(result.get().getContent()).isEqualTo("page two");
+        assertThat(result.get().getPageCount()).isNull();
+    }
+
+    @Test
+    void getDocumentText_whenRangeExceedsPageCount_thenReadsUpToLastPage() {
+        // Arrange
+        Document document = Document.builder().id(7L).contentHash("abc").pageCount(5).build();
+        when(documentRepository.findById(7L)).thenReturn(Optional.of(document));
+        when(contentStorageService.readPages("abc", 4, 5)).thenReturn("four\nfive");
+
+        // Act
+        String text = documentService.getDocumentText(7L, 4, 50);
+
+        // Assert
+        assertThat(text).isEqualTo("four\nfive");
+    }
+
+    @Test
+    void getDocumentText_whenTextIsStillInDatabase_thenReturnsContent() {
+        // Arrange
+        Document document = Document.builder().id(7L).content("legacy text").build();
+        when(documentRepository.findById(7L)).thenReturn(Optional.of(document));
+
+        // Act
+        String text = documentService.getDocumentText(7L, null, null);
+
+        // Assert
+        assertThat(text).isEqualTo("legacy text");
+        verifyNoInteractions(contentStorageService);
+    }
+
+    @Test
+    void getDocumentPreviewETag_whenPreviewIsRendered_thenDerivesETagFromContentHash() {
+        // Arrange
+        Document document = Document.builder().id(4L).contentHash("abc").previewStatus("COMPLETED").build();
+        when(documentRepository.findById(4L)).thenReturn(Optional.of(document));
+
+        // Act
+        Optional<String> eTag = documentService.getDocumentPreviewETag(4L, PreviewKind.THUMBNAIL);
+
+        // Assert
+        assertThat(eTag).contains("\"abc-thumbnail\"");
+        verifyNoInteractions(previewStorageService);
+    }
+
+    @Test
+    void getDocumentPreviewETag_whenPreviewIsPending_thenReturnsEmpty() {
+        // Arrange
+        Document document = Document.builder().id(4L).contentHash("abc").previewStatus("PENDING").build();
+        when(documentRepository.findById(4L)).thenReturn(Optional.of(document));
+
+        // Act
+        Optional<String> eTag = documentService.getDocumentPreviewETag(4L, PreviewKind.PAGE);
+
+        // Assert
+        assertThat(eTag).isEmpty();
+    }
+
     @Test
     void updateDocument_whenExists_thenReturnsUpdatedDto() {
         // Arrange
         long documentId = 1L;
-        Document existingDocument = Document.builder().id(documentId).title("Old Title").build();
-        DocumentDto updateRequestDto = DocumentDto.builder().title("New Title").content("New content").build();
+        Document existingDocument = Document.builder().id(documentId).title("Old Title").content("OCR preview").build();
+        DocumentUpdateDto updateRequestDto = DocumentUpdateDto.builder().title("New Title").build();
 
-        when(documentRepository.findById(documentId)).thenReturn(Optional.of(existingDocument));
+        when(documentRepository.findWithTagsById(documentId)).thenReturn(Optional.of(existingDocument));
         when(documentRepository.save(any(Document.class))).thenAnswer(invocation -> invocation.getArgument(0)); // Return the saved entity
         when(documentMapper.entityToDto(any(Document.class))).thenAnswer(invocation -> {
             Document savedDoc = invocation.getArgument(0);
@@ -121,15 +327,16 @@ class DocumentServiceImplTest {
         // Assert
         assertThat(result).isNotNull();
         assertThat(result.getTitle()).isEqualTo("New Title");
-        assertThat(result.getContent()).isEqualTo("New content");
+        assertThat(result.getContent()).isEqualTo("OCR preview"); // content is read-only
+        verify(outboxService).publish(RabbitMQConfig.SEARCH_ROUTING_KEY, "1");
     }
 
     @Test
     void updateDocument_whenNotFound_thenThrowException() {
         // Arrange
         long documentId = 99L;
-        DocumentDto updateRequestDto = DocumentDto.builder().title("New Title").build();
-        when(documentRepository.findById(documentId)).thenReturn(Optional.empty());
+        DocumentUpdateDto updateRequestDto = DocumentUpdateDto.builder().title("New Title").build();
+        when(documentRepository.findWithTagsById(documentId)).thenReturn(Optional.empty());
 
         // Act & Assert
         assertThrows(NoSuchElementException.class, () -> {
@@ -137,6 +344,56 @@ class DocumentServiceImplTest {
         });
     }
 
+    @Test
+    void updateDocument_whenVersionIsStale_thenThrowsWithoutSaving() {
+        // Arrange
+        long documentId = 1L;
+        Document existingDocument = Document.builder().id(documentId).title("Old Title").version(3L).build();
+        DocumentUpdateDto updateRequestDto = DocumentUpdateDto.builder().title("New Title").version(2L).build();
+        when(documentRepository.findWithTagsById(documentId)).thenReturn(Optional.of(existingDocument));
+
+        // Act & Assert
+        assertThrows(ObjectOptimisticLockingFailureException.class,
+                () -> documentService.updateDocument(documentId, updateRequestDto));
+        verify(documentRepository, never()).save(any());
+    }
+
+    @Test
+    void addTag_whenTagIsNew_thenCreatesTagAndQueuesReindex() {
+        // Arrange
+        Document document = Document.builder().id(3L).title("Invoice").build();
+        Tag tag = new Tag();
+        tag.setId(9L);
+        tag.setName("tax");
+
+        when(documentRepository.findWithTagsById(3L)).thenReturn(Optional.of(document));
+        when(tagRepository.findByName("tax")).thenReturn(Optional.empty());
+        when(tagRepository.save(any(Tag.class))).thenReturn(tag);
+        when(documentRepository.save(document)).thenReturn(document);
+        when(documentMapper.entityToDto(document)).thenReturn(new DocumentDto());
+
+        // Act
+        Optional<DocumentDto> result = documentService.addTag(3L, "tax");
+
+        // Assert
+        assertThat(result).isPresent();
+        assertThat(document.getTags()).containsExactly(tag);
+        verify(outboxService).publish(RabbitMQConfig.SEARCH_ROUTING_KEY, "3");
+    }
+
+    @Test
+    void removeTag_whenDocumentNotFound_thenReturnsEmpty() {
+        // Arrange
+        when(documentRepository.findWithTagsById(99L)).thenReturn(Optional.empty());
+
+        // Act
+        Optional<DocumentDto> result = documentService.removeTag(99L, 1L);
+
+        // Assert
+        assertThat(result).isEmpty();
+        verifyNoInteractions(outboxService);
+    }
+
     @Test
     void deleteDocument_whenExists_thenDeletesDocument() {
         // Arrange
@@ -147,8 +404,9 @@ class DocumentServiceImplTest {
         // Act
         documentService.deleteDocument(documentId);
 
-        // Assert
+        // Assert: the search document is removed as well
         verify(documentRepository, times(1)).deleteById(documentId);
+        verify(outboxService).publish(RabbitMQConfig.SEARCH_ROUTING_KEY, "1");
     }
 
     @Test
@@ -161,5 +419,55 @@ class DocumentServiceImplTest {
         assertThrows(NoSuchElementException.class, () -> {
             documentService.deleteDocument(documentId);
         });
+        verifyNoInteractions(outboxService);
+    }
+
+    @Test
+    void getDocuments_whenMorePagesExist_thenReturnsCursorForLastItem() {
+        // Arrange
+        OffsetDateTime created = OffsetDateTime.parse("2025-01-01T10:00:00Z");
+        List<Document> documents = List.of(
+                Document.builder().id(2L).title("Second").createdDate(created).build(),
+                Document.builder().id(1L).title("First").createdDate(created).build());
+        Window<Document> window = Window.from(documents, ScrollPosition::offset, true);
+
+        when(documentRepository.findBy(any(ScrollPosition.class), any(Sort.class), eq(Limit.of(2)), eq(Document.class))).thenReturn(window);
+        when(documentMapper.entityToDto(documents)).thenReturn(List.of(new DocumentDto(), new DocumentDto()));
+
+        // Act
+        CursorPageDto<DocumentDto> result = documentService.getDocuments(null, 2, "desc");
+
+        // Assert
+        assertThat(result.getItems()).hasSize(2);
+        assertThat(result.isHasNext()).isTrue();
+        DocumentCursor cursor = DocumentCursor.decode(result.getNextCursor());
+        assertThat(cursor.id()).isEqualTo(1L);
+        assertThat(cursor.createdDate()).isEqualTo(created);
+        assertThat(cursor.direction()).isEqualTo(Sort.Direction.DESC);
+    }
+
+    @Test
+    void getDocumentSummaries_whenSizeAboveMaximum_thenClampsPageSize() {
+        // Arrange
+        when(documentRepository.findBy(any(ScrollPosition.class), any(Sort.class), any(Limit.class), eq(DocumentSummaryView.class)))
+                .thenReturn(Window.from(List.of(), ScrollPosition::offset, false));
+
+        // Act
+        CursorPageDto<DocumentSummaryDto> result = documentService.getDocumentSummaries(null, 10_000, null);
+
+        // Assert
+        verify(documentRepository).findBy(any(ScrollPosition.class), any(Sort.class),
+                eq(Limit.of(DocumentServiceImpl.MAX_PAGE_SIZE)), eq(DocumentSummaryView.class));
+        verify(documentRepository, never()).findTagNamesByDocumentIds(any());
+        assertThat(result.getItems()).isEmpty();
+        assertThat(result.isHasNext()).isFalse();
+        assertThat(result.getNextCursor()).isNull();
+    }
+
+    @Test
+    void getDocuments_whenCursorIsMalformed_thenThrowException() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            documentService.getDocuments("not-a-cursor", null, null);
+        });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,132 @@
+package at.technikum_wien.swen3.paperless.service;
+
+import at.technikum_wien.swen3.paperless.config.RabbitMQConfig;
+import at.technikum_wien.swen3.paperless.entity.OutboxMessage;
+import at.technikum_wien.swen3.paperless.repository.OutboxMessageRepository;
+import at.technikum_wien.swen3.paperless.repository.OutboxSourceCount;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.data.domain.Limit;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FairDispatcherTest {
+
+    private static final String LANE = RabbitMQConfig.OCR_BULK_ROUTING_KEY;
+
+    @Mock
+    private OutboxMessageRepository outboxMessageRepository;
+
+    @Mock
+    private AmqpAdmin amqpAdmin;
+
+    private FairDispatcher fairDispatcher;
+
+    @BeforeEach
+    void setUp() {
+        fairDispatcher = new FairDispatcher(outboxMessageRepository, amqpAdmin, 10, "scanner:3");
+    }
+
+    @Test
+    void allocate_whenOneSourceHoldsAHugeImport_thenOthersStillGetAnEqualShare() {
+        // Act
+        Map<String, Integer> shares = fairDispatcher.allocate(LANE, 6, Map.of("archive", 5000L, "alice", 1L, "bob", 4L));
+
+        // Assert
+        assertThat(shares).containsOnly(Map.entry("archive", 3), Map.entry("alice", 1), Map.entry("bob", 2));
+    }
+
+    @Test
+    void allocate_whenSourceHasAWeight_thenItGetsThatManyShares() {
+        // Act
+        Map<String, Integer> shares = fairDispatcher.allocate(LANE, 8, Map.of("scanner", 100L, "archive", 100L));
+
+        // Assert
+        assertThat(shares).containsOnly(Map.entry("scanner", 6), Map.entry("archive", 2));
+    }
+
+    @Test
+    void allocate_whenSourceJoinsLater_thenItStartsAtTheCurrentVirtualTime() {
+        // Arrange
+        fairDispatcher.allocate(LANE, 10, Map.of("archive", 100L));
+
+        // Act
+        Map<String, Integer> shares = fairDispatcher.allocate(LANE, 4, Map.of("archive", 90L, "alice", 10L));
+
+        // Assert: neither a burst for alice nor a catch-up for archive
+        assertThat(shares).containsOnly(Map.entry("archive", 2), Map.entry("alice", 2));
+    }
+
+    @Test
+    void release_whenBulkQueueIsNearlyFull_thenReleasesOnlyWhatFits() {
+        // Arrange
+        OffsetDateTime now = OffsetDateTime.now();
+        when(outboxMessageRepository.countHeldBySource(LANE, now))
+                .thenReturn(List.of(count("archive", 500), count("alice", 3)));
+        when(amqpAdmin.getQueueInfo(RabbitMQConfig.OCR_BULK_QUEUE_NAME))
+                .thenReturn(new QueueInformation(RabbitMQConfig.OCR_BULK_QUEUE_NAME, 8, 1));
+        OutboxMessage archive = OutboxMessage.builder().id(1L).build();
+        OutboxMessage alice = OutboxMessage.builder().id(2L).build();
+        when(outboxMessageRepository.findByRoutingKeyAndSourceAndNextAttemptAtLessThanEqualOrderByIdAsc(
+                LANE, "archive", now, Limit.of(1))).thenReturn(List.of(archive));
+        when(outboxMessageRepository.findByRoutingKeyAndSourceAndNextAttemptAtLessThanEqualOrderByIdAsc(
+                LANE, "alice", now, Limit.of(1))).thenReturn(List.of(alice));
+
+        // Act
+        List<OutboxMessage> released = fairDispatcher.release(now);
+
+        // Assert
+        assertThat(released).containsExactlyInAnyOrder(archive, alice);
+    }
+
+    @Test
+    void release_whenNothingIsHeld_thenDoesNotAskTheBroker() {
+        // Arrange
+        when(outboxMessageRepository.countHeldBySource(eq(LANE), any())).thenReturn(List.of());
+
+        // Act
+        List<OutboxMessage> released = fairDispatcher.release(OffsetDateTime.now());
+
+        // Assert
+        assertThat(released).isEmpty();
+        verifyNoInteractions(amqpAdmin);
+    }
+
+    @Test
+    void parseWeights_whenWeightIsInvalid_thenThrowsException() {
+        assertThat(FairDispatcher.parseWeights(" scanner : 3 ,import:1")).containsOnly(
+                Map.entry("scanner", 3), Map.entry("import", 1));
+        assertThatThrownBy(() -> FairDispatcher.parseWeights("scanner"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> FairDispatcher.parseWeights("scanner:0"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static OutboxSourceCount count(String source, long count) {
+        return new OutboxSourceCount() {
+            @Override
+            public String getSource() {
+                return source;
+            }
+
+            @Override
+            public long getCount() {
+                return count;
+            }
+        };
+    }
+}
@@ -0,0 +1,31 @@
+package at.technikum_wien.swen3.paperless.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HashingInputStreamTest {
+
+    @Test
+    void read_whenStreamIsConsumed_thenCountsAndHashesAllBytes() throws IOException {
+        // Arrange
+        byte[] data = "hello world".getBytes(StandardCharsets.UTF_8);
+        HashingInputStream hashing = new HashingInputStream(new ByteArrayInputStream(data));
+
+        // Act
+        try (InputStream in = hashing) {
+            in.read();
+            in.skip(2);
+            in.readAllBytes();
+        }
+
+        // Assert
+        assertThat(hashing.getCount()).isEqualTo(data.length);
+        assertThat(hashing.getSha256()).isEqualTo("b94d27b9934d3e08a52e52d7da7dabfac484efe37a5380ee9088f7ace2efcde9");
+    }
+}
@@ -3,16 +3,29 @@ package at.technikum_wien.swen3.paperless.service;
 import at.technikum_wien.swen3.paperless.entity.Document;
 import at.technikum_wien.swen3.paperless.mapper.DocumentSearchMapper;
 import at.technikum_wien.swen3.paperless.repository.DocumentRepository;
-import at.technikum_wien.swen3.paperless.repository.ElasticSearchRepository;
 import at.technikum_wien.swen3.paperless.search.DocumentSearchEntity;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.RefreshPolicy;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.BulkOptions;
+import org.springframework.data.elasticsearch.core.query.DeleteQuery;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
 
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -21,50 +34,119 @@ public class IndexerServiceTest {
     private DocumentRepository documentRepository;
 
     @Mock
-    private ElasticSearchRepository elasticSearchRepository;
+    private ElasticsearchOperations elasticsearchOperations;
 
     @Mock
     private DocumentSearchMapper documentSearchMapper;
 
-    @InjectMocks
+    @Mock
+    private ReindexService reindexService;
+
+    private SimpleMeterRegistry meterRegistry;
+
     private IndexerService indexerService;
 
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        indexerService = new IndexerService(documentRepository, elasticsearchOperations, documentSearchMapper,
+                reindexService, meterRegistry, RefreshPolicy.NONE);
+    }
+
     @Test
-    void indexDocument_whenDocumentExists_shouldSaveToElastic() {
+    void indexDocuments_whenIdsRepeat_shouldLoadOnceAndBulkIndexEachDocumentOnce() {
         // Arrange
-        Long docId = 1L;
-        String message = "1";
-        Document doc = new Document();
-        doc.setId(docId);
-        doc.setTitle("Test Doc");
+        Document first = document(1L);
+        Document second = document(2L);
+        when(documentRepository.findWithTagsByIdIn(Set.of(1L, 2L))).thenReturn(List.of(first, second));
+        when(documentSearchMapper.entityToSearchEntity(first)).thenReturn(searchEntity(1L));
+        when(documentSearchMapper.entityToSearchEntity(second)).thenReturn(searchEntity(2L));
 
-        DocumentSearchEntity searchEntity = new DocumentSearchEntity();
-        searchEntity.setId(docId);
-        searchEntity.setTitle("Test Doc");
+        // Act
+        indexerService.indexDocuments(List.of("1", "2", "1", "1"));
+
+        // Assert
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<IndexQuery>> queries = ArgumentCaptor.forClass(List.class);
+        verify(documentRepository, times(1)).findWithTagsByIdIn(any());
+        verify(elasticsearchOperations).bulkIndex(queries.capture(), any(BulkOptions.class), eq(DocumentSearchEntity.class));
+        assertThat(queries.getValue()).extracting(IndexQuery::getId).containsExactly("1", "2");
+        assertThat(meterRegistry.summary("paperless.indexer.batch.size").totalAmount()).isEqualTo(4);
+        assertThat(meterRegistry.summary("paperless.indexer.batch.documents").totalAmount()).isEqualTo(2);
+        assertThat(meterRegistry.timer("paperless.indexer.batch.latency").count()).isEqualTo(1);
+    }
+
+    @Test
+    void indexDocuments_whenReindexIsLoading_shouldAlsoWriteToNewIndex() {
+        // Arrange
+        Document doc = document(1L);
+        when(documentRepository.findWithTagsByIdIn(Set.of(1L))).thenReturn(List.of(doc));
+        when(documentSearchMapper.entityToSearchEntity(doc)).thenReturn(searchEntity(1L));
+        when(reindexService.getLoadingIndex()).thenReturn(Optional.of("documents-20250101000000"));
+
+        // Act
+        indexerService.indexDocuments(List.of("1"));
 
-        when(documentRepository.findById(docId)).thenReturn(Optional.of(doc));
-        when(documentSearchMapper.entityToSearchEntity(doc)).thenReturn(searchEntity);
+        // Assert
+        verify(elasticsearchOperations).bulkIndex(anyList(), any(BulkOptions.class), eq(DocumentSearchEntity.class));
+        verify(elasticsearchOperations).bulkIndex(anyList(), any(BulkOptions.class),
+                eq(IndexCoordinates.of("documents-20250101000000")));
+    }
+
+    @Test
+    void indexDocuments_whenDocumentDoesNotExist_shouldRemoveItFromIndex() {
+        // Arrange
+        when(documentRepository.findWithTagsByIdIn(Set.of(99L))).thenReturn(List.of());
 
         // Act
-        indexerService.indexDocument(message);
+        indexerService.indexDocuments(List.of("99"));
 
         // Assert
-        verify(documentRepository).findById(docId);
-        verify(documentSearchMapper).entityToSearchEntity(doc);
-        verify(elasticSearchRepository).save(searchEntity); // The crucial check
+        ArgumentCaptor<DeleteQuery> query = ArgumentCaptor.forClass(DeleteQuery.class);
+        verify(elasticsearchOperations).delete(query.capture(), eq(DocumentSearchEntity.class));
+        assertThat(query.getValue().getQuery().getIds()).containsExactly("99");
+        verify(elasticsearchOperations, never()).bulkIndex(anyList(), any(BulkOptions.class), any(Class.class));
     }
 
     @Test
-    void indexDocument_whenDocumentDoesNotExist_shouldDoNothing() {
+    void indexDocuments_whenSomeDocumentsWereDeleted_shouldIndexTheRestAndRemoveThem() {
         // Arrange
-        Long docId = 99L;
-        when(documentRepository.findById(docId)).thenReturn(Optional.empty());
+        Document doc = document(1L);
+        when(documentRepository.findWithTagsByIdIn(Set.of(1L, 2L, 3L))).thenReturn(List.of(doc));
+        when(documentSearchMapper.entityToSearchEntity(doc)).thenReturn(searchEntity(1L));
+        when(reindexService.getLoadingIndex()).thenReturn(Optional.of("documents-20250101000000"));
 
         // Act
-        indexerService.indexDocument("99");
+        indexerService.indexDocuments(List.of("1", "2", "3"));
+
+        // Assert: the deletion reaches the index being loaded too, else the swap would bring them back
+        ArgumentCaptor<DeleteQuery> query = ArgumentCaptor.forClass(DeleteQuery.class);
+        verify(elasticsearchOperations).delete(query.capture(), eq(DocumentSearchEntity.class));
+        assertThat(query.getValue().getQuery().getIds()).containsExactly("2", "3");
+        verify(elasticsearchOperations).delete(any(DeleteQuery.class), eq(DocumentSearchEntity.class),
+                eq(IndexCoordinates.of("documents-20250101000000")));
+        verify(elasticsearchOperations).bulkIndex(anyList(), any(BulkOptions.class), eq(DocumentSearchEntity.class));
+    }
+
+    @Test
+    void indexDocuments_whenIdIsInvalid_shouldSkipIt() {
+        // Act
+        indexerService.indexDocuments(List.of("not-a-number"));
 
         // Assert
-        verify(documentRepository).findById(docId);
-        verify(elasticSearchRepository, never()).save(any());
+        verifyNoInteractions(documentRepository, elasticsearchOperations);
+    }
+
+    private static Document document(Long id) {
+        Document document = new Document();
+        document.setId(id);
+        document.setTitle("Doc " + id);
+        return document;
+    }
+
+    private static DocumentSearchEntity searchEntity(Long id) {
+        DocumentSearchEntity searchEntity = new DocumentSearchEntity();
+        searchEntity.setId(id);
+        return searchEntity;
     }
 }
@@ -0,0 +1,158 @@
+package at.technikum_wien.swen3.paperless.service;
+
+import at.technikum_wien.swen3.paperless.config.RabbitMQConfig;
+import at.technikum_wien.swen3.paperless.dto.GenAiRequest;
+import at.technikum_wien.swen3.paperless.dto.OcrResult;
+import at.technikum_wien.swen3.paperless.repository.DocumentJdbcRepository;
+import at.technikum_wien.swen3.paperless.repository.DocumentResultUpdate;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OcrResultListenerTest {
+
+    @Mock
+    private DocumentJdbcRepository documentJdbcRepository;
+
+    @Mock
+    private OutboxService outboxService;
+
+    @Mock
+    private ContentStorageService contentStorageService;
+
+    @Mock
+    private ResultBatchProcessor resultBatchProcessor;
+
+    @InjectMocks
+    private OcrResultListener ocrResultListener;
+
+    @Test
+    void applyOcrResults_whenCalled_thenUpdatesBatchAndQueuesFollowUpsForSuccessfulResultsOnly() {
+        // Arrange
+        OcrResult stored = result(1L, "SUCCESS", "preview");
+        stored.setPageCount(12);
+        stored.setContentHash("abc");
+        List<OcrResult> results = List.of(
+                stored,
+                result(2L, "FAILED", null),
+                result(3L, "SUCCESS", "gone"));
+        when(contentStorageService.preview(anyString())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(documentJdbcRepository.updateContents(anyList())).thenReturn(List.of(1L, 2L));
+
+        // Act
+        ocrResultListener.applyOcrResults(results);
+
+        // Assert
+        verify(documentJdbcRepository).updateContents(List.of(
+                new DocumentResultUpdate(1L, "SUCCESS", "preview", 12),
+                new DocumentResultUpdate(2L, "FAILED", null),
+                new DocumentResultUpdate(3L, "SUCCESS", "gone")));
+        // Only a reference to the text pages goes to the GenAI worker
+        verify(outboxService).publish(RabbitMQConfig.GENAI_ROUTING_KEY,
+                GenAiRequest.builder().documentId(1L).contentHash("abc").pageCount(12).build());
+        verify(outboxService).publish(RabbitMQConfig.SEARCH_ROUTING_KEY, "1");
+        verify(outboxService, times(2)).publish(anyString(), any());
+        verify(resultBatchProcessor, times(3)).evictDocument(anyLong());
+    }
+
+    @Test
+    void applyOcrResults_whenResultIsBulk_thenQueuesSummaryOnTheBulkLane() {
+        // Arrange
+        OcrResult bulk = result(4L, "SUCCESS", "text");
+        bulk.setPriority("BULK");
+        when(contentStorageService.preview(anyString())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(documentJdbcRepository.updateContents(anyList())).thenReturn(List.of(4L));
+
+        // Act
+        ocrResultListener.applyOcrResults(List.of(bulk));
+
+        // Assert
+        verify(outboxService).publish(RabbitMQConfig.GENAI_BULK_ROUTING_KEY,
+                GenAiRequest.builder().documentId(4L).text("text").build());
+        verify(outboxService, never()).publish(eq(RabbitMQConfig.GENAI_ROUTING_KEY), any());
+    }
+
+    @Test
+    void applyOcrResults_whenDuplicatesWaitForTheResult_thenAppliesItToThemAsWell() {
+        // Arrange
+        OcrResult original = result(5L, "SUCCESS", "text");
+        original.setPageCount(2);
+        original.setContentHash("abc");
+        when(contentStorageService.preview(anyString())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(documentJdbcRepository.updateContents(anyList())).thenAnswer(invocation ->
+                invocation.<List<DocumentResultUpdate>>getArgument(0).stream().map(DocumentResultUpdate::documentId).toList());
+        when(documentJdbcRepository.findProcessingIdsByContentHash(Set.of("abc"))).thenReturn(Map.of("abc", List.of(5L, 8L, 9L)));
+
+        // Act
+        ocrResultListener.applyOcrResults(List.of(original));
+
+        // Assert
+        verify(documentJdbcRepository).updateContents(List.of(
+                new DocumentResultUpdate(8L, "SUCCESS", "text", 2),
+                new DocumentResultUpdate(9L, "SUCCESS", "text", 2)));
+        verify(outboxService).publish(RabbitMQConfig.GENAI_ROUTING_KEY,
+                GenAiRequest.builder().documentId(8L).contentHash("abc").pageCount(2).build());
+        verify(outboxService).publish(RabbitMQConfig.SEARCH_ROUTING_KEY, "9");
+        verify(outboxService, times(6)).publish(anyString(), any());
+    }
+
+    @Test
+    void applyOcrResults_whenOcrOfTheOriginalFailed_thenFailsTheWaitingDuplicatesToo() {
+        // Arrange
+        OcrResult original = result(5L, "FAILED", "");
+        original.setContentHash("abc");
+        original.setErrorDetails("Could not download file");
+        when(documentJdbcRepository.updateContents(anyList())).thenAnswer(invocation ->
+                invocation.<List<DocumentResultUpdate>>getArgument(0).stream().map(DocumentResultUpdate::documentId).toList());
+        when(documentJdbcRepository.findProcessingIdsByContentHash(Set.of("abc"))).thenReturn(Map.of("abc", List.of(8L)));
+
+        // Act
+        ocrResultListener.applyOcrResults(List.of(original));
+
+        // Assert
+        verify(documentJdbcRepository).updateContents(List.of(new DocumentResultUpdate(5L, "FAILED", null, null)));
+        verify(documentJdbcRepository).updateContents(List.of(new DocumentResultUpdate(8L, "FAILED", null, null)));
+        verify(resultBatchProcessor).evictDocument(8L);
+        verifyNoInteractions(outboxService);
+    }
+
+    @Test
+    void applyOcrResults_whenBatchHoldsAFailureAndASuccessForTheSameContent_thenCopiesTheSuccess() {
+        // Arrange
+        OcrResult failed = result(5L, "FAILED", "");
+        failed.setContentHash("abc");
+        OcrResult succeeded = result(6L, "SUCCESS", "text");
+        succeeded.setContentHash("abc");
+        succeeded.setPageCount(1);
+        when(contentStorageService.preview(anyString())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(documentJdbcRepository.updateContents(anyList())).thenAnswer(invocation ->
+                invocation.<List<DocumentResultUpdate>>getArgument(0).stream().map(DocumentResultUpdate::documentId).toList());
+        when(documentJdbcRepository.findProcessingIdsByContentHash(Set.of("abc"))).thenReturn(Map.of("abc", List.of(8L)));
+
+        // Act
+        ocrResultListener.applyOcrResults(List.of(failed, succeeded));
+
+        // Assert
+        verify(documentJdbcRepository).updateContents(List.of(new DocumentResultUpdate(8L, "SUCCESS", "text", 1)));
+    }
+
+    private static OcrResult result(Long documentId, String status, String contentText) {
+        OcrResult result = new OcrResult();
+        result.setDocumentId(documentId);
+        result.setStatus(status);
+        result.setContentText(contentText);
+        return result;
+    }
+}
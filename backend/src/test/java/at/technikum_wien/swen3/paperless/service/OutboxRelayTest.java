@@ -0,0 +1,153 @@
+package at.technikum_wien.swen3.paperless.service;
+
+import at.technikum_wien.swen3.paperless.config.RabbitMQConfig;
+import at.technikum_wien.swen3.paperless.entity.OutboxMessage;
+import at.technikum_wien.swen3.paperless.repository.OutboxMessageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.AmqpTimeoutException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OutboxRelayTest {
+
+    @Mock
+    private OutboxMessageRepository outboxMessageRepository;
+
+    @Mock
+    private RabbitTemplate rabbitTemplate;
+
+    @Mock
+    private FairDispatcher fairDispatcher;
+
+    @Mock
+    private RabbitOperations rabbitOperations;
+
+    private OutboxRelay outboxRelay;
+
+    @BeforeEach
+    void setUp() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+        outboxRelay = new OutboxRelay(outboxMessageRepository, rabbitTemplate, transactionTemplate,
+                new PipelineMetrics(new SimpleMeterRegistry()), fairDispatcher);
+        ReflectionTestUtils.setField(outboxRelay, "batchSize", 2);
+        ReflectionTestUtils.setField(outboxRelay, "confirmTimeoutMillis", 1000L);
+    }
+
+    @Test
+    void relayBatch_whenBrokerConfirms_thenPublishesAndDeletesMessages() {
+        // Arrange
+        List<OutboxMessage> messages = List.of(message(1L, "\"1\""), message(2L, "\"2\""));
+        when(outboxMessageRepository.findBySourceIsNullAndNextAttemptAtLessThanEqualOrderByIdAsc(any(), any())).thenReturn(messages);
+        publishThroughOperations();
+
+        // Act
+        int relayed = outboxRelay.relayBatch();
+
+        // Assert
+        assertThat(relayed).isEqualTo(2);
+        verify(rabbitOperations).send(eq(RabbitMQConfig.EXCHANGE_NAME), eq(RabbitMQConfig.SEARCH_ROUTING_KEY),
+                argThat((Message message) -> new String(message.getBody()).equals("\"1\"")
+                        && message.getMessageProperties().getMessageId().equals("1")));
+        verify(rabbitOperations).waitForConfirmsOrDie(1000L);
+        verify(outboxMessageRepository).deleteAllInBatch(messages);
+    }
+
+    @Test
+    void relayBatch_whenConfirmTimesOut_thenKeepsMessagesAndBacksOff() {
+        // Arrange
+        OutboxMessage message = message(1L, "\"1\"");
+        message.setAttempts(2);
+        when(outboxMessageRepository.findBySourceIsNullAndNextAttemptAtLessThanEqualOrderByIdAsc(any(), any())).thenReturn(List.of(message));
+        publishThroughOperations();
+        doThrow(new AmqpTimeoutException("no confirm")).when(rabbitOperations).waitForConfirmsOrDie(anyLong());
+
+        // Act
+        int relayed = outboxRelay.relayBatch();
+
+        // Assert
+        assertThat(relayed).isZero();
+        assertThat(message.getAttempts()).isEqualTo(3);
+        assertThat(message.getNextAttemptAt()).isAfter(OffsetDateTime.now().plusSeconds(3));
+        assertThat(message.getLastError()).isEqualTo("no confirm");
+        verify(outboxMessageRepository, never()).deleteAllInBatch(any());
+    }
+
+    @Test
+    void relayBatch_whenFairDispatcherReleasesHeldMessages_thenPublishesThemWithTheBatch() {
+        // Arrange
+        OutboxMessage search = message(1L, "\"1\"");
+        OutboxMessage bulkOcr = message(2L, "{}");
+        bulkOcr.setRoutingKey(RabbitMQConfig.OCR_BULK_ROUTING_KEY);
+        bulkOcr.setSource("scanner");
+        when(outboxMessageRepository.findBySourceIsNullAndNextAttemptAtLessThanEqualOrderByIdAsc(any(), any()))
+                .thenReturn(List.of(search));
+        when(fairDispatcher.release(any())).thenReturn(List.of(bulkOcr));
+        publishThroughOperations();
+
+        // Act
+        int relayed = outboxRelay.relayBatch();
+
+        // Assert
+        assertThat(relayed).isEqualTo(2);
+        verify(rabbitOperations).send(eq(RabbitMQConfig.EXCHANGE_NAME), eq(RabbitMQConfig.OCR_BULK_ROUTING_KEY), any(Message.class));
+        verify(outboxMessageRepository).deleteAllInBatch(List.of(search, bulkOcr));
+    }
+
+    @Test
+    void drain_whenBatchesAreFull_thenKeepsRelaying() {
+        // Arrange
+        when(outboxMessageRepository.findBySourceIsNullAndNextAttemptAtLessThanEqualOrderByIdAsc(any(), any()))
+                .thenReturn(List.of(message(1L, "\"1\""), message(2L, "\"2\"")))
+                .thenReturn(List.of(message(3L, "\"3\"")));
+        publishThroughOperations();
+
+        // Act
+        outboxRelay.drain();
+
+        // Assert
+        verify(outboxMessageRepository, times(2)).deleteAllInBatch(any());
+    }
+
+    @Test
+    void backoff_whenAttemptsGrow_thenDoublesUpToMaximum() {
+        assertThat(OutboxRelay.backoff(1)).isEqualTo(Duration.ofSeconds(1));
+        assertThat(OutboxRelay.backoff(4)).isEqualTo(Duration.ofSeconds(8));
+        assertThat(OutboxRelay.backoff(30)).isEqualTo(Duration.ofMinutes(5));
+    }
+
+    private void publishThroughOperations() {
+        when(rabbitTemplate.invoke(any())).thenAnswer(invocation ->
+                invocation.<RabbitOperations.OperationsCallback<?>>getArgument(0).doInRabbit(rabbitOperations));
+    }
+
+    private static OutboxMessage message(Long id, String payload) {
+        return OutboxMessage.builder()
+                .id(id)
+                .exchange(RabbitMQConfig.EXCHANGE_NAME)
+                .routingKey(RabbitMQConfig.SEARCH_ROUTING_KEY)
+                .payload(payload)
+                .nextAttemptAt(OffsetDateTime.now())
+                .build();
+    }
+}
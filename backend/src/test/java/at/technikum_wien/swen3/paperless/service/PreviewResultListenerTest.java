@@ -0,0 +1,55 @@
+package at.technikum_wien.swen3.paperless.service;
+
+import at.technikum_wien.swen3.paperless.dto.PreviewResult;
+import at.technikum_wien.swen3.paperless.repository.DocumentJdbcRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PreviewResultListenerTest {
+
+    @Mock
+    private DocumentJdbcRepository documentJdbcRepository;
+
+    @Mock
+    private ResultBatchProcessor resultBatchProcessor;
+
+    @InjectMocks
+    private PreviewResultListener previewResultListener;
+
+    @Test
+    void applyPreviewResults_whenCalled_thenUpdatesStatusPerContentHashAndEvictsDocuments() {
+        // Arrange
+        List<PreviewResult> results = List.of(
+                result(1L, "hash-1", "COMPLETED"),
+                result(2L, "hash-1", "FAILED"),
+                result(3L, "hash-3", "FAILED"),
+                result(4L, null, "COMPLETED"));
+        when(documentJdbcRepository.updatePreviewStatuses(anyMap())).thenReturn(List.of(1L, 2L, 3L, 5L));
+
+        // Act
+        previewResultListener.applyPreviewResults(results);
+
+        // Assert
+        verify(documentJdbcRepository).updatePreviewStatuses(Map.of("hash-1", "COMPLETED", "hash-3", "FAILED"));
+        verify(resultBatchProcessor).evictDocument(5L);
+        verify(resultBatchProcessor, times(4)).evictDocument(anyLong());
+    }
+
+    private static PreviewResult result(Long documentId, String contentHash, String status) {
+        PreviewResult result = new PreviewResult();
+        result.setDocumentId(documentId);
+        result.setContentHash(contentHash);
+        result.setStatus(status);
+        return result;
+    }
+}
@@ -0,0 +1,201 @@
+package at.technikum_wien.swen3.paperless.service;
+
+import at.technikum_wien.swen3.paperless.dto.ReindexStatusDto;
+import at.technikum_wien.swen3.paperless.entity.Document;
+import at.technikum_wien.swen3.paperless.exception.ReindexInProgressException;
+import at.technikum_wien.swen3.paperless.mapper.DocumentSearchMapper;
+import at.technikum_wien.swen3.paperless.repository.DocumentRepository;
+import at.technikum_wien.swen3.paperless.search.DocumentSearchEntity;
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.indices.ElasticsearchIndicesClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.IndexOperations;
+import org.springframework.data.elasticsearch.core.index.AliasAction;
+import org.springframework.data.elasticsearch.core.index.AliasActions;
+import org.springframework.data.elasticsearch.core.index.AliasData;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReindexServiceTest {
+
+    @Mock
+    private DocumentRepository documentRepository;
+
+    @Mock
+    private ElasticsearchOperations elasticsearchOperations;
+
+    @Mock
+    private ElasticsearchClient elasticsearchClient;
+
+    @Mock
+    private ElasticsearchIndicesClient indicesClient;
+
+    @Mock
+    private DocumentSearchMapper documentSearchMapper;
+
+    @Mock
+    private IndexOperations indexOperations;
+
+    private ReindexService reindexService;
+
+    @BeforeEach
+    void setUp() {
+        reindexService = new ReindexService(documentRepository, elasticsearchOperations, elasticsearchClient,
+                documentSearchMapper, Runnable::run);
+        ReflectionTestUtils.setField(reindexService, "slices", 2);
+        ReflectionTestUtils.setField(reindexService, "pageSize", 2);
+        ReflectionTestUtils.setField(reindexService, "replicas", 1);
+    }
+
+    @Test
+    void start_whenDocumentsExist_thenLoadsSlicesAndSwapsAlias() throws IOException {
+        // Arrange
+        when(elasticsearchOperations.indexOps(any(IndexCoordinates.class))).thenReturn(indexOperations);
+        when(elasticsearchOperations.indexOps(DocumentSearchEntity.class)).thenReturn(indexOperations);
+        when(elasticsearchClient.indices()).thenReturn(indicesClient);
+        when(indexOperations.getAliases(DocumentSearchEntity.INDEX_ALIAS))
+                .thenReturn(Map.of("documents-old", Set.of(mock(AliasData.class))));
+
+        when(documentRepository.findMaxId()).thenReturn(Optional.of(4L));
+        when(documentRepository.count()).thenReturn(3L);
+        // slice (0, 2] has two pages, slice (2, 4] one
+        when(documentRepository.findIdsInRange(eq(0L), eq(2L), any(Limit.class))).thenReturn(List.of(1L, 2L));
+        when(documentRepository.findIdsInRange(eq(2L), eq(2L), any(Limit.class))).thenReturn(List.of());
+        when(documentRepository.findIdsInRange(eq(2L), eq(4L), any(Limit.class))).thenReturn(List.of(4L));
+        when(documentRepository.findIdsInRange(eq(4L), eq(4L), any(Limit.class))).thenReturn(List.of());
+        when(documentRepository.findWithTagsByIdIn(anyCollection())).thenAnswer(invocation ->
+                invocation.<List<Long>>getArgument(0).stream().map(id -> Document.builder().id(id).build()).toList());
+        when(documentSearchMapper.entityToSearchEntity(any(Document.class))).thenAnswer(invocation -> {
+            DocumentSearchEntity searchEntity = new DocumentSearchEntity();
+            searchEntity.setId(invocation.<Document>getArgument(0).getId());
+            return searchEntity;
+        });
+
+        // Act
+        ReindexStatusDto started = reindexService.start();
+
+        // Assert
+        ReindexStatusDto status = reindexService.getStatus();
+        assertThat(status.getState()).isEqualTo(ReindexService.STATE_COMPLETED);
+        assertThat(status.getIndexed()).isEqualTo(3);
+        assertThat(status.getTotal()).isEqualTo(3);
+        assertThat(status.getTargetIndex()).isEqualTo(started.getTargetIndex()).startsWith("documents-");
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<IndexQuery>> queries = ArgumentCaptor.forClass(List.class);
+        verify(elasticsearchOperations, times(2)).bulkIndex(queries.capture(), eq(IndexCoordinates.of(status.getTargetIndex())));
+        assertThat(queries.getAllValues()).flatExtracting(batch -> batch).extracting(IndexQuery::getOpType)
+                .containsOnly(IndexQuery.OpType.CREATE);
+
+        verify(indexOperations).create(eq(Map.of("index.number_of_replicas", 0, "index.refresh_interval", "-1")), any());
+        verify(indicesClient).putSettings(any(Function.class));
+        ArgumentCaptor<AliasActions> aliasActions = ArgumentCaptor.forClass(AliasActions.class);
+        verify(indexOperations).alias(aliasActions.capture());
+        assertThat(aliasActions.getValue().getActions())
+                .hasExactlyElementsOfTypes(AliasAction.Add.class, AliasAction.Remove.class);
+        verify(indexOperations).delete();
+        assertThat(reindexService.getLoadingIndex()).isEmpty();
+    }
+
+    @Test
+    void start_whenLoadFails_thenReportsFailureAndKeepsAlias() {
+        // Arrange
+        when(elasticsearchOperations.indexOps(any(IndexCoordinates.class))).thenReturn(indexOperations);
+        when(elasticsearchOperations.indexOps(DocumentSearchEntity.class)).thenReturn(indexOperations);
+        when(documentRepository.findMaxId()).thenThrow(new IllegalStateException("database down"));
+
+        // Act
+        reindexService.start();
+
+        // Assert
+        ReindexStatusDto status = reindexService.getStatus();
+        assertThat(status.getState()).isEqualTo(ReindexService.STATE_FAILED);
+        assertThat(status.getError()).isEqualTo("database down");
+        verify(indexOperations, never()).alias(any());
+        verify(indexOperations).delete();
+    }
+
+    @Test
+    void start_whenJobIsRunning_thenThrowException() {
+        // Arrange
+        ReindexService queued = new ReindexService(documentRepository, elasticsearchOperations, elasticsearchClient,
+                documentSearchMapper, command -> { });
+        queued.start();
+
+        // Act & Assert
+        assertThrows(ReindexInProgressException.class, queued::start);
+    }
+
+    @Test
+    void start_whenExecutorRejects_thenThrowsAndKeepsPreviousStatus() {
+        // Arrange
+        ReindexService busy = new ReindexService(documentRepository, elasticsearchOperations, elasticsearchClient,
+                documentSearchMapper, command -> {
+                    throw new TaskRejectedException("no thread available");
+                });
+
+        // Act & Assert
+        assertThrows(ReindexInProgressException.class, busy::start);
+        assertThat(busy.getStatus().getState()).isEqualTo(ReindexService.STATE_IDLE);
+    }
+
+    @Test
+    void ensureIndex_whenDocumentsIsAConcreteIndex_thenStartsTheMigrationReindex() {
+        // Arrange: "documents" exists but is no alias, getAliases answers 404
+        ReindexService queued = new ReindexService(documentRepository, elasticsearchOperations, elasticsearchClient,
+                documentSearchMapper, command -> { });
+        when(elasticsearchOperations.indexOps(IndexCoordinates.of(DocumentSearchEntity.INDEX_ALIAS))).thenReturn(indexOperations);
+        when(indexOperations.exists()).thenReturn(true);
+        when(indexOperations.getAliases(DocumentSearchEntity.INDEX_ALIAS)).thenThrow(new IllegalStateException("404"));
+
+        // Act
+        queued.ensureIndex();
+
+        // Assert
+        assertThat(queued.getStatus().getState()).isEqualTo(ReindexService.STATE_RUNNING);
+        verify(indexOperations, never()).create(anyMap(), any());
+    }
+
+    @Test
+    void ensureIndex_whenAliasExists_thenLeavesIt() {
+        // Arrange
+        when(elasticsearchOperations.indexOps(IndexCoordinates.of(DocumentSearchEntity.INDEX_ALIAS))).thenReturn(indexOperations);
+        when(indexOperations.exists()).thenReturn(true);
+        when(indexOperations.getAliases(DocumentSearchEntity.INDEX_ALIAS))
+                .thenReturn(Map.of("documents-old", Set.of(mock(AliasData.class))));
+
+        // Act
+        reindexService.ensureIndex();
+
+        // Assert
+        assertThat(reindexService.getStatus().getState()).isEqualTo(ReindexService.STATE_IDLE);
+        verify(indexOperations, never()).alias(any());
+    }
+
+    @Test
+    void getStatus_whenNeverStarted_thenIdle() {
+        assertThat(reindexService.getStatus().getState()).isEqualTo(ReindexService.STATE_IDLE);
+    }
+}
@@ -0,0 +1,114 @@
+package at.technikum_wien.swen3.paperless.service;
+
+import at.technikum_wien.swen3.paperless.config.RabbitMQConfig;
+import at.technikum_wien.swen3.paperless.dto.OcrResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.cache.CacheManager;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ResultBatchProcessorTest {
+
+    @Mock
+    private RabbitTemplate rabbitTemplate;
+
+    @Mock
+    private CacheManager cacheManager;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private ResultBatchProcessor resultBatchProcessor;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        resultBatchProcessor = new ResultBatchProcessor(new TransactionTemplate(transactionManager), rabbitTemplate,
+                cacheManager, new PipelineMetrics(meterRegistry));
+    }
+
+    private static Message<OcrResult> message(long documentId, String correlationId) {
+        OcrResult result = new OcrResult();
+        result.setDocumentId(documentId);
+        return MessageBuilder.withPayload(result).setHeader(AmqpHeaders.CORRELATION_ID, correlationId).build();
+    }
+
+    private static List<Long> documentIds(List<OcrResult> results) {
+        return results.stream().map(OcrResult::getDocumentId).toList();
+    }
+
+    @Test
+    void process_whenBatchSucceeds_thenCommitsOnce() {
+        // Arrange
+        List<Long> handled = new ArrayList<>();
+
+        // Act
+        resultBatchProcessor.process(RabbitMQConfig.OCR_RESULT_QUEUE_NAME,
+                List.of(message(1, "c1"), message(2, "c2"), message(3, "c3")),
+                results -> handled.addAll(documentIds(results)));
+
+        // Assert
+        assertThat(handled).containsExactly(1L, 2L, 3L);
+        verify(transactionManager, times(1)).commit(any());
+        verifyNoInteractions(rabbitTemplate);
+        assertThat(meterRegistry.get("paperless.listener.latency")
+                .tag("queue", RabbitMQConfig.OCR_RESULT_QUEUE_NAME).timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void process_whenMessageHasCorrelationId_thenSetsItOnTheResult() {
+        // Arrange
+        List<OcrResult> handled = new ArrayList<>();
+
+        // Act
+        resultBatchProcessor.process(RabbitMQConfig.OCR_RESULT_QUEUE_NAME, List.of(message(1, "upload-42")), handled::addAll);
+
+        // Assert
+        assertThat(handled).singleElement().extracting(OcrResult::getCorrelationId).isEqualTo("upload-42");
+    }
+
+    @Test
+    void process_whenOneResultFails_thenRetriesOneByOneAndDeadLettersOnlyTheFailedResult() {
+        // Arrange
+        List<Long> handled = new ArrayList<>();
+        Message<OcrResult> bad = message(2, "c2");
+
+        // Act
+        resultBatchProcessor.process(RabbitMQConfig.OCR_RESULT_QUEUE_NAME, List.of(message(1, "c1"), bad, message(3, "c3")),
+                results -> {
+                    for (OcrResult result : results) {
+                        if (result.getDocumentId() == 2L) {
+                            throw new IllegalStateException("boom");
+                        }
+                        handled.add(result.getDocumentId());
+                    }
+                });
+
+        // Assert
+        // 1 is applied in the rolled back batch and again on its own, 3 only on its own
+        assertThat(handled).containsExactly(1L, 1L, 3L);
+        verify(rabbitTemplate).convertAndSend(
+                RabbitMQConfig.DEAD_LETTER_EXCHANGE_NAME, RabbitMQConfig.OCR_RESULT_QUEUE_NAME, (Object) bad.getPayload());
+        verify(rabbitTemplate, times(1)).convertAndSend(anyString(), anyString(), any(Object.class));
+    }
+}
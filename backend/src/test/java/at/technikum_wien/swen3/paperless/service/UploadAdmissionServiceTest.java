@@ -0,0 +1,130 @@
+package at.technikum_wien.swen3.paperless.service;
+
+import at.technikum_wien.swen3.paperless.config.RabbitMQConfig;
+import at.technikum_wien.swen3.paperless.exception.UploadRejectedException;
+import at.technikum_wien.swen3.paperless.repository.OutboxMessageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UploadAdmissionServiceTest {
+
+    @Mock
+    private AmqpAdmin amqpAdmin;
+
+    @Mock
+    private OutboxMessageRepository outboxMessageRepository;
+
+    private UploadAdmissionService uploadAdmissionService;
+
+    @BeforeEach
+    void setUp() {
+        // interactive: backlog 100, 2 in flight; bulk: backlog 10, 1 in flight
+        uploadAdmissionService = new UploadAdmissionService(amqpAdmin, outboxMessageRepository, new SimpleMeterRegistry(),
+                true, 100, 2, 10, 1, Duration.ofSeconds(30), Duration.ofMinutes(2));
+    }
+
+    private void backlog(int queued, long outbox, int bulkQueued, long held) {
+        when(amqpAdmin.getQueueInfo(RabbitMQConfig.QUEUE_NAME))
+                .thenReturn(new QueueInformation(RabbitMQConfig.QUEUE_NAME, queued, 1));
+        when(outboxMessageRepository.countByRoutingKey(RabbitMQConfig.ROUTING_KEY)).thenReturn(outbox);
+        when(amqpAdmin.getQueueInfo(RabbitMQConfig.OCR_BULK_QUEUE_NAME))
+                .thenReturn(new QueueInformation(RabbitMQConfig.OCR_BULK_QUEUE_NAME, bulkQueued, 1));
+        when(outboxMessageRepository.countByRoutingKey(RabbitMQConfig.OCR_BULK_ROUTING_KEY)).thenReturn(held);
+        uploadAdmissionService.sampleBacklog();
+    }
+
+    @Test
+    void admit_whenBulkBacklogExceedsBulkLimit_thenRejectsBulkButAdmitsInteractive() {
+        // Arrange
+        backlog(0, 5, 25, 15);
+
+        // Act & Assert
+        assertThatThrownBy(() -> uploadAdmissionService.admit(UploadPriority.BULK))
+                .isInstanceOf(UploadRejectedException.class)
+                // 40 is four times the limit of 10
+                .extracting(e -> ((UploadRejectedException) e).getRetryAfter())
+                .isEqualTo(Duration.ofMinutes(2));
+        try (UploadAdmissionService.Permit permit = uploadAdmissionService.admit(UploadPriority.INTERACTIVE)) {
+            assertThat(permit).isNotNull();
+        }
+    }
+
+    @Test
+    void admit_whenInteractiveBacklogExceedsItsLimit_thenRejectsInteractiveOnly() {
+        // Arrange
+        backlog(90, 20, 0, 0);
+
+        // Act & Assert
+        assertThatThrownBy(() -> uploadAdmissionService.admit(UploadPriority.INTERACTIVE))
+                .isInstanceOf(UploadRejectedException.class);
+        uploadAdmissionService.admit(UploadPriority.BULK).close();
+    }
+
+    @Test
+    void reserve_whenBatchDocumentsFillTheRoom_thenRefusesTheRestAndFurtherBatches() {
+        // Arrange: 6 queued, room for 4 below the bulk limit of 10
+        backlog(0, 0, 4, 2);
+
+        // Act
+        int reserved = 0;
+        try (UploadAdmissionService.Permit ignored = uploadAdmissionService.admitBatch(UploadPriority.BULK)) {
+            for (int i = 0; i < 5; i++) {
+                if (uploadAdmissionService.reserve(UploadPriority.BULK)) {
+                    reserved++;
+                }
+            }
+        }
+
+        // Assert
+        assertThat(reserved).isEqualTo(4);
+        assertThatThrownBy(() -> uploadAdmissionService.admitBatch(UploadPriority.BULK))
+                .isInstanceOf(UploadRejectedException.class);
+        // The refused batch gave its in-flight permit back
+        when(outboxMessageRepository.countByRoutingKey(RabbitMQConfig.OCR_BULK_ROUTING_KEY)).thenReturn(0L);
+        uploadAdmissionService.sampleBacklog();
+        uploadAdmissionService.admitBatch(UploadPriority.BULK).close();
+    }
+
+    @Test
+    void admit_whenBrokerIsUnreachable_thenCountsTheOutboxBacklog() {
+        // Arrange
+        when(amqpAdmin.getQueueInfo(anyString())).thenThrow(new IllegalStateException("connection refused"));
+        when(outboxMessageRepository.countByRoutingKey(RabbitMQConfig.ROUTING_KEY)).thenReturn(150L);
+        when(outboxMessageRepository.countByRoutingKey(RabbitMQConfig.OCR_BULK_ROUTING_KEY)).thenReturn(0L);
+
+        // Act
+        uploadAdmissionService.sampleBacklog();
+
+        // Assert
+        assertThatThrownBy(() -> uploadAdmissionService.admit(UploadPriority.INTERACTIVE))
+                .isInstanceOf(UploadRejectedException.class);
+    }
+
+    @Test
+    void admit_whenTooManyUploadsInFlight_thenRejectsUntilAPermitIsClosed() {
+        // Arrange
+        UploadAdmissionService.Permit first = uploadAdmissionService.admit(UploadPriority.BULK);
+
+        // Act & Assert
+        assertThatThrownBy(() -> uploadAdmissionService.admit(UploadPriority.BULK))
+                .isInstanceOf(UploadRejectedException.class)
+                .extracting(e -> ((UploadRejectedException) e).getRetryAfter())
+                .isEqualTo(Duration.ofSeconds(5));
+        first.close();
+        uploadAdmissionService.admit(UploadPriority.BULK).close();
+        verifyNoInteractions(amqpAdmin);
+    }
+}
@@ -12,13 +12,74 @@ export interface DocumentDto {
 	status: string;
 	summary: string;
     fileSize: number;
+	contentHash?: string;
+	// PENDING, COMPLETED or FAILED, images are served by thumbnailUrl / previewUrl once COMPLETED
+	previewStatus?: string;
+	version?: number;
 	tags?: TagDto[];
 }
 
+// List projection returned by the list endpoint, without OCR content and summary
+export interface DocumentSummaryDto {
+	id: number;
+	title: string;
+	status: string;
+	createdDate: string;
+	fileSize: number;
+	previewStatus?: string;
+	tags: string[];
+}
+
+// Search hit built from the Elasticsearch index, highlights are HTML escaped with matches in <mark>
+export interface SearchHitDto {
+	id: number;
+	title: string;
+	createdDate: string;
+	status: string;
+	fileSize: number;
+	tags: string[];
+	score: number;
+	highlights: Record<string, string[]>;
+	document?: DocumentDto;
+}
+
+export interface FacetBucket {
+	key: string;
+	count: number;
+}
+
+export interface SearchResult {
+	items: SearchHitDto[];
+	total: number;
+	page: number;
+	size: number;
+	hasNext: boolean;
+	// tags, status, createdDate (yyyy-MM) and fileSize buckets when requested
+	facets?: Record<string, FacetBucket[]>;
+}
+
+export interface SearchFilters {
+	tags?: string[];
+	status?: string[];
+	createdFrom?: string;
+	createdTo?: string;
+	minSize?: number;
+	maxSize?: number;
+}
+
+export interface CursorPage<T> {
+	items: T[];
+	size: number;
+	hasNext: boolean;
+	nextCursor: string | null;
+}
+
 const API_BASE = '/api/documents';
 
-export async function getDocuments(): Promise<DocumentDto[]> {
-	const response = await fetch(API_BASE);
+export async function getDocuments(cursor?: string | null): Promise<CursorPage<DocumentSummaryDto>> {
+	const params = new URLSearchParams();
+	if (cursor) params.set('cursor', cursor);
+	const response = await fetch(`${API_BASE}?${params}`);
 	if (!response.ok) {
 		throw new Error('Failed to fetch documents');
 	}
@@ -26,19 +87,22 @@ export async function getDocuments(): Promise<DocumentDto[]> {
 }
 
 export async function uploadDocument(title: string, file: File): Promise<DocumentDto> {
-	const formData = new FormData();
-	formData.append('title', title);
-	formData.append('file', file);
-
-	const response = await fetch(API_BASE, {
+	// Send the raw PDF so the backend can stream it to storage without multipart buffering
+	const response = await fetch(`${API_BASE}/stream?title=${encodeURIComponent(title)}`, {
 		method: 'POST',
-		body: formData
+		headers: { 'Content-Type': 'application/pdf' },
+		body: file
 	});
 
+	if (response.status === 429) {
+		// Admission control: the processing pipeline is behind, Retry-After is in seconds
+		const retryAfter = response.headers.get('Retry-After');
+		throw new Error(`The server is busy processing documents, please try again in ${retryAfter ?? 'a few'} seconds.`);
+	}
 	if (!response.ok) {
         const errorBody = await response.text();
         console.error("Failed to upload. Server response:", errorBody);
-		
+
         throw new Error(`Upload failed: ${response.status} ${response.statusText}`);
     }
 	return await response.json();
@@ -52,14 +116,19 @@ export async function getDocumentById(id: number): Promise<DocumentDto> {
 	return await response.json();
 }
 
-export async function updateDocument(id: number, title: string, content: string): Promise<DocumentDto> {
+// Only the title is editable, the content is the OCR result
+export async function updateDocument(id: number, title: string, version?: number): Promise<DocumentDto> {
 	const response = await fetch(`${API_BASE}/${id}`, {
 		method: 'PUT',
 		headers: {
 			'Content-Type': 'application/json'
 		},
-		body: JSON.stringify({ title, content })
+		body: JSON.stringify({ title, version })
 	});
+	// The document was changed by OCR/GenAI since it was loaded
+	if (response.status === 409) {
+		throw new Error(await response.text());
+	}
 	if (!response.ok) {
 		throw new Error('Failed to update document');
 	}
@@ -84,8 +153,30 @@ export async function getDownloadUrl(id: number): Promise<string> {
     return data.url;
 }
 
-export async function searchDocuments(query: string): Promise<DocumentDto[]> {
-    const response = await fetch(`${API_BASE}/search?query=${encodeURIComponent(query)}`);
+// Streams the PDF through the backend, browsers and PDF viewers revalidate it with If-None-Match and fetch ranges
+export function fileUrl(id: number): string {
+    return `${API_BASE}/${id}/file`;
+}
+
+// Rendered once per document and served with long-lived cache headers, so the browser cache can answer
+export function thumbnailUrl(id: number): string {
+    return `${API_BASE}/${id}/thumbnail`;
+}
+
+// First page as an image, much smaller than the PDF behind fileUrl
+export function previewUrl(id: number): string {
+    return `${API_BASE}/${id}/preview`;
+}
+
+export async function searchDocuments(query: string, page = 0, filters: SearchFilters = {}, facets = false): Promise<SearchResult> {
+    const params = new URLSearchParams({ query, page: String(page), facets: String(facets) });
+    filters.tags?.forEach((tag) => params.append('tags', tag));
+    filters.status?.forEach((status) => params.append('status', status));
+    if (filters.createdFrom) params.set('createdFrom', filters.createdFrom);
+    if (filters.createdTo) params.set('createdTo', filters.createdTo);
+    if (filters.minSize != null) params.set('minSize', String(filters.minSize));
+    if (filters.maxSize != null) params.set('maxSize', String(filters.maxSize));
+    const response = await fetch(`${API_BASE}/search?${params}`);
     if (!response.ok) {
         throw new Error('Failed to search documents');
     }
@@ -1,18 +1,15 @@
-import { getDocumentById, getDownloadUrl } from '$lib/api';
+import { getDocumentById, fileUrl } from '$lib/api';
 import type { PageLoad } from './$types';
 
 export const load: PageLoad = async ({ params }) => {
     const id = Number(params.id);
     try {
-        // Fetch document and download URL in parallel
-        const [document, downloadUrl] = await Promise.all([
-            getDocumentById(id),
-            getDownloadUrl(id)
-        ]);
+        const document = await getDocumentById(id);
 
         return {
             document,
-            downloadUrl
+            // Served by the backend with ETag and Range support, no presigned URL has to be requested first
+            downloadUrl: fileUrl(id)
         };
     } catch (error) {
         return {
@@ -20,4 +17,4 @@ export const load: PageLoad = async ({ params }) => {
             error: 'Could not load document'
         };
     }
-};
\ No newline at end of file
+};
@@ -0,0 +1,250 @@
+"""Summarization for the GenAI worker: a pluggable model behind Summarizer, a token budget per request
+(long documents are summarized in chunks), rate limiting with token buckets, retries with exponential
+backoff and a local cache of summaries by content hash."""
+import abc
+import hashlib
+import os
+import random
+import sqlite3
+import threading
+import time
+
+# Part of the cache key, bump it when the prompts change so old summaries are not reused
+PROMPT_VERSION = 1
+SUMMARY_PROMPT = "Please provide a concise, one-paragraph summary of the following document content:\n\n{text}"
+COMBINE_PROMPT = ("The following are summaries of consecutive parts of one document. "
+                  "Combine them into a concise, one-paragraph summary of the whole document:\n\n{text}")
+# Rough size of a token for Latin text, good enough for budgets and rate limits without a tokenizer call
+CHARS_PER_TOKEN = 4
+
+
+def estimate_tokens(text):
+    return (len(text) + CHARS_PER_TOKEN - 1) // CHARS_PER_TOKEN
+
+
+class RetryableError(Exception):
+    """The provider is rate limiting or overloaded, the same request can be sent again later."""
+
+
+class Summarizer(abc.ABC):
+    """A model that turns a prompt into text. Implementations raise RetryableError for transient failures."""
+
+    # Cached summaries are keyed by it, so switching the model doesn't return summaries of another one
+    name = None
+
+    @abc.abstractmethod
+    def generate(self, prompt, max_output_tokens):
+        """Sends one prompt and returns the generated text."""
+
+
+class GeminiSummarizer(Summarizer):
+
+    RETRYABLE_CODES = {429, 500, 502, 503, 504}
+
+    def __init__(self, model, api_key=None):
+        # Imported here so the stub runs without the SDK installed
+        from google import genai
+        from google.genai import errors, types
+        self._errors = errors
+        self._types = types
+        self._client = genai.Client(api_key=api_key)
+        self.model = model
+        self.name = f"gemini/{model}"
+
+    def generate(self, prompt, max_output_tokens):
+        config = self._types.GenerateContentConfig(
+            max_output_tokens=max_output_tokens,
+            # Thinking tokens count against max_output_tokens, a summary doesn't need them
+            thinking_config=self._types.ThinkingConfig(thinking_budget=0),
+        )
+        try:
+            response = self._client.models.generate_content(model=self.model, contents=prompt, config=config)
+        except self._errors.APIError as e:
+            if e.code in self.RETRYABLE_CODES:
+                raise RetryableError(f"{e.code}: {e.message}") from e
+            raise
+        if not response.text:
+            raise ValueError("The model returned no text")
+        return response.text
+
+
+class StubSummarizer(Summarizer):
+    """Local stand-in for Gemini in tests and load runs: returns the start of the text after a fixed delay."""
+
+    name = "stub"
+
+    def __init__(self, delay_seconds=0.0):
+        self.delay_seconds = delay_seconds
+        # Only the last prompt is kept, a load run sends thousands
+        self.calls = 0
+        self.last_prompt = None
+        self._lock = threading.Lock()
+
+    def generate(self, prompt, max_output_tokens):
+        with self._lock:
+            self.calls += 1
+            self.last_prompt = prompt
+        if self.delay_seconds:
+            time.sleep(self.delay_seconds)
+        text = prompt.split("\n\n", 1)[-1]
+        return " ".join(text.split()[:max_output_tokens])
+
+
+def create_summarizer(kind, model, delay_seconds=0.0):
+    if kind == 'gemini':
+        if not os.getenv('GOOGLE_API_KEY'):
+            raise ValueError("GOOGLE_API_KEY environment variable not set.")
+        return GeminiSummarizer(model)
+    if kind == 'stub':
+        return StubSummarizer(delay_seconds)
+    raise ValueError(f"Unknown summarizer: {kind} (expected gemini or stub)")
+
+
+def split_to_budget(text, max_tokens, max_chunks):
+    """Splits text into chunks of at most max_tokens, at line breaks where possible. Text beyond max_chunks
+    chunks is dropped, the start of a document says the most about it."""
+    max_chars = max_tokens * CHARS_PER_TOKEN
+    chunks = []
+    current = []
+    current_length = 0
+    for line in text.splitlines(keepends=True):
+        # A single line longer than a chunk is cut hard
+        while len(line) > max_chars:
+            chunks.append(line[:max_chars])
+            line = line[max_chars:]
+        if current_length + len(line) > max_chars:
+            chunks.append("".join(current))
+            current, current_length = [], 0
+        current.append(line)
+        current_length += len(line)
+    if current:
+        chunks.append("".join(current))
+    chunks = [chunk for chunk in chunks if chunk.strip()]
+    if len(chunks) > max_chunks:
+        print(f"Summarizing the first {max_chunks} of {len(chunks)} chunks")
+        chunks = chunks[:max_chunks]
+    return chunks
+
+
+class TokenBucket:
+    """Thread-safe token bucket refilled with rate_per_minute tokens a minute, up to one minute's worth.
+    acquire blocks until enough tokens are available. A rate of 0 disables the limit."""
+
+    def __init__(self, rate_per_minute, clock=time.monotonic, sleep=time.sleep):
+        self.capacity = rate_per_minute
+        self._rate_per_second = rate_per_minute / 60.0
+        self._tokens = float(rate_per_minute)
+        self._clock = clock
+        self._sleep = sleep
+        self._updated = clock()
+        self._lock = threading.Lock()
+
+    def acquire(self, tokens=1):
+        if self.capacity <= 0:
+            return
+        # A request larger than the bucket would otherwise wait forever
+        tokens = min(tokens, self.capacity)
+        while True:
+            with self._lock:
+                now = self._clock()
+                self._tokens = min(self.capacity, self._tokens + (now - self._updated) * self._rate_per_second)
+                self._updated = now
+                if self._tokens >= tokens:
+                    self._tokens -= tokens
+                    return
+                wait = (tokens - self._tokens) / self._rate_per_second
+            self._sleep(wait)
+
+
+def call_with_backoff(call, max_attempts, base_delay, max_delay, sleep=time.sleep):
+    """Calls call() until it doesn't raise RetryableError, waiting a random time up to base_delay * 2^attempt
+    (capped at max_delay) in between, so workers that were throttled together don't retry together."""
+    for attempt in range(1, max_attempts + 1):
+        try:
+            return call()
+        except RetryableError as e:
+            if attempt == max_attempts:
+                raise
+            delay = random.uniform(0, min(max_delay, base_delay * 2 ** (attempt - 1)))
+            print(f"Summarizer request throttled ({e}), retry {attempt} of {max_attempts - 1} in {delay:.1f}s")
+            sleep(delay)
+
+
+class SummaryCache:
+    """Summaries by key in a local SQLite file, shared by the threads of one worker. A volume keeps it
+    across restarts."""
+
+    def __init__(self, path):
+        if path != ':memory:' and os.path.dirname(path):
+            os.makedirs(os.path.dirname(path), exist_ok=True)
+        self._connection = sqlite3.connect(path, check_same_thread=False, isolation_level=None)
+        self._lock = threading.Lock()
+        with self._lock:
+            self._connection.execute("PRAGMA journal_mode=WAL")
+            self._connection.execute(
+                "CREATE TABLE IF NOT EXISTS summaries (key TEXT PRIMARY KEY, summary TEXT NOT NULL, created_at INTEGER NOT NULL)")
+
+    def get(self, key):
+        with self._lock:
+            row = self._connection.execute("SELECT summary FROM summaries WHERE key = ?", (key,)).fetchone()
+        return row[0] if row else None
+
+    def put(self, key, summary):
+        with self._lock:
+            self._connection.execute("INSERT OR REPLACE INTO summaries (key, summary, created_at) VALUES (?, ?, ?)",
+                                     (key, summary, int(time.time())))
+
+
+class SummaryService:
+    """Summarizes a document: from the cache if the same content was summarized before, else in one request
+    when the text fits the token budget, or one request per chunk and one to combine the chunk summaries."""
+
+    def __init__(self, summarizer, cache, chunk_executor, requests_per_minute=0, tokens_per_minute=0,
+                 max_input_tokens=30000, max_output_tokens=512, max_chunks=8,
+                 max_attempts=6, backoff_base=2.0, backoff_max=60.0, sleep=time.sleep):
+        self.summarizer = summarizer
+        self.cache = cache
+        self.chunk_executor = chunk_executor
+        self.requests = TokenBucket(requests_per_minute, sleep=sleep)
+        self.tokens = TokenBucket(tokens_per_minute, sleep=sleep)
+        self.max_input_tokens = max_input_tokens
+        self.max_output_tokens = max_output_tokens
+        self.max_chunks = max_chunks
+        self.max_attempts = max_attempts
+        self.backoff_base = backoff_base
+        self.backoff_max = backoff_max
+        self.sleep = sleep
+
+    def cache_key(self, text, content_hash=None):
+        # Inline text of older messages has no content hash, its own hash identifies it as well
+        digest = content_hash or hashlib.sha256(text.encode('utf-8')).hexdigest()
+        return f"{self.summarizer.name}:{PROMPT_VERSION}:{self.max_input_tokens}:{digest}"
+
+    def summarize(self, text, content_hash=None):
+        key = self.cache_key(text, content_hash)
+        if self.cache is not None:
+            cached = self.cache.get(key)
+            if cached is not None:
+                print(f"Summary of {content_hash or 'inline text'} served from the cache")
+                return cached
+        summary = self._summarize(text)
+        if self.cache is not None:
+            self.cache.put(key, summary)
+        return summary
+
+    def _summarize(self, text):
+        chunks = split_to_budget(text, self.max_input_tokens, self.max_chunks)
+        if not chunks:
+            raise ValueError("No text to summarize")
+        if len(chunks) == 1:
+            return self._generate(SUMMARY_PROMPT.format(text=chunks[0]))
+        # The chunk requests run concurrently, the rate limits still apply to every one of them
+        partials = list(self.chunk_executor.map(lambda chunk: self._generate(SUMMARY_PROMPT.format(text=chunk)), chunks))
+        return self._generate(COMBINE_PROMPT.format(text="\n\n".join(partials)))
+
+    def _generate(self, prompt):
+        def call():
+            self.requests.acquire(1)
+            self.tokens.acquire(estimate_tokens(prompt) + self.max_output_tokens)
+            return self.summarizer.generate(prompt, self.max_output_tokens)
+        return call_with_backoff(call, self.max_attempts, self.backoff_base, self.backoff_max, sleep=self.sleep)
@@ -0,0 +1,115 @@
+import unittest
+from concurrent.futures import ThreadPoolExecutor
+
+import summarizer
+from summarizer import (RetryableError, StubSummarizer, SummaryCache, SummaryService, TokenBucket,
+                        call_with_backoff, split_to_budget)
+
+
+class FlakySummarizer(StubSummarizer):
+    """Throttled for the first `failures` requests."""
+
+    def __init__(self, failures):
+        super().__init__()
+        self.failures = failures
+
+    def generate(self, prompt, max_output_tokens):
+        if self.failures > 0:
+            self.failures -= 1
+            raise RetryableError("429: quota exceeded")
+        return super().generate(prompt, max_output_tokens)
+
+
+class TestSummarizer(unittest.TestCase):
+
+    def service(self, model, cache=None, **kwargs):
+        return SummaryService(model, cache, ThreadPoolExecutor(max_workers=2), sleep=lambda seconds: None, **kwargs)
+
+    # --- Token budget ---
+    def test_split_to_budget_splits_at_line_breaks_and_drops_chunks_over_the_limit(self):
+        # Arrange: lines of 40 characters (10 tokens), chunks of 20 tokens
+        lines = [f"{'x' * 38}{i}\n" for i in range(10)]
+        text = "".join(lines)
+
+        # Act
+        chunks = split_to_budget(text, max_tokens=20, max_chunks=3)
+
+        # Assert
+        self.assertEqual(len(chunks), 3)
+        self.assertEqual(chunks, [lines[0] + lines[1], lines[2] + lines[3], lines[4] + lines[5]])
+
+    def test_summarize_when_text_exceeds_budget_then_summarizes_chunks_and_combines_them(self):
+        # Arrange
+        model = StubSummarizer()
+        service = self.service(model, max_input_tokens=20, max_output_tokens=5, max_chunks=8)
+        text = "first part of the document\n" * 3 + "second part of the document\n" * 3
+
+        # Act
+        summary = service.summarize(text, "hash-1")
+
+        # Assert: one request per chunk, one to combine them
+        self.assertGreater(model.calls, 2)
+        self.assertTrue(model.last_prompt.startswith(summarizer.COMBINE_PROMPT.split("\n\n")[0]))
+        self.assertTrue(summary)
+
+    # --- Cache ---
+    def test_summarize_when_content_was_summarized_before_then_serves_it_from_the_cache(self):
+        # Arrange
+        model = StubSummarizer()
+        service = self.service(model, SummaryCache(':memory:'))
+        service.summarize("An invoice over 100 EUR.", "hash-1")
+
+        # Act
+        summary = service.summarize("An invoice over 100 EUR.", "hash-1")
+
+        # Assert
+        self.assertEqual(summary, "An invoice over 100 EUR.")
+        self.assertEqual(model.calls, 1)
+
+    # --- Backoff ---
+    def test_summarize_when_throttled_then_retries_with_backoff(self):
+        # Arrange
+        model = FlakySummarizer(failures=2)
+        service = self.service(model, max_attempts=3)
+
+        # Act
+        summary = service.summarize("A short letter.")
+
+        # Assert
+        self.assertEqual(summary, "A short letter.")
+
+    def test_call_with_backoff_when_attempts_are_exhausted_then_raises(self):
+        # Arrange
+        delays = []
+
+        def throttled():
+            raise RetryableError("503: overloaded")
+
+        # Act & Assert
+        with self.assertRaises(RetryableError):
+            call_with_backoff(throttled, max_attempts=4, base_delay=1, max_delay=3, sleep=delays.append)
+        self.assertEqual(len(delays), 3)
+        self.assertTrue(all(0 <= delay <= 3 for delay in delays))
+
+    # --- Rate limit ---
+    def test_token_bucket_when_empty_then_waits_for_the_refill(self):
+        # Arrange: 60 tokens a minute is one a second
+        now = [0.0]
+        waits = []
+
+        def sleep(seconds):
+            waits.append(seconds)
+            now[0] += seconds
+
+        bucket = TokenBucket(60, clock=lambda: now[0], sleep=sleep)
+        bucket.acquire(60)
+
+        # Act
+        bucket.acquire(3)
+
+        # Assert
+        self.assertEqual(waits, [3.0])
+
+
+if __name__ == '__main__':
+    unittest.main()
@@ -3,50 +3,129 @@ import time
 import os
 import sys
 import json
-import requests
-from google import genai
+import gzip
+import functools
+import itertools
+import queue
+import threading
+from concurrent.futures import ThreadPoolExecutor
+from minio import Minio
+from summarizer import SummaryCache, SummaryService, create_summarizer
 
 # --- Config ---
 RABBITMQ_HOST = os.getenv('RABBITMQ_HOST', 'localhost')
 RABBITMQ_USER = os.getenv('RABBITMQ_USER', 'user')
 RABBITMQ_PASS = os.getenv('RABBITMQ_PASS', 'password')
-API_URL = os.getenv('API_URL', 'http://paperless-rest-api:8080')
-GOOGLE_API_KEY = os.getenv('GOOGLE_API_KEY')
+MINIO_URL = os.getenv('MINIO_URL', 'localhost:9000')
+MINIO_ACCESS_KEY = os.getenv('MINIO_ACCESS_KEY', 'minioadmin')
+MINIO_SECRET_KEY = os.getenv('MINIO_SECRET_KEY', 'minioadmin')
 
-if not GOOGLE_API_KEY:
-    print("Error: GOOGLE_API_KEY environment variable not set.")
+MINIO_BUCKET = 'documents'
+
+# --- Summarizer ---
+# gemini, or stub for tests and load runs (no API key, no cost, STUB_SUMMARIZER_DELAY seconds per request)
+SUMMARIZER = os.getenv('SUMMARIZER', 'gemini')
+GENAI_MODEL = os.getenv('GENAI_MODEL', 'gemini-2.5-flash')
+STUB_SUMMARIZER_DELAY = float(os.getenv('STUB_SUMMARIZER_DELAY', '0'))
+# Documents summarized at the same time, and chunk requests of long documents at the same time
+GENAI_CONCURRENCY = int(os.getenv('GENAI_CONCURRENCY', '4'))
+GENAI_CHUNK_CONCURRENCY = int(os.getenv('GENAI_CHUNK_CONCURRENCY', '4'))
+# Longer text is summarized in chunks of this size, at most GENAI_MAX_CHUNKS of them
+GENAI_MAX_INPUT_TOKENS = int(os.getenv('GENAI_MAX_INPUT_TOKENS', '30000'))
+GENAI_MAX_OUTPUT_TOKENS = int(os.getenv('GENAI_MAX_OUTPUT_TOKENS', '512'))
+GENAI_MAX_CHUNKS = int(os.getenv('GENAI_MAX_CHUNKS', '8'))
+# Provider quota of this worker (0 = unlimited), the defaults are the Gemini free tier of gemini-2.5-flash
+GENAI_REQUESTS_PER_MINUTE = int(os.getenv('GENAI_REQUESTS_PER_MINUTE', '10'))
+GENAI_TOKENS_PER_MINUTE = int(os.getenv('GENAI_TOKENS_PER_MINUTE', '250000'))
+# Retries of throttled requests, waiting up to GENAI_BACKOFF_BASE * 2^attempt seconds
+GENAI_MAX_ATTEMPTS = int(os.getenv('GENAI_MAX_ATTEMPTS', '6'))
+GENAI_BACKOFF_BASE = float(os.getenv('GENAI_BACKOFF_BASE', '2'))
+GENAI_BACKOFF_MAX = float(os.getenv('GENAI_BACKOFF_MAX', '60'))
+# Summaries by content hash, empty to disable
+GENAI_CACHE_PATH = os.getenv('GENAI_CACHE_PATH', '/data/summary-cache.sqlite3')
+
+try:
+    summarizer = create_summarizer(SUMMARIZER, GENAI_MODEL, STUB_SUMMARIZER_DELAY)
+except ValueError as e:
+    print(f"Error: {e}")
     sys.exit(1)
 
-client = genai.Client()
+summary_service = SummaryService(
+    summarizer,
+    SummaryCache(GENAI_CACHE_PATH) if GENAI_CACHE_PATH else None,
+    ThreadPoolExecutor(max_workers=GENAI_CHUNK_CONCURRENCY, thread_name_prefix='genai-chunk'),
+    requests_per_minute=GENAI_REQUESTS_PER_MINUTE,
+    tokens_per_minute=GENAI_TOKENS_PER_MINUTE,
+    max_input_tokens=GENAI_MAX_INPUT_TOKENS,
+    max_output_tokens=GENAI_MAX_OUTPUT_TOKENS,
+    max_chunks=GENAI_MAX_CHUNKS,
+    max_attempts=GENAI_MAX_ATTEMPTS,
+    backoff_base=GENAI_BACKOFF_BASE,
+    backoff_max=GENAI_BACKOFF_MAX,
+)
+
+minio_client = Minio(
+    MINIO_URL,
+    access_key=MINIO_ACCESS_KEY,
+    secret_key=MINIO_SECRET_KEY,
+    secure=False
+)
 
 # --- RabbitMQ ---
-GENAI_QUEUE = 'genai-queue'
+# Interactive and bulk lane, consumed side by side so an interactive summary waits for at most one bulk job
+GENAI_QUEUES = os.getenv('GENAI_QUEUES', 'genai-queue.v2,genai-bulk-queue.v2').split(',')
 RESULT_EXCHANGE = 'document-exchange'
 RESULT_ROUTING_KEY = 'document.genai.result'
+# Versions of the GenAiRequest message this worker understands, v2 references the text in MinIO
+SUPPORTED_SCHEMA_VERSIONS = {1, 2}
+# Must match the declaration in the backend's RabbitMQConfig, a mismatch fails with PRECONDITION_FAILED
+def queue_arguments(queue):
+    return {
+        'x-queue-type': 'quorum',
+        'x-delivery-limit': int(os.getenv('RABBITMQ_DELIVERY_LIMIT', '5')),
+        'x-dead-letter-exchange': 'document-dlx',
+        'x-dead-letter-routing-key': queue,
+    }
 
-def get_document_content(doc_id):
-    try:
-        response = requests.get(f"{API_URL}/api/documents/{doc_id}")
-        response.raise_for_status()
-        return response.json()
-    except requests.exceptions.RequestException as e:
-        print(f"Error fetching metadata for doc ID {doc_id}: {e}")
+def parse_request(body):
+    """Parses a genai-queue message (GenAiRequest in the backend), returns None for an unknown schema."""
+    message = json.loads(body.decode())
+    if not isinstance(message, dict) or message.get('schemaVersion') not in SUPPORTED_SCHEMA_VERSIONS:
+        return None
+    if not message.get('documentId'):
         return None
+    return message
 
-def generate_summary(text_content):
-    prompt = f"Please provide a concise, one-paragraph summary of the following document content:\n\n{text_content}"
+def page_object_name(content_hash, page_number):
+    """Object key of one page's text, must match ContentStorageService.pageObjectName in the backend."""
+    return f"text/{content_hash}/{page_number:05d}.txt.gz"
+
+def read_text(request):
+    """Returns the text inline in the message, or reads the OCRed pages the message references from MinIO."""
+    if request.get('text'):
+        return request['text']
+    content_hash = request.get('contentHash')
+    page_count = request.get('pageCount')
+    if not content_hash or not page_count:
+        return None
+    pages = []
+    for page_number in range(1, page_count + 1):
+        response = minio_client.get_object(MINIO_BUCKET, page_object_name(content_hash, page_number))
+        try:
+            pages.append(gzip.decompress(response.read()).decode('utf-8'))
+        finally:
+            response.close()
+            response.release_conn()
+    return "\n".join(pages)
+
+def generate_summary(request, text):
     try:
-        # Use the new client.models.generate_content() syntax
-        response = client.models.generate_content(
-            model="gemini-2.5-flash",
-            contents=prompt
-        )
-        return response.text
+        return summary_service.summarize(text, request.get('contentHash'))
     except Exception as e:
         print(f"Error generating summary: {e}")
         raise
 
-def publish_result(channel, doc_id, summary, status, error_details=""):
+def publish_result(channel, doc_id, summary, status, error_details="", correlation_id=None):
     message = {
         "documentId": doc_id,
         "summary": summary,
@@ -57,40 +136,63 @@ def publish_result(channel, doc_id, summary, status, error_details=""):
         exchange=RESULT_EXCHANGE,
         routing_key=RESULT_ROUTING_KEY,
         body=json.dumps(message),
-        properties=pika.BasicProperties(content_type='application/json')
+        # The correlation ID of the request is echoed, the timestamp lets the backend measure the queue lag
+        properties=pika.BasicProperties(
+            content_type='application/json',
+            correlation_id=correlation_id,
+            timestamp=int(time.time())
+        )
     )
-    print(f"Published {status} summary for document ID {doc_id}")
+    print(f"Published {status} summary for document ID {doc_id} [{correlation_id}]")
+
+# Jobs waiting for a summarizer thread, interactive (lane 0) before bulk (lane 1), in arrival order within a lane
+jobs = queue.PriorityQueue()
+arrival = itertools.count()
 
-def callback(ch, method, properties, body):
+def callback(ch, method, properties, body, lane=0):
+    """Runs on the connection thread, hands valid messages to the summarizer threads."""
     try:
         # 1. Parse incoming message
-        doc_id = int(json.loads(body.decode()))
-        print(f"GenAI Worker: [x] Received document ID for summary: {doc_id}")
+        request = parse_request(body)
     except Exception as e:
+        request = None
         print(f"Error decoding message body: {e}")
-        ch.basic_ack(delivery_tag=method.delivery_tag) # Ack and discard bad message
+    if request is None:
+        # Unknown or malformed message, park it on the dead-letter queue
+        print(f"GenAI Worker: Rejecting unsupported message: {body[:200]!r}")
+        ch.basic_nack(delivery_tag=method.delivery_tag, requeue=False)
         return
 
-    try:
-        # 2. Fetch metadata to get the full OCR content
-        metadata = get_document_content(doc_id)
-        if not metadata or 'content' not in metadata or not metadata['content']:
-            raise ValueError(f"Could not fetch valid content for doc ID {doc_id}.")
-        
-        # 3. Generate summary
-        summary = generate_summary(metadata['content'])
+    print(f"GenAI Worker: [x] Received document ID for summary: {request['documentId']} [{properties.correlation_id}]")
+    jobs.put((lane, next(arrival), ch, method.delivery_tag, properties.correlation_id, request))
 
-        # 4. Publish success result
-        publish_result(ch, doc_id, summary, "COMPLETED")
+def summarize(request):
+    """Returns (summary, status, error details) of one request, runs on a summarizer thread."""
+    doc_id = request['documentId']
+    try:
+        # 2. Short legacy content travels with the message, OCR text is read from MinIO
+        text = read_text(request)
+        if not text:
+            raise ValueError(f"Message for doc ID {doc_id} carries no content to summarize.")
 
+        # 3. Generate summary
+        return generate_summary(request, text), "COMPLETED", ""
     except Exception as e:
-        # 5. Publish failure result
         print(f"An error occurred summarizing document {doc_id}: {e}")
-        publish_result(ch, doc_id, "", "FAILED", str(e))
-    
-    finally:
-        # 6. Acknowledge the original message
-        ch.basic_ack(delivery_tag=method.delivery_tag)
+        return "", "FAILED", str(e)
+
+def summarizer_thread(connection):
+    while True:
+        _, _, ch, delivery_tag, correlation_id, request = jobs.get()
+        summary, status, error_details = summarize(request)
+
+        # 4. Publish the result and acknowledge the original message, channels belong to the connection thread
+        def complete():
+            try:
+                publish_result(ch, request['documentId'], summary, status, error_details, correlation_id=correlation_id)
+            finally:
+                ch.basic_ack(delivery_tag=delivery_tag)
+        connection.add_callback_threadsafe(complete)
 
 def main():
     credentials = pika.PlainCredentials(RABBITMQ_USER, RABBITMQ_PASS)
@@ -105,9 +207,16 @@ def main():
             time.sleep(5)
 
     channel = connection.channel()
-    channel.queue_declare(queue=GENAI_QUEUE, durable=False)
-    channel.basic_consume(queue=GENAI_QUEUE, on_message_callback=callback)
-    
+    for name in GENAI_QUEUES:
+        channel.queue_declare(queue=name, durable=True, arguments=queue_arguments(name))
+    # As many unacked jobs per lane as there are summarizer threads, so a slow document doesn't hold back
+    # jobs another worker could take. Queued interactive jobs are picked up before bulk ones
+    channel.basic_qos(prefetch_count=GENAI_CONCURRENCY)
+    for lane, name in enumerate(GENAI_QUEUES):
+        channel.basic_consume(queue=name, on_message_callback=functools.partial(callback, lane=lane))
+    for _ in range(GENAI_CONCURRENCY):
+        threading.Thread(target=summarizer_thread, args=(connection,), daemon=True).start()
+
     print('GenAI Worker: [*] Waiting for messages.')
     channel.start_consuming()
 
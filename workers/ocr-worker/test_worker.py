@@ -1,124 +1,218 @@
+import gzip
+import json
+import sys
+import time
 import unittest
-from unittest.mock import patch, MagicMock
+from unittest.mock import ANY, patch, MagicMock
+
+# The worker connects to nothing on import, but needs its third-party modules, they are not used by the tests
+for module in ('pika', 'minio', 'pdf2image', 'pytesseract'):
+    sys.modules.setdefault(module, MagicMock())
+
 import worker
 
+
+def ocr_request(**overrides):
+    """An OcrRequest as the backend sends it."""
+    message = {
+        'schemaVersion': worker.SCHEMA_VERSION,
+        'documentId': 1,
+        'storagePath': 'uuid-for-file-1',
+        'contentHash': 'abc123',
+        'fileSize': 1024,
+        'priority': 'INTERACTIVE',
+    }
+    message.update(overrides)
+    return json.dumps(message).encode('utf-8')
+
+
 class TestOcrWorker(unittest.TestCase):
 
-    # --- Test for the successful path ---
-    @patch('worker.get_document_metadata')
-    @patch('worker.download_file_from_minio')
+    def setUp(self):
+        self.channel = MagicMock()
+        self.method = MagicMock()
+        self.method.delivery_tag = 111
+        self.properties = MagicMock()
+        self.properties.correlation_id = 'corr-1'
+
+    # --- Test for messages the worker doesn't understand ---
     @patch('worker.perform_ocr')
     @patch('worker.publish_result')
-    def test_callback_success(self, mock_publish, mock_ocr, mock_download, mock_metadata):
-        # Arrange: setup mocks and input data
-        mock_channel = MagicMock()
-        mock_method = MagicMock()
-        mock_method.delivery_tag = 111 # unique tag for this test
-        test_doc_id = 1
-        test_storage_path = 'uuid-for-file-1'
-        test_pdf_bytes = b'fake-pdf-content'
-        test_extracted_text = 'Hello World'
-
-        # mock return values
-        mock_metadata.return_value = {'storagePath': test_storage_path}
-        mock_download.return_value = test_pdf_bytes
-        mock_ocr.return_value = test_extracted_text
-
-        # Act: call the function under test
-        worker.callback(mock_channel, mock_method, None, str(test_doc_id).encode('utf-8'))
-
-        # Assert: verify external functions were called correctly
-        mock_metadata.assert_called_once_with(test_doc_id)
-        mock_download.assert_called_once_with(test_storage_path)
-        mock_ocr.assert_called_once_with(test_pdf_bytes)
-        mock_publish.assert_called_once_with(mock_channel, test_doc_id, test_extracted_text, 'SUCCESS')
-        mock_channel.basic_ack.assert_called_once_with(delivery_tag=111)
-
-    # --- Test for failure when fetching metadata ---
-    @patch('worker.get_document_metadata')
-    @patch('worker.publish_result')
+    def test_callback_unknown_schema(self, mock_publish, mock_ocr):
+        # Act
+        worker.callback(self.channel, self.method, self.properties, ocr_request(schemaVersion=99))
+
+        # Assert: parked on the dead-letter queue, nothing is processed or published
+        self.channel.basic_nack.assert_called_once_with(delivery_tag=111, requeue=False)
+        self.channel.basic_ack.assert_not_called()
+        mock_ocr.assert_not_called()
+        mock_publish.assert_not_called()
+
+    # --- Test for the successful path ---
     @patch('worker.download_file_from_minio')
     @patch('worker.perform_ocr')
-    def test_callback_metadata_failure(self, mock_ocr, mock_download, mock_publish, mock_metadata):
+    @patch('worker.publish_result')
+    def test_callback_success(self, mock_publish, mock_ocr, mock_download):
         # Arrange
-        mock_channel = MagicMock()
-        mock_method = MagicMock()
-        mock_method.delivery_tag = 222
-        test_doc_id = 2
-        mock_metadata.return_value = None # simulate metadata fetch failure
+        mock_download.return_value = True
+        mock_ocr.return_value = (3, 'Hello World')
 
         # Act
-        worker.callback(mock_channel, mock_method, None, str(test_doc_id).encode('utf-8'))
+        worker.callback(self.channel, self.method, self.properties, ocr_request(priority='BULK'))
 
-        # Assert
-        mock_metadata.assert_called_once_with(test_doc_id)
-        mock_download.assert_not_called() # ensure these were skipped
-        mock_ocr.assert_not_called()
-        # Check that a FAILED status was published with the correct error message
+        # Assert: the pages are stored under the content hash, the result carries the page count and a preview
+        mock_download.assert_called_once_with('uuid-for-file-1', ANY)
+        mock_ocr.assert_called_once_with(ANY, 'abc123', keepalive=ANY)
         mock_publish.assert_called_once_with(
-            mock_channel, test_doc_id, "", "FAILED",
-            str(ValueError(f"Could not fetch valid metadata or storagePath for doc ID {test_doc_id}."))
-        )
-        mock_channel.basic_ack.assert_called_once_with(delivery_tag=222) # Message should still be ack'd
+            self.channel, 1, 'Hello World', 'SUCCESS', page_count=3, content_hash='abc123',
+            correlation_id='corr-1', priority='BULK')
+        self.channel.basic_ack.assert_called_once_with(delivery_tag=111)
 
     # --- Test for failure during MinIO download ---
-    @patch('worker.get_document_metadata')
     @patch('worker.download_file_from_minio')
     @patch('worker.perform_ocr')
     @patch('worker.publish_result')
-    def test_callback_download_failure(self, mock_publish, mock_ocr, mock_download, mock_metadata):
+    def test_callback_download_failure(self, mock_publish, mock_ocr, mock_download):
         # Arrange
-        mock_channel = MagicMock()
-        mock_method = MagicMock()
-        mock_method.delivery_tag = 333
-        test_doc_id = 3
-        test_storage_path = 'uuid-for-file-3'
-        mock_metadata.return_value = {'storagePath': test_storage_path}
-        mock_download.return_value = None # simulate download failure
+        mock_download.return_value = False
 
         # Act
-        worker.callback(mock_channel, mock_method, None, str(test_doc_id).encode('utf-8'))
+        worker.callback(self.channel, self.method, self.properties, ocr_request())
 
-        # Assert
-        mock_metadata.assert_called_once_with(test_doc_id)
-        mock_download.assert_called_once_with(test_storage_path)
+        # Assert: the content hash is echoed, duplicates waiting for this document's OCR fail with it
         mock_ocr.assert_not_called()
         mock_publish.assert_called_once_with(
-            mock_channel, test_doc_id, "", "FAILED",
-            str(ValueError(f"Could not download file {test_storage_path} from MinIO."))
-        )
-        mock_channel.basic_ack.assert_called_once_with(delivery_tag=333)
+            self.channel, 1, '', 'FAILED', 'Could not download file uuid-for-file-1 from MinIO.',
+            content_hash='abc123', correlation_id='corr-1', priority='INTERACTIVE')
+        self.channel.basic_ack.assert_called_once_with(delivery_tag=111)  # Message should still be ack'd
 
-    # --- Test for failure during OCR processing ---
-    @patch('worker.get_document_metadata')
+    # --- Test for failure during OCR ---
     @patch('worker.download_file_from_minio')
     @patch('worker.perform_ocr')
     @patch('worker.publish_result')
-    def test_callback_ocr_failure(self, mock_publish, mock_ocr, mock_download, mock_metadata):
+    def test_callback_ocr_failure(self, mock_publish, mock_ocr, mock_download):
         # Arrange
-        mock_channel = MagicMock()
-        mock_method = MagicMock()
-        mock_method.delivery_tag = 444
-        test_doc_id = 4
-        test_storage_path = 'uuid-for-file-4'
-        test_pdf_bytes = b'fake-pdf-content'
-        ocr_error = Exception("Tesseract failed!")
-
-        mock_metadata.return_value = {'storagePath': test_storage_path}
-        mock_download.return_value = test_pdf_bytes
-        mock_ocr.side_effect = ocr_error # simulate OCR raising an exception
+        mock_download.return_value = True
+        mock_ocr.side_effect = Exception("Tesseract failed!")
 
         # Act
-        worker.callback(mock_channel, mock_method, None, str(test_doc_id).encode('utf-8'))
+        worker.callback(self.channel, self.method, self.properties, ocr_request())
 
         # Assert
-        mock_metadata.assert_called_once_with(test_doc_id)
-        mock_download.assert_called_once_with(test_storage_path)
-        mock_ocr.assert_called_once_with(test_pdf_bytes)
+        mock_ocr.assert_called_once_with(ANY, 'abc123', keepalive=ANY)
         mock_publish.assert_called_once_with(
-            mock_channel, test_doc_id, "", "FAILED", str(ocr_error)
-        )
-        mock_channel.basic_ack.assert_called_once_with(delivery_tag=444)
+            self.channel, 1, '', 'FAILED', 'Tesseract failed!',
+            content_hash='abc123', correlation_id='corr-1', priority='INTERACTIVE')
+        self.channel.basic_ack.assert_called_once_with(delivery_tag=111)
+
+    # --- Test for the result a failure publishes ---
+    @patch('worker.download_file_from_minio')
+    def test_callback_failure_result_carries_content_hash(self, mock_download):
+        # Arrange
+        mock_download.return_value = False
+
+        # Act
+        worker.callback(self.channel, self.method, self.properties, ocr_request())
+
+        # Assert: without the hash the backend could not find duplicates waiting for this document
+        body = json.loads(self.channel.basic_publish.call_args.kwargs['body'])
+        self.assertEqual(body['status'], 'FAILED')
+        self.assertEqual(body['contentHash'], 'abc123')
+        self.assertIsNone(body['pageCount'])
+
+
+
+def text_layer(pages):
+    """A pdftotext stand-in returning the text layer of the requested page, empty for scanned pages."""
+    def run(command, **kwargs):
+        page_number = int(command[command.index('-f') + 1])
+        return MagicMock(returncode=0, stdout=pages.get(page_number, ''))
+    return run
+
+
+@patch('worker.OCR_CONCURRENCY', 3)
+@patch('worker.minio_client')
+@patch('worker.pytesseract')
+@patch('worker.convert_from_path')
+@patch('worker.pdfinfo_from_path')
+@patch('worker.subprocess.run')
+class TestPerformOcr(unittest.TestCase):
+
+    def stored_pages(self, mock_minio):
+        """Object key -> text of every page the worker uploaded."""
+        return {call.args[1]: gzip.decompress(call.args[2].getvalue()).decode('utf-8')
+                for call in mock_minio.put_object.call_args_list}
+
+    def test_perform_ocr_when_pages_are_mixed_then_recognizes_only_scanned_pages(
+            self, mock_run, mock_pdfinfo, mock_convert, mock_tesseract, mock_minio):
+        # Arrange: pages 1 and 3 have a text layer, page 2 is a scan
+        mock_pdfinfo.return_value = {'Pages': 3}
+        mock_run.side_effect = text_layer({1: 'Invoice number 2025-001 page one', 3: 'Terms and conditions page three'})
+        image = MagicMock()
+        mock_convert.return_value = [image]
+        mock_tesseract.image_to_string.return_value = 'Scanned signature page'
+
+        # Act
+        page_count, preview = worker.perform_ocr('/tmp/document.pdf', 'abc123', keepalive=MagicMock())
+
+        # Assert
+        self.assertEqual(page_count, 3)
+        mock_convert.assert_called_once_with('/tmp/document.pdf', dpi=worker.OCR_DPI, first_page=2, last_page=2)
+        mock_tesseract.image_to_string.assert_called_once_with(image)
+        image.close.assert_called_once()
+        self.assertEqual(self.stored_pages(mock_minio), {
+            'text/abc123/00001.txt.gz': 'Invoice number 2025-001 page one',
+            'text/abc123/00002.txt.gz': 'Scanned signature page',
+            'text/abc123/00003.txt.gz': 'Terms and conditions page three',
+        })
+        self.assertEqual(preview, 'Invoice number 2025-001 page one\nScanned signature page\nTerms and conditions page three')
+
+    def test_perform_ocr_when_pages_finish_out_of_order_then_keeps_the_page_order(
+            self, mock_run, mock_pdfinfo, mock_convert, mock_tesseract, mock_minio):
+        # Arrange: the first page is the slowest
+        mock_pdfinfo.return_value = {'Pages': 3}
+        mock_run.side_effect = text_layer({})
+        mock_convert.side_effect = lambda path, dpi, first_page, last_page: [MagicMock(page=first_page)]
+
+        def recognize(image):
+            if image.page == 1:
+                time.sleep(0.2)
+            return f'page {image.page}'
+        mock_tesseract.image_to_string.side_effect = recognize
+
+        # Act
+        _, preview = worker.perform_ocr('/tmp/document.pdf', 'abc123', keepalive=MagicMock())
+
+        # Assert
+        self.assertEqual(preview, 'page 1\npage 2\npage 3')
+        self.assertEqual(sorted(self.stored_pages(mock_minio)),
+                         ['text/abc123/00001.txt.gz', 'text/abc123/00002.txt.gz', 'text/abc123/00003.txt.gz'])
+
+    @patch('worker.OCR_PREVIEW_CHARS', 20)
+    def test_perform_ocr_when_text_is_long_then_truncates_the_preview_but_stores_every_page(
+            self, mock_run, mock_pdfinfo, mock_convert, mock_tesseract, mock_minio):
+        # Arrange
+        mock_pdfinfo.return_value = {'Pages': 2}
+        mock_run.side_effect = text_layer({1: 'a' * 30, 2: 'b' * 30})
+
+        # Act
+        _, preview = worker.perform_ocr('/tmp/document.pdf', 'abc123', keepalive=MagicMock())
+
+        # Assert
+        self.assertEqual(preview, 'a' * 20)
+        self.assertEqual(self.stored_pages(mock_minio)['text/abc123/00002.txt.gz'], 'b' * 30)
+        mock_convert.assert_not_called()
+
+    def test_perform_ocr_when_pdf_has_no_pages_then_raises(
+            self, mock_run, mock_pdfinfo, mock_convert, mock_tesseract, mock_minio):
+        # Arrange
+        mock_pdfinfo.return_value = {'Pages': 0}
+
+        # Act & Assert
+        with self.assertRaises(ValueError):
+            worker.perform_ocr('/tmp/document.pdf', 'abc123', keepalive=MagicMock())
+        mock_minio.put_object.assert_not_called()
+
 
 if __name__ == '__main__':
-    unittest.main()
\ No newline at end of file
+    unittest.main()
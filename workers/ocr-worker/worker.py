@@ -3,9 +3,13 @@ import time
 import os
 import sys
 import json
-import requests
+import gzip
+import io
+import subprocess
+import tempfile
+from concurrent.futures import ThreadPoolExecutor, TimeoutError as FutureTimeoutError
 from minio import Minio
-from pdf2image import convert_from_bytes
+from pdf2image import convert_from_path, pdfinfo_from_path
 import pytesseract
 
 # --- Config ---
@@ -16,13 +20,33 @@ MINIO_URL = os.getenv('MINIO_URL', 'localhost:9000')
 MINIO_ACCESS_KEY = os.getenv('MINIO_ACCESS_KEY', 'minioadmin')
 MINIO_SECRET_KEY = os.getenv('MINIO_SECRET_KEY', 'minioadmin')
 
-API_URL = os.getenv('API_URL', 'http://paperless-rest-api:8080')
 MINIO_BUCKET = 'documents'
 
+# Pages are rasterized and recognized in parallel, one Tesseract process per page
+OCR_CONCURRENCY = int(os.getenv('OCR_CONCURRENCY', str(os.cpu_count() or 1)))
+OCR_DPI = int(os.getenv('OCR_DPI', '300'))
+# A page whose text layer has at least this many non-whitespace characters is not OCRed again
+TEXT_LAYER_MIN_CHARS = int(os.getenv('TEXT_LAYER_MIN_CHARS', '20'))
+# Tesseract would otherwise start one OpenMP thread per core for every page in the pool
+os.environ.setdefault('OMP_THREAD_LIMIT', '1')
+# Characters of text sent back to the backend, the full text stays in MinIO (paperless.content.preview-length)
+OCR_PREVIEW_CHARS = int(os.getenv('OCR_PREVIEW_CHARS', '2000'))
+
 # --- RabbitMQ ---
-OCR_QUEUE = 'ocr-queue'
+# Interactive and bulk lane, consumed side by side so an interactive upload waits for at most one bulk job
+OCR_QUEUES = os.getenv('OCR_QUEUES', 'ocr-queue.v2,ocr-bulk-queue.v2').split(',')
 RESULT_EXCHANGE = 'document-exchange'
 RESULT_ROUTING_KEY = 'document.ocr.result'
+# Version of the OcrRequest message this worker understands
+SCHEMA_VERSION = 1
+# Must match the declaration in the backend's RabbitMQConfig, a mismatch fails with PRECONDITION_FAILED
+def queue_arguments(queue):
+    return {
+        'x-queue-type': 'quorum',
+        'x-delivery-limit': int(os.getenv('RABBITMQ_DELIVERY_LIMIT', '5')),
+        'x-dead-letter-exchange': 'document-dlx',
+        'x-dead-letter-routing-key': queue,
+    }
 
 minio_client = Minio(
     MINIO_URL,
@@ -31,94 +55,169 @@ minio_client = Minio(
     secure=False
 )
 
-def get_document_metadata(doc_id):
-    """Fetches document metadata from the REST API."""
-    try:
-        url = f"{API_URL}/api/documents/{doc_id}"
-        print(f"Fetching metadata from: {url}")
-        response = requests.get(url)
-        response.raise_for_status()  # raise an HTTPError for bad responses (4xx or 5xx)
-        return response.json()
-    except requests.exceptions.RequestException as e:
-        print(f"Error fetching metadata for doc ID {doc_id}: {e}")
+def parse_request(body):
+    """Parses an ocr-queue message (OcrRequest in the backend), returns None for an unknown schema."""
+    message = json.loads(body.decode())
+    if not isinstance(message, dict) or message.get('schemaVersion') != SCHEMA_VERSION:
         return None
+    if not message.get('documentId') or not message.get('storagePath') or not message.get('contentHash'):
+        return None
+    return message
 
-def download_file_from_minio(object_name):
-    """Downloads file from MinIO and returns content as bytes."""
+def download_file_from_minio(object_name, target_path):
+    """Streams the object from MinIO into a local file, the PDF is never held in memory as a whole."""
     try:
-        response = minio_client.get_object(MINIO_BUCKET, object_name)
-        return response.read()
+        minio_client.fget_object(MINIO_BUCKET, object_name, target_path)
+        return True
     except Exception as e:
         print(f"Error downloading file {object_name} from MinIO: {e}")
-        return None
+        return False
+
+def page_object_name(content_hash, page_number):
+    """Object key of one page's text, must match ContentStorageService.pageObjectName in the backend."""
+    return f"text/{content_hash}/{page_number:05d}.txt.gz"
+
+def store_page_text(content_hash, page_number, text):
+    """Uploads one page's text gzip compressed, documents with the same content share the objects."""
+    data = gzip.compress(text.encode('utf-8'))
+    minio_client.put_object(
+        MINIO_BUCKET,
+        page_object_name(content_hash, page_number),
+        io.BytesIO(data),
+        len(data),
+        content_type='application/gzip'
+    )
+
+def extract_text_layer(pdf_path, page_number):
+    """Returns the embedded text of one page, empty for scanned pages."""
+    result = subprocess.run(
+        ['pdftotext', '-f', str(page_number), '-l', str(page_number), '-layout', pdf_path, '-'],
+        capture_output=True, text=True
+    )
+    return result.stdout if result.returncode == 0 else ""
 
-def perform_ocr(pdf_bytes):
-    """Converts PDF bytes to images and extracts text using Tesseract."""
+def ocr_page(pdf_path, content_hash, page_number):
+    """Recognizes a single page and stores its text, only this page's image is in memory."""
+    text = recognize_page(pdf_path, page_number)
+    store_page_text(content_hash, page_number, text)
+    return text
+
+def recognize_page(pdf_path, page_number):
+    text = extract_text_layer(pdf_path, page_number)
+    if len("".join(text.split())) >= TEXT_LAYER_MIN_CHARS:
+        return text
+
+    images = convert_from_path(pdf_path, dpi=OCR_DPI, first_page=page_number, last_page=page_number)
+    if not images:
+        raise ValueError(f"Page {page_number} could not be converted to an image.")
+    try:
+        return pytesseract.image_to_string(images[0])
+    except pytesseract.TesseractError as ocr_error:
+        print(f"Tesseract failed on page {page_number}: {ocr_error}")
+        return "[OCR failed for this page]"
+    finally:
+        images[0].close()
+
+def perform_ocr(pdf_path, content_hash, keepalive):
+    """OCRs all pages in a bounded pool, returns the page count and a preview of the text."""
     try:
-        images = convert_from_bytes(pdf_bytes)
-        if not images:
-            raise ValueError("PDF could not be converted to images. Maybe empty or corrupted?")
-            
-        full_text = ""
-        for image in images:
-            # add error handling for Tesseract itself
-            try:
-                full_text += pytesseract.image_to_string(image) + "\n"
-            except pytesseract.TesseractError as ocr_error:
-                print(f"Tesseract failed on an image: {ocr_error}")
-                full_text += "[OCR failed for this page]\n"
-        return full_text
+        page_count = pdfinfo_from_path(pdf_path)['Pages']
+        if not page_count:
+            raise ValueError("PDF has no pages. Maybe empty or corrupted?")
+
+        preview = ""
+        with ThreadPoolExecutor(max_workers=OCR_CONCURRENCY) as pool:
+            # Pages are only rasterized once a pool thread picks them up, so memory stays at OCR_CONCURRENCY images
+            futures = [pool.submit(ocr_page, pdf_path, content_hash, number) for number in range(1, page_count + 1)]
+            for future in futures:
+                while True:
+                    try:
+                        text = future.result(timeout=1)
+                        break
+                    except FutureTimeoutError:
+                        # Keep the RabbitMQ connection alive (heartbeats) while long documents are processed
+                        keepalive()
+                # Only the beginning of the document is kept in memory, the pages are already in MinIO
+                if len(preview) < OCR_PREVIEW_CHARS:
+                    preview = (preview + "\n" + text if preview else text)[:OCR_PREVIEW_CHARS]
+        return page_count, preview
     except Exception as e:
         print(f"Error during OCR processing: {e}")
         raise
 
-def publish_result(channel, doc_id, content, status, error_details=""):
-    """Publishes the OCR result back to RabbitMQ."""
+def publish_result(channel, doc_id, content, status, error_details="", page_count=None, content_hash=None,
+                   correlation_id=None, priority=None):
+    """Publishes an OCR result back to RabbitMQ, contentText is a preview, the full text is referenced by contentHash."""
     message = {
         "documentId": doc_id,
         "contentText": content,
         "status": status,
-        "errorDetails": str(error_details)
+        "errorDetails": str(error_details),
+        "pageCount": page_count,
+        "contentHash": content_hash,
+        # Echoed so the backend queues the summary on the same lane
+        "priority": priority
     }
     channel.basic_publish(
         exchange=RESULT_EXCHANGE,
         routing_key=RESULT_ROUTING_KEY,
         body=json.dumps(message),
-        properties=pika.BasicProperties(content_type='application/json')
+        # The correlation ID of the request is echoed, the timestamp lets the backend measure the queue lag
+        properties=pika.BasicProperties(
+            content_type='application/json',
+            correlation_id=correlation_id,
+            timestamp=int(time.time())
+        )
     )
-    print(f"Published {status} result for document ID {doc_id}")
+    print(f"Published {status} result for document ID {doc_id} [{correlation_id}]")
 
 
 def callback(ch, method, properties, body):
-    # decode bytes to a string, then parse it as JSON
-    message_content = json.loads(body.decode())
-    doc_id = int(message_content)
-    print(f"OCR Worker: [x] Received document ID for processing: {doc_id}")
+    try:
+        request = parse_request(body)
+    except (ValueError, UnicodeDecodeError) as e:
+        request = None
+        print(f"OCR Worker: Could not decode message: {e}")
+    if request is None:
+        # Unknown or malformed message, park it on the dead-letter queue instead of guessing
+        print(f"OCR Worker: Rejecting unsupported message: {body[:200]!r}")
+        ch.basic_nack(delivery_tag=method.delivery_tag, requeue=False)
+        return
+
+    doc_id = request['documentId']
+    storage_path = request['storagePath']
+    content_hash = request['contentHash']
+    correlation_id = properties.correlation_id
+    priority = request.get('priority')
+    print(f"OCR Worker: [x] Received document ID for processing: {doc_id} from {method.routing_key} [{correlation_id}]")
 
     try:
-        # Step 1: fetch metadata to get storagepath
-        metadata = get_document_metadata(doc_id)
-        if not metadata or 'storagePath' not in metadata:
-            raise ValueError(f"Could not fetch valid metadata or storagePath for doc ID {doc_id}.")
-
-        # Step 2: download from MinIO
-        pdf_bytes = download_file_from_minio(metadata['storagePath'])
-        if not pdf_bytes:
-            raise ValueError(f"Could not download file {metadata['storagePath']} from MinIO.")
-
-        # Step 3: Perform OCR
-        extracted_text = perform_ocr(pdf_bytes)
-        
-        # Step 4: Publish success result
-        publish_result(ch, doc_id, extracted_text, "SUCCESS")
+        with tempfile.TemporaryDirectory() as work_dir:
+            # Step 1: download from MinIO to disk, the message carries the storage path
+            pdf_path = os.path.join(work_dir, 'document.pdf')
+            if not download_file_from_minio(storage_path, pdf_path):
+                raise ValueError(f"Could not download file {storage_path} from MinIO.")
+
+            # Step 2: Perform OCR, every page is written to MinIO as soon as it is done
+            page_count, preview = perform_ocr(
+                pdf_path,
+                content_hash,
+                keepalive=lambda: ch.connection.process_data_events(time_limit=0)
+            )
+
+        # Step 3: Publish success result
+        publish_result(ch, doc_id, preview, "SUCCESS", page_count=page_count, content_hash=content_hash,
+                       correlation_id=correlation_id, priority=priority)
 
     except Exception as e:
-        # Step 5: If any step fails, publish a failure result
+        # Step 4: If any step fails, publish a failure result
         print(f"An error occurred processing document {doc_id}: {e}")
-        publish_result(ch, doc_id, "", "FAILED", str(e))
+        # The content hash lets the backend fail duplicates that wait for this result as well
+        publish_result(ch, doc_id, "", "FAILED", str(e), content_hash=content_hash,
+                       correlation_id=correlation_id, priority=priority)
     
     finally:
-        # Step 6: ALWAYS ack the og message
+        # Step 5: ALWAYS ack the og message
         ch.basic_ack(delivery_tag=method.delivery_tag)
 
 def main():
@@ -134,10 +233,15 @@ def main():
             time.sleep(5)
 
     channel = connection.channel()
-    # Ensure the queue exists
-    channel.queue_declare(queue=OCR_QUEUE, durable=False)
+    # Ensure the queues exist
+    for queue in OCR_QUEUES:
+        channel.queue_declare(queue=queue, durable=True, arguments=queue_arguments(queue))
+    # One unacked job per consumer, so a slow document doesn't hold back jobs another worker could take.
+    # The broker alternates between the lanes, a bulk backlog delays an interactive job by one job at most
+    channel.basic_qos(prefetch_count=1)
 
-    channel.basic_consume(queue=OCR_QUEUE, on_message_callback=callback)
+    for queue in OCR_QUEUES:
+        channel.basic_consume(queue=queue, on_message_callback=callback)
 
     print('OCR Worker: [*] Waiting for messages. To exit press CTRL+C')
     channel.start_consuming()
@@ -0,0 +1,101 @@
+import json
+import sys
+import unittest
+from unittest.mock import ANY, patch, MagicMock
+
+# The worker connects to nothing on import, but needs its third-party modules, they are not used by the tests
+for module in ('pika', 'minio', 'pdf2image'):
+    sys.modules.setdefault(module, MagicMock())
+
+import worker
+
+
+def preview_request(**overrides):
+    """A PreviewRequest as the backend sends it."""
+    message = {
+        'schemaVersion': worker.SCHEMA_VERSION,
+        'documentId': 1,
+        'storagePath': 'uuid-for-file-1',
+        'contentHash': 'abc123',
+    }
+    message.update(overrides)
+    return json.dumps(message).encode('utf-8')
+
+
+@patch('worker.minio_client')
+class TestPreviewWorker(unittest.TestCase):
+
+    def setUp(self):
+        self.channel = MagicMock()
+        self.method = MagicMock()
+        self.method.delivery_tag = 111
+        self.properties = MagicMock()
+        self.properties.correlation_id = 'corr-1'
+
+    def published(self):
+        return json.loads(self.channel.basic_publish.call_args.kwargs['body'])
+
+    # --- Test for messages the worker doesn't understand ---
+    def test_callback_unknown_schema(self, mock_minio):
+        # Act
+        worker.callback(self.channel, self.method, self.properties, preview_request(schemaVersion=99))
+
+        # Assert: parked on the dead-letter queue, nothing is rendered or published
+        self.channel.basic_nack.assert_called_once_with(delivery_tag=111, requeue=False)
+        self.channel.basic_ack.assert_not_called()
+        self.channel.basic_publish.assert_not_called()
+        mock_minio.fget_object.assert_not_called()
+
+    # --- Test for the successful path ---
+    @patch('worker.render_first_page')
+    def test_callback_success(self, mock_render, mock_minio):
+        # Arrange
+        mock_minio.stat_object.side_effect = Exception("NoSuchKey")
+        page = MagicMock()
+        mock_render.return_value = page
+
+        # Act
+        worker.callback(self.channel, self.method, self.properties, preview_request())
+
+        # Assert: both images are stored under the content hash, the page is rendered once
+        mock_minio.fget_object.assert_called_once_with(worker.MINIO_BUCKET, 'uuid-for-file-1', ANY)
+        mock_render.assert_called_once()
+        stored = [call.args[1] for call in mock_minio.put_object.call_args_list]
+        self.assertEqual(stored, ['preview/abc123/page.jpg', 'preview/abc123/thumbnail.jpg'])
+        page.close.assert_called_once()
+        self.assertEqual(self.published(),
+                         {'documentId': 1, 'contentHash': 'abc123', 'status': 'COMPLETED', 'errorDetails': ''})
+        self.channel.basic_ack.assert_called_once_with(delivery_tag=111)
+
+    # --- Test for content whose previews were rendered before ---
+    @patch('worker.render_first_page')
+    def test_callback_when_previews_exist_then_skips_rendering(self, mock_render, mock_minio):
+        # Act
+        worker.callback(self.channel, self.method, self.properties, preview_request())
+
+        # Assert
+        mock_minio.fget_object.assert_not_called()
+        mock_render.assert_not_called()
+        mock_minio.put_object.assert_not_called()
+        self.assertEqual(self.published()['status'], 'COMPLETED')
+        self.channel.basic_ack.assert_called_once_with(delivery_tag=111)
+
+    # --- Test for failure while rendering ---
+    @patch('worker.render_first_page')
+    def test_callback_render_failure(self, mock_render, mock_minio):
+        # Arrange
+        mock_minio.stat_object.side_effect = Exception("NoSuchKey")
+        mock_render.side_effect = ValueError("First page could not be converted to an image.")
+
+        # Act
+        worker.callback(self.channel, self.method, self.properties, preview_request())
+
+        # Assert
+        mock_minio.put_object.assert_not_called()
+        self.assertEqual(self.published(), {'documentId': 1, 'contentHash': 'abc123', 'status': 'FAILED',
+                                            'errorDetails': 'First page could not be converted to an image.'})
+        self.channel.basic_ack.assert_called_once_with(delivery_tag=111)  # Message should still be ack'd
+
+
+if __name__ == '__main__':
+    unittest.main()
@@ -0,0 +1,200 @@
+import pika
+import time
+import os
+import sys
+import io
+import json
+import tempfile
+from minio import Minio
+from pdf2image import convert_from_path
+
+# --- Config ---
+RABBITMQ_HOST = os.getenv('RABBITMQ_HOST', 'localhost')
+RABBITMQ_USER = os.getenv('RABBITMQ_USER', 'user')
+RABBITMQ_PASS = os.getenv('RABBITMQ_PASS', 'password')
+MINIO_URL = os.getenv('MINIO_URL', 'localhost:9000')
+MINIO_ACCESS_KEY = os.getenv('MINIO_ACCESS_KEY', 'minioadmin')
+MINIO_SECRET_KEY = os.getenv('MINIO_SECRET_KEY', 'minioadmin')
+
+MINIO_BUCKET = 'documents'
+
+# Longest edge in pixels, the thumbnail is sized for list views, the page preview for reading
+THUMBNAIL_SIZE = int(os.getenv('PREVIEW_THUMBNAIL_SIZE', '256'))
+PAGE_SIZE = int(os.getenv('PREVIEW_PAGE_SIZE', '1200'))
+JPEG_QUALITY = int(os.getenv('PREVIEW_JPEG_QUALITY', '80'))
+
+# --- RabbitMQ ---
+PREVIEW_QUEUE = 'preview-queue.v2'
+RESULT_EXCHANGE = 'document-exchange'
+RESULT_ROUTING_KEY = 'document.preview.result'
+# Version of the PreviewRequest message this worker understands
+SCHEMA_VERSION = 1
+# Must match the declaration in the backend's RabbitMQConfig, a mismatch fails with PRECONDITION_FAILED
+QUEUE_ARGUMENTS = {
+    'x-queue-type': 'quorum',
+    'x-delivery-limit': int(os.getenv('RABBITMQ_DELIVERY_LIMIT', '5')),
+    'x-dead-letter-exchange': 'document-dlx',
+    'x-dead-letter-routing-key': PREVIEW_QUEUE,
+}
+
+minio_client = Minio(
+    MINIO_URL,
+    access_key=MINIO_ACCESS_KEY,
+    secret_key=MINIO_SECRET_KEY,
+    secure=False
+)
+
+def parse_request(body):
+    """Parses a preview-queue message (PreviewRequest in the backend), returns None for an unknown schema."""
+    message = json.loads(body.decode())
+    if not isinstance(message, dict) or message.get('schemaVersion') != SCHEMA_VERSION:
+        return None
+    if not message.get('documentId') or not message.get('storagePath') or not message.get('contentHash'):
+        return None
+    return message
+
+def preview_object_name(content_hash, kind):
+    """Object key of a preview image, must match PreviewStorageService.previewObjectName in the backend."""
+    return f"preview/{content_hash}/{kind}.jpg"
+
+def download_file_from_minio(object_name, target_path):
+    """Streams the object from MinIO into a local file, the PDF is never held in memory as a whole."""
+    try:
+        minio_client.fget_object(MINIO_BUCKET, object_name, target_path)
+        return True
+    except Exception as e:
+        print(f"Error downloading file {object_name} from MinIO: {e}")
+        return False
+
+def previews_exist(content_hash):
+    """True if both images of this content are stored, e.g. for a duplicate or a redelivered message."""
+    try:
+        for kind in ('page', 'thumbnail'):
+            minio_client.stat_object(MINIO_BUCKET, preview_object_name(content_hash, kind))
+        return True
+    except Exception:
+        return False
+
+def render_first_page(pdf_path):
+    """Rasterizes only the first page, at the resolution the larger preview needs."""
+    images = convert_from_path(pdf_path, first_page=1, last_page=1, size=PAGE_SIZE)
+    if not images:
+        raise ValueError("First page could not be converted to an image.")
+    return images[0].convert('RGB')
+
+def store_image(content_hash, kind, image, size):
+    """Scales the image down to size (longest edge) and uploads it as JPEG."""
+    scaled = image.copy()
+    scaled.thumbnail((size, size))
+    buffer = io.BytesIO()
+    scaled.save(buffer, format='JPEG', quality=JPEG_QUALITY, optimize=True, progressive=True)
+    data = buffer.getvalue()
+    minio_client.put_object(
+        MINIO_BUCKET,
+        preview_object_name(content_hash, kind),
+        io.BytesIO(data),
+        len(data),
+        content_type='image/jpeg'
+    )
+    print(f"Stored {kind} preview for {content_hash} ({len(data)} bytes)")
+
+def publish_result(channel, doc_id, content_hash, status, error_details="", correlation_id=None):
+    message = {
+        "documentId": doc_id,
+        "contentHash": content_hash,
+        "status": status,
+        "errorDetails": str(error_details)
+    }
+    channel.basic_publish(
+        exchange=RESULT_EXCHANGE,
+        routing_key=RESULT_ROUTING_KEY,
+        body=json.dumps(message),
+        # The correlation ID of the request is echoed, the timestamp lets the backend measure the queue lag
+        properties=pika.BasicProperties(
+            content_type='application/json',
+            correlation_id=correlation_id,
+            timestamp=int(time.time())
+        )
+    )
+    print(f"Published {status} preview result for document ID {doc_id} [{correlation_id}]")
+
+def callback(ch, method, properties, body):
+    try:
+        request = parse_request(body)
+    except (ValueError, UnicodeDecodeError) as e:
+        request = None
+        print(f"Preview Worker: Could not decode message: {e}")
+    if request is None:
+        # Unknown or malformed message, park it on the dead-letter queue instead of guessing
+        print(f"Preview Worker: Rejecting unsupported message: {body[:200]!r}")
+        ch.basic_nack(delivery_tag=method.delivery_tag, requeue=False)
+        return
+
+    doc_id = request['documentId']
+    content_hash = request['contentHash']
+    correlation_id = properties.correlation_id
+    print(f"Preview Worker: [x] Received document ID for previews: {doc_id} [{correlation_id}]")
+
+    try:
+        # Previews are stored by content hash, documents with the same content share them
+        if previews_exist(content_hash):
+            print(f"Previews for {content_hash} already exist, skipping rendering")
+            publish_result(ch, doc_id, content_hash, "COMPLETED", correlation_id=correlation_id)
+            return
+
+        with tempfile.TemporaryDirectory() as work_dir:
+            # Step 1: download from MinIO to disk
+            pdf_path = os.path.join(work_dir, 'document.pdf')
+            if not download_file_from_minio(request['storagePath'], pdf_path):
+                raise ValueError(f"Could not download file {request['storagePath']} from MinIO.")
+
+            # Step 2: render the first page once, both images are scaled from it
+            page = render_first_page(pdf_path)
+            try:
+                store_image(content_hash, 'page', page, PAGE_SIZE)
+                store_image(content_hash, 'thumbnail', page, THUMBNAIL_SIZE)
+            finally:
+                page.close()
+
+        # Step 3: Publish success result
+        publish_result(ch, doc_id, content_hash, "COMPLETED", correlation_id=correlation_id)
+
+    except Exception as e:
+        # Step 4: If any step fails, publish a failure result
+        print(f"An error occurred rendering previews for document {doc_id}: {e}")
+        publish_result(ch, doc_id, content_hash, "FAILED", str(e), correlation_id=correlation_id)
+
+    finally:
+        # Step 5: ALWAYS ack the og message
+        ch.basic_ack(delivery_tag=method.delivery_tag)
+
+def main():
+    credentials = pika.PlainCredentials(RABBITMQ_USER, RABBITMQ_PASS)
+    connection = None
+
+    while not connection:
+        try:
+            connection = pika.BlockingConnection(pika.ConnectionParameters(host=RABBITMQ_HOST, credentials=credentials))
+            print('Preview Worker: Successfully connected to RabbitMQ.')
+        except pika.exceptions.AMQPConnectionError:
+            print('Preview Worker: Failed to connect to RabbitMQ. Retrying in 5 seconds...')
+            time.sleep(5)
+
+    channel = connection.channel()
+    channel.queue_declare(queue=PREVIEW_QUEUE, durable=True, arguments=QUEUE_ARGUMENTS)
+    # Rendering one page is quick, a few messages in flight keep the worker busy between downloads
+    channel.basic_qos(prefetch_count=int(os.getenv('PREVIEW_PREFETCH', '4')))
+    channel.basic_consume(queue=PREVIEW_QUEUE, on_message_callback=callback)
+
+    print('Preview Worker: [*] Waiting for messages. To exit press CTRL+C')
+    channel.start_consuming()
+
+if __name__ == '__main__':
+    try:
+        main()
+    except KeyboardInterrupt:
+        print('Interrupted')
+        try:
+            sys.exit(0)
+        except SystemExit:
+            os._exit(0)